@@ -0,0 +1,599 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.vehicles.Vehicle;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.matsim.episim.EpisimUtils.readChars;
+import static org.matsim.episim.EpisimUtils.writeChars;
+
+/**
+ * Snapshot format 2, which is a directory of independently compressed files that are written and read in parallel.
+ * <p>
+ * Persons, vehicles and facilities are split into chunks of {@link #CHUNK_SIZE}. Each chunk is stored as one file with the ids
+ * and one file with the state. All references between them are stored as index into the id tables,
+ * other strings as index into a dictionary at the start of each chunk.
+ *
+ * @see EpisimConfigGroup.SnapshotFormat#chunked
+ */
+final class ChunkedSnapshot {
+
+	private static final Logger log = LogManager.getLogger(ChunkedSnapshot.class);
+
+	/**
+	 * Magic number "EPES" at the start of the header.
+	 */
+	private static final int MAGIC = 0x45504553;
+	private static final int VERSION = 2;
+
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	private static final String HEADER = "header";
+	private static final String OUTPUT = "output";
+
+	private static final String PERSONS = "persons";
+	private static final String VEHICLES = "vehicles";
+	private static final String FACILITIES = "facilities";
+
+	private ChunkedSnapshot() {
+	}
+
+	/**
+	 * Whether {@code path} is a snapshot in this format.
+	 */
+	static boolean isChunked(Path path) {
+		return Files.isDirectory(path) && Files.exists(path.resolve(HEADER));
+	}
+
+	/**
+	 * Write the snapshot into directory {@code dir}, which is created if necessary.
+	 *
+	 * @param output      output directory that is stored with the snapshot according to {@code mode}
+	 * @param progression progression model state, may be null
+	 */
+	static void write(Path dir, int iteration, InfectionEventHandler handler, EpisimReporting reporting, @Nullable Externalizable progression,
+					  Path output, String runId, EpisimConfigGroup.SnapshotOutput mode) throws IOException {
+
+		Files.createDirectories(dir);
+
+		List<EpisimPerson> persons = new ArrayList<>(handler.getPersonMap().values());
+		List<InfectionEventHandler.EpisimVehicle> vehicles = new ArrayList<>(handler.getVehicleMap().values());
+		List<InfectionEventHandler.EpisimFacility> facilities = new ArrayList<>(handler.getFacilityMap().values());
+
+		Encoder encoder = new Encoder(persons, vehicles, facilities);
+
+		List<Callable<Void>> tasks = new ArrayList<>();
+
+		tasks.add(() -> {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dir.resolve(HEADER))))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(iteration);
+				out.writeInt(CHUNK_SIZE);
+				out.writeInt(persons.size());
+				out.writeInt(vehicles.size());
+				out.writeInt(facilities.size());
+			}
+			return null;
+		});
+
+		tasks.add(() -> {
+			try (ObjectOutputStream out = new ObjectOutputStream(compressed(dir.resolve("state.gz")))) {
+				handler.writeGlobals(out);
+			}
+			return null;
+		});
+
+		tasks.add(() -> {
+			try (ObjectOutputStream out = new ObjectOutputStream(compressed(dir.resolve("reporting.gz")))) {
+				reporting.writeExternal(out);
+			}
+			return null;
+		});
+
+		if (progression != null)
+			tasks.add(() -> {
+				try (ObjectOutputStream out = new ObjectOutputStream(compressed(dir.resolve("progression.gz")))) {
+					progression.writeExternal(out);
+				}
+				return null;
+			});
+
+		addWriteTasks(tasks, dir, PERSONS, persons, encoder, EpisimPerson::getPersonId, EpisimPerson::write);
+		addWriteTasks(tasks, dir, VEHICLES, vehicles, encoder, EpisimContainer::getContainerId, EpisimContainer::write);
+		addWriteTasks(tasks, dir, FACILITIES, facilities, encoder, EpisimContainer::getContainerId, EpisimContainer::write);
+
+		if (mode != EpisimConfigGroup.SnapshotOutput.none)
+			tasks.add(() -> {
+				storeOutput(output, dir.resolve(OUTPUT), runId, mode == EpisimConfigGroup.SnapshotOutput.link);
+				return null;
+			});
+
+		invokeAll(tasks);
+	}
+
+	/**
+	 * Restores the state from a snapshot directory.
+	 *
+	 * @param output      output directory, where the stored output will be copied to
+	 * @param progression progression model to restore, may be null
+	 * @return iteration of the snapshot
+	 */
+	static int read(Path dir, InfectionEventHandler handler, EpisimReporting reporting, @Nullable Externalizable progression,
+					Path output) throws IOException {
+
+		int iteration;
+		int chunkSize;
+		int[] size = new int[3];
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(dir.resolve(HEADER))))) {
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not a snapshot: " + dir);
+
+			int version = in.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported snapshot version " + version + " of " + dir);
+
+			iteration = in.readInt();
+			chunkSize = in.readInt();
+			for (int i = 0; i < size.length; i++)
+				size[i] = in.readInt();
+		}
+
+		Map<Id<Person>, EpisimPerson> personMap = handler.getPersonMap();
+		Map<Id<Vehicle>, InfectionEventHandler.EpisimVehicle> vehicleMap = handler.getVehicleMap();
+		Map<Id<ActivityFacility>, InfectionEventHandler.EpisimFacility> facilityMap = handler.getFacilityMap();
+
+		EpisimPerson[] persons = new EpisimPerson[size[0]];
+		EpisimContainer<?>[] vehicles = new EpisimContainer[size[1]];
+		EpisimContainer<?>[] facilities = new EpisimContainer[size[2]];
+
+		// id tables need to be complete before any state can be read
+		List<Callable<Void>> tasks = new ArrayList<>();
+		addIdTasks(tasks, dir, PERSONS, persons, chunkSize, id -> personMap.get(Id.createPersonId(id)));
+		addIdTasks(tasks, dir, VEHICLES, vehicles, chunkSize, id -> vehicleMap.get(Id.create(id, Vehicle.class)));
+		addIdTasks(tasks, dir, FACILITIES, facilities, chunkSize, id -> facilityMap.get(Id.create(id, ActivityFacility.class)));
+
+		if (Files.isDirectory(dir.resolve(OUTPUT)))
+			tasks.add(() -> {
+				log.info("Copying output from {} into {}", dir, output);
+				restoreOutput(dir.resolve(OUTPUT), output);
+				return null;
+			});
+
+		invokeAll(tasks);
+
+		Decoder decoder = new Decoder(persons, vehicles, facilities);
+
+		try (ObjectInputStream in = new ObjectInputStream(decompressed(dir.resolve("state.gz")))) {
+			handler.readGlobals(in);
+		}
+
+		// persons before containers, which count the state of their persons
+		tasks.clear();
+		addReadTasks(tasks, dir, PERSONS, persons, chunkSize, decoder, EpisimPerson::read);
+		invokeAll(tasks);
+
+		tasks.clear();
+		addReadTasks(tasks, dir, VEHICLES, vehicles, chunkSize, decoder, EpisimContainer::read);
+		addReadTasks(tasks, dir, FACILITIES, facilities, chunkSize, decoder, EpisimContainer::read);
+
+		tasks.add(() -> {
+			try (ObjectInputStream in = new ObjectInputStream(decompressed(dir.resolve("reporting.gz")))) {
+				reporting.readExternal(in);
+			}
+			return null;
+		});
+
+		Path progressionFile = dir.resolve("progression.gz");
+		if (Files.exists(progressionFile)) {
+			tasks.add(() -> {
+				if (progression == null) {
+					log.warn("Progression state present, but model is not Externalizable");
+					return null;
+				}
+				try (ObjectInputStream in = new ObjectInputStream(decompressed(progressionFile))) {
+					progression.readExternal(in);
+				}
+				return null;
+			});
+		}
+
+		invokeAll(tasks);
+
+		return iteration;
+	}
+
+	private static <T> void addWriteTasks(List<Callable<Void>> tasks, Path dir, String section, List<T> values, Encoder encoder,
+										  Extractor<T, Id<?>> id, ChunkWriter<T> writer) {
+
+		for (int chunk = 0; chunk * CHUNK_SIZE < values.size(); chunk++) {
+			List<T> sub = values.subList(chunk * CHUNK_SIZE, Math.min(values.size(), (chunk + 1) * CHUNK_SIZE));
+			Path ids = dir.resolve(chunkName(section + "-ids", chunk));
+			Path state = dir.resolve(chunkName(section, chunk));
+
+			tasks.add(() -> {
+				try (DataOutputStream out = new DataOutputStream(compressed(ids))) {
+					for (T v : sub) {
+						writeChars(out, id.apply(v).toString());
+					}
+				}
+				return null;
+			});
+
+			tasks.add(() -> {
+				// strings of the chunk are collected first and written before the state
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream body = new DataOutputStream(bytes);
+				Dictionary dict = new Dictionary();
+				ChunkOutput output = new ChunkOutput(body, dict, encoder);
+				for (T v : sub) {
+					writer.write(v, output);
+				}
+				body.flush();
+
+				try (DataOutputStream out = new DataOutputStream(compressed(state))) {
+					out.writeInt(dict.entries.size());
+					for (String entry : dict.entries) {
+						writeChars(out, entry);
+					}
+					bytes.writeTo(out);
+				}
+				return null;
+			});
+		}
+	}
+
+	private static <T> void addIdTasks(List<Callable<Void>> tasks, Path dir, String section, T[] table, int chunkSize,
+									   Extractor<String, T> lookup) {
+		for (int chunk = 0; chunk * chunkSize < table.length; chunk++) {
+			int start = chunk * chunkSize;
+			int end = Math.min(table.length, start + chunkSize);
+			Path ids = dir.resolve(chunkName(section + "-ids", chunk));
+
+			tasks.add(() -> {
+				try (DataInputStream in = new DataInputStream(decompressed(ids))) {
+					for (int i = start; i < end; i++) {
+						String id = readChars(in);
+						table[i] = lookup.apply(id);
+						if (table[i] == null)
+							throw new IllegalStateException("Unknown id in snapshot section " + section + ": " + id);
+					}
+				}
+				return null;
+			});
+		}
+	}
+
+	private static <T> void addReadTasks(List<Callable<Void>> tasks, Path dir, String section, T[] table, int chunkSize,
+										 Decoder decoder, ChunkReader<T> reader) {
+		for (int chunk = 0; chunk * chunkSize < table.length; chunk++) {
+			int start = chunk * chunkSize;
+			int end = Math.min(table.length, start + chunkSize);
+			Path state = dir.resolve(chunkName(section, chunk));
+
+			tasks.add(() -> {
+				try (DataInputStream in = new DataInputStream(decompressed(state))) {
+					String[] dict = new String[in.readInt()];
+					for (int i = 0; i < dict.length; i++) {
+						dict[i] = readChars(in);
+					}
+
+					ChunkInput input = new ChunkInput(in, dict, decoder);
+					for (int i = start; i < end; i++) {
+						reader.read(table[i], input);
+					}
+				}
+				return null;
+			});
+		}
+	}
+
+	private static String chunkName(String section, int chunk) {
+		return String.format("%s-%04d.gz", section, chunk);
+	}
+
+	private static OutputStream compressed(Path path) throws IOException {
+		return new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(path), 1 << 16), 1 << 16);
+	}
+
+	private static InputStream decompressed(Path path) throws IOException {
+		return new BufferedInputStream(new GZIPInputStream(Files.newInputStream(path), 1 << 16), 1 << 16);
+	}
+
+	/**
+	 * Run all tasks in the common pool and wait for them.
+	 */
+	private static void invokeAll(List<Callable<Void>> tasks) throws IOException {
+		try {
+			for (Future<Void> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Snapshot was interrupted");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Stores the output files, the same that are also part of zip snapshots, together with their current length.
+	 * Files are hard linked if possible, otherwise copied.
+	 * Linked files stay valid because output files are only appended to, or replaced by new files, but never truncated.
+	 */
+	private static void storeOutput(Path output, Path target, String runId, boolean link) throws IOException {
+
+		List<Path> files;
+		try (Stream<Path> stream = Files.walk(output)) {
+			// other snapshots, zip files and large files are not added
+			files = stream.filter(Files::isRegularFile)
+					.filter(p -> !output.relativize(p).getName(0).toString().startsWith("episim-snapshot"))
+					.filter(p -> !p.toString().endsWith(".zip") && !p.toString().endsWith(".gz"))
+					.collect(Collectors.toList());
+		}
+
+		try (DataOutputStream index = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target.resolveSibling("output-index"))))) {
+			index.writeInt(files.size());
+
+			for (Path file : files) {
+				Path rel = output.relativize(file);
+				// Remove runId from the output name, the same way as in zip snapshots
+				String name = rel.resolveSibling(rel.getFileName().toString().replace(runId + ".", "")).toString();
+				Path dest = target.resolve(name);
+				Files.createDirectories(dest.getParent());
+
+				// files are still appended to, so only the current length belongs to the snapshot
+				long length = Files.size(file);
+				if (!link || !tryLink(dest, file))
+					copy(file, dest, length);
+
+				writeChars(index, name);
+				index.writeLong(length);
+			}
+		}
+	}
+
+	private static boolean tryLink(Path link, Path existing) {
+		try {
+			Files.createLink(link, existing);
+			return true;
+		} catch (IOException | UnsupportedOperationException e) {
+			log.debug("Could not link {}, copying instead", existing, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Copies the output files with the length they had when the snapshot was written.
+	 */
+	private static void restoreOutput(Path source, Path output) throws IOException {
+		try (DataInputStream index = new DataInputStream(new BufferedInputStream(Files.newInputStream(source.resolveSibling("output-index"))))) {
+			int n = index.readInt();
+			for (int i = 0; i < n; i++) {
+				String name = readChars(index);
+				long length = index.readLong();
+
+				Path dest = output.resolve(name);
+				Files.createDirectories(dest.getParent());
+				copy(source.resolve(name), dest, length);
+			}
+		}
+	}
+
+	private static void copy(Path source, Path dest, long length) throws IOException {
+
+		// an existing file may be linked by another snapshot and must not be truncated
+		Files.deleteIfExists(dest);
+
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+			 FileChannel out = FileChannel.open(dest, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			long pos = 0;
+			while (pos < length) {
+				long n = in.transferTo(pos, length - pos, out);
+				if (n <= 0)
+					throw new EOFException("File is shorter than stored in the snapshot: " + source);
+				pos += n;
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface Extractor<T, R> {
+		R apply(T value);
+	}
+
+	@FunctionalInterface
+	private interface ChunkWriter<T> {
+		void write(T value, ChunkOutput out) throws IOException;
+	}
+
+	@FunctionalInterface
+	private interface ChunkReader<T> {
+		void read(T value, ChunkInput in) throws IOException;
+	}
+
+	/**
+	 * Strings of one chunk.
+	 */
+	private static final class Dictionary {
+		private final Object2IntMap<String> index = new Object2IntOpenHashMap<>();
+		private final List<String> entries = new ArrayList<>();
+
+		private Dictionary() {
+			index.defaultReturnValue(-1);
+		}
+
+		private int get(String value) {
+			int idx = index.getInt(value);
+			if (idx == -1) {
+				idx = entries.size();
+				index.put(value, idx);
+				entries.add(value);
+			}
+			return idx;
+		}
+	}
+
+	/**
+	 * Maps persons and containers to their position in the id tables.
+	 */
+	static final class Encoder {
+
+		private final int[] persons;
+		private final int[] vehicles;
+		private final int[] facilities;
+
+		private Encoder(List<EpisimPerson> persons, List<? extends EpisimContainer<Vehicle>> vehicles,
+						List<? extends EpisimContainer<ActivityFacility>> facilities) {
+			this.persons = positions(persons, p -> p.getPersonId().index(), Id.getNumberOfIds(Person.class));
+			this.vehicles = positions(vehicles, c -> c.getContainerId().index(), Id.getNumberOfIds(Vehicle.class));
+			this.facilities = positions(facilities, c -> c.getContainerId().index(), Id.getNumberOfIds(ActivityFacility.class));
+		}
+
+		private static <T> int[] positions(List<T> values, Extractor<T, Integer> index, int size) {
+			int[] pos = new int[size];
+			Arrays.fill(pos, -1);
+			for (int i = 0; i < values.size(); i++) {
+				pos[index.apply(values.get(i))] = i;
+			}
+			return pos;
+		}
+	}
+
+	/**
+	 * Resolves positions in the id tables.
+	 */
+	static final class Decoder {
+
+		private final EpisimPerson[] persons;
+		private final EpisimContainer<?>[] vehicles;
+		private final EpisimContainer<?>[] facilities;
+
+		private Decoder(EpisimPerson[] persons, EpisimContainer<?>[] vehicles, EpisimContainer<?>[] facilities) {
+			this.persons = persons;
+			this.vehicles = vehicles;
+			this.facilities = facilities;
+		}
+	}
+
+	/**
+	 * Output of one chunk, which encodes references by index.
+	 */
+	static final class ChunkOutput {
+
+		final DataOutputStream out;
+		private final Dictionary dict;
+		private final Encoder encoder;
+
+		private ChunkOutput(DataOutputStream out, Dictionary dict, Encoder encoder) {
+			this.out = out;
+			this.dict = dict;
+			this.encoder = encoder;
+		}
+
+		void writePerson(EpisimPerson person) throws IOException {
+			out.writeInt(encoder.persons[person.getPersonId().index()]);
+		}
+
+		/**
+		 * Writes a container, which may be null. Vehicles are stored as negative numbers.
+		 */
+		void writeContainer(@Nullable EpisimContainer<?> container) throws IOException {
+			if (container == null)
+				out.writeInt(Integer.MIN_VALUE);
+			else if (container instanceof InfectionEventHandler.EpisimVehicle)
+				out.writeInt(-1 - encoder.vehicles[container.getContainerId().index()]);
+			else
+				out.writeInt(encoder.facilities[container.getContainerId().index()]);
+		}
+
+		/**
+		 * Writes a string, which may be null.
+		 */
+		void writeString(@Nullable String value) throws IOException {
+			out.writeInt(value == null ? -1 : dict.get(value));
+		}
+	}
+
+	/**
+	 * Input of one chunk.
+	 */
+	static final class ChunkInput {
+
+		final DataInputStream in;
+		private final String[] dict;
+		private final Decoder decoder;
+
+		private ChunkInput(DataInputStream in, String[] dict, Decoder decoder) {
+			this.in = in;
+			this.dict = dict;
+			this.decoder = decoder;
+		}
+
+		EpisimPerson readPerson() throws IOException {
+			return decoder.persons[in.readInt()];
+		}
+
+		@Nullable
+		EpisimContainer<?> readContainer() throws IOException {
+			int idx = in.readInt();
+			if (idx == Integer.MIN_VALUE)
+				return null;
+
+			return idx < 0 ? decoder.vehicles[-1 - idx] : decoder.facilities[idx];
+		}
+
+		@Nullable
+		String readString() throws IOException {
+			int idx = in.readInt();
+			return idx == -1 ? null : dict[idx];
+		}
+	}
+}
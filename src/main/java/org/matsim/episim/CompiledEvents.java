@@ -0,0 +1,146 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compact representation of the events of one day, stored in primitive arrays instead of MATSim event objects.
+ * Persons and containers are referenced by the index of their id, activities by their index in the activity table
+ * of the {@link InfectionEventHandler}.
+ * Only events relevant for the {@link InfectionEventHandler} are contained.
+ */
+final class CompiledEvents {
+
+	static final byte ACTIVITY_START = 0;
+	static final byte ACTIVITY_END = 1;
+	static final byte ENTER_VEHICLE = 2;
+	static final byte LEAVE_VEHICLE = 3;
+
+	private byte[] type;
+	private double[] time;
+	private int[] person;
+	private int[] container;
+	private int[] activity;
+
+	private int size = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity expected number of events
+	 */
+	CompiledEvents(int capacity) {
+		capacity = Math.max(capacity, 16);
+		type = new byte[capacity];
+		time = new double[capacity];
+		person = new int[capacity];
+		container = new int[capacity];
+		activity = new int[capacity];
+	}
+
+	/**
+	 * Append one event.
+	 *
+	 * @param activity activity index, or -1 for vehicle events
+	 */
+	void add(byte type, double time, int person, int container, int activity) {
+
+		if (size == this.type.length)
+			resize(size + (size >> 1));
+
+		this.type[size] = type;
+		this.time[size] = time;
+		this.person[size] = person;
+		this.container[size] = container;
+		this.activity[size] = activity;
+		size++;
+	}
+
+	/**
+	 * Release unused capacity, should be called when all events have been added.
+	 */
+	void trim() {
+		resize(size);
+	}
+
+	private void resize(int capacity) {
+		type = Arrays.copyOf(type, capacity);
+		time = Arrays.copyOf(time, capacity);
+		person = Arrays.copyOf(person, capacity);
+		container = Arrays.copyOf(container, capacity);
+		activity = Arrays.copyOf(activity, capacity);
+	}
+
+	int size() {
+		return size;
+	}
+
+	byte getType(int i) {
+		return type[i];
+	}
+
+	double getTime(int i) {
+		return time[i];
+	}
+
+	int getPerson(int i) {
+		return person[i];
+	}
+
+	int getContainer(int i) {
+		return container[i];
+	}
+
+	int getActivity(int i) {
+		return activity[i];
+	}
+
+	/**
+	 * Writes all events, see {@link #read(DataInput)}.
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeInt(size);
+		out.write(type, 0, size);
+		for (int i = 0; i < size; i++) out.writeDouble(time[i]);
+		for (int i = 0; i < size; i++) out.writeInt(person[i]);
+		for (int i = 0; i < size; i++) out.writeInt(container[i]);
+		for (int i = 0; i < size; i++) out.writeInt(activity[i]);
+	}
+
+	/**
+	 * Reads events written by {@link #write(DataOutput)}.
+	 */
+	static CompiledEvents read(DataInput in) throws IOException {
+		int size = in.readInt();
+		CompiledEvents events = new CompiledEvents(size);
+		in.readFully(events.type, 0, size);
+		for (int i = 0; i < size; i++) events.time[i] = in.readDouble();
+		for (int i = 0; i < size; i++) events.person[i] = in.readInt();
+		for (int i = 0; i < size; i++) events.container[i] = in.readInt();
+		for (int i = 0; i < size; i++) events.activity[i] = in.readInt();
+		events.size = size;
+		return events;
+	}
+}
@@ -0,0 +1,103 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import it.unimi.dsi.fastutil.HashCommon;
+
+import java.util.SplittableRandom;
+
+/**
+ * Counter based random numbers. Instead of advancing one generator over the whole simulation,
+ * the generator is reset to a key derived from (seed, purpose, iteration, container, person, counter) before each evaluation.
+ * All numbers drawn afterwards only depend on this key, and not on the order in which persons and containers are evaluated.
+ * <p>
+ * Resetting does nothing unless {@link EpisimConfigGroup.RandomNumbers#counter} is configured.
+ */
+public final class CounterRandom {
+
+	/**
+	 * What the random numbers are used for, so that different decisions about the same person never share a stream.
+	 */
+	public enum Purpose {
+		contact, enter, progression, tracing, initialInfection
+	}
+
+	private final long seed;
+	private final boolean enabled;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param seed         base seed of all keys
+	 * @param episimConfig config, which determines whether this instance is enabled
+	 */
+	public CounterRandom(long seed, EpisimConfigGroup episimConfig) {
+		this.seed = seed;
+		this.enabled = episimConfig.getRandomNumbers() == EpisimConfigGroup.RandomNumbers.counter;
+	}
+
+	/**
+	 * Whether generators are reset by this instance.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Reset the generator to the key of a person in a container.
+	 */
+	public void reset(SplittableRandom rnd, Purpose purpose, int iteration, EpisimContainer<?> container, EpisimPerson person, double now) {
+		if (!enabled) return;
+
+		int containerIdx = container.getContainerId().index() * 2 + (container instanceof InfectionEventHandler.EpisimVehicle ? 1 : 0);
+		EpisimUtils.setSeed(rnd, key(seed, purpose, iteration, containerIdx, person.getPersonId().index(), (long) now));
+	}
+
+	/**
+	 * Reset the generator to the key of a person, independent of any container.
+	 */
+	public void reset(SplittableRandom rnd, Purpose purpose, int iteration, EpisimPerson person) {
+		if (!enabled) return;
+
+		EpisimUtils.setSeed(rnd, key(seed, purpose, iteration, -1, person.getPersonId().index(), 0));
+	}
+
+	/**
+	 * Reset the generator to the key of a whole iteration.
+	 */
+	public void reset(SplittableRandom rnd, Purpose purpose, int iteration) {
+		if (!enabled) return;
+
+		EpisimUtils.setSeed(rnd, key(seed, purpose, iteration, -1, -1, 0));
+	}
+
+	/**
+	 * Hash of all key components.
+	 */
+	static long key(long seed, Purpose purpose, int iteration, int container, int person, long counter) {
+		long h = HashCommon.murmurHash3(seed ^ 0x9E3779B97F4A7C15L);
+		h = HashCommon.murmurHash3(h + purpose.ordinal());
+		h = HashCommon.murmurHash3(h + iteration);
+		h = HashCommon.murmurHash3(h + container);
+		h = HashCommon.murmurHash3(h + person);
+		return HashCommon.murmurHash3(h + counter);
+	}
+}
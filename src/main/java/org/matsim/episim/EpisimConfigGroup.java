@@ -38,6 +38,7 @@ import org.matsim.episim.policy.FixedPolicy;
 import org.matsim.episim.policy.Restriction;
 import org.matsim.episim.policy.ShutdownPolicy;
 
+import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
 import java.io.File;
 import java.time.DayOfWeek;
@@ -67,6 +68,19 @@ public final class EpisimConfigGroup extends ReflectiveConfigGroup {
 	private static final String SNAPSHOT_INTERVAL = "snapshotInterval";
 	private static final String START_FROM_SNAPSHOT = "startFromSnapshot";
 	private static final String SNAPSHOT_SEED = "snapshotSeed";
+	private static final String SNAPSHOT_FORMAT = "snapshotFormat";
+	private static final String SNAPSHOT_OUTPUT = "snapshotOutput";
+	private static final String EVENT_CACHE = "eventCache";
+	private static final String EVENT_CACHE_DIRECTORY = "eventCacheDirectory";
+	private static final String STREAM_EVENTS = "streamEvents";
+	private static final String PERSON_STORE = "personStore";
+	private static final String CONTAINER_SWAP_REMOVE = "containerSwapRemove";
+	private static final String CONTACT_SAMPLING = "contactSampling";
+	private static final String THREADS = "threads";
+	private static final String RANDOM_NUMBERS = "randomNumbers";
+	private static final String CONTACT_EVALUATION = "contactEvaluation";
+	private static final String PRESENCE_CHECK = "presenceCheck";
+	private static final String EVENT_FORMAT = "eventFormat";
 
 	private static final Logger log = LogManager.getLogger(EpisimConfigGroup.class);
 	private static final String GROUPNAME = "episim";
@@ -111,6 +125,58 @@ public final class EpisimConfigGroup extends ReflectiveConfigGroup {
 	 * How the internal rng state should be handled.
 	 */
 	private SnapshotSeed snapshotSeed = SnapshotSeed.restore;
+	/**
+	 * Format of written snapshots.
+	 */
+	private SnapshotFormat snapshotFormat = SnapshotFormat.zip;
+	/**
+	 * How the output directory is stored with a snapshot.
+	 */
+	private SnapshotOutput snapshotOutput = SnapshotOutput.copy;
+	/**
+	 * Whether input events are cached in binary format.
+	 */
+	private boolean eventCache = false;
+	/**
+	 * Directory for the event cache, uses a directory in the system temp folder if null.
+	 */
+	private String eventCacheDirectory = null;
+	/**
+	 * Whether only the events of the current day are kept in memory.
+	 */
+	private boolean streamEvents = false;
+	/**
+	 * Whether person state is stored in columnar format.
+	 */
+	private boolean personStore = false;
+	/**
+	 * Whether persons are removed from containers in constant time, without keeping their order.
+	 */
+	private boolean containerSwapRemove = false;
+	/**
+	 * How contact persons are drawn from a container.
+	 */
+	private ContactSampling contactSampling = ContactSampling.stable;
+	/**
+	 * Number of threads used to replay the events of one day.
+	 */
+	private int threads = 1;
+	/**
+	 * How random numbers are drawn.
+	 */
+	private RandomNumbers randomNumbers = RandomNumbers.sequential;
+	/**
+	 * Which persons leaving a container are evaluated by the contact model.
+	 */
+	private ContactEvaluation contactEvaluation = ContactEvaluation.compatible;
+	/**
+	 * How often the presence of a person in a container is decided.
+	 */
+	private PresenceCheck presenceCheck = PresenceCheck.perContact;
+	/**
+	 * File format of the written events.
+	 */
+	private EventFormat eventFormat = EventFormat.xml;
 	private FacilitiesHandling facilitiesHandling = FacilitiesHandling.snz;
 	private Config policyConfig = ConfigFactory.empty();
 	private Config progressionConfig = ConfigFactory.empty();
@@ -155,6 +221,16 @@ public final class EpisimConfigGroup extends ReflectiveConfigGroup {
 		this.writeEvents = writeEvents;
 	}
 
+	@StringGetter(EVENT_FORMAT)
+	public EventFormat getEventFormat() {
+		return eventFormat;
+	}
+
+	@StringSetter(EVENT_FORMAT)
+	public void setEventFormat(EventFormat eventFormat) {
+		this.eventFormat = eventFormat;
+	}
+
 	@StringGetter(CALIBRATION_PARAMETER)
 	public double getCalibrationParameter() {
 		return this.calibrationParameter;
@@ -293,6 +369,166 @@ public final class EpisimConfigGroup extends ReflectiveConfigGroup {
 		this.snapshotSeed = snapshotSeed;
 	}
 
+	@StringGetter(SNAPSHOT_FORMAT)
+	public SnapshotFormat getSnapshotFormat() {
+		return snapshotFormat;
+	}
+
+	@StringSetter(SNAPSHOT_FORMAT)
+	public void setSnapshotFormat(SnapshotFormat snapshotFormat) {
+		this.snapshotFormat = snapshotFormat;
+	}
+
+	@StringGetter(SNAPSHOT_OUTPUT)
+	public SnapshotOutput getSnapshotOutput() {
+		return snapshotOutput;
+	}
+
+	@StringSetter(SNAPSHOT_OUTPUT)
+	public void setSnapshotOutput(SnapshotOutput snapshotOutput) {
+		this.snapshotOutput = snapshotOutput;
+	}
+
+	@StringGetter(EVENT_CACHE)
+	public boolean isEventCache() {
+		return eventCache;
+	}
+
+	/**
+	 * If enabled, a binary cache of each local input event file is written to {@link #getEventCacheDirectory()}
+	 * and memory-mapped on later runs.
+	 */
+	@StringSetter(EVENT_CACHE)
+	public void setEventCache(boolean eventCache) {
+		this.eventCache = eventCache;
+	}
+
+	@StringGetter(EVENT_CACHE_DIRECTORY)
+	public String getEventCacheDirectory() {
+		return eventCacheDirectory;
+	}
+
+	/**
+	 * Directory where event caches are stored. The input directories are never written to.
+	 * If not set, a directory in the system temp folder is used.
+	 */
+	@StringSetter(EVENT_CACHE_DIRECTORY)
+	public void setEventCacheDirectory(String eventCacheDirectory) {
+		this.eventCacheDirectory = eventCacheDirectory;
+	}
+
+	@StringGetter(STREAM_EVENTS)
+	public boolean isStreamEvents() {
+		return streamEvents;
+	}
+
+	/**
+	 * If enabled, the compiled events of each distinct day are stored on disk and only the current day is held in memory,
+	 * while the next day is loaded in the background. Input events are always memory-mapped from the event cache.
+	 */
+	@StringSetter(STREAM_EVENTS)
+	public void setStreamEvents(boolean streamEvents) {
+		this.streamEvents = streamEvents;
+	}
+
+	@StringGetter(PERSON_STORE)
+	public boolean isPersonStore() {
+		return personStore;
+	}
+
+	/**
+	 * If enabled, the state of all persons is held in primitive arrays instead of per person objects.
+	 * This reduces memory usage considerably for large populations.
+	 */
+	@StringSetter(PERSON_STORE)
+	public void setPersonStore(boolean personStore) {
+		this.personStore = personStore;
+	}
+
+	@StringGetter(CONTAINER_SWAP_REMOVE)
+	public boolean isContainerSwapRemove() {
+		return containerSwapRemove;
+	}
+
+	/**
+	 * If enabled, a person leaving a container is replaced by the last person in it, which makes removal constant time.
+	 * This changes the order in which contact persons are drawn, so results differ from runs without it.
+	 * Disabled by default, which keeps the order at the cost of removal taking linear time in the number of persons in the container.
+	 */
+	@StringSetter(CONTAINER_SWAP_REMOVE)
+	public void setContainerSwapRemove(boolean containerSwapRemove) {
+		this.containerSwapRemove = containerSwapRemove;
+	}
+
+	@StringGetter(CONTACT_SAMPLING)
+	public ContactSampling getContactSampling() {
+		return contactSampling;
+	}
+
+	@StringSetter(CONTACT_SAMPLING)
+	public void setContactSampling(ContactSampling contactSampling) {
+		this.contactSampling = contactSampling;
+	}
+
+	@StringGetter(THREADS)
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * With more than one thread, facilities and vehicles are distributed over the threads, which each use their own contact model
+	 * and random number generator. Results are reproducible for the same seed and number of threads,
+	 * but differ from the single threaded run. Only applies to the compiled replay, i.e. not when all events are written.
+	 */
+	@StringSetter(THREADS)
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+
+		this.threads = threads;
+	}
+
+	@StringGetter(RANDOM_NUMBERS)
+	public RandomNumbers getRandomNumbers() {
+		return randomNumbers;
+	}
+
+	/**
+	 * See {@link RandomNumbers#counter}. With counter based random numbers, the results of a parallel replay
+	 * don't depend on the number of threads.
+	 */
+	@StringSetter(RANDOM_NUMBERS)
+	public void setRandomNumbers(RandomNumbers randomNumbers) {
+		this.randomNumbers = randomNumbers;
+	}
+
+	@StringGetter(CONTACT_EVALUATION)
+	public ContactEvaluation getContactEvaluation() {
+		return contactEvaluation;
+	}
+
+	/**
+	 * See {@link ContactEvaluation#skipIrrelevant}. Combined with {@link RandomNumbers#counter}, results are the same as with
+	 * {@link ContactEvaluation#compatible}, because skipped evaluations don't influence the random numbers of others.
+	 */
+	@StringSetter(CONTACT_EVALUATION)
+	public void setContactEvaluation(ContactEvaluation contactEvaluation) {
+		this.contactEvaluation = contactEvaluation;
+	}
+
+	@StringGetter(PRESENCE_CHECK)
+	public PresenceCheck getPresenceCheck() {
+		return presenceCheck;
+	}
+
+	/**
+	 * See {@link PresenceCheck#perVisit}.
+	 */
+	@StringSetter(PRESENCE_CHECK)
+	public void setPresenceCheck(PresenceCheck presenceCheck) {
+		this.presenceCheck = presenceCheck;
+	}
+
 	public long getStartOffset() {
 		return startOffset;
 	}
@@ -652,6 +888,37 @@ public final class EpisimConfigGroup extends ReflectiveConfigGroup {
 		all
 	}
 
+	/**
+	 * Defines the file format of written events.
+	 */
+	public enum EventFormat {
+		/**
+		 * One gzipped xml file per day.
+		 */
+		xml,
+		/**
+		 * One compressed columnar file per day, see {@link org.matsim.episim.events.BinaryEventsWriter}.
+		 * Can be converted to xml with the convertEvents analysis command.
+		 */
+		binary
+	}
+
+	/**
+	 * Defines how contact persons are drawn in the {@link org.matsim.episim.model.DefaultContactModel}.
+	 */
+	public enum ContactSampling {
+		/**
+		 * Draw contacts in the same order as the original implementation, which removed drawn persons from a copy of the container.
+		 * Results of existing runs can be reproduced with this option.
+		 */
+		stable,
+
+		/**
+		 * Draw contacts with a partial Fisher-Yates shuffle, which needs fewer operations per contact.
+		 */
+		fisherYates
+	}
+
 	/**
 	 * Defines how the snapshot seed should be processed.
 	 */
@@ -667,6 +934,98 @@ public final class EpisimConfigGroup extends ReflectiveConfigGroup {
 		reseed,
 	}
 
+	/**
+	 * Defines the format of written snapshots. Both formats can be read.
+	 */
+	public enum SnapshotFormat {
+		/**
+		 * Single zip archive with the serialized state.
+		 */
+		zip,
+
+		/**
+		 * Directory with independently compressed chunks, which are written and read with multiple threads.
+		 */
+		chunked,
+	}
+
+	/**
+	 * Defines how the output directory is stored with a snapshot.
+	 */
+	public enum SnapshotOutput {
+		/**
+		 * Copy the output files into the snapshot.
+		 */
+		copy,
+
+		/**
+		 * Hard link the output files into chunked snapshots if possible, otherwise copy them. Zip snapshots copy them.
+		 * Output files are replaced instead of truncated when they are written again, so that linked files keep their content.
+		 */
+		link,
+
+		/**
+		 * Don't store the output.
+		 */
+		none,
+	}
+
+	/**
+	 * Defines how random numbers are drawn.
+	 */
+	public enum RandomNumbers {
+		/**
+		 * All models draw from one generator, results depend on the order of all draws.
+		 */
+		sequential,
+
+		/**
+		 * The generator is reset from a hash of seed, iteration, container, person and purpose
+		 * before each evaluation, so that results don't depend on the order of evaluation.
+		 */
+		counter
+	}
+
+	/**
+	 * Defines which persons leaving a container are evaluated by the contact models.
+	 */
+	public enum ContactEvaluation {
+		/**
+		 * Evaluate every person, so that random numbers are drawn exactly as before.
+		 * Results of existing runs can be reproduced with this option.
+		 */
+		compatible,
+
+		/**
+		 * Skip persons that can neither infect, be infected nor be traced in their container,
+		 * which is decided by the counters of each container. Changes the sequence of random numbers.
+		 */
+		skipIrrelevant,
+
+		/**
+		 * Like {@link #skipIrrelevant}, but the {@link org.matsim.episim.model.SymmetricContactModel} and {@link org.matsim.episim.model.SqrtContactModel}
+		 * evaluate a leaving person only against the persons it can infect or be infected by, with combined probabilities instead of
+		 * random draws for each pair. Only used before tracing starts and if no contact events are written.
+		 */
+		analytical
+	}
+
+	/**
+	 * Defines how often the contact models decide whether a person is present in a container, given the remaining fraction of its activity.
+	 */
+	public enum PresenceCheck {
+		/**
+		 * Draw a new decision for every contact, so that random numbers are drawn exactly as before.
+		 */
+		perContact,
+
+		/**
+		 * Draw the decision once per visit of a container and day, and use it for all contacts of this visit.
+		 * A person staying home is then absent for all contacts of the visit. Changes the sequence of random numbers.
+		 */
+		perVisit
+	}
+
 	/**
 	 * Parameter set for one activity type.
 	 */
@@ -675,6 +1034,8 @@ public final class EpisimConfigGroup extends ReflectiveConfigGroup {
 		public static final String CONTACT_INTENSITY = "contactIntensity";
 		public static final String SPACES_PER_FACILITY = "nSpacesPerFacility";
 		public static final String MAPPED_NAMES = "mappedNames";
+		public static final String INTERACTIONS = "interactions";
+		public static final String TRACEABLE = "traceable";
 
 		static final String SET_TYPE = "infectionParams";
 		/**
@@ -693,6 +1054,16 @@ public final class EpisimConfigGroup extends ReflectiveConfigGroup {
 		 */
 		private double spacesPerFacility = 20.;
 
+		/**
+		 * Container names this activity can interact with, besides its own. Null if the default rules apply.
+		 */
+		private Set<String> interactions = null;
+
+		/**
+		 * Whether contacts during this activity can be traced. Null if the default rules apply.
+		 */
+		private Boolean traceable = null;
+
 
 		/**
 		 * See {@link #InfectionParams(String, String...)}. Name itself will also be used as prefix.
@@ -725,6 +1096,8 @@ public final class EpisimConfigGroup extends ReflectiveConfigGroup {
 			this.mappedNames = other.mappedNames;
 			this.contactIntensity = other.contactIntensity;
 			this.spacesPerFacility = other.spacesPerFacility;
+			this.interactions = other.interactions;
+			this.traceable = other.traceable;
 		}
 
 		private InfectionParams() {
@@ -785,6 +1158,60 @@ public final class EpisimConfigGroup extends ReflectiveConfigGroup {
 			return this;
 		}
 
+		@StringGetter(INTERACTIONS)
+		public String getInteractions() {
+			return interactions == null ? null : Joiner.on(",").join(interactions);
+		}
+
+		/**
+		 * Restrict the interactions of this activity to persons performing an activity of the same or one of the given containers.
+		 * Without this setting, the default rules of {@link org.matsim.episim.model.ActivityInteractions} are used.
+		 *
+		 * @param interactions comma separated container names, or null to use the default rules
+		 */
+		@StringSetter(INTERACTIONS)
+		public InfectionParams setInteractions(String interactions) {
+			this.interactions = interactions == null || interactions.isBlank() ? null : Sets.newHashSet(interactions.split(","));
+			return this;
+		}
+
+		/**
+		 * Whether interactions are restricted explicitly.
+		 */
+		public boolean hasInteractions() {
+			return interactions != null;
+		}
+
+		/**
+		 * Whether this activity can interact with persons in another container, see {@link #setInteractions(String)}.
+		 */
+		public boolean interactsWith(InfectionParams other) {
+			return interactions == null || containerName.equals(other.containerName) || interactions.contains(other.containerName);
+		}
+
+		@StringGetter(TRACEABLE)
+		String getTraceableValue() {
+			return traceable == null ? null : traceable.toString();
+		}
+
+		@StringSetter(TRACEABLE)
+		void setTraceableValue(String traceable) {
+			this.traceable = traceable == null || traceable.isBlank() ? null : Boolean.parseBoolean(traceable);
+		}
+
+		/**
+		 * Whether contacts are traceable, or null if the default rules apply.
+		 */
+		@Nullable
+		public Boolean isTraceable() {
+			return traceable;
+		}
+
+		public InfectionParams setTraceable(@Nullable Boolean traceable) {
+			this.traceable = traceable;
+			return this;
+		}
+
 		/**
 		 * Create a copy of the this infection params.
 		 *
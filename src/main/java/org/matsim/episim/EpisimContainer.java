@@ -20,18 +20,18 @@
  */
 package org.matsim.episim;
 
-import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
-import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
-import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
-import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.gbl.Gbl;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -47,16 +47,27 @@ public class EpisimContainer<T> {
 	private final Id<T> containerId;
 
 	/**
-	 * Persons currently in this container. Stored only as Ids.
+	 * Person list needed to draw random persons within container.
+	 * The position of each person is stored in {@link EpisimPerson#getContainerSlot()}.
 	 */
-	private final IntSet persons = new IntOpenHashSet(4);
+	private final List<EpisimPerson> personsAsList = new ArrayList<>(4);
 
 	/**
-	 * Person list needed to draw random persons within container.
+	 * Entering time of each person, parallel to {@link #personsAsList}.
 	 */
-	private final List<EpisimPerson> personsAsList = new ArrayList<>();
+	private double[] containerEnterTimes = new double[4];
 
-	private final Int2DoubleMap containerEnterTimes = new Int2DoubleOpenHashMap(4);
+	/**
+	 * Whether the order of persons is kept on removal, which takes linear time. Otherwise the last person is moved into the free position,
+	 * which takes constant time, but changes the order random persons are drawn in. See {@link EpisimConfigGroup#isContainerSwapRemove()}.
+	 */
+	private boolean stableOrder = true;
+
+	/**
+	 * Slot of each person by the index of its id. Only created when persons are looked up by id, see {@link #getContainerEnteringTime(Id)}.
+	 */
+	@Nullable
+	private Int2IntMap slotById;
 
 	/**
 	 * The maximum number of persons simultaneously in this container. Negative if unknown.
@@ -79,6 +90,28 @@ public class EpisimContainer<T> {
 	 */
 	private double numSpaces = 1;
 
+	/**
+	 * Contained persons that can infect others, i.e. are contagious or showing symptoms.
+	 * The position of each person is stored in {@link EpisimPerson#getStatusSlot()}.
+	 */
+	private final List<EpisimPerson> contagiousPersons = new ArrayList<>(2);
+
+	/**
+	 * Contained susceptible persons, with positions stored like for {@link #contagiousPersons}.
+	 */
+	private final List<EpisimPerson> susceptiblePersons = new ArrayList<>(4);
+
+	/**
+	 * Number of contained traceable persons.
+	 */
+	private int numTraceable = 0;
+
+	/**
+	 * State the contact model keeps for this container, see {@link #getContactState()}.
+	 */
+	@Nullable
+	private Object contactState;
+
 	EpisimContainer(Id<T> containerId) {
 		this.containerId = containerId;
 	}
@@ -88,16 +121,24 @@ public class EpisimContainer<T> {
 	 */
 	void read(ObjectInput in, Map<Id<Person>, EpisimPerson> persons) throws IOException {
 
-		this.persons.clear();
 		this.personsAsList.clear();
-		this.containerEnterTimes.clear();
+		this.slotById = null;
 
 		int n = in.readInt();
+		containerEnterTimes = new double[Math.max(4, n)];
 		for (int i = 0; i < n; i++) {
 			Id<Person> id = Id.create(readChars(in), Person.class);
-			this.persons.add(id.index());
-			personsAsList.add(persons.get(id));
-			containerEnterTimes.put(id.index(), in.readDouble());
+			EpisimPerson person = persons.get(id);
+			personsAsList.add(person);
+			setSlot(person, i);
+			containerEnterTimes[i] = in.readDouble();
+		}
+
+		numTraceable = 0;
+		contagiousPersons.clear();
+		susceptiblePersons.clear();
+		for (EpisimPerson person : personsAsList) {
+			count(person, 1);
 		}
 	}
 
@@ -106,23 +147,65 @@ public class EpisimContainer<T> {
 	 */
 	void write(ObjectOutput out) throws IOException {
 
-		out.writeInt(containerEnterTimes.size());
-		for (EpisimPerson p : personsAsList) {
-			writeChars(out, p.getPersonId().toString());
-			out.writeDouble(containerEnterTimes.get(p.getPersonId().index()));
+		out.writeInt(personsAsList.size());
+		for (int i = 0; i < personsAsList.size(); i++) {
+			writeChars(out, personsAsList.get(i).getPersonId().toString());
+			out.writeDouble(containerEnterTimes[i]);
+		}
+	}
+
+	/**
+	 * Reads containers state from a chunk of a {@link ChunkedSnapshot}.
+	 */
+	void read(ChunkedSnapshot.ChunkInput chunk) throws IOException {
+
+		this.personsAsList.clear();
+		this.slotById = null;
+
+		int n = chunk.in.readInt();
+		containerEnterTimes = new double[Math.max(4, n)];
+		for (int i = 0; i < n; i++) {
+			EpisimPerson person = chunk.readPerson();
+			personsAsList.add(person);
+			setSlot(person, i);
+			containerEnterTimes[i] = chunk.in.readDouble();
+		}
+
+		numTraceable = 0;
+		contagiousPersons.clear();
+		susceptiblePersons.clear();
+		for (EpisimPerson person : personsAsList) {
+			count(person, 1);
+		}
+	}
+
+	/**
+	 * Writes state to a chunk of a {@link ChunkedSnapshot}.
+	 */
+	void write(ChunkedSnapshot.ChunkOutput chunk) throws IOException {
+
+		chunk.out.writeInt(personsAsList.size());
+		for (int i = 0; i < personsAsList.size(); i++) {
+			chunk.writePerson(personsAsList.get(i));
+			chunk.out.writeDouble(containerEnterTimes[i]);
 		}
 	}
 
 	void addPerson(EpisimPerson person, double now) {
-		final int index = person.getPersonId().index();
 
-		if (persons.contains(index))
+		if (person.getCurrentContainer() == this)
 			throw new IllegalStateException("Person already contained in this container.");
 
-		persons.add(index);
-		personsAsList.add(person);
-		containerEnterTimes.put(index, now);
 		person.setCurrentContainer(this);
+
+		int slot = personsAsList.size();
+		if (slot == containerEnterTimes.length)
+			containerEnterTimes = Arrays.copyOf(containerEnterTimes, slot * 2);
+
+		personsAsList.add(person);
+		containerEnterTimes[slot] = now;
+		setSlot(person, slot);
+		count(person, 1);
 	}
 
 	/**
@@ -131,13 +214,91 @@ public class EpisimContainer<T> {
 	 * @throws RuntimeException if the person was not in the container.
 	 */
 	void removePerson(EpisimPerson person) {
-		int index = person.getPersonId().index();
 
-		containerEnterTimes.remove(index);
-		persons.remove(index);
 		person.removeCurrentContainer(this);
-		boolean wasRemoved = personsAsList.remove(person);
-		Gbl.assertIf(wasRemoved);
+
+		int slot = person.getContainerSlot();
+		int last = personsAsList.size() - 1;
+		Gbl.assertIf(personsAsList.get(slot) == person);
+
+		if (stableOrder) {
+			personsAsList.remove(slot);
+			System.arraycopy(containerEnterTimes, slot + 1, containerEnterTimes, slot, last - slot);
+			for (int i = slot; i < last; i++)
+				setSlot(personsAsList.get(i), i);
+
+		} else {
+			EpisimPerson moved = personsAsList.get(last);
+			personsAsList.set(slot, moved);
+			containerEnterTimes[slot] = containerEnterTimes[last];
+			setSlot(moved, slot);
+			personsAsList.remove(last);
+		}
+
+		person.setContainerSlot(-1);
+		if (slotById != null)
+			slotById.remove(person.getPersonId().index());
+
+		count(person, -1);
+	}
+
+	/**
+	 * Stores the position of a person in {@link #personsAsList}.
+	 */
+	private void setSlot(EpisimPerson person, int slot) {
+		person.setContainerSlot(slot);
+		if (slotById != null)
+			slotById.put(person.getPersonId().index(), slot);
+	}
+
+	/**
+	 * Updates the counters of contained persons.
+	 */
+	private void count(EpisimPerson person, int delta) {
+		countStatus(person, person.getDiseaseStatus(), delta);
+		if (person.isTraceable())
+			numTraceable += delta;
+	}
+
+	private void countStatus(EpisimPerson person, EpisimPerson.DiseaseStatus status, int delta) {
+		List<EpisimPerson> list;
+		if (status == EpisimPerson.DiseaseStatus.susceptible)
+			list = susceptiblePersons;
+		else if (status == EpisimPerson.DiseaseStatus.contagious || status == EpisimPerson.DiseaseStatus.showingSymptoms)
+			list = contagiousPersons;
+		else
+			return;
+
+		if (delta > 0) {
+			person.setStatusSlot(list.size());
+			list.add(person);
+		} else {
+			// move the last person into the free position
+			int slot = person.getStatusSlot();
+			int last = list.size() - 1;
+			Gbl.assertIf(list.get(slot) == person);
+
+			EpisimPerson moved = list.get(last);
+			list.set(slot, moved);
+			moved.setStatusSlot(slot);
+			list.remove(last);
+			person.setStatusSlot(-1);
+		}
+	}
+
+	/**
+	 * Called when the disease status of a contained person changes.
+	 */
+	void updateDiseaseStatus(EpisimPerson person, EpisimPerson.DiseaseStatus oldStatus, EpisimPerson.DiseaseStatus newStatus) {
+		countStatus(person, oldStatus, -1);
+		countStatus(person, newStatus, 1);
+	}
+
+	/**
+	 * Called when a contained person becomes traceable or not.
+	 */
+	void updateTraceable(boolean traceable) {
+		numTraceable += traceable ? 1 : -1;
 	}
 
 	public Id<T> getContainerId() {
@@ -192,17 +353,104 @@ public class EpisimContainer<T> {
 		this.numSpaces = numSpaces;
 	}
 
+	/**
+	 * Sets whether the order of persons is kept when one is removed.
+	 */
+	void setStableOrder(boolean stableOrder) {
+		this.stableOrder = stableOrder;
+	}
+
 	void clearPersons() {
-		this.persons.clear();
 		this.personsAsList.clear();
-		this.containerEnterTimes.clear();
+		this.slotById = null;
+		this.numTraceable = 0;
+		this.contagiousPersons.clear();
+		this.susceptiblePersons.clear();
+	}
+
+	/**
+	 * @return number of contained persons that are contagious or showing symptoms.
+	 */
+	public int getNumContagious() {
+		return contagiousPersons.size();
+	}
+
+	/**
+	 * @return contained persons that are contagious or showing symptoms, in no particular order. Do not modify.
+	 */
+	public List<EpisimPerson> getContagiousPersons() {
+		return contagiousPersons;
+	}
+
+	/**
+	 * @return number of contained susceptible persons.
+	 */
+	public int getNumSusceptible() {
+		return susceptiblePersons.size();
 	}
 
 	/**
-	 * Returns the time the person entered the container, or {@link Double#NEGATIVE_INFINITY} if it never entered.
+	 * @return contained susceptible persons, in no particular order. Infecting one of them changes the order. Do not modify.
+	 */
+	public List<EpisimPerson> getSusceptiblePersons() {
+		return susceptiblePersons;
+	}
+
+	/**
+	 * @return number of contained traceable persons.
+	 */
+	public int getNumTraceable() {
+		return numTraceable;
+	}
+
+	/**
+	 * Returns the time the person entered the container, or {@link Double#NEGATIVE_INFINITY} if it is not in it.
+	 */
+	public double getContainerEnteringTime(EpisimPerson person) {
+		if (person.getCurrentContainer() != this)
+			return Double.NEGATIVE_INFINITY;
+
+		return containerEnterTimes[person.getContainerSlot()];
+	}
+
+	/**
+	 * Same as {@link #getContainerEnteringTime(EpisimPerson)}, but looks up the person by its id.
+	 * The index needed for this is created on the first call and maintained from then on.
 	 */
 	public double getContainerEnteringTime(Id<Person> personId) {
-		return containerEnterTimes.getOrDefault(personId.index(), Double.NEGATIVE_INFINITY);
+		if (slotById == null) {
+			slotById = new Int2IntOpenHashMap(Math.max(4, personsAsList.size()));
+			slotById.defaultReturnValue(-1);
+			for (int i = 0; i < personsAsList.size(); i++)
+				slotById.put(personsAsList.get(i).getPersonId().index(), i);
+		}
+
+		int slot = slotById.get(personId.index());
+		return slot == -1 ? Double.NEGATIVE_INFINITY : containerEnterTimes[slot];
+	}
+
+	/**
+	 * Position of a person in {@link #getPersons()}, or -1 if it is not in this container.
+	 */
+	public int indexOf(EpisimPerson person) {
+		return person.getCurrentContainer() == this ? person.getContainerSlot() : -1;
+	}
+
+	/**
+	 * Returns the state the contact model has attached to this container, or null if there is none.
+	 * Storing it here avoids looking up containers in maps for every event.
+	 */
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public <S> S getContactState() {
+		return (S) contactState;
+	}
+
+	/**
+	 * Attaches state of the contact model to this container. Each container is handled by only one contact model.
+	 */
+	public void setContactState(@Nullable Object contactState) {
+		this.contactState = contactState;
 	}
 
 	public List<EpisimPerson> getPersons() {
@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * State of a simulation at the start of an iteration, which is kept in memory so that several branches can continue from it.
+ * Use {@link EpisimRunner#fork(int)} to create a fork and {@link EpisimRunner#run(EpisimFork, int)} to continue.
+ * <p>
+ * The state is stored once in serialized form and is never modified, so it can be shared by any number of branches,
+ * also concurrently. Each branch restores its own copy of the mutable person and container state,
+ * while scenario and input events can be shared by binding the same instances for all branches.
+ * Branches continue with their own config and policy, starting from the restrictions at the time of the fork.
+ */
+public final class EpisimFork {
+
+	private static final Logger log = LogManager.getLogger(EpisimFork.class);
+
+	private final int iteration;
+	private final byte[] state;
+	private final byte[] reporting;
+	@Nullable
+	private final byte[] progression;
+
+	/**
+	 * Output files of the simulation up to the fork, with the run id removed from their name.
+	 */
+	private final Map<String, byte[]> output;
+
+	private EpisimFork(int iteration, byte[] state, byte[] reporting, @Nullable byte[] progression, Map<String, byte[]> output) {
+		this.iteration = iteration;
+		this.state = state;
+		this.reporting = reporting;
+		this.progression = progression;
+		this.output = output;
+	}
+
+	/**
+	 * Captures the current state of a simulation.
+	 *
+	 * @param output output directory of the simulation
+	 * @param runId  run id of the simulation, which is removed from the output names
+	 */
+	static EpisimFork capture(int iteration, InfectionEventHandler handler, EpisimReporting reporting, @Nullable Externalizable progression,
+							  Path output, String runId) throws IOException {
+
+		Map<String, byte[]> files = new LinkedHashMap<>();
+		try (Stream<Path> stream = Files.walk(output)) {
+			for (Path file : (Iterable<Path>) stream::iterator) {
+				String name = file.getFileName().toString();
+				// Same files as in snapshots
+				if (!Files.isRegularFile(file) || name.endsWith(".zip") || name.endsWith(".gz")
+						|| output.relativize(file).getName(0).toString().startsWith("episim-snapshot"))
+					continue;
+
+				Path rel = output.relativize(file);
+				files.put(rel.resolveSibling(name.replace(runId + ".", "")).toString(), Files.readAllBytes(file));
+			}
+		}
+
+		return new EpisimFork(iteration, serialize(handler), serialize(reporting), progression != null ? serialize(progression) : null, files);
+	}
+
+	private static byte[] serialize(Externalizable obj) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			obj.writeExternal(out);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void deserialize(byte[] data, Externalizable obj) throws IOException {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+			obj.readExternal(in);
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Iteration the branches will start with.
+	 */
+	public int getIteration() {
+		return iteration;
+	}
+
+	/**
+	 * Restores the state into an initialized simulation.
+	 *
+	 * @param output output directory of the branch, where the output up to the fork will be written to
+	 * @return iteration to start with
+	 */
+	int restore(Path output, InfectionEventHandler handler, EpisimReporting reporting, @Nullable Externalizable progression) throws IOException {
+
+		for (Map.Entry<String, byte[]> e : this.output.entrySet()) {
+			Path path = output.resolve(e.getKey());
+			Files.createDirectories(path.getParent());
+			// existing files may be linked by snapshots and are therefore not truncated
+			Files.deleteIfExists(path);
+			Files.write(path, e.getValue());
+		}
+
+		deserialize(state, handler);
+		deserialize(this.reporting, reporting);
+
+		if (this.progression != null) {
+			if (progression != null)
+				deserialize(this.progression, progression);
+			else
+				log.warn("Progression state present, but model is not Externalizable");
+		}
+
+		return iteration;
+	}
+}
@@ -27,6 +27,7 @@ import org.matsim.api.core.v01.Scenario;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.GlobalConfigGroup;
 import org.matsim.core.config.groups.VspExperimentalConfigGroup;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.core.scenario.ScenarioUtils;
@@ -93,6 +94,12 @@ public class EpisimModule extends AbstractModule {
 		return ConfigUtils.addOrGetModule(config, TracingConfigGroup.class);
 	}
 
+	@Provides
+	@Singleton
+	public GlobalConfigGroup globalConfigGroup(Config config) {
+		return config.global();
+	}
+
 	@Provides
 	@Singleton
 	public EpisimWriter episimWriter(EpisimConfigGroup episimConfig) {
@@ -23,23 +23,30 @@ package org.matsim.episim;
 import com.google.common.annotations.Beta;
 import it.unimi.dsi.fastutil.objects.Object2DoubleLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleMaps;
 import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.episim.events.EpisimPersonStatusEvent;
+import org.matsim.episim.model.FaceMask;
 import org.matsim.facilities.ActivityFacility;
 import org.matsim.utils.objectattributes.attributable.Attributable;
 import org.matsim.utils.objectattributes.attributable.Attributes;
 import org.matsim.vehicles.Vehicle;
 
+import javax.annotation.Nullable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.time.DayOfWeek;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 import java.util.stream.Collectors;
 
 import static org.matsim.episim.EpisimUtils.readChars;
@@ -47,80 +54,109 @@ import static org.matsim.episim.EpisimUtils.writeChars;
 
 /**
  * Persons current state in the simulation.
+ * <p>
+ * The disease and quarantine state, trajectory offsets and the current container can optionally be held in a shared
+ * {@link PersonStore}, in which case this class is only a view on it and the corresponding fields are unused.
  */
 public final class EpisimPerson implements Attributable {
 
+	/**
+	 * Person attribute with the individual susceptibility, see {@link #getSusceptibility()}.
+	 */
+	public static final String SUSCEPTIBILITY = "susceptibility";
+
+	/**
+	 * Person attribute with the individual viral load, see {@link #getViralLoad()}.
+	 */
+	public static final String VIRAL_LOAD = "viralLoad";
+
+	/**
+	 * Person attributes with the age, in the order they are looked up. See {@link #getAge()}.
+	 */
+	private static final String[] AGE = {"microm:modeled:age", "age"};
+
+	private static final FaceMask[] MASKS = FaceMask.values();
+
 	private final Id<Person> personId;
+	/**
+	 * Columnar storage of the state, may be null. Accessed with the index of the person id.
+	 */
+	@Nullable
+	private final PersonStore store;
+	private final int idx;
 	private final EpisimReporting reporting;
 	// This data structure is quite slow: log n costs, which should be constant...
 	private final Attributes attributes;
 
 	/**
-	 * Whole trajectory over all days of the week.
+	 * Attributes needed by the models for every contact or status change, copied from {@link #attributes} when the person is created.
+	 * NaN or -1 if the attribute is not set.
 	 */
-	private final List<Activity> trajectory = new ArrayList<>();
+	private final double susceptibility;
+	private final double viralLoad;
+	private final int age;
+	@Nullable
+	private final String district;
 
 	/**
-	 * The position in the trajectory at the start for each day of the week.
+	 * Whole trajectory over all days of the week. May be a read-only view on a {@link SharedInit}.
 	 */
-	private final int[] startOfDay = new int[7];
+	private List<Activity> trajectory = new ArrayList<>();
 
 	/**
-	 * The position in the trajectory for the end of the day.
+	 * State that is held in the {@link #store} otherwise. Null if a store is used.
 	 */
-	private final int[] endOfDay = new int[7];
+	@Nullable
+	private final LocalState local;
 
 	/**
-	 * The first visited {@link org.matsim.facilities.ActivityFacility} for each day.
+	 * Traced contacts with other persons, created on the first contact.
 	 */
-	private final Id<ActivityFacility>[] firstFacilityId = new Id[7];
-
-	// Fields above are initialized from the sim and not persisted
+	@Nullable
+	private Object2DoubleMap<EpisimPerson> traceableContactPersons;
 
 	/**
-	 * Traced contacts with other persons.
+	 * Total spent time during activities, created on the first activity.
 	 */
-	private final Object2DoubleMap<EpisimPerson> traceableContactPersons = new Object2DoubleLinkedOpenHashMap<>(4);
+	@Nullable
+	private Object2DoubleMap<String> spentTime;
 
 	/**
-	 * Stores first time of status changes to specific type.
+	 * Position of this person in the list of its current container.
 	 */
-	private final EnumMap<DiseaseStatus, Double> statusChanges = new EnumMap<>(DiseaseStatus.class);
+	private int containerSlot = -1;
 
 	/**
-	 * Total spent time during activities.
+	 * Position of this person in the list of susceptible or contagious persons of its current container, depending on its status.
 	 */
-	private final Object2DoubleMap<String> spentTime = new Object2DoubleOpenHashMap<>(4);
+	private int statusSlot = -1;
 
 	/**
-	 * The {@link EpisimContainer} the person is currently located in.
+	 * Iteration of the presence decision for the current container, -1 if there is none. See {@link #hasPresence(int)}.
 	 */
-	private EpisimContainer<?> currentContainer = null;
+	private int presenceIteration = -1;
+	private boolean present;
 
 	/**
-	 * The facility where the person got infected. Can be null if person was initially infected.
+	 * Iteration and ordinal of the mask worn in the current container, -1 if there is none. See {@link #getVisitMask(int)}.
 	 */
-	private Id<ActivityFacility> infectionContainer = null;
+	private int maskIteration = -1;
+	private byte mask;
 
 	/**
-	 * The infection type when the person got infected. Can be null if person was initially infected.
+	 * Index of the district of this person, assigned by {@link EpisimReporting}.
 	 */
-	private String infectionType = null;
+	private int districtIndex = -1;
 
 	/**
-	 * Current {@link DiseaseStatus}.
-	 */
-	private DiseaseStatus status = DiseaseStatus.susceptible;
-	/**
-	 * Current {@link QuarantineStatus}.
+	 * The facility where the person got infected. Can be null if person was initially infected.
 	 */
-	private QuarantineStatus quarantineStatus = QuarantineStatus.no;
+	private Id<ActivityFacility> infectionContainer = null;
 
 	/**
-	 * Iteration when this person got into quarantine. Negative if person was never quarantined.
+	 * The infection type when the person got infected. Can be null if person was initially infected.
 	 */
-	private int quarantineDate = -1;
-	private int currentPositionInTrajectory;
+	private String infectionType = null;
 
 	/**
 	 * Whether this person can be traced.
@@ -132,10 +168,30 @@ public final class EpisimPerson implements Attributable {
 	}
 
 	EpisimPerson(Id<Person> personId, Attributes attrs, boolean traceable, EpisimReporting reporting) {
+		this(personId, attrs, traceable, reporting, null);
+	}
+
+	/**
+	 * Constructor for a person with state held in a {@link PersonStore}.
+	 */
+	EpisimPerson(Id<Person> personId, Attributes attrs, boolean traceable, EpisimReporting reporting, @Nullable PersonStore store) {
 		this.personId = personId;
 		this.attributes = attrs;
 		this.traceable = traceable;
 		this.reporting = reporting;
+		this.store = store;
+		this.idx = personId.index();
+
+		this.susceptibility = getDouble(attrs, SUSCEPTIBILITY);
+		this.viralLoad = getDouble(attrs, VIRAL_LOAD);
+		this.age = findAge(attrs);
+		this.district = (String) attrs.getAttribute("district");
+
+		if (store != null) {
+			store.add(idx);
+			this.local = null;
+		} else
+			this.local = new LocalState();
 	}
 
 	/**
@@ -148,32 +204,35 @@ public final class EpisimPerson implements Attributable {
 			  Map<Id<Vehicle>, InfectionEventHandler.EpisimVehicle> vehicles) throws IOException {
 
 		int n = in.readInt();
-		traceableContactPersons.clear();
+		traceableContactPersons = n > 0 ? new Object2DoubleLinkedOpenHashMap<>(n) : null;
 		for (int i = 0; i < n; i++) {
 			Id<Person> id = Id.create(readChars(in), Person.class);
 			traceableContactPersons.put(persons.get(id), in.readDouble());
 		}
 
 		n = in.readInt();
-		statusChanges.clear();
+		clearStatusChanges();
 		for (int i = 0; i < n; i++) {
 			int status = in.readInt();
-			statusChanges.put(DiseaseStatus.values()[status], in.readDouble());
+			putStatusChange(DiseaseStatus.values()[status], in.readDouble());
 		}
 
 		// Current container is set
 		if (in.readBoolean()) {
 			boolean isVehicle = in.readBoolean();
 			String name = readChars(in);
+			EpisimContainer<?> container;
 			if (isVehicle) {
-				currentContainer = vehicles.get(Id.create(name, Vehicle.class));
+				container = vehicles.get(Id.create(name, Vehicle.class));
 			} else
-				currentContainer = facilities.get(Id.create(name, ActivityFacility.class));
+				container = facilities.get(Id.create(name, ActivityFacility.class));
 
-			if (currentContainer == null)
+			if (container == null)
 				throw new IllegalStateException("Could not reconstruct container: " + name);
+
+			putCurrentContainer(container);
 		} else
-			currentContainer = null;
+			putCurrentContainer(null);
 
 		if (in.readBoolean()){
 			infectionContainer = Id.create(readChars(in), ActivityFacility.class);
@@ -184,16 +243,15 @@ public final class EpisimPerson implements Attributable {
 		}
 
 		n = in.readInt();
-		spentTime.clear();
+		spentTime = n > 0 ? new Object2DoubleOpenHashMap<>(n) : null;
 		for (int i = 0; i < n; i++) {
 			String act = readChars(in);
 			spentTime.put(act, in.readDouble());
 		}
 
-		status = DiseaseStatus.values()[in.readInt()];
-		quarantineStatus = QuarantineStatus.values()[in.readInt()];
-		quarantineDate = in.readInt();
-		currentPositionInTrajectory = in.readInt();
+		putDiseaseStatus(DiseaseStatus.values()[in.readInt()]);
+		putQuarantine(QuarantineStatus.values()[in.readInt()], in.readInt());
+		putCurrentPositionInTrajectory(in.readInt());
 		traceable = in.readBoolean();
 	}
 
@@ -202,18 +260,27 @@ public final class EpisimPerson implements Attributable {
 	 */
 	void write(ObjectOutput out) throws IOException {
 
+		Object2DoubleMap<EpisimPerson> traceableContactPersons = getTraceableContacts();
 		out.writeInt(traceableContactPersons.size());
 		for (Map.Entry<EpisimPerson, Double> kv : traceableContactPersons.entrySet()) {
 			writeChars(out, kv.getKey().getPersonId().toString());
 			out.writeDouble(kv.getValue());
 		}
 
-		out.writeInt(statusChanges.size());
-		for (Map.Entry<DiseaseStatus, Double> e : statusChanges.entrySet()) {
-			out.writeInt(e.getKey().ordinal());
-			out.writeDouble(e.getValue());
+		int n = 0;
+		for (DiseaseStatus status : DiseaseStatus.values()) {
+			if (hadDiseaseStatus(status)) n++;
+		}
+
+		// same order as the enum map
+		out.writeInt(n);
+		for (DiseaseStatus status : DiseaseStatus.values()) {
+			if (!hadDiseaseStatus(status)) continue;
+			out.writeInt(status.ordinal());
+			out.writeDouble(getStatusChange(status));
 		}
 
+		EpisimContainer<?> currentContainer = getCurrentContainer();
 		out.writeBoolean(currentContainer != null);
 		if (currentContainer != null) {
 			out.writeBoolean(currentContainer instanceof InfectionEventHandler.EpisimVehicle);
@@ -230,6 +297,7 @@ public final class EpisimPerson implements Attributable {
 			writeChars(out, infectionType);
 		}
 
+		Object2DoubleMap<String> spentTime = getSpentTime();
 		out.writeInt(spentTime.size());
 
 		for (Object2DoubleMap.Entry<String> kv : spentTime.object2DoubleEntrySet()) {
@@ -237,36 +305,170 @@ public final class EpisimPerson implements Attributable {
 			out.writeDouble(kv.getDoubleValue());
 		}
 
-		out.writeInt(status.ordinal());
-		out.writeInt(quarantineStatus.ordinal());
-		out.writeInt(quarantineDate);
-		out.writeInt(currentPositionInTrajectory);
+		out.writeInt(getDiseaseStatus().ordinal());
+		out.writeInt(getQuarantineStatus().ordinal());
+		out.writeInt(getQuarantineDate());
+		out.writeInt(getCurrentPositionInTrajectory());
 		out.writeBoolean(traceable);
 	}
 
+	/**
+	 * Reads persons state from a chunk of a {@link ChunkedSnapshot}.
+	 */
+	void read(ChunkedSnapshot.ChunkInput chunk) throws IOException {
+
+		DataInputStream in = chunk.in;
+
+		int n = in.readInt();
+		traceableContactPersons = n > 0 ? new Object2DoubleLinkedOpenHashMap<>(n) : null;
+		for (int i = 0; i < n; i++) {
+			EpisimPerson person = chunk.readPerson();
+			traceableContactPersons.put(person, in.readDouble());
+		}
+
+		n = in.readByte();
+		clearStatusChanges();
+		for (int i = 0; i < n; i++) {
+			int status = in.readByte();
+			putStatusChange(DiseaseStatus.values()[status], in.readDouble());
+		}
+
+		putCurrentContainer(chunk.readContainer());
+
+		String container = chunk.readString();
+		if (container != null)
+			infectionContainer = Id.create(container, ActivityFacility.class);
+
+		infectionType = chunk.readString();
+
+		n = in.readInt();
+		spentTime = n > 0 ? new Object2DoubleOpenHashMap<>(n) : null;
+		for (int i = 0; i < n; i++) {
+			String act = chunk.readString();
+			spentTime.put(act, in.readDouble());
+		}
+
+		putDiseaseStatus(DiseaseStatus.values()[in.readByte()]);
+		putQuarantine(QuarantineStatus.values()[in.readByte()], in.readInt());
+		putCurrentPositionInTrajectory(in.readInt());
+		traceable = in.readBoolean();
+	}
+
+	/**
+	 * Writes person state to a chunk of a {@link ChunkedSnapshot}.
+	 */
+	void write(ChunkedSnapshot.ChunkOutput chunk) throws IOException {
+
+		DataOutputStream out = chunk.out;
+
+		Object2DoubleMap<EpisimPerson> traceableContactPersons = getTraceableContacts();
+		out.writeInt(traceableContactPersons.size());
+		for (Map.Entry<EpisimPerson, Double> kv : traceableContactPersons.entrySet()) {
+			chunk.writePerson(kv.getKey());
+			out.writeDouble(kv.getValue());
+		}
+
+		int n = 0;
+		for (DiseaseStatus status : DiseaseStatus.values()) {
+			if (hadDiseaseStatus(status)) n++;
+		}
+
+		out.writeByte(n);
+		for (DiseaseStatus status : DiseaseStatus.values()) {
+			if (!hadDiseaseStatus(status)) continue;
+			out.writeByte(status.ordinal());
+			out.writeDouble(getStatusChange(status));
+		}
+
+		chunk.writeContainer(getCurrentContainer());
+		chunk.writeString(infectionContainer != null ? infectionContainer.toString() : null);
+		chunk.writeString(infectionType);
+
+		Object2DoubleMap<String> spentTime = getSpentTime();
+		out.writeInt(spentTime.size());
+		for (Object2DoubleMap.Entry<String> kv : spentTime.object2DoubleEntrySet()) {
+			chunk.writeString(kv.getKey());
+			out.writeDouble(kv.getDoubleValue());
+		}
+
+		out.writeByte(getDiseaseStatus().ordinal());
+		out.writeByte(getQuarantineStatus().ordinal());
+		out.writeInt(getQuarantineDate());
+		out.writeInt(getCurrentPositionInTrajectory());
+		out.writeBoolean(traceable);
+	}
+
+	private void clearStatusChanges() {
+		if (store != null) store.clearStatusChanges(idx);
+		else local.statusChanges.clear();
+	}
+
+	private void putStatusChange(DiseaseStatus status, double time) {
+		if (store != null) store.setStatusChange(idx, status, time);
+		else local.statusChanges.put(status, time);
+	}
+
+	/**
+	 * Time of first change to status, only valid if {@link #hadDiseaseStatus(DiseaseStatus)} is true.
+	 */
+	private double getStatusChange(DiseaseStatus status) {
+		return store != null ? store.getStatusChange(idx, status) : local.statusChanges.get(status);
+	}
+
+	private void putDiseaseStatus(DiseaseStatus status) {
+		if (store != null) store.setDiseaseStatus(idx, status);
+		else local.status = status;
+	}
+
+	private void putQuarantine(QuarantineStatus quarantineStatus, int quarantineDate) {
+		if (store != null) {
+			store.setQuarantineStatus(idx, quarantineStatus);
+			store.setQuarantineDate(idx, quarantineDate);
+		} else {
+			local.quarantineStatus = quarantineStatus;
+			local.quarantineDate = quarantineDate;
+		}
+	}
+
+	private void putCurrentPositionInTrajectory(int position) {
+		if (store != null) store.setPosition(idx, position);
+		else local.currentPositionInTrajectory = position;
+	}
+
+	private void putCurrentContainer(EpisimContainer<?> container) {
+		if (store != null) store.setContainer(idx, container);
+		else local.currentContainer = container;
+	}
+
 	public Id<Person> getPersonId() {
 		return personId;
 	}
 
 	public DiseaseStatus getDiseaseStatus() {
-		return status;
+		return store != null ? store.getDiseaseStatus(idx) : local.status;
 	}
 
 	public void setDiseaseStatus(double now, DiseaseStatus status) {
-		this.status = status;
-		if (!statusChanges.containsKey(status))
-			statusChanges.put(status, now);
+		DiseaseStatus oldStatus = getDiseaseStatus();
+		EpisimContainer<?> container = getCurrentContainer();
+		if (container != null)
+			container.updateDiseaseStatus(this, oldStatus, status);
 
-		reporting.reportPersonStatus(this, new EpisimPersonStatusEvent(now, personId, status));
+		putDiseaseStatus(status);
+		if (!hadDiseaseStatus(status))
+			putStatusChange(status, now);
+
+		reporting.reportPersonStatus(this, oldStatus, new EpisimPersonStatusEvent(now, personId, status));
 	}
 
 	public QuarantineStatus getQuarantineStatus() {
-		return quarantineStatus;
+		return store != null ? store.getQuarantineStatus(idx) : local.quarantineStatus;
 	}
 
 	public void setQuarantineStatus(QuarantineStatus quarantineStatus, int iteration) {
-		this.quarantineStatus = quarantineStatus;
-		this.quarantineDate = iteration;
+		QuarantineStatus oldStatus = getQuarantineStatus();
+		putQuarantine(quarantineStatus, iteration);
+		reporting.reportQuarantineStatus(this, oldStatus, quarantineStatus);
 
 		// this function should receive now instead of iteration
 		// only for testing currently
@@ -283,9 +485,9 @@ public final class EpisimPerson implements Attributable {
 	 * @throws IllegalStateException when the requested status was never set
 	 */
 	public int daysSince(DiseaseStatus status, int currentDay) {
-		if (!statusChanges.containsKey(status)) throw new IllegalStateException("Person was never " + status);
+		if (!hadDiseaseStatus(status)) throw new IllegalStateException("Person was never " + status);
 
-		double day = Math.floor(statusChanges.get(status) / 86400d);
+		double day = Math.floor(getStatusChange(status) / 86400d);
 
 		return currentDay - (int) day;
 	}
@@ -294,7 +496,10 @@ public final class EpisimPerson implements Attributable {
 	 * Return whether a person had (or currently has) a certain disease status.
 	 */
 	public boolean hadDiseaseStatus(DiseaseStatus status) {
-		return statusChanges.containsKey(status);
+		if (store != null)
+			return !Double.isNaN(store.getStatusChange(idx, status));
+
+		return local.statusChanges.containsKey(status);
 	}
 
 	/**
@@ -308,19 +513,23 @@ public final class EpisimPerson implements Attributable {
 
 		// yyyy since this API is so unstable, I would prefer to have the class non-public.  kai, apr'20
 		// -> api now marked as unstable and containing an api note, because it is used by the models it has to be public. chr, apr'20
+		int quarantineDate = getQuarantineDate();
 		if (quarantineDate < 0) throw new IllegalStateException("Person was never quarantined");
 
 		return currentDay - quarantineDate;
 	}
 
 	int getQuarantineDate() {
-		return this.quarantineDate;
+		return store != null ? store.getQuarantineDate(idx) : local.quarantineDate;
 	}
 
 	public void addTraceableContactPerson(EpisimPerson personWrapper, double now) {
 		// check if both persons have tracing capability
 		if (isTraceable() && personWrapper.isTraceable()) {
 			// Always use the latest tracking date
+			if (traceableContactPersons == null)
+				traceableContactPersons = new Object2DoubleLinkedOpenHashMap<>(4);
+
 			traceableContactPersons.put(personWrapper, now);
 			reporting.reportTracing(now, this, personWrapper);
 		}
@@ -330,7 +539,7 @@ public final class EpisimPerson implements Attributable {
 	 * Get all traced contacts that happened after certain time.
 	 */
 	public List<EpisimPerson> getTraceableContactPersons(double after) {
-		return traceableContactPersons.object2DoubleEntrySet()
+		return getTraceableContacts().object2DoubleEntrySet()
 				.stream().filter(p -> p.getDoubleValue() >= after)
 				.map(Map.Entry::getKey)
 				.collect(Collectors.toList());
@@ -345,13 +554,15 @@ public final class EpisimPerson implements Attributable {
 	 */
 	public void clearTraceableContractPersons(double before) {
 
-		int oldSize = traceableContactPersons.size();
-
-		if (oldSize == 0) return;
+		if (traceableContactPersons == null || traceableContactPersons.isEmpty()) return;
 
 		traceableContactPersons.keySet().removeIf(k -> traceableContactPersons.get(k) < before);
 	}
 
+	private Object2DoubleMap<EpisimPerson> getTraceableContacts() {
+		return traceableContactPersons != null ? traceableContactPersons : Object2DoubleMaps.emptyMap();
+	}
+
 	/**
 	 * Returns whether the person can be traced.
 	 */
@@ -360,6 +571,10 @@ public final class EpisimPerson implements Attributable {
 	}
 
 	public void setTraceable(boolean traceable) {
+		EpisimContainer<?> container = getCurrentContainer();
+		if (container != null && this.traceable != traceable)
+			container.updateTraceable(traceable);
+
 		this.traceable = traceable;
 	}
 
@@ -371,45 +586,60 @@ public final class EpisimPerson implements Attributable {
 		return trajectory;
 	}
 
+	/**
+	 * Use a shared trajectory, which can not be modified anymore.
+	 *
+	 * @param activities index of each activity in {@code table}
+	 */
+	void setTrajectory(int[] activities, Activity[] table) {
+		this.trajectory = new SharedTrajectory(activities, table);
+	}
+
+	void setCurrentPositionInTrajectory(int position) {
+		putCurrentPositionInTrajectory(position);
+	}
+
 	public int getCurrentPositionInTrajectory() {
-		return this.currentPositionInTrajectory;
+		return store != null ? store.getPosition(idx) : local.currentPositionInTrajectory;
 	}
 
 	void incrementCurrentPositionInTrajectory() {
-		this.currentPositionInTrajectory++;
+		putCurrentPositionInTrajectory(getCurrentPositionInTrajectory() + 1);
 	}
 
 	void resetCurrentPositionInTrajectory(DayOfWeek day) {
-		currentPositionInTrajectory = startOfDay[day.getValue() - 1];
+		putCurrentPositionInTrajectory(getStartOfDay(day));
 	}
 
 	void setStartOfDay(DayOfWeek day, int position) {
-		startOfDay[day.getValue() - 1] = position;
+		if (store != null) store.setStartOfDay(idx, day.getValue() - 1, position);
+		else local.startOfDay[day.getValue() - 1] = position;
 	}
 
 	int getStartOfDay(DayOfWeek day) {
-		return startOfDay[day.getValue() - 1];
+		return store != null ? store.getStartOfDay(idx, day.getValue() - 1) : local.startOfDay[day.getValue() - 1];
 	}
 
 	void setEndOfDay(DayOfWeek day, int position) {
-		endOfDay[day.getValue() - 1] = position;
+		if (store != null) store.setEndOfDay(idx, day.getValue() - 1, position);
+		else local.endOfDay[day.getValue() - 1] = position;
 	}
 
 	int getEndOfDay(DayOfWeek day) {
-		return endOfDay[day.getValue() - 1];
+		return store != null ? store.getEndOfDay(idx, day.getValue() - 1) : local.endOfDay[day.getValue() - 1];
 	}
 
 	/**
 	 * Defines that day {@code target} has the same trajectory as {@code source}.
 	 */
 	void duplicateDay(DayOfWeek target, DayOfWeek source) {
-		startOfDay[target.getValue() - 1] = startOfDay[source.getValue() - 1];
-		endOfDay[target.getValue() - 1] = endOfDay[source.getValue() - 1];
-		firstFacilityId[target.getValue() - 1] = firstFacilityId[source.getValue() - 1];
+		setStartOfDay(target, getStartOfDay(source));
+		setEndOfDay(target, getEndOfDay(source));
+		setFirstFacilityId(getFirstFacilityId(source), target);
 	}
 
 	public EpisimContainer<?> getCurrentContainer() {
-		return currentContainer;
+		return store != null ? store.getContainer(idx) : local.currentContainer;
 	}
 
 	/**
@@ -417,12 +647,15 @@ public final class EpisimPerson implements Attributable {
 	 * container can be set.
 	 */
 	public void setCurrentContainer(EpisimContainer<?> container) {
-		if (this.currentContainer != null)
+		EpisimContainer<?> currentContainer = getCurrentContainer();
+		if (currentContainer != null)
 			throw new IllegalStateException(String.format("Person in more than one container at once. Person=%s in %s and %s",
-					this.getPersonId(), container.getContainerId(), this.currentContainer.getContainerId()));
+					this.getPersonId(), container.getContainerId(), currentContainer.getContainerId()));
 
 
-		this.currentContainer = container;
+		putCurrentContainer(container);
+		presenceIteration = -1;
+		maskIteration = -1;
 	}
 
 	@Override
@@ -430,26 +663,142 @@ public final class EpisimPerson implements Attributable {
 		return attributes;
 	}
 
+	private static double getDouble(Attributes attrs, String name) {
+		Object value = attrs.getAttribute(name);
+		return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+	}
+
+	/**
+	 * Age from the first numeric attribute of {@link #AGE}.
+	 */
+	private static int findAge(Attributes attrs) {
+		for (String name : AGE) {
+			Object value = attrs.getAttribute(name);
+			if (value instanceof Number)
+				return ((Number) value).intValue();
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Susceptibility attribute, see {@link #SUSCEPTIBILITY}. NaN if not set.
+	 */
+	public double getSusceptibility() {
+		return susceptibility;
+	}
+
+	/**
+	 * Viral load attribute, see {@link #VIRAL_LOAD}. NaN if not set.
+	 */
+	public double getViralLoad() {
+		return viralLoad;
+	}
+
+	/**
+	 * Age of the person from the attribute {@code microm:modeled:age} or {@code age}, -1 if not known.
+	 */
+	public int getAge() {
+		return age;
+	}
+
+	/**
+	 * District the person lives in, null if not known.
+	 */
+	@Nullable
+	public String getDistrict() {
+		return district;
+	}
+
 	/**
 	 * Whether person is currently in a container.
 	 */
 	public boolean isInContainer() {
-		return currentContainer != null;
+		return getCurrentContainer() != null;
 	}
 
 	public void removeCurrentContainer(EpisimContainer<?> container) {
-		if (this.currentContainer != container)
+		EpisimContainer<?> currentContainer = getCurrentContainer();
+		if (currentContainer != container)
 			throw new IllegalStateException(String.format("Person is currently in %s, but not in removed one %s", currentContainer, container));
 
-		this.currentContainer = null;
+		putCurrentContainer(null);
+		presenceIteration = -1;
+		maskIteration = -1;
+	}
+
+	/**
+	 * Whether the contact model already decided if this person is present in its current container at this iteration.
+	 * The decision is reset when the person changes the container.
+	 */
+	public boolean hasPresence(int iteration) {
+		return presenceIteration == iteration;
+	}
+
+	/**
+	 * Decision stored by {@link #setPresence(int, boolean)}, only valid if {@link #hasPresence(int)} is true.
+	 */
+	public boolean isPresent() {
+		return present;
+	}
+
+	/**
+	 * Stores whether this person is present in its current container at this iteration.
+	 */
+	public void setPresence(int iteration, boolean present) {
+		this.presenceIteration = iteration;
+		this.present = present;
+	}
+
+	/**
+	 * Mask this person wears in its current container at this iteration, as stored by the face mask model.
+	 *
+	 * @return null if no mask was stored for this visit and iteration
+	 */
+	@Nullable
+	public FaceMask getVisitMask(int iteration) {
+		return maskIteration == iteration ? MASKS[mask] : null;
+	}
+
+	/**
+	 * Stores the mask this person wears in its current container at this iteration.
+	 */
+	public void setVisitMask(int iteration, FaceMask mask) {
+		this.maskIteration = iteration;
+		this.mask = (byte) mask.ordinal();
+	}
+
+	int getContainerSlot() {
+		return containerSlot;
+	}
+
+	void setContainerSlot(int containerSlot) {
+		this.containerSlot = containerSlot;
+	}
+
+	int getStatusSlot() {
+		return statusSlot;
+	}
+
+	void setStatusSlot(int statusSlot) {
+		this.statusSlot = statusSlot;
+	}
+
+	int getDistrictIndex() {
+		return districtIndex;
+	}
+
+	void setDistrictIndex(int districtIndex) {
+		this.districtIndex = districtIndex;
 	}
 
 	Id<ActivityFacility> getFirstFacilityId(DayOfWeek day) {
-		return firstFacilityId[day.getValue() - 1];
+		return store != null ? store.getFirstFacilityId(idx, day.getValue() - 1) : local.firstFacilityId[day.getValue() - 1];
 	}
 
 	void setFirstFacilityId(Id<ActivityFacility> firstFacilityId, DayOfWeek day) {
-		this.firstFacilityId[day.getValue() - 1] = firstFacilityId;
+		if (store != null) store.setFirstFacilityId(idx, day.getValue() - 1, firstFacilityId);
+		else local.firstFacilityId[day.getValue() - 1] = firstFacilityId;
 	}
 
 	public void setInfectionContainer(EpisimContainer<?> container) {
@@ -472,14 +821,17 @@ public final class EpisimPerson implements Attributable {
 	 * Add amount of time to spent time for an activity.
 	 */
 	public void addSpentTime(String actType, double timeSpent) {
+		if (spentTime == null)
+			spentTime = new Object2DoubleOpenHashMap<>(4);
+
 		spentTime.mergeDouble(actType, timeSpent, Double::sum);
 	}
 
 	/**
-	 * Spent time of this person by activity.
+	 * Spent time of this person by activity. The returned map is empty and immutable if no time was spent yet.
 	 */
 	public Object2DoubleMap<String> getSpentTime() {
-		return spentTime;
+		return spentTime != null ? spentTime : Object2DoubleMaps.emptyMap();
 	}
 
 	@Override
@@ -502,6 +854,71 @@ public final class EpisimPerson implements Attributable {
 	 */
 	public enum QuarantineStatus {full, atHome, no}
 
+	/**
+	 * State of a person that is not backed by a {@link PersonStore}.
+	 */
+	private static final class LocalState {
+
+		/**
+		 * The position in the trajectory at the start for each day of the week.
+		 */
+		private final int[] startOfDay = new int[7];
+
+		/**
+		 * The position in the trajectory for the end of the day.
+		 */
+		private final int[] endOfDay = new int[7];
+
+		/**
+		 * The first visited {@link org.matsim.facilities.ActivityFacility} for each day.
+		 */
+		@SuppressWarnings("unchecked")
+		private final Id<ActivityFacility>[] firstFacilityId = new Id[7];
+
+		/**
+		 * Stores first time of status changes to specific type.
+		 */
+		private final EnumMap<DiseaseStatus, Double> statusChanges = new EnumMap<>(DiseaseStatus.class);
+
+		/**
+		 * The {@link EpisimContainer} the person is currently located in.
+		 */
+		private EpisimContainer<?> currentContainer = null;
+
+		private DiseaseStatus status = DiseaseStatus.susceptible;
+		private QuarantineStatus quarantineStatus = QuarantineStatus.no;
+
+		/**
+		 * Iteration when this person got into quarantine. Negative if person was never quarantined.
+		 */
+		private int quarantineDate = -1;
+		private int currentPositionInTrajectory;
+	}
+
+	/**
+	 * Trajectory stored as shared indices, resolved with the activities of one simulation.
+	 */
+	private static final class SharedTrajectory extends AbstractList<Activity> implements RandomAccess {
+
+		private final int[] activities;
+		private final Activity[] table;
+
+		private SharedTrajectory(int[] activities, Activity[] table) {
+			this.activities = activities;
+			this.table = table;
+		}
+
+		@Override
+		public Activity get(int index) {
+			return table[activities[index]];
+		}
+
+		@Override
+		public int size() {
+			return activities.length;
+		}
+	}
+
 	/**
 	 * Activity performed by a person. Holds the type and its infection params.
 	 */
@@ -510,12 +927,18 @@ public final class EpisimPerson implements Attributable {
 		public final String actType;
 		public final EpisimConfigGroup.InfectionParams params;
 
+		/**
+		 * Index of the activity type, unique for each type over the whole jvm. See {@link Id#index()}.
+		 */
+		public final int index;
+
 		/**
 		 * Constructor.
 		 */
 		public Activity(String actType, EpisimConfigGroup.InfectionParams params) {
 			this.actType = actType;
 			this.params = params;
+			this.index = Id.create(actType, Activity.class).index();
 		}
 
 		@Override
@@ -29,19 +29,25 @@ import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.events.handler.BasicEventHandler;
 import org.matsim.core.utils.io.IOUtils;
+import org.matsim.episim.events.BinaryEventsWriter;
 import org.matsim.episim.events.EpisimContactEvent;
 import org.matsim.episim.events.EpisimInfectionEvent;
 import org.matsim.episim.events.EpisimPersonStatusEvent;
 import org.matsim.episim.events.EpisimTracingEvent;
 import org.matsim.episim.policy.Restriction;
 import org.matsim.episim.reporting.EpisimWriter;
+import org.matsim.episim.reporting.InfectionTypes;
+import org.matsim.episim.reporting.SeedAggregation;
 
+import javax.annotation.Nullable;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -80,6 +86,23 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 	 */
 	private final Map<EpisimPerson.DiseaseStatus, Object2IntMap<String>> cumulativeCases = new EnumMap<>(EpisimPerson.DiseaseStatus.class);
 
+	/**
+	 * Name of each district, in the order their first person was counted. Indices are stored in {@link EpisimPerson#getDistrictIndex()}.
+	 */
+	private final List<String> districts = new ArrayList<>();
+
+	/**
+	 * Number of persons by district and disease status, which is updated on every status change.
+	 * Null if all persons need to be counted again.
+	 */
+	@Nullable
+	private int[][] statusCounts;
+
+	/**
+	 * Number of persons in quarantine by district.
+	 */
+	private int[] quarantineCounts;
+
 	/**
 	 * Number format for logging output. Not static because not thread-safe.
 	 */
@@ -92,6 +115,7 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 	 */
 	private int iteration;
 	private BufferedWriter events;
+	private BinaryEventsWriter binaryEvents;
 	private BufferedWriter infectionReport;
 	private BufferedWriter infectionEvents;
 	private BufferedWriter restrictionReport;
@@ -99,6 +123,22 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 
 	private String memorizedDate = null;
 
+	/**
+	 * Reports of the current thread that are published later, see {@link #setDeferred(List)}.
+	 */
+	private final ThreadLocal<List<Deferred>> deferred = new ThreadLocal<>();
+
+	/**
+	 * Whether contacts are passed to the events manager, see {@link #setDispatchContacts(boolean)}.
+	 */
+	private boolean dispatchContacts = false;
+
+	/**
+	 * Accumulator for the reports of all runs with the same parameters, if aggregation is used.
+	 */
+	@Nullable
+	private SeedAggregation.Group aggregation;
+
 
 	@Inject
 	EpisimReporting(Config config, EpisimWriter writer, EventsManager manager) {
@@ -147,7 +187,20 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 		writeConfigFiles();
 	}
 
+	/**
+	 * Also add the daily reports to an aggregation of multiple runs.
+	 */
+	@Inject(optional = true)
+	void setAggregation(SeedAggregation.Group aggregation) {
+		this.aggregation = aggregation;
+	}
+
 	private void writeConfigFiles() {
+		// files are replaced, because snapshots may link to the old ones
+		EpisimWriter.replace(base + "policy.conf");
+		EpisimWriter.replace(base + "progression.conf");
+		EpisimWriter.replace(base + "config.xml");
+
 		try {
 			Files.writeString(Paths.get(base + "policy.conf"),
 					episimConfig.getPolicy().root().render(ConfigRenderOptions.defaults()
@@ -198,6 +251,10 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 	 */
 	Map<String, InfectionReport> createReports(Collection<EpisimPerson> persons, int iteration) {
 
+		// persons are only counted once, afterwards the counts are updated with each status change
+		if (statusCounts == null)
+			countPersons(persons);
+
 		Map<String, InfectionReport> reports = new LinkedHashMap<>();
 
 		double time = EpisimUtils.getCorrectedTime(EpisimUtils.getStartOffset(episimConfig.getStartDate()), 0., iteration);
@@ -206,67 +263,12 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 		InfectionReport report = new InfectionReport("total", time, date, iteration);
 		reports.put("total", report);
 
-		for (EpisimPerson person : persons) {
-			String districtName = (String) person.getAttributes().getAttribute("district");
-
-			// Also aggregate by district
-			InfectionReport district = reports.computeIfAbsent(districtName == null ? "unknown"
-					: districtName, name -> new InfectionReport(name, report.time, report.date, report.day));
-			switch (person.getDiseaseStatus()) {
-				case susceptible:
-					report.nSusceptible++;
-					district.nSusceptible++;
-					break;
-				case infectedButNotContagious:
-					report.nInfectedButNotContagious++;
-					district.nInfectedButNotContagious++;
-					report.nTotalInfected++;
-					district.nTotalInfected++;
-					break;
-				case contagious:
-					report.nContagious++;
-					district.nContagious++;
-					report.nTotalInfected++;
-					district.nTotalInfected++;
-					break;
-				case showingSymptoms:
-					report.nShowingSymptoms++;
-					district.nShowingSymptoms++;
-					report.nTotalInfected++;
-					district.nTotalInfected++;
-					break;
-				case seriouslySick:
-				case seriouslySickAfterCritical:
-					report.nSeriouslySick++;
-					district.nSeriouslySick++;
-					report.nTotalInfected++;
-					district.nTotalInfected++;
-					break;
-				case critical:
-					report.nCritical++;
-					district.nCritical++;
-					report.nTotalInfected++;
-					district.nTotalInfected++;
-					break;
-				case recovered:
-					report.nRecovered++;
-					district.nRecovered++;
-					break;
-				default:
-					throw new IllegalStateException("Unexpected value: " + person.getDiseaseStatus());
-			}
-			switch (person.getQuarantineStatus()) {
-				// For now there is no separation in the report between full and home
-				case atHome:
-				case full:
-					report.nInQuarantine++;
-					district.nInQuarantine++;
-					break;
-				case no:
-					break;
-				default:
-					throw new IllegalStateException("Unexpected value: " + person.getQuarantineStatus());
-			}
+		// Also aggregate by district
+		for (int i = 0; i < districts.size(); i++) {
+			InfectionReport district = new InfectionReport(districts.get(i), report.time, report.date, report.day);
+			district.add(statusCounts[i], quarantineCounts[i]);
+			report.add(statusCounts[i], quarantineCounts[i]);
+			reports.put(district.name, district);
 		}
 
 		for (String district : reports.keySet()) {
@@ -293,6 +295,82 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 		return reports;
 	}
 
+	/**
+	 * Assigns the district index of all persons and counts them by district and status.
+	 */
+	private void countPersons(Collection<EpisimPerson> persons) {
+
+		Object2IntMap<String> index = new Object2IntOpenHashMap<>();
+		index.defaultReturnValue(-1);
+		districts.clear();
+
+		for (EpisimPerson person : persons) {
+			String districtName = person.getDistrict();
+			if (districtName == null)
+				districtName = "unknown";
+
+			int idx = index.getInt(districtName);
+			if (idx == -1) {
+				idx = districts.size();
+				index.put(districtName, idx);
+				districts.add(districtName);
+			}
+
+			person.setDistrictIndex(idx);
+		}
+
+		statusCounts = new int[districts.size()][EpisimPerson.DiseaseStatus.values().length];
+		quarantineCounts = new int[districts.size()];
+
+		for (EpisimPerson person : persons) {
+			statusCounts[person.getDistrictIndex()][person.getDiseaseStatus().ordinal()]++;
+			if (person.getQuarantineStatus() != EpisimPerson.QuarantineStatus.no)
+				quarantineCounts[person.getDistrictIndex()]++;
+		}
+	}
+
+	/**
+	 * Update counts after the disease status of a person changed.
+	 */
+	private void countStatus(EpisimPerson person, EpisimPerson.DiseaseStatus oldStatus, EpisimPerson.DiseaseStatus newStatus) {
+		int idx = person.getDistrictIndex();
+		if (statusCounts == null || idx < 0)
+			return;
+
+		statusCounts[idx][oldStatus.ordinal()]--;
+		statusCounts[idx][newStatus.ordinal()]++;
+	}
+
+	/**
+	 * Report that the quarantine status of a person has changed, which is only used for the counts of the infection reports.
+	 */
+	void reportQuarantineStatus(EpisimPerson person, EpisimPerson.QuarantineStatus oldStatus, EpisimPerson.QuarantineStatus newStatus) {
+
+		// For now there is no separation in the report between full and home
+		boolean before = oldStatus != EpisimPerson.QuarantineStatus.no;
+		boolean after = newStatus != EpisimPerson.QuarantineStatus.no;
+		if (before == after)
+			return;
+
+		List<Deferred> reports = deferred.get();
+		if (reports == null)
+			countQuarantine(person, after);
+		else
+			// the counts don't depend on the order of the changes, so deferred changes are simply published first
+			reports.add(new Deferred(0, () -> countQuarantine(person, after)));
+	}
+
+	/**
+	 * Update counts after a person entered or left quarantine.
+	 */
+	private void countQuarantine(EpisimPerson person, boolean quarantined) {
+		int idx = person.getDistrictIndex();
+		if (statusCounts == null || idx < 0)
+			return;
+
+		quarantineCounts[idx] += quarantined ? 1 : -1;
+	}
+
 	/**
 	 * Writes the infection report to csv.
 	 *
@@ -306,6 +384,9 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 
 		InfectionReport t = reports.get("total");
 
+		if (aggregation != null)
+			aggregation.add(reports.values());
+
 		log.warn("===============================");
 		log.warn("Beginning day {} ({})", iteration, date);
 		log.warn("No of susceptible persons={} / {}%", decimalFormat.format(t.nSusceptible), 100 * t.nSusceptible / t.nTotal());
@@ -356,46 +437,104 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 	 */
 	public void reportInfection(EpisimPerson personWrapper, EpisimPerson infector, double now, String infectionType, EpisimContainer<?> container) {
 
+		String date = memorizedDate;
+		int groupSize = container.getPersons().size();
+
+		// the closure is only needed when reports are deferred
+		List<Deferred> reports = deferred.get();
+		if (reports == null)
+			writeInfection(now, personWrapper.getPersonId(), infector.getPersonId(), infectionType, date, groupSize, container);
+		else
+			reports.add(new Deferred(now, () -> writeInfection(now, personWrapper.getPersonId(), infector.getPersonId(), infectionType,
+					date, groupSize, container)));
+	}
+
+	/**
+	 * Passes the infection event to the events manager and writes the infection row.
+	 * The event is still needed, because handlers and the event file receive it.
+	 */
+	private void writeInfection(double now, Id<Person> infected, Id<Person> infector, String infectionType, String date, int groupSize,
+								EpisimContainer<?> container) {
+
 		int cnt = specificInfectionsCnt.getOpaque();
 		// This counter is used by many threads, for better performance we use very weak memory guarantees here
 		// race-conditions will occur, but the state will be eventually where we want it (threads stop logging)
 		if (cnt > 0) {
-			log.warn("Infection of personId={} by person={} at/in {}", personWrapper.getPersonId(), infector.getPersonId(), infectionType);
+			log.warn("Infection of personId={} by person={} at/in {}", infected, infector, infectionType);
 			specificInfectionsCnt.setOpaque(cnt - 1);
 		}
 
-		manager.processEvent(new EpisimInfectionEvent(now, personWrapper.getPersonId(), infector.getPersonId(),
-				personWrapper.getCurrentContainer().getContainerId(), infectionType));
-
-
-		String[] array = new String[InfectionEventsWriterFields.values().length];
-		array[InfectionEventsWriterFields.time.ordinal()] = Double.toString(now);
-		array[InfectionEventsWriterFields.infector.ordinal()] = infector.getPersonId().toString();
-		array[InfectionEventsWriterFields.infected.ordinal()] = personWrapper.getPersonId().toString();
-		array[InfectionEventsWriterFields.infectionType.ordinal()] = infectionType;
-		array[InfectionEventsWriterFields.date.ordinal()] = memorizedDate;
-		array[InfectionEventsWriterFields.groupSize.ordinal()] = Long.toString(container.getPersons().size());
-		array[InfectionEventsWriterFields.facility.ordinal()] = container.getContainerId().toString();
-
-		writer.append(infectionEvents, array);
+		manager.processEvent(new EpisimInfectionEvent(now, infected, infector, container.getContainerId(), infectionType));
+		writer.appendInfection(infectionEvents, now, infector.index(), infected.index(), InfectionTypes.index(infectionType), date, groupSize,
+				containerIndex(container));
 	}
 
 	/**
 	 * Report the occurrence of an contact between two persons.
 	 * TODO Attention: Currently this only includes a subset of contacts (between persons with certain disease status).
+	 * Contacts are only passed to the events manager if enabled with {@link #setDispatchContacts(boolean)}.
 	 *
 	 * @see EpisimContactEvent
 	 */
 	public void reportContact(double now, EpisimPerson person, EpisimPerson contactPerson, EpisimContainer<?> container,
-							  StringBuilder actType, double duration) {
+							  String actType, double duration) {
 
 		if (writeEvents == EpisimConfigGroup.WriteEvents.tracing || writeEvents == EpisimConfigGroup.WriteEvents.all) {
-			manager.processEvent(new EpisimContactEvent(now, person.getPersonId(), contactPerson.getPersonId(), container.getContainerId(),
-					actType.toString(), duration, container.getPersons().size()));
+			int groupSize = container.getPersons().size();
+			List<Deferred> reports = deferred.get();
+
+			if (dispatchContacts) {
+				EpisimContactEvent event = new EpisimContactEvent(now, person.getPersonId(), contactPerson.getPersonId(), container.getContainerId(),
+						actType, duration, groupSize);
+				if (reports == null)
+					manager.processEvent(event);
+				else
+					reports.add(new Deferred(now, () -> manager.processEvent(event)));
+
+				return;
+			}
+
+			// contacts are written directly as indices, without creating an event on this thread
+			int personIdx = person.getPersonId().index();
+			int contactIdx = contactPerson.getPersonId().index();
+			int containerIdx = containerIndex(container);
+			int typeIdx = InfectionTypes.index(actType);
+
+			if (reports == null)
+				writeContact(now, personIdx, contactIdx, containerIdx, typeIdx, duration, groupSize);
+			else
+				reports.add(new Deferred(now, () -> writeContact(now, personIdx, contactIdx, containerIdx, typeIdx, duration, groupSize)));
 		}
 
 	}
 
+	/**
+	 * Sets whether contacts are passed to the events manager as {@link EpisimContactEvent}.
+	 * By default contacts are only written to the event file, without creating events on the simulation thread.
+	 * Enable this if handlers other than this reporting need to receive contacts.
+	 */
+	public void setDispatchContacts(boolean dispatchContacts) {
+		this.dispatchContacts = dispatchContacts;
+	}
+
+	/**
+	 * Writes a contact the same way {@link #handleEvent(Event)} would write an {@link EpisimContactEvent}.
+	 */
+	private void writeContact(double now, int person, int contactPerson, int container, int actType, double duration, int groupSize) {
+
+		if (iteration == 0)
+			return;
+
+		// All non-episim events need a corrected timestamp
+		double correctedTime = writeEvents == EpisimConfigGroup.WriteEvents.all ?
+				EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), now, iteration) : -1;
+
+		if (binaryEvents != null)
+			writer.appendContact(binaryEvents, now, person, contactPerson, container, actType, duration, groupSize, correctedTime);
+		else
+			writer.appendContact(events, now, person, contactPerson, container, actType, duration, groupSize, correctedTime);
+	}
+
 
 	/**
 	 * Report the successful tracing between two persons.
@@ -403,7 +542,12 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 	void reportTracing(double now, EpisimPerson person, EpisimPerson contactPerson) {
 
 		if (writeEvents == EpisimConfigGroup.WriteEvents.tracing || writeEvents == EpisimConfigGroup.WriteEvents.all) {
-			manager.processEvent(new EpisimTracingEvent(now, person.getPersonId(), contactPerson.getPersonId()));
+			EpisimTracingEvent event = new EpisimTracingEvent(now, person.getPersonId(), contactPerson.getPersonId());
+			List<Deferred> reports = deferred.get();
+			if (reports == null)
+				manager.processEvent(event);
+			else
+				reports.add(new Deferred(now, () -> manager.processEvent(event)));
 		}
 	}
 
@@ -449,20 +593,74 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 
 	/**
 	 * Report that a person status has changed and publish corresponding event.
+	 *
+	 * @param oldStatus status before the change
 	 */
-	public void reportPersonStatus(EpisimPerson person, EpisimPersonStatusEvent event) {
+	public void reportPersonStatus(EpisimPerson person, EpisimPerson.DiseaseStatus oldStatus, EpisimPersonStatusEvent event) {
 
 		EpisimPerson.DiseaseStatus newStatus = event.getDiseaseStatus();
+		String districtName = person.getDistrict();
+
+		List<Deferred> reports = deferred.get();
+		if (reports == null)
+			publishPersonStatus(person, oldStatus, newStatus, districtName, event);
+		else
+			reports.add(new Deferred(event.getTime(), () -> publishPersonStatus(person, oldStatus, newStatus, districtName, event)));
+	}
+
+	/**
+	 * Update counts and pass the status event to the events manager.
+	 */
+	private void publishPersonStatus(EpisimPerson person, EpisimPerson.DiseaseStatus oldStatus, EpisimPerson.DiseaseStatus newStatus,
+									 String districtName, EpisimPersonStatusEvent event) {
+		countStatus(person, oldStatus, newStatus);
 
 		if (newStatus == EpisimPerson.DiseaseStatus.seriouslySick || newStatus == EpisimPerson.DiseaseStatus.contagious ||
 				newStatus == EpisimPerson.DiseaseStatus.showingSymptoms || newStatus == EpisimPerson.DiseaseStatus.critical) {
-			String districtName = (String) person.getAttributes().getAttribute("district");
 			cumulativeCases.get(newStatus).mergeInt(districtName == null ? "unknown" : districtName, 1, Integer::sum);
 		}
 
 		manager.processEvent(event);
 	}
 
+	/**
+	 * Index of a container for the writer.
+	 */
+	private static int containerIndex(EpisimContainer<?> container) {
+		return EpisimWriter.containerIndex(container.getContainerId(), container instanceof InfectionEventHandler.EpisimVehicle);
+	}
+
+	/**
+	 * Defer all reports of the current thread into {@code reports}, or publish them immediately again if null.
+	 * Used by worker threads, whose reports must be published in a deterministic order.
+	 *
+	 * @see #publishDeferred(List)
+	 */
+	void setDeferred(@Nullable List<Deferred> reports) {
+		if (reports == null)
+			deferred.remove();
+		else
+			deferred.set(reports);
+	}
+
+	/**
+	 * Publishes all deferred reports ordered by time and clears the given lists.
+	 * Reports with the same time keep the order of the lists.
+	 */
+	void publishDeferred(List<List<Deferred>> reports) {
+
+		List<Deferred> all = new ArrayList<>();
+		for (List<Deferred> r : reports) {
+			all.addAll(r);
+			r.clear();
+		}
+
+		all.sort(Comparator.comparingDouble(r -> r.time));
+		for (Deferred r : all) {
+			r.report.run();
+		}
+	}
+
 	public void reportContainerUsage(Object2IntMap<EpisimContainer<?>> maxGroupSize,
 									 Object2IntMap<EpisimContainer<?>> containerSize, Map<EpisimContainer<?>, Object2IntMap<String>> activityUsage) {
 
@@ -483,6 +681,16 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 		this.writer.close(out);
 	}
 
+	/**
+	 * Writes all pending rows of the reports, so that the output files are complete.
+	 */
+	void flush() {
+		writer.flush(infectionReport);
+		writer.flush(infectionEvents);
+		writer.flush(restrictionReport);
+		writer.flush(timeUse);
+	}
+
 	@Override
 	public void close() {
 
@@ -507,13 +715,19 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 				|| (writeEvents == EpisimConfigGroup.WriteEvents.tracing && event instanceof EpisimTracingEvent)
 				|| (writeEvents == EpisimConfigGroup.WriteEvents.tracing && event instanceof EpisimContactEvent)) {
 
-			writer.append(events, event);
+			if (binaryEvents != null)
+				writer.append(binaryEvents, event, -1);
+			else
+				writer.append(events, event);
 
 		} else if (writeEvents == EpisimConfigGroup.WriteEvents.all) {
 
 			// All non-epism events need a corrected timestamp
-			writer.append(events, event,
-					EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), event.getTime(), iteration));
+			double correctedTime = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), event.getTime(), iteration);
+			if (binaryEvents != null)
+				writer.append(binaryEvents, event, correctedTime);
+			else
+				writer.append(events, event, correctedTime);
 
 		}
 
@@ -526,6 +740,16 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 		if (iteration == 0 || writeEvents == EpisimConfigGroup.WriteEvents.none)
 			return;
 
+		if (episimConfig.getEventFormat() == EpisimConfigGroup.EventFormat.binary) {
+			try {
+				binaryEvents = new BinaryEventsWriter(eventPath.resolve(String.format("day_%03d%s", iteration, BinaryEventsWriter.SUFFIX)));
+			} catch (IOException e) {
+				log.error("Could not create event file", e);
+				throw new UncheckedIOException(e);
+			}
+			return;
+		}
+
 		events = IOUtils.getBufferedWriter(eventPath.resolve(String.format("day_%03d.xml.gz", iteration)).toString());
 		writer.append(events, "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<events version=\"1.0\">\n");
 	}
@@ -539,6 +763,10 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 			writer.append(events, "</events>");
 			writer.close(events);
 		}
+		if (binaryEvents != null) {
+			writer.close(binaryEvents);
+			binaryEvents = null;
+		}
 	}
 
 
@@ -571,6 +799,23 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 				cumulativeCases.get(state).put(key, in.readInt());
 			}
 		}
+
+		// status of persons was restored without reporting
+		statusCounts = null;
+	}
+
+	/**
+	 * Report that will be published later.
+	 */
+	static final class Deferred {
+
+		private final double time;
+		private final Runnable report;
+
+		private Deferred(double time, Runnable report) {
+			this.time = time;
+			this.report = report;
+		}
 	}
 
 	enum InfectionsWriterFields {
@@ -616,6 +861,27 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 			this.day = day;
 		}
 
+		/**
+		 * Add persons by disease status and the number of persons in quarantine.
+		 */
+		void add(int[] counts, int inQuarantine) {
+			nSusceptible += counts[EpisimPerson.DiseaseStatus.susceptible.ordinal()];
+			nInfectedButNotContagious += counts[EpisimPerson.DiseaseStatus.infectedButNotContagious.ordinal()];
+			nContagious += counts[EpisimPerson.DiseaseStatus.contagious.ordinal()];
+			nShowingSymptoms += counts[EpisimPerson.DiseaseStatus.showingSymptoms.ordinal()];
+			nSeriouslySick += counts[EpisimPerson.DiseaseStatus.seriouslySick.ordinal()]
+					+ counts[EpisimPerson.DiseaseStatus.seriouslySickAfterCritical.ordinal()];
+			nCritical += counts[EpisimPerson.DiseaseStatus.critical.ordinal()];
+			nRecovered += counts[EpisimPerson.DiseaseStatus.recovered.ordinal()];
+			nTotalInfected += counts[EpisimPerson.DiseaseStatus.infectedButNotContagious.ordinal()]
+					+ counts[EpisimPerson.DiseaseStatus.contagious.ordinal()]
+					+ counts[EpisimPerson.DiseaseStatus.showingSymptoms.ordinal()]
+					+ counts[EpisimPerson.DiseaseStatus.seriouslySick.ordinal()]
+					+ counts[EpisimPerson.DiseaseStatus.seriouslySickAfterCritical.ordinal()]
+					+ counts[EpisimPerson.DiseaseStatus.critical.ordinal()];
+			nInQuarantine += inQuarantine;
+		}
+
 		/**
 		 * Total number of persons in the simulation.
 		 */
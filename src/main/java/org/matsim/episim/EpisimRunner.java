@@ -33,6 +33,7 @@ import org.matsim.core.controler.ControlerUtils;
 import org.matsim.core.gbl.Gbl;
 import org.matsim.episim.model.ProgressionModel;
 
+import javax.annotation.Nullable;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -59,6 +60,13 @@ public final class EpisimRunner {
 	private final Provider<EpisimReporting> reportingProvider;
 	private final Provider<ProgressionModel> progressionProvider;
 
+	/**
+	 * Wall-clock time in milliseconds after which the simulation is stopped. (0=unlimited)
+	 */
+	private long timeLimit = 0;
+	private int lastIteration = 0;
+	private boolean timeLimitExceeded = false;
+
 	@Inject
 	public EpisimRunner(Config config, EventsManager manager, Provider<InfectionEventHandler> handlerProvider, Provider<ReplayHandler> replay,
 						Provider<EpisimReporting> reportingProvider, Provider<ProgressionModel> progressionProvider) {
@@ -70,18 +78,86 @@ public final class EpisimRunner {
 		this.progressionProvider = progressionProvider;
 	}
 
+	/**
+	 * Limit the wall-clock time of the next run. The simulation stops after the first iteration that exceeds it.
+	 *
+	 * @param millis time limit in milliseconds, 0 to disable
+	 */
+	public void setTimeLimit(long millis) {
+		this.timeLimit = millis;
+	}
+
+	/**
+	 * Last iteration that has been simulated by the last run.
+	 */
+	public int getLastIteration() {
+		return lastIteration;
+	}
+
+	/**
+	 * Whether the last run was stopped by the time limit, before all iterations were simulated.
+	 */
+	public boolean isTimeLimitExceeded() {
+		return timeLimitExceeded;
+	}
+
 	/**
 	 * Main loop that performs the iterations of the simulation.
 	 *
 	 * @param maxIterations maximum number of iterations (inclusive)
 	 */
 	public void run(int maxIterations) {
+		run(null, maxIterations, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Continue the simulation from a fork, instead of starting at the first iteration.
+	 *
+	 * @param fork          state to start from
+	 * @param maxIterations maximum number of iterations (inclusive)
+	 * @see #fork(int)
+	 */
+	public void run(EpisimFork fork, int maxIterations) {
+		run(fork, maxIterations, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Performs all iterations before {@code iteration} and captures the state in memory, so that multiple branches
+	 * can continue from it with {@link #run(EpisimFork, int)}. This runner can not be used afterwards.
+	 *
+	 * @param iteration first iteration of the branches
+	 * @return the fork, or null if the simulation finished before or the state could not be captured
+	 */
+	@Nullable
+	public EpisimFork fork(int iteration) {
+		return run(null, iteration - 1, iteration);
+	}
+
+	/**
+	 * Performs the iterations, optionally starting from a fork.
+	 *
+	 * @param forkAt iteration to capture a fork at, which will end the simulation
+	 */
+	@Nullable
+	private EpisimFork run(@Nullable EpisimFork from, int maxIterations, int forkAt) {
 
 		// Construct these dependencies as late as possible, so all other configs etc have been fully configured
 		final ReplayHandler replay = replayProvider.get();
 		final InfectionEventHandler handler = handlerProvider.get();
 		final EpisimReporting reporting = reportingProvider.get();
 
+		try {
+			return run(replay, handler, reporting, from, maxIterations, forkAt);
+		} finally {
+			// release threads and temporary files of the handler
+			handler.close();
+		}
+	}
+
+	@Nullable
+	private EpisimFork run(ReplayHandler replay, InfectionEventHandler handler, EpisimReporting reporting,
+						   @Nullable EpisimFork from, int maxIterations, int forkAt) {
+
 		// reporting will write events if necessary
 		EpisimConfigGroup episimConfig = ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class);
 
@@ -98,22 +174,36 @@ public final class EpisimRunner {
 		Path output = Path.of(config.controler().getOutputDirectory());
 
 		int iteration = 1;
-		if (episimConfig.getStartFromSnapshot() != null) {
+		if (from != null || episimConfig.getStartFromSnapshot() != null) {
 			reporting.close();
-			iteration = readSnapshot(output, Path.of(episimConfig.getStartFromSnapshot()));
 			try {
+				if (from != null) {
+					log.info("Continuing from fork at iteration {}", from.getIteration());
+					iteration = from.restore(output, handler, reporting, getExternalizableProgression());
+				} else
+					iteration = readSnapshot(output, Path.of(episimConfig.getStartFromSnapshot()));
+
 				reporting.append();
 			} catch (IOException e) {
 				log.error("Snapshot output could not be created", e);
-				return;
+				return null;
 			}
 		}
 
 
 		log.info("Starting from iteration {}...", iteration);
 
+		long deadline = timeLimit > 0 ? System.currentTimeMillis() + timeLimit : Long.MAX_VALUE;
+		timeLimitExceeded = false;
+
 		for (; iteration <= maxIterations; iteration++) {
 
+			if (System.currentTimeMillis() > deadline) {
+				log.warn("Time limit of {}ms exceeded, stopping at iteration {}", timeLimit, iteration);
+				timeLimitExceeded = true;
+				break;
+			}
+
 			if (episimConfig.getSnapshotInterval() > 0 && iteration % episimConfig.getSnapshotInterval() == 0)
 				writeSnapshot(output, iteration);
 
@@ -123,9 +213,24 @@ public final class EpisimRunner {
 			if (!doStep(replay, handler, reporting, iteration))
 				break;
 
+			lastIteration = iteration;
+		}
+
+		EpisimFork fork = null;
+		if (iteration == forkAt) {
+			try {
+				// the async writer may still hold rows of the output files
+				reporting.flush();
+				fork = EpisimFork.capture(iteration, handler, reporting, getExternalizableProgression(), output, config.controler().getRunId());
+				log.info("Captured fork at iteration {}", iteration);
+			} catch (IOException e) {
+				log.error("Could not capture fork", e);
+			}
 		}
 
 		reporting.close();
+
+		return fork;
 	}
 
 	/**
@@ -139,10 +244,15 @@ public final class EpisimRunner {
 		if (handler.isFinished())
 			return false;
 
-		DayOfWeek day = EpisimUtils.getDayOfWeek(ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class).getStartDate(), iteration);
+		EpisimConfigGroup episimConfig = ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class);
+		DayOfWeek day = EpisimUtils.getDayOfWeek(episimConfig.getStartDate(), iteration);
 
 		// Process all events
-		replay.replayEvents(manager, day);
+		if (episimConfig.getWriteEvents() == EpisimConfigGroup.WriteEvents.all)
+			// input events need to be passed to the reporting
+			replay.replayEvents(manager, day);
+		else
+			handler.replayCompiled(day);
 
 		reporting.flushEvents();
 
@@ -166,6 +276,26 @@ public final class EpisimRunner {
 
 		String date = episimConfig.getStartDate().plusDays(iteration - 1).toString();
 
+		// output files are stored with the snapshot
+		reporting.flush();
+
+		if (episimConfig.getSnapshotFormat() == EpisimConfigGroup.SnapshotFormat.chunked) {
+
+			Path path = output.resolve(String.format("episim-snapshot-%03d-%s", iteration, date));
+			log.info("Writing snapshot to {}", path);
+
+			try {
+				ChunkedSnapshot.write(path, iteration, handler, reporting,
+						getExternalizableProgression(), output, config.controler().getRunId(), episimConfig.getSnapshotOutput());
+			} catch (IOException e) {
+				log.error("Could not write snapshot", e);
+				return;
+			}
+
+			log.info("Snapshot for day {} written successfully", iteration);
+			return;
+		}
+
 		Path path = output.resolve(String.format("episim-snapshot-%03d-%s.zip", iteration, date));
 
 		log.info("Writing snapshot to {}", path);
@@ -176,7 +306,8 @@ public final class EpisimRunner {
 					.createArchiveOutputStream("zip", out);
 
 			// Copy whole output to the snapshot
-			EpisimUtils.compressDirectory(output.toString(), output.toString(), config.controler().getRunId(), archive);
+			if (episimConfig.getSnapshotOutput() != EpisimConfigGroup.SnapshotOutput.none)
+				EpisimUtils.compressDirectory(output.toString(), output.toString(), config.controler().getRunId(), archive);
 
 			archive.putArchiveEntry(new ZipArchiveEntry("iteration"));
 			ObjectOutputStream oos = new ObjectOutputStream(archive);
@@ -204,7 +335,7 @@ public final class EpisimRunner {
 	/**
 	 * Read snapshot from disk and initialize simulation state
 	 *
-	 * @param path path to snapshot archive
+	 * @param path path to snapshot archive or directory
 	 * @return starting iteration
 	 */
 	private int readSnapshot(Path output, Path path) {
@@ -216,6 +347,14 @@ public final class EpisimRunner {
 		EpisimReporting reporting = reportingProvider.get();
 		ProgressionModel progressionModel = progressionProvider.get();
 
+		if (ChunkedSnapshot.isChunked(path)) {
+			try {
+				return ChunkedSnapshot.read(path, handler, reporting, getExternalizableProgression(), output);
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not read snapshot", e);
+			}
+		}
+
 		int iteration = -1;
 		try (var in = Files.newInputStream(path)) {
 
@@ -266,6 +405,15 @@ public final class EpisimRunner {
 
 	}
 
+	/**
+	 * Progression model, if it has state that needs to be stored.
+	 */
+	@Nullable
+	private Externalizable getExternalizableProgression() {
+		ProgressionModel progressionModel = progressionProvider.get();
+		return progressionModel instanceof Externalizable ? (Externalizable) progressionModel : null;
+	}
+
 	/**
 	 * Helper method to write object into archive,
 	 */
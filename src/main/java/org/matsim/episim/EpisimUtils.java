@@ -67,6 +67,8 @@ public final class EpisimUtils {
 
 	private static final DecimalFormat FMT = new DecimalFormat();
 
+	private static volatile Field seedField;
+
 	private EpisimUtils() {
 	}
 
@@ -146,9 +148,7 @@ public final class EpisimUtils {
 	 */
 	public static long getSeed(SplittableRandom rnd) {
 		try {
-			Field field = rnd.getClass().getDeclaredField("seed");
-			field.setAccessible(true);
-			return (long) field.get(rnd);
+			return (long) seedField().get(rnd);
 		} catch (ReflectiveOperationException e) {
 			throw new IllegalStateException("Could not extract seed", e);
 		}
@@ -159,14 +159,26 @@ public final class EpisimUtils {
 	 */
 	public static void setSeed(SplittableRandom rnd, long seed) {
 		try {
-			Field field = rnd.getClass().getDeclaredField("seed");
-			field.setAccessible(true);
-			field.set(rnd, seed);
+			seedField().setLong(rnd, seed);
 		} catch (ReflectiveOperationException e) {
 			throw new IllegalStateException("Could not extract seed", e);
 		}
 	}
 
+	/**
+	 * The seed field is looked up only once, because the seed may be set very often, e.g. by {@link CounterRandom}.
+	 */
+	private static Field seedField() throws ReflectiveOperationException {
+		Field field = seedField;
+		if (field == null) {
+			field = SplittableRandom.class.getDeclaredField("seed");
+			field.setAccessible(true);
+			seedField = field;
+		}
+
+		return field;
+	}
+
 	/**
 	 * Find the current valid entry from a map of dates and values.
 	 * @param map map of values, assumed to be sorted by date
@@ -0,0 +1,546 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.vehicles.Vehicle;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary cache of one input event file, which is stored in a cache directory and memory-mapped when read.
+ * <p>
+ * A cache is only valid for the same size and modification time of the input and the same network,
+ * because coordinates of activities are completed from the network before the events are cached.
+
+ * The file consists of a fixed size preamble, dictionaries for all ids and activity types and one fixed size record per event.
+ * Because the records are mapped read-only, all processes on the same machine share the same pages of the page cache.
+ * Events not used by episim are stored as {@link GenericEvent} in the dictionary section.
+ */
+final class EventCache {
+
+	private static final Logger log = LogManager.getLogger(EventCache.class);
+
+	/**
+	 * Suffix appended to the name of the cache file.
+	 */
+	static final String SUFFIX = ".episim-cache";
+
+	/**
+	 * Magic number "EPEV" at the start of every cache file.
+	 */
+	private static final int MAGIC = 0x45504556;
+
+	/**
+	 * Needs to be increased whenever the format changes.
+	 */
+	static final int VERSION = 2;
+
+	/**
+	 * magic, version, source size, source modification time, network fingerprint, record offset, number of events.
+	 */
+	private static final int PREAMBLE = 4 + 4 + 8 + 8 + 8 + 8 + 4;
+
+	/**
+	 * type, time, person, link, facility/vehicle/other, act type, x, y.
+	 */
+	private static final int RECORD = 1 + 8 + 4 + 4 + 4 + 4 + 8 + 8;
+
+	/**
+	 * Maximum number of records in one mapped region, which is limited to 2GB.
+	 */
+	private static final int RECORDS_PER_REGION = Integer.MAX_VALUE / RECORD;
+
+	static final byte ACTIVITY_START = 0;
+	static final byte ACTIVITY_END = 1;
+	static final byte ENTER_VEHICLE = 2;
+	static final byte LEAVE_VEHICLE = 3;
+	static final byte OTHER = 4;
+
+	private EventCache() {
+	}
+
+	/**
+	 * Default cache directory, if none is configured.
+	 */
+	static Path getDefaultDirectory() {
+		return Path.of(System.getProperty("java.io.tmpdir"), "episim-event-cache");
+	}
+
+	/**
+	 * Returns the cache location for an input path, or null if the input is not a local file.
+	 * The name contains a hash of the absolute input path, so that inputs with the same file name do not collide.
+	 *
+	 * @param directory directory where caches are stored
+	 */
+	@Nullable
+	static Path getCachePath(String input, Path directory) {
+		try {
+			Path path = Path.of(input);
+			if (!Files.isRegularFile(path))
+				return null;
+
+			CRC32C crc = new CRC32C();
+			crc.update(path.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+
+			return directory.resolve(path.getFileName() + "-" + Long.toHexString(crc.getValue()) + SUFFIX);
+		} catch (InvalidPathException e) {
+			// URLs etc.
+			return null;
+		}
+	}
+
+	/**
+	 * Fingerprint of the link ids and coordinates used to complete activity coordinates.
+	 * The result does not depend on the iteration order of the links.
+	 *
+	 * @param network network of the scenario, or null if none is used
+	 */
+	static long fingerprint(@Nullable Network network) {
+
+		if (network == null)
+			return 0;
+
+		long result = network.getLinks().size();
+		for (Link link : network.getLinks().values()) {
+			Coord coord = link.getToNode().getCoord();
+			long h = link.getId().toString().hashCode();
+			h = h * 31 + Double.hashCode(coord.getX());
+			h = h * 31 + Double.hashCode(coord.getY());
+			// commutative combination of mixed hashes
+			result += h * 0x9E3779B97F4A7C15L ^ (h >>> 29);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Try to map an existing cache.
+	 *
+	 * @param source      original event file
+	 * @param cache       location of the cache
+	 * @param fingerprint fingerprint of the network, see {@link #fingerprint(Network)}
+	 * @return mapped events or null if the cache is not present or outdated
+	 */
+	@Nullable
+	static MappedEvents read(Path source, Path cache, long fingerprint) throws IOException {
+
+		if (!Files.exists(cache))
+			return null;
+
+		try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+
+			ByteBuffer preamble = ByteBuffer.allocate(PREAMBLE);
+			while (preamble.hasRemaining() && channel.read(preamble) >= 0) ;
+			preamble.flip();
+
+			if (preamble.remaining() < PREAMBLE || preamble.getInt() != MAGIC || preamble.getInt() != VERSION) {
+				log.info("Event cache {} has unknown format and will be rebuilt", cache);
+				return null;
+			}
+
+			long size = preamble.getLong();
+			long modified = preamble.getLong();
+			long network = preamble.getLong();
+			long offset = preamble.getLong();
+			int n = preamble.getInt();
+
+			if (size != Files.size(source) || modified != Files.getLastModifiedTime(source).toMillis() || network != fingerprint) {
+				log.info("Event cache {} is outdated and will be rebuilt", cache);
+				return null;
+			}
+
+			if (channel.size() != offset + (long) n * RECORD) {
+				log.warn("Event cache {} is incomplete and will be rebuilt", cache);
+				return null;
+			}
+
+			channel.position(PREAMBLE);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+
+			Dictionary dict = new Dictionary();
+			dict.read(in);
+
+			MappedByteBuffer[] regions = new MappedByteBuffer[(n + RECORDS_PER_REGION - 1) / RECORDS_PER_REGION];
+			for (int i = 0; i < regions.length; i++) {
+				int records = Math.min(RECORDS_PER_REGION, n - i * RECORDS_PER_REGION);
+				regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + (long) i * RECORDS_PER_REGION * RECORD, (long) records * RECORD);
+				regions[i].order(ByteOrder.BIG_ENDIAN);
+			}
+
+			// mapping stays valid after the channel is closed
+			return new MappedEvents(dict, regions, n);
+		}
+	}
+
+	/**
+	 * Write events into cache file. The file is first written to a temporary location and then moved,
+	 * so concurrent readers never see incomplete files.
+	 */
+	static void write(Path source, Path cache, long fingerprint, List<Event> events) throws IOException {
+
+		Dictionary dict = new Dictionary();
+		for (Event e : events)
+			dict.add(e);
+
+		ByteArrayOutputStream dictBytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(dictBytes)) {
+			dict.write(out);
+		}
+
+		Files.createDirectories(cache.getParent());
+		Path tmp = Files.createTempFile(cache.getParent(), cache.getFileName().toString(), ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(Files.size(source));
+			out.writeLong(Files.getLastModifiedTime(source).toMillis());
+			out.writeLong(fingerprint);
+			out.writeLong(PREAMBLE + dictBytes.size());
+			out.writeInt(events.size());
+
+			dictBytes.writeTo(out);
+
+			for (Event e : events)
+				dict.writeRecord(out, e);
+
+		} catch (IOException e) {
+			Files.deleteIfExists(tmp);
+			throw e;
+		}
+
+		try {
+			Files.move(tmp, cache, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp, cache, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Ids and activity types referenced by the records.
+	 */
+	private static final class Dictionary {
+
+		private final Object2IntMap<String> personIdx = index();
+		private final Object2IntMap<String> linkIdx = index();
+		private final Object2IntMap<String> facilityIdx = index();
+		private final Object2IntMap<String> vehicleIdx = index();
+		private final Object2IntMap<String> actTypeIdx = index();
+		private final List<Event> other = new ArrayList<>();
+		private int otherWritten = 0;
+
+		private Id<Person>[] persons;
+		private Id<Link>[] links;
+		private Id<ActivityFacility>[] facilities;
+		private Id<Vehicle>[] vehicles;
+		private String[] actTypes;
+
+		private static Object2IntMap<String> index() {
+			Object2IntMap<String> map = new Object2IntLinkedOpenHashMap<>();
+			map.defaultReturnValue(-1);
+			return map;
+		}
+
+		private static int add(Object2IntMap<String> map, @Nullable Id<?> id) {
+			return id == null ? -1 : add(map, id.toString());
+		}
+
+		private static int add(Object2IntMap<String> map, String value) {
+			int idx = map.getInt(value);
+			if (idx == -1) {
+				idx = map.size();
+				map.put(value, idx);
+			}
+			return idx;
+		}
+
+		void add(Event event) {
+			if (event instanceof ActivityStartEvent) {
+				ActivityStartEvent e = (ActivityStartEvent) event;
+				add(personIdx, e.getPersonId());
+				add(linkIdx, e.getLinkId());
+				add(facilityIdx, e.getFacilityId());
+				add(actTypeIdx, e.getActType());
+			} else if (event instanceof ActivityEndEvent) {
+				ActivityEndEvent e = (ActivityEndEvent) event;
+				add(personIdx, e.getPersonId());
+				add(linkIdx, e.getLinkId());
+				add(facilityIdx, e.getFacilityId());
+				add(actTypeIdx, e.getActType());
+			} else if (event instanceof PersonEntersVehicleEvent) {
+				PersonEntersVehicleEvent e = (PersonEntersVehicleEvent) event;
+				add(personIdx, e.getPersonId());
+				add(vehicleIdx, e.getVehicleId());
+			} else if (event instanceof PersonLeavesVehicleEvent) {
+				PersonLeavesVehicleEvent e = (PersonLeavesVehicleEvent) event;
+				add(personIdx, e.getPersonId());
+				add(vehicleIdx, e.getVehicleId());
+			} else
+				other.add(event);
+		}
+
+		void writeRecord(DataOutput out, Event event) throws IOException {
+
+			byte type;
+			int person = -1, link = -1, ref = -1, actType = -1;
+			Coord coord = null;
+
+			if (event instanceof ActivityStartEvent) {
+				ActivityStartEvent e = (ActivityStartEvent) event;
+				type = ACTIVITY_START;
+				person = add(personIdx, e.getPersonId());
+				link = add(linkIdx, e.getLinkId());
+				ref = add(facilityIdx, e.getFacilityId());
+				actType = add(actTypeIdx, e.getActType());
+				coord = e.getCoord();
+			} else if (event instanceof ActivityEndEvent) {
+				ActivityEndEvent e = (ActivityEndEvent) event;
+				type = ACTIVITY_END;
+				person = add(personIdx, e.getPersonId());
+				link = add(linkIdx, e.getLinkId());
+				ref = add(facilityIdx, e.getFacilityId());
+				actType = add(actTypeIdx, e.getActType());
+			} else if (event instanceof PersonEntersVehicleEvent) {
+				PersonEntersVehicleEvent e = (PersonEntersVehicleEvent) event;
+				type = ENTER_VEHICLE;
+				person = add(personIdx, e.getPersonId());
+				ref = add(vehicleIdx, e.getVehicleId());
+			} else if (event instanceof PersonLeavesVehicleEvent) {
+				PersonLeavesVehicleEvent e = (PersonLeavesVehicleEvent) event;
+				type = LEAVE_VEHICLE;
+				person = add(personIdx, e.getPersonId());
+				ref = add(vehicleIdx, e.getVehicleId());
+			} else {
+				type = OTHER;
+				// records are written in the same order the other events were collected
+				ref = otherWritten++;
+			}
+
+			out.writeByte(type);
+			out.writeDouble(event.getTime());
+			out.writeInt(person);
+			out.writeInt(link);
+			out.writeInt(ref);
+			out.writeInt(actType);
+			out.writeDouble(coord != null ? coord.getX() : Double.NaN);
+			out.writeDouble(coord != null ? coord.getY() : Double.NaN);
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			writeAll(out, personIdx);
+			writeAll(out, linkIdx);
+			writeAll(out, facilityIdx);
+			writeAll(out, vehicleIdx);
+			writeAll(out, actTypeIdx);
+
+			out.writeInt(other.size());
+			for (Event e : other) {
+				Map<String, String> attr = new LinkedHashMap<>(e.getAttributes());
+				attr.remove(Event.ATTRIBUTE_TIME);
+				attr.remove(Event.ATTRIBUTE_TYPE);
+
+				EpisimUtils.writeChars(out, e.getEventType());
+				out.writeDouble(e.getTime());
+				out.writeInt(attr.size());
+				for (Map.Entry<String, String> kv : attr.entrySet()) {
+					EpisimUtils.writeChars(out, kv.getKey());
+					EpisimUtils.writeChars(out, kv.getValue());
+				}
+			}
+		}
+
+		private static void writeAll(DataOutput out, Object2IntMap<String> map) throws IOException {
+			out.writeInt(map.size());
+			// linked map iterates in insertion order, which is the index
+			for (String value : map.keySet())
+				EpisimUtils.writeChars(out, value);
+		}
+
+		@SuppressWarnings("unchecked")
+		void read(DataInput in) throws IOException {
+			persons = readAll(in, s -> Id.createPersonId(s), Id[]::new);
+			links = readAll(in, s -> Id.createLinkId(s), Id[]::new);
+			facilities = readAll(in, s -> Id.create(s, ActivityFacility.class), Id[]::new);
+			vehicles = readAll(in, s -> Id.createVehicleId(s), Id[]::new);
+			actTypes = readAll(in, String::intern, String[]::new);
+
+			int n = in.readInt();
+			for (int i = 0; i < n; i++) {
+				String type = EpisimUtils.readChars(in);
+				GenericEvent e = new GenericEvent(type, in.readDouble());
+				int attrs = in.readInt();
+				for (int j = 0; j < attrs; j++)
+					e.getAttributes().put(EpisimUtils.readChars(in), EpisimUtils.readChars(in));
+
+				other.add(e);
+			}
+		}
+
+		private static <T> T[] readAll(DataInput in, Function<String, T> f, IntFunction<T[]> array) throws IOException {
+			int n = in.readInt();
+			T[] result = array.apply(n);
+			for (int i = 0; i < n; i++)
+				result[i] = f.apply(EpisimUtils.readChars(in));
+
+			return result;
+		}
+	}
+
+	/**
+	 * Read-only list view, decoding events from the mapped records on access.
+	 * The typed accessors read single fields of a record without creating event objects.
+	 */
+	static final class MappedEvents extends AbstractList<Event> implements RandomAccess {
+
+		private final Dictionary dict;
+		private final MappedByteBuffer[] regions;
+		private final int size;
+
+		private MappedEvents(Dictionary dict, MappedByteBuffer[] regions, int size) {
+			this.dict = dict;
+			this.regions = regions;
+			this.size = size;
+		}
+
+		private ByteBuffer region(int index) {
+			Objects.checkIndex(index, size);
+			return regions[index / RECORDS_PER_REGION];
+		}
+
+		private static int position(int index) {
+			return (index % RECORDS_PER_REGION) * RECORD;
+		}
+
+		/**
+		 * Type of the event, one of {@link #ACTIVITY_START}, {@link #ACTIVITY_END}, {@link #ENTER_VEHICLE}, {@link #LEAVE_VEHICLE} or {@link #OTHER}.
+		 */
+		byte getType(int index) {
+			return region(index).get(position(index));
+		}
+
+		double getTime(int index) {
+			return region(index).getDouble(position(index) + 1);
+		}
+
+		/**
+		 * Person of the event, or null for other events.
+		 */
+		@Nullable
+		Id<Person> getPersonId(int index) {
+			int person = region(index).getInt(position(index) + 9);
+			return person == -1 ? null : dict.persons[person];
+		}
+
+		/**
+		 * Link of an activity event.
+		 */
+		@Nullable
+		Id<Link> getLinkId(int index) {
+			int link = region(index).getInt(position(index) + 13);
+			return link == -1 ? null : dict.links[link];
+		}
+
+		/**
+		 * Facility of an activity event.
+		 */
+		@Nullable
+		Id<ActivityFacility> getFacilityId(int index) {
+			int ref = region(index).getInt(position(index) + 17);
+			return ref == -1 ? null : dict.facilities[ref];
+		}
+
+		/**
+		 * Vehicle of an enter or leave vehicle event.
+		 */
+		Id<Vehicle> getVehicleId(int index) {
+			return dict.vehicles[region(index).getInt(position(index) + 17)];
+		}
+
+		/**
+		 * Activity type of an activity event.
+		 */
+		String getActType(int index) {
+			return dict.actTypes[region(index).getInt(position(index) + 21)];
+		}
+
+		@Override
+		public Event get(int index) {
+			// only absolute reads are used, so the buffers can be shared between threads
+			ByteBuffer buf = region(index);
+			int pos = position(index);
+
+			byte type = buf.get(pos);
+			double time = buf.getDouble(pos + 1);
+			int person = buf.getInt(pos + 9);
+			int link = buf.getInt(pos + 13);
+			int ref = buf.getInt(pos + 17);
+			int actType = buf.getInt(pos + 21);
+
+			switch (type) {
+				case ACTIVITY_START:
+					double x = buf.getDouble(pos + 25);
+					double y = buf.getDouble(pos + 33);
+					return new ActivityStartEvent(time, dict.persons[person], link == -1 ? null : dict.links[link],
+							ref == -1 ? null : dict.facilities[ref], dict.actTypes[actType], Double.isNaN(x) ? null : new Coord(x, y));
+				case ACTIVITY_END:
+					return new ActivityEndEvent(time, dict.persons[person], link == -1 ? null : dict.links[link],
+							ref == -1 ? null : dict.facilities[ref], dict.actTypes[actType]);
+				case ENTER_VEHICLE:
+					return new PersonEntersVehicleEvent(time, dict.persons[person], dict.vehicles[ref]);
+				case LEAVE_VEHICLE:
+					return new PersonLeavesVehicleEvent(time, dict.persons[person], dict.vehicles[ref]);
+				case OTHER:
+					return dict.other.get(ref);
+				default:
+					throw new IllegalStateException("Unknown event type " + type + " in event cache");
+			}
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
@@ -22,6 +22,7 @@ package org.matsim.episim;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
+import com.google.inject.Injector;
 import com.typesafe.config.ConfigFactory;
 import it.unimi.dsi.fastutil.objects.AbstractObject2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
@@ -37,6 +38,7 @@ import org.matsim.api.core.v01.events.handler.ActivityEndEventHandler;
 import org.matsim.api.core.v01.events.handler.ActivityStartEventHandler;
 import org.matsim.api.core.v01.events.handler.PersonEntersVehicleEventHandler;
 import org.matsim.api.core.v01.events.handler.PersonLeavesVehicleEventHandler;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.api.internal.HasPersonId;
 import org.matsim.core.config.Config;
@@ -52,10 +54,14 @@ import org.matsim.facilities.ActivityFacility;
 import org.matsim.utils.objectattributes.attributable.Attributes;
 import org.matsim.vehicles.Vehicle;
 
+import javax.annotation.Nullable;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.io.UncheckedIOException;
 import java.time.DayOfWeek;
 import java.util.*;
 
@@ -99,6 +105,31 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 	 */
 	private final Map<String, EpisimPerson.Activity> paramsMap = new IdentityHashMap<>();
 
+	/**
+	 * Pseudo facility ids used by {@link EpisimConfigGroup.FacilitiesHandling#bln}, by activity type and link.
+	 * These are resolved once, so that handling an event does not require any string operations.
+	 */
+	private final Map<String, Map<Id<Link>, Id<ActivityFacility>>> blnFacilityIds = new IdentityHashMap<>();
+
+	/**
+	 * Events for each day in compiled form, see {@link #replayCompiled(DayOfWeek)}.
+	 */
+	private final Map<DayOfWeek, CompiledEvents> compiledEvents = new EnumMap<>(DayOfWeek.class);
+
+	/**
+	 * Compiled events stored on disk, used instead of {@link #compiledEvents} if events are streamed.
+	 */
+	@Nullable
+	private StreamingEvents streamingEvents;
+
+	/**
+	 * Lookup tables for compiled events. Persons and containers are indexed by the index of their id.
+	 */
+	private EpisimPerson[] personTable;
+	private EpisimFacility[] facilityTable;
+	private EpisimVehicle[] vehicleTable;
+	private EpisimPerson.Activity[] activityTable;
+
 	/**
 	 * Holds the current restrictions in place for all the activities.
 	 */
@@ -119,6 +150,11 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 	 */
 	private final ContactModel contactModel;
 
+	/**
+	 * Replay with multiple threads, only used if enabled in the config.
+	 */
+	private final ParallelReplay parallel;
+
 	/**
 	 * Handle initial infections.
 	 */
@@ -140,6 +176,28 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 	 */
 	private final SplittableRandom localRnd;
 
+	/**
+	 * Columnar person state, only used if enabled in the config.
+	 */
+	private final PersonStore personStore;
+
+	/**
+	 * Initialization shared with other simulations, may be null.
+	 */
+	@Nullable
+	private SharedInit sharedInit;
+
+	/**
+	 * Persons in the order they were created, which defines the random numbers they received.
+	 * Only recorded during initialization for {@link #sharedInit}.
+	 */
+	private final List<Id<Person>> personOrder = new ArrayList<>();
+
+	/**
+	 * Most used activity of each container, only recorded during initialization for {@link #sharedInit}.
+	 */
+	private final Map<EpisimContainer<?>, String> mainActivity = new IdentityHashMap<>();
+
 	private boolean init = false;
 	private int iteration = 0;
 
@@ -150,7 +208,7 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 
 	@Inject
 	public InfectionEventHandler(Config config, Scenario scenario, ProgressionModel progressionModel, EpisimReporting reporting,
-								 InitialInfectionHandler initialInfections, ContactModel contactModel, SplittableRandom rnd) {
+								 InitialInfectionHandler initialInfections, ContactModel contactModel, SplittableRandom rnd, Injector injector) {
 		this.config = config;
 		this.episimConfig = ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class);
 		this.tracingConfig = ConfigUtils.addOrGetModule(config, TracingConfigGroup.class);
@@ -160,20 +218,48 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 		this.reporting = reporting;
 		this.rnd = rnd;
 		this.localRnd = new SplittableRandom(config.global().getRandomSeed() + 65536);
+		this.personStore = episimConfig.isPersonStore() ? new PersonStore(Id.getNumberOfIds(Person.class)) : null;
 		this.progressionModel = progressionModel;
 		this.contactModel = contactModel;
+		this.parallel = createParallelReplay(injector);
 		this.initialInfections = initialInfections;
 		this.initialInfections.setInfectionsLeft(episimConfig.getInitialInfections());
 	}
 
+	@Nullable
+	private ParallelReplay createParallelReplay(Injector injector) {
+
+		if (episimConfig.getThreads() <= 1)
+			return null;
+
+		if (!ParallelReplay.isSupported(injector)) {
+			log.warn("Models need to be bound to classes for parallel replay, events will be replayed with one thread.");
+			return null;
+		}
+
+		return new ParallelReplay(injector, episimConfig.getThreads(), rnd, reporting);
+	}
+
+	/**
+	 * Share the initialization with other simulations using the same instance.
+	 */
+	@Inject(optional = true)
+	void setSharedInit(SharedInit sharedInit) {
+		this.sharedInit = sharedInit;
+	}
+
 	/**
 	 * Whether {@code event} should be handled.
 	 *
 	 * @param actType activity type
 	 */
 	public static boolean shouldHandleActivityEvent(HasPersonId event, String actType) {
+		return shouldHandleActivity(event.getPersonId(), actType);
+	}
+
+	private static boolean shouldHandleActivity(Id<Person> personId, String actType) {
 		// ignore drt and stage activities
-		return !event.getPersonId().toString().startsWith("drt") && !event.getPersonId().toString().startsWith("rt")
+		return !personId.toString().startsWith("drt") && !personId.toString().startsWith("rt")
 				&& !TripStructureUtils.isStageActivityType(actType);
 	}
 
@@ -181,8 +267,12 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 	 * Whether a Person event (e.g. {@link PersonEntersVehicleEvent} should be handled.
 	 */
 	public static boolean shouldHandlePersonEvent(HasPersonId event) {
+		return shouldHandlePerson(event.getPersonId());
+	}
+
+	private static boolean shouldHandlePerson(Id<Person> personId) {
 		// ignore pt drivers and drt
-		String id = event.getPersonId().toString();
+		String id = personId.toString();
 		return !id.startsWith("pt_pt") && !id.startsWith("pt_tr") && !id.startsWith("drt") && !id.startsWith("rt");
 	}
 
@@ -207,6 +297,18 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 	 * @param events All events in the simulation
 	 */
 	public void init(Map<DayOfWeek, List<Event>> events) {
+		if (sharedInit != null) {
+			sharedInit.init(this, episimConfig, scenario, events);
+			mainActivity.clear();
+			personOrder.clear();
+		} else
+			initFromEvents(events);
+	}
+
+	/**
+	 * Initialize by processing all events.
+	 */
+	void initFromEvents(Map<DayOfWeek, List<Event>> events) {
 
 		iteration = 0;
 
@@ -442,6 +544,9 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 						log.warn("No activity found for {}", max.getKey());
 					else
 						container.setNumSpaces(act.params.getSpacesPerFacility());
+
+					if (sharedInit != null)
+						mainActivity.put(container, max.getKey());
 				}
 			}
 
@@ -462,11 +567,375 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 
 		policy.init(episimConfig.getStartDate(), ImmutableMap.copyOf(this.restrictions));
 
+		boolean stableOrder = !episimConfig.isContainerSwapRemove();
+		pseudoFacilityMap.values().forEach(c -> c.setStableOrder(stableOrder));
+		vehicleMap.values().forEach(c -> c.setStableOrder(stableOrder));
+
+		compileEvents(events);
+
 		// Clear time-use after first iteration
 		personMap.values().forEach(p -> p.getSpentTime().clear());
 		init = true;
 	}
 
+	/**
+	 * Converts the events of all days into their compact representation and creates the needed lookup tables.
+	 * Days using the same event list will also share the compiled events.
+	 */
+	private void compileEvents(Map<DayOfWeek, List<Event>> events) {
+
+		compiledEvents.clear();
+		closeStreamingEvents();
+
+		activityTable = new EpisimPerson.Activity[paramsMap.size()];
+		Object2IntMap<String> activityIndex = new Object2IntOpenHashMap<>();
+		activityIndex.defaultReturnValue(-1);
+
+		int i = 0;
+		for (Map.Entry<String, EpisimPerson.Activity> e : paramsMap.entrySet()) {
+			activityTable[i] = e.getValue();
+			activityIndex.put(e.getKey(), i++);
+		}
+
+		if (episimConfig.isStreamEvents()) {
+			try {
+				streamingEvents = StreamingEvents.create(events, day -> compileDay(day, activityIndex));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Could not store compiled events", e);
+			}
+
+			createTables();
+			return;
+		}
+
+		Map<List<Event>, CompiledEvents> sameDay = new IdentityHashMap<>(7);
+		for (Map.Entry<DayOfWeek, List<Event>> entry : events.entrySet()) {
+			CompiledEvents compiled = sameDay.computeIfAbsent(entry.getValue(), k -> compileDay(k, activityIndex));
+			compiledEvents.put(entry.getKey(), compiled);
+		}
+
+		createTables();
+
+		log.info("Compiled events for {} distinct days", sameDay.size());
+	}
+
+	/**
+	 * Create the lookup tables of persons and containers.
+	 */
+	private void createTables() {
+
+		// tables are created last, because they need to include all ids
+		personTable = new EpisimPerson[Id.getNumberOfIds(Person.class)];
+		personMap.forEach((k, v) -> personTable[k.index()] = v);
+
+		facilityTable = new EpisimFacility[Id.getNumberOfIds(ActivityFacility.class)];
+		pseudoFacilityMap.forEach((k, v) -> facilityTable[k.index()] = v);
+
+		vehicleTable = new EpisimVehicle[Id.getNumberOfIds(Vehicle.class)];
+		vehicleMap.forEach((k, v) -> vehicleTable[k.index()] = v);
+	}
+
+	/**
+	 * Captures the result of {@link #initFromEvents(Map)}, which can be used by other simulations.
+	 */
+	@SuppressWarnings("unchecked")
+	SharedInit.State captureInit() {
+
+		Object2IntMap<String> activityIndex = new Object2IntOpenHashMap<>();
+		String[] activities = new String[activityTable.length];
+		for (int i = 0; i < activityTable.length; i++) {
+			activities[i] = activityTable[i].actType;
+			activityIndex.put(activities[i], i);
+		}
+
+		int n = personOrder.size();
+		Id<Person>[] persons = personOrder.toArray(new Id[0]);
+		int[] pos = new int[Id.getNumberOfIds(Person.class)];
+		int[][] trajectories = new int[n][];
+		int[] startOfDay = new int[n * 7];
+		int[] endOfDay = new int[n * 7];
+		Id<ActivityFacility>[] firstFacility = new Id[n * 7];
+		int[] position = new int[n];
+
+		for (int i = 0; i < n; i++) {
+			EpisimPerson person = personMap.get(persons[i]);
+			pos[persons[i].index()] = i;
+
+			List<EpisimPerson.Activity> tj = person.getTrajectory();
+			trajectories[i] = new int[tj.size()];
+			for (int j = 0; j < tj.size(); j++) {
+				trajectories[i][j] = activityIndex.getInt(tj.get(j).actType);
+			}
+
+			for (DayOfWeek day : DayOfWeek.values()) {
+				int d = i * 7 + day.getValue() - 1;
+				startOfDay[d] = person.getStartOfDay(day);
+				endOfDay[d] = person.getEndOfDay(day);
+				firstFacility[d] = person.getFirstFacilityId(day);
+			}
+
+			position[i] = person.getCurrentPositionInTrajectory();
+		}
+
+		SharedInit.Container[] facilities = pseudoFacilityMap.values().stream().map(c -> captureContainer(c, pos)).toArray(SharedInit.Container[]::new);
+		SharedInit.Container[] vehicles = vehicleMap.values().stream().map(c -> captureContainer(c, pos)).toArray(SharedInit.Container[]::new);
+
+		return new SharedInit.State(activities, Collections.unmodifiableMap(new EnumMap<>(compiledEvents)), persons, trajectories,
+				startOfDay, endOfDay, firstFacility, position, facilities, vehicles);
+	}
+
+	private SharedInit.Container captureContainer(EpisimContainer<?> container, int[] pos) {
+
+		List<EpisimPerson> persons = container.getPersons();
+		int[] idx = new int[persons.size()];
+		double[] enterTimes = new double[persons.size()];
+		for (int i = 0; i < persons.size(); i++) {
+			idx[i] = pos[persons.get(i).getPersonId().index()];
+			enterTimes[i] = container.getContainerEnteringTime(persons.get(i));
+		}
+
+		return new SharedInit.Container(container.getContainerId(), container.getMaxGroupSize(), container.getTotalUsers(),
+				container.getTypicalCapacity(), mainActivity.get(container), idx, enterTimes);
+	}
+
+	/**
+	 * Initialize using the state computed by another simulation.
+	 */
+	@SuppressWarnings("unchecked")
+	void initFromShared(SharedInit.State state) {
+
+		iteration = 0;
+
+		// activity parameters are taken from this config, in the order used by the compiled events
+		activityTable = new EpisimPerson.Activity[state.activities.length];
+		for (int i = 0; i < state.activities.length; i++) {
+			activityTable[i] = paramsMap.computeIfAbsent(state.activities[i], this::createActivityType);
+		}
+
+		// persons are created in the same order to receive the same random numbers
+		EpisimPerson[] persons = new EpisimPerson[state.persons.length];
+		for (int i = 0; i < persons.length; i++) {
+			EpisimPerson person = personMap.computeIfAbsent(state.persons[i], this::createPerson);
+			person.setTrajectory(state.trajectories[i], activityTable);
+
+			for (DayOfWeek day : DayOfWeek.values()) {
+				int d = i * 7 + day.getValue() - 1;
+				person.setStartOfDay(day, state.startOfDay[d]);
+				person.setEndOfDay(day, state.endOfDay[d]);
+				person.setFirstFacilityId(state.firstFacility[d], day);
+			}
+
+			person.setCurrentPositionInTrajectory(state.position[i]);
+			persons[i] = person;
+		}
+
+		for (SharedInit.Container c : state.facilities) {
+			EpisimFacility facility = pseudoFacilityMap.computeIfAbsent((Id<ActivityFacility>) c.id, EpisimFacility::new);
+			applyContainer(facility, c, persons);
+			for (int i = 0; i < c.persons.length; i++)
+				getContactModel(facility).notifyEnterFacility(persons[c.persons[i]], facility, c.enterTimes[i]);
+		}
+
+		for (SharedInit.Container c : state.vehicles) {
+			EpisimVehicle vehicle = vehicleMap.computeIfAbsent((Id<Vehicle>) c.id, EpisimVehicle::new);
+			applyContainer(vehicle, c, persons);
+			for (int i = 0; i < c.persons.length; i++)
+				getContactModel(vehicle).notifyEnterVehicle(persons[c.persons[i]], vehicle, c.enterTimes[i]);
+		}
+
+		// these always needs to be present
+		paramsMap.computeIfAbsent("tr", this::createActivityType);
+		paramsMap.computeIfAbsent("home", this::createActivityType);
+
+		policy.init(episimConfig.getStartDate(), ImmutableMap.copyOf(this.restrictions));
+
+		boolean stableOrder = !episimConfig.isContainerSwapRemove();
+		pseudoFacilityMap.values().forEach(c -> c.setStableOrder(stableOrder));
+		vehicleMap.values().forEach(c -> c.setStableOrder(stableOrder));
+
+		compiledEvents.clear();
+		compiledEvents.putAll(state.compiledEvents);
+		createTables();
+
+		init = true;
+	}
+
+	private void applyContainer(EpisimContainer<?> container, SharedInit.Container c, EpisimPerson[] persons) {
+
+		container.setMaxGroupSize(c.maxGroupSize);
+		container.setTotalUsers(c.totalUsers);
+		container.setTypicalCapacity(c.typicalCapacity);
+
+		EpisimPerson.Activity act = c.mainActivity != null ? paramsMap.get(c.mainActivity) : null;
+		if (act != null)
+			container.setNumSpaces(act.params.getSpacesPerFacility());
+
+		for (int i = 0; i < c.persons.length; i++) {
+			container.addPerson(persons[c.persons[i]], c.enterTimes[i]);
+		}
+	}
+
+	/**
+	 * Compiles the events of one day. Events that would be ignored by this handler are dropped.
+	 */
+	private CompiledEvents compileDay(List<Event> eventsForDay, Object2IntMap<String> activityIndex) {
+
+		if (eventsForDay instanceof EventCache.MappedEvents)
+			return compileMapped((EventCache.MappedEvents) eventsForDay, activityIndex);
+
+		CompiledEvents compiled = new CompiledEvents(eventsForDay.size());
+
+		for (Event event : eventsForDay) {
+			if (event instanceof ActivityStartEvent) {
+				ActivityStartEvent e = (ActivityStartEvent) event;
+				if (!shouldHandleActivityEvent(e, e.getActType()))
+					continue;
+
+				compiled.add(CompiledEvents.ACTIVITY_START, e.getTime(), e.getPersonId().index(),
+						createEpisimFacilityId(e).index(), activityIndex.getInt(e.getActType()));
+
+			} else if (event instanceof ActivityEndEvent) {
+				ActivityEndEvent e = (ActivityEndEvent) event;
+				if (!shouldHandleActivityEvent(e, e.getActType()))
+					continue;
+
+				compiled.add(CompiledEvents.ACTIVITY_END, e.getTime(), e.getPersonId().index(),
+						createEpisimFacilityId(e).index(), activityIndex.getInt(e.getActType()));
+
+			} else if (event instanceof PersonEntersVehicleEvent) {
+				PersonEntersVehicleEvent e = (PersonEntersVehicleEvent) event;
+				if (!shouldHandlePersonEvent(e))
+					continue;
+
+				compiled.add(CompiledEvents.ENTER_VEHICLE, e.getTime(), e.getPersonId().index(), e.getVehicleId().index(), -1);
+
+			} else if (event instanceof PersonLeavesVehicleEvent) {
+				PersonLeavesVehicleEvent e = (PersonLeavesVehicleEvent) event;
+				if (!shouldHandlePersonEvent(e))
+					continue;
+
+				compiled.add(CompiledEvents.LEAVE_VEHICLE, e.getTime(), e.getPersonId().index(), e.getVehicleId().index(), -1);
+			}
+		}
+
+		compiled.trim();
+		return compiled;
+	}
+
+	/**
+	 * Same as {@link #compileDay(List, Object2IntMap)}, but reads the fields of the mapped records directly,
+	 * without creating event objects.
+	 */
+	private CompiledEvents compileMapped(EventCache.MappedEvents eventsForDay, Object2IntMap<String> activityIndex) {
+
+		CompiledEvents compiled = new CompiledEvents(eventsForDay.size());
+
+		for (int i = 0; i < eventsForDay.size(); i++) {
+			byte type = eventsForDay.getType(i);
+			if (type == EventCache.ACTIVITY_START || type == EventCache.ACTIVITY_END) {
+				Id<Person> personId = eventsForDay.getPersonId(i);
+				String actType = eventsForDay.getActType(i);
+				if (!shouldHandleActivity(personId, actType))
+					continue;
+
+				Id<ActivityFacility> facilityId = createEpisimFacilityId(eventsForDay.getFacilityId(i), actType, eventsForDay.getLinkId(i));
+				compiled.add(type == EventCache.ACTIVITY_START ? CompiledEvents.ACTIVITY_START : CompiledEvents.ACTIVITY_END,
+						eventsForDay.getTime(i), personId.index(), facilityId.index(), activityIndex.getInt(actType));
+
+			} else if (type == EventCache.ENTER_VEHICLE || type == EventCache.LEAVE_VEHICLE) {
+				Id<Person> personId = eventsForDay.getPersonId(i);
+				if (!shouldHandlePerson(personId))
+					continue;
+
+				compiled.add(type == EventCache.ENTER_VEHICLE ? CompiledEvents.ENTER_VEHICLE : CompiledEvents.LEAVE_VEHICLE,
+						eventsForDay.getTime(i), personId.index(), eventsForDay.getVehicleId(i).index(), -1);
+			}
+		}
+
+		compiled.trim();
+		return compiled;
+	}
+
+	/**
+	 * Replays the events of a day using their compiled representation. This produces the same results as passing the
+	 * original events through an {@link org.matsim.core.api.experimental.events.EventsManager}, but other handlers will not receive any events.
+	 */
+	public void replayCompiled(DayOfWeek day) {
+
+		CompiledEvents events = streamingEvents != null ? streamingEvents.get(day) : compiledEvents.get(day);
+
+		if (parallel != null) {
+			parallel.replay(this, events);
+			return;
+		}
+
+		for (int i = 0; i < events.size(); i++) {
+			replayEvent(events, i);
+		}
+	}
+
+	/**
+	 * Handle a single compiled event.
+	 */
+	void replayEvent(CompiledEvents events, int i) {
+
+		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), events.getTime(i), iteration);
+		EpisimPerson person = personTable[events.getPerson(i)];
+
+		switch (events.getType(i)) {
+			case CompiledEvents.ACTIVITY_START:
+				handleActivityStart(person, facilityTable[events.getContainer(i)], activityTable[events.getActivity(i)].actType, now);
+				break;
+			case CompiledEvents.ACTIVITY_END:
+				EpisimFacility facility = facilityTable[events.getContainer(i)];
+				if (person.getCurrentContainer() != facility) {
+					throw new IllegalStateException("Person=" + person.getPersonId().toString() + " has activity end event at facility=" + facility.getContainerId() + " but actually is at facility=" + person.getCurrentContainer().getContainerId().toString());
+				}
+
+				handleActivityEnd(person, facility, activityTable[events.getActivity(i)].actType, now);
+				break;
+			case CompiledEvents.ENTER_VEHICLE:
+				handleEnterVehicle(person, vehicleTable[events.getContainer(i)], now);
+				break;
+			case CompiledEvents.LEAVE_VEHICLE:
+				handleLeaveVehicle(person, vehicleTable[events.getContainer(i)], now);
+				break;
+			default:
+				throw new IllegalStateException("Unknown event type: " + events.getType(i));
+		}
+	}
+
+	/**
+	 * Contact model responsible for a container, which is only different from {@link #contactModel} when replaying in parallel.
+	 */
+	private ContactModel getContactModel(EpisimContainer<?> container) {
+		return parallel != null ? parallel.getContactModel(container) : contactModel;
+	}
+
+	/**
+	 * Releases the threads used for parallel replay and deletes streamed events.
+	 * The handler can still be used afterwards, but will need to create the threads again and, if events are streamed, be initialized again.
+	 */
+	void close() {
+		if (parallel != null)
+			parallel.close();
+
+		closeStreamingEvents();
+	}
+
+	private void closeStreamingEvents() {
+		if (streamingEvents == null)
+			return;
+
+		try {
+			streamingEvents.close();
+		} catch (IOException e) {
+			log.warn("Could not delete stored events", e);
+		}
+
+		streamingEvents = null;
+	}
+
 
 	@Override
 	public void handleEvent(ActivityStartEvent activityStartEvent) {
@@ -486,12 +955,17 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 		// find the facility
 		EpisimFacility episimFacility = this.pseudoFacilityMap.get(episimFacilityId);
 
+		handleActivityStart(episimPerson, episimFacility, activityStartEvent.getActType(), now);
+	}
+
+	private void handleActivityStart(EpisimPerson episimPerson, EpisimFacility episimFacility, String actType, double now) {
+
 		// add person to facility
 		episimFacility.addPerson(episimPerson, now);
 
-		handlePersonTrajectory(episimPerson.getPersonId(), activityStartEvent.getActType());
+		handlePersonTrajectory(episimPerson, actType);
 
-		contactModel.notifyEnterFacility(episimPerson, episimFacility, now);
+		getContactModel(episimFacility).notifyEnterFacility(episimPerson, episimFacility, now);
 	}
 
 	@Override
@@ -512,14 +986,19 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 			throw new IllegalStateException("Person=" + episimPerson.getPersonId().toString() + " has activity end event at facility=" + episimFacilityId + " but actually is at facility=" + episimFacility.getContainerId().toString());
 		}
 
-		contactModel.infectionDynamicsFacility(episimPerson, episimFacility, now, activityEndEvent.getActType());
+		handleActivityEnd(episimPerson, episimFacility, activityEndEvent.getActType(), now);
+	}
+
+	private void handleActivityEnd(EpisimPerson episimPerson, EpisimFacility episimFacility, String actType, double now) {
 
-		double timeSpent = now - episimFacility.getContainerEnteringTime(episimPerson.getPersonId());
-		episimPerson.addSpentTime(activityEndEvent.getActType(), timeSpent);
+		getContactModel(episimFacility).infectionDynamicsFacility(episimPerson, episimFacility, now, actType);
+
+		double timeSpent = now - episimFacility.getContainerEnteringTime(episimPerson);
+		episimPerson.addSpentTime(actType, timeSpent);
 
 		episimFacility.removePerson(episimPerson);
 
-		handlePersonTrajectory(episimPerson.getPersonId(), activityEndEvent.getActType());
+		handlePersonTrajectory(episimPerson, actType);
 
 	}
 
@@ -539,10 +1018,15 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 		// find the vehicle:
 		EpisimVehicle episimVehicle = this.vehicleMap.get(entersVehicleEvent.getVehicleId());
 
+		handleEnterVehicle(episimPerson, episimVehicle, now);
+	}
+
+	private void handleEnterVehicle(EpisimPerson episimPerson, EpisimVehicle episimVehicle, double now) {
+
 		// add person to vehicle and memorize entering time:
 		episimVehicle.addPerson(episimPerson, now);
 
-		contactModel.notifyEnterVehicle( episimPerson, episimVehicle, now );
+		getContactModel(episimVehicle).notifyEnterVehicle(episimPerson, episimVehicle, now);
 	}
 
 	@Override
@@ -560,9 +1044,14 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 
 		EpisimPerson episimPerson = this.personMap.get(leavesVehicleEvent.getPersonId());
 
-		contactModel.infectionDynamicsVehicle(episimPerson, episimVehicle, now);
+		handleLeaveVehicle(episimPerson, episimVehicle, now);
+	}
+
+	private void handleLeaveVehicle(EpisimPerson episimPerson, EpisimVehicle episimVehicle, double now) {
 
-		double timeSpent = now - episimVehicle.getContainerEnteringTime(episimPerson.getPersonId());
+		getContactModel(episimVehicle).infectionDynamicsVehicle(episimPerson, episimVehicle, now);
+
+		double timeSpent = now - episimVehicle.getContainerEnteringTime(episimPerson);
 
 		// This type depends on the params defined in the scenario
 		episimPerson.addSpentTime("pt", timeSpent);
@@ -586,8 +1075,10 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 		}
 
 		boolean traceable = localRnd.nextDouble() < tracingConfig.getEquipmentRate();
+		if (sharedInit != null)
+			personOrder.add(id);
 
-		return new EpisimPerson(id, attrs, traceable, reporting);
+		return new EpisimPerson(id, attrs, traceable, reporting, personStore);
 	}
 
 	/**
@@ -608,31 +1099,42 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 	}
 
 	private Id<ActivityFacility> createEpisimFacilityId(HasFacilityId event) {
+		if (event instanceof ActivityStartEvent) {
+			ActivityStartEvent theEvent = (ActivityStartEvent) event;
+			return createEpisimFacilityId(theEvent.getFacilityId(), theEvent.getActType(), theEvent.getLinkId());
+		} else if (event instanceof ActivityEndEvent) {
+			ActivityEndEvent theEvent = (ActivityEndEvent) event;
+			return createEpisimFacilityId(theEvent.getFacilityId(), theEvent.getActType(), theEvent.getLinkId());
+		} else if (episimConfig.getFacilitiesHandling() == EpisimConfigGroup.FacilitiesHandling.bln) {
+			throw new IllegalStateException("unexpected event type=" + ((Event) event).getEventType());
+		}
+
+		return createEpisimFacilityId(event.getFacilityId(), null, null);
+	}
+
+	private Id<ActivityFacility> createEpisimFacilityId(@Nullable Id<ActivityFacility> id, String actType, Id<Link> linkId) {
 		if (episimConfig.getFacilitiesHandling() == EpisimConfigGroup.FacilitiesHandling.snz) {
-			Id<ActivityFacility> id = event.getFacilityId();
 			if (id == null)
 				throw new IllegalStateException("No facility id present. Please switch to episimConfig.setFacilitiesHandling( EpisimConfigGroup.FacilitiesHandling.bln ) ");
 
 			return id;
 		} else if (episimConfig.getFacilitiesHandling() == EpisimConfigGroup.FacilitiesHandling.bln) {
-			// TODO: this has poor performance and should be preprocessing...
-			if (event instanceof ActivityStartEvent) {
-				ActivityStartEvent theEvent = (ActivityStartEvent) event;
-				return Id.create(theEvent.getActType().split("_")[0] + "_" + theEvent.getLinkId().toString(), ActivityFacility.class);
-			} else if (event instanceof ActivityEndEvent) {
-				ActivityEndEvent theEvent = (ActivityEndEvent) event;
-				return Id.create(theEvent.getActType().split("_")[0] + "_" + theEvent.getLinkId().toString(), ActivityFacility.class);
-			} else {
-				throw new IllegalStateException("unexpected event type=" + ((Event) event).getEventType());
-			}
+			return getBlnFacilityId(actType, linkId);
 		} else {
 			throw new NotImplementedException(Gbl.NOT_IMPLEMENTED);
 		}
 
 	}
 
-	private void handlePersonTrajectory(Id<Person> personId, String trajectoryElement) {
-		EpisimPerson person = personMap.get(personId);
+	/**
+	 * Pseudo facility for an activity type at a link, which is only created once for each combination.
+	 */
+	private Id<ActivityFacility> getBlnFacilityId(String actType, Id<Link> linkId) {
+		return blnFacilityIds.computeIfAbsent(actType, k -> new IdMap<>(Link.class))
+				.computeIfAbsent(linkId, k -> Id.create(actType.split("_")[0] + "_" + linkId.toString(), ActivityFacility.class));
+	}
+
+	private void handlePersonTrajectory(EpisimPerson person, String trajectoryElement) {
 
 		if (person.getCurrentPositionInTrajectory() + 1 == person.getTrajectory().size()) {
 			return;
@@ -719,6 +1221,8 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 		ImmutableMap<String, Restriction> im = ImmutableMap.copyOf(this.restrictions);
 		policy.updateRestrictions(report, im);
 		contactModel.setRestrictionsForIteration(iteration, im);
+		if (parallel != null)
+			parallel.setRestrictionsForIteration(iteration, im);
 		reporting.reportRestrictions(restrictions, iteration, report.date);
 
 	}
@@ -745,8 +1249,8 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 				int index = person.getEndOfDay(day.minus(1));
 				String actType = person.getTrajectory().get(index).actType;
 
-				contactModel.infectionDynamicsFacility(person, lastFacility, now, actType);
-				double timeSpent = now - lastFacility.getContainerEnteringTime(person.getPersonId());
+				getContactModel(lastFacility).infectionDynamicsFacility(person, lastFacility, now, actType);
+				double timeSpent = now - lastFacility.getContainerEnteringTime(person);
 				person.addSpentTime(actType, timeSpent);
 
 				if (iteration > 1 && timeSpent > 86400 && !actType.equals("home")) {
@@ -758,24 +1262,24 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 				EpisimFacility firstFacility = this.pseudoFacilityMap.get(firstFacilityId);
 				firstFacility.addPerson(person, now);
 
-				contactModel.notifyEnterFacility(person, firstFacility, now);
+				getContactModel(firstFacility).notifyEnterFacility(person, firstFacility, now);
 
 			} else if (container instanceof EpisimVehicle && this.vehicleMap.containsKey(lastFacilityId)) {
 				EpisimVehicle lastVehicle = this.vehicleMap.get(lastFacilityId);
-				contactModel.infectionDynamicsVehicle(person, lastVehicle, now);
-				person.addSpentTime("pt", now - lastVehicle.getContainerEnteringTime(person.getPersonId()));
+				getContactModel(lastVehicle).infectionDynamicsVehicle(person, lastVehicle, now);
+				person.addSpentTime("pt", now - lastVehicle.getContainerEnteringTime(person));
 
 				lastVehicle.removePerson(person);
 				EpisimFacility firstFacility = this.pseudoFacilityMap.get(firstFacilityId);
 				firstFacility.addPerson(person, now);
 
-				contactModel.notifyEnterFacility(person, firstFacility, now);
+				getContactModel(firstFacility).notifyEnterFacility(person, firstFacility, now);
 			}
 		} else {
 			EpisimFacility firstFacility = this.pseudoFacilityMap.get(firstFacilityId);
 			firstFacility.addPerson(person, now);
 
-			contactModel.notifyEnterFacility(person, firstFacility, now);
+			getContactModel(firstFacility).notifyEnterFacility(person, firstFacility, now);
 		}
 	}
 
@@ -783,8 +1287,22 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 		return Collections.unmodifiableCollection(personMap.values());
 	}
 
-	@Override
-	public void writeExternal(ObjectOutput out) throws IOException {
+	Map<Id<Person>, EpisimPerson> getPersonMap() {
+		return personMap;
+	}
+
+	Map<Id<Vehicle>, EpisimVehicle> getVehicleMap() {
+		return vehicleMap;
+	}
+
+	Map<Id<ActivityFacility>, EpisimFacility> getFacilityMap() {
+		return pseudoFacilityMap;
+	}
+
+	/**
+	 * Writes the state that does not belong to persons or containers.
+	 */
+	void writeGlobals(DataOutput out) throws IOException {
 
 		out.writeLong(EpisimUtils.getSeed(rnd));
 		out.writeInt(initialInfections.getInfectionsLeft());
@@ -795,6 +1313,35 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 			writeChars(out, e.getKey());
 			writeChars(out, e.getValue().asMap().toString());
 		}
+	}
+
+	/**
+	 * Reads the state written by {@link #writeGlobals(DataOutput)}.
+	 */
+	void readGlobals(DataInput in) throws IOException {
+
+		long storedSeed = in.readLong();
+		if (episimConfig.getSnapshotSeed() == EpisimConfigGroup.SnapshotSeed.restore) {
+			EpisimUtils.setSeed(rnd, storedSeed);
+		} else if (episimConfig.getSnapshotSeed() == EpisimConfigGroup.SnapshotSeed.reseed) {
+			log.info("Reseeding snapshot with {}", config.global().getRandomSeed());
+			EpisimUtils.setSeed(rnd, config.global().getRandomSeed());
+		}
+
+		initialInfections.setInfectionsLeft(in.readInt());
+		iteration = in.readInt();
+
+		int r = in.readInt();
+		for (int i = 0; i < r; i++) {
+			String act = readChars(in);
+			restrictions.put(act, Restriction.fromConfig(ConfigFactory.parseString(readChars(in))));
+		}
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+
+		writeGlobals(out);
 
 		out.writeInt(personMap.size());
 		for (Map.Entry<Id<Person>, EpisimPerson> e : personMap.entrySet()) {
@@ -819,22 +1366,7 @@ public final class InfectionEventHandler implements ActivityEndEventHandler, Per
 	@Override
 	public void readExternal(ObjectInput in) throws IOException {
 
-		long storedSeed = in.readLong();
-		if (episimConfig.getSnapshotSeed() == EpisimConfigGroup.SnapshotSeed.restore) {
-			EpisimUtils.setSeed(rnd, storedSeed);
-		} else if (episimConfig.getSnapshotSeed() == EpisimConfigGroup.SnapshotSeed.reseed) {
-			log.info("Reseeding snapshot with {}", config.global().getRandomSeed());
-			EpisimUtils.setSeed(rnd, config.global().getRandomSeed());
-		}
-
-		initialInfections.setInfectionsLeft(in.readInt());
-		iteration = in.readInt();
-
-		int r = in.readInt();
-		for (int i = 0; i < r; i++) {
-			String act = readChars(in);
-			restrictions.put(act, Restriction.fromConfig(ConfigFactory.parseString(readChars(in))));
-		}
+		readGlobals(in);
 
 		int persons = in.readInt();
 		for (int i = 0; i < persons; i++) {
@@ -0,0 +1,380 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import com.google.inject.Binding;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.spi.InjectionPoint;
+import com.google.inject.spi.LinkedKeyBinding;
+import com.lmax.disruptor.util.DaemonThreadFactory;
+import it.unimi.dsi.fastutil.HashCommon;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.episim.model.ContactModel;
+import org.matsim.episim.model.FaceMaskModel;
+import org.matsim.episim.model.InfectionModel;
+import org.matsim.episim.policy.Restriction;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Constructor;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Replays compiled events with multiple threads. Facilities and vehicles are assigned to a fixed shard each,
+ * and every shard has its own thread, random number generator and {@link ContactModel} instance.
+ * <p>
+ * A person is only modified by the shard of the container it is currently in. When a person moves to a container of another shard,
+ * the event is not processed before the previous shard has handled the person's last event. Reports are published in order of time
+ * after each window of simulated time. Thus, results only depend on the seed and the number of threads.
+ * With {@link EpisimConfigGroup.RandomNumbers#counter}, they don't depend on the number of threads either.
+ */
+final class ParallelReplay {
+
+	/**
+	 * Length of the windows in seconds, after which deferred reports are published.
+	 */
+	private static final double WINDOW = 3600;
+
+	/**
+	 * Models that are created separately for each shard, because they hold state or use the random number generator.
+	 */
+	private static final Set<Key<?>> SHARD_KEYS = Set.of(Key.get(ContactModel.class), Key.get(InfectionModel.class), Key.get(FaceMaskModel.class));
+
+	private final int threads;
+	private final SplittableRandom rnd;
+	private final EpisimReporting reporting;
+
+	private final SplittableRandom[] rnds;
+	private final ContactModel[] models;
+	private final List<List<EpisimReporting.Deferred>> reports = new ArrayList<>();
+
+	/**
+	 * Threads of the shards, created on first use and released by {@link #close()}.
+	 */
+	@Nullable
+	private ExecutorService executor;
+
+	/**
+	 * Global index of the next event each shard will process.
+	 */
+	private final AtomicIntegerArray progress;
+
+	/**
+	 * Replay plans for each distinct day.
+	 */
+	private final Map<CompiledEvents, Plan> plans = new IdentityHashMap<>();
+
+	private volatile boolean failed = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param injector  injector that provides the bindings of the models
+	 * @param threads   number of threads and shards
+	 * @param rnd       main random generator, used to seed the shards
+	 * @param reporting reporting that will receive deferred reports
+	 */
+	ParallelReplay(Injector injector, int threads, SplittableRandom rnd, EpisimReporting reporting) {
+		this.threads = threads;
+		this.rnd = rnd;
+		this.reporting = reporting;
+		this.rnds = new SplittableRandom[threads];
+		this.models = new ContactModel[threads];
+		this.progress = new AtomicIntegerArray(threads);
+
+		for (int i = 0; i < threads; i++) {
+			// all shards use the same gamma as the main generator, so that counter based random numbers produce the same streams
+			rnds[i] = new SplittableRandom(rnd.nextLong());
+			models[i] = createContactModel(injector, rnds[i]);
+			reports.add(new ArrayList<>());
+		}
+	}
+
+	/**
+	 * Whether the model bindings of the injector can be instantiated for each shard, which requires them to be bound to a class.
+	 */
+	static boolean isSupported(Injector injector) {
+		return SHARD_KEYS.stream().allMatch(k -> injector.getBinding(k) instanceof LinkedKeyBinding);
+	}
+
+	/**
+	 * Creates a new contact model, which uses the same model classes as the given injector, but its own random generator.
+	 * The contact, infection and face mask model are separate instances for each shard, all other dependencies are
+	 * provided by the main injector, so they are the same instances the sequential replay uses.
+	 * A child injector can not be used for this, because it is not allowed to override bindings of its parent.
+	 */
+	private static ContactModel createContactModel(Injector injector, SplittableRandom rnd) {
+
+		Map<Key<?>, Object> instances = new HashMap<>();
+		instances.put(Key.get(SplittableRandom.class), rnd);
+
+		return getInstance(injector, Key.get(ContactModel.class), instances);
+	}
+
+	/**
+	 * Returns an instance for a shard, constructing the models and taking everything else from the main injector.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T getInstance(Injector injector, Key<T> key, Map<Key<?>, Object> instances) {
+
+		Object instance = instances.get(key);
+		if (instance != null)
+			return (T) instance;
+
+		if (!SHARD_KEYS.contains(key))
+			return injector.getInstance(key);
+
+		Binding<T> binding = injector.getBinding(key);
+		if (!(binding instanceof LinkedKeyBinding))
+			throw new IllegalStateException("Parallel replay requires " + key + " to be bound to a class, but got " + binding);
+
+		InjectionPoint ip = InjectionPoint.forConstructorOf(((LinkedKeyBinding<T>) binding).getLinkedKey().getTypeLiteral());
+		Object[] args = new Object[ip.getDependencies().size()];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = getInstance(injector, ip.getDependencies().get(i).getKey(), instances);
+		}
+
+		try {
+			Constructor<?> constructor = (Constructor<?>) ip.getMember();
+			constructor.setAccessible(true);
+			T result = (T) constructor.newInstance(args);
+			instances.put(key, result);
+			return result;
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Could not create " + key + " for parallel replay", e);
+		}
+	}
+
+	/**
+	 * Shard responsible for a container.
+	 */
+	int getShard(EpisimContainer<?> container) {
+		return getShard(container instanceof InfectionEventHandler.EpisimVehicle, container.getContainerId().index());
+	}
+
+	private int getShard(boolean vehicle, int index) {
+		return Math.floorMod(HashCommon.mix(index * 2 + (vehicle ? 1 : 0)), threads);
+	}
+
+	/**
+	 * Contact model responsible for a container.
+	 */
+	ContactModel getContactModel(EpisimContainer<?> container) {
+		return models[getShard(container)];
+	}
+
+	/**
+	 * Set restrictions for the contact models of all shards.
+	 */
+	void setRestrictionsForIteration(int iteration, Map<String, Restriction> restrictions) {
+		for (ContactModel model : models) {
+			model.setRestrictionsForIteration(iteration, restrictions);
+		}
+	}
+
+	/**
+	 * Replay the events of a day with all threads.
+	 */
+	void replay(InfectionEventHandler handler, CompiledEvents events) {
+
+		Plan plan = plans.computeIfAbsent(events, this::createPlan);
+
+		// shards are reseeded every day, so that their state only depends on the main random generator
+		for (SplittableRandom r : rnds) {
+			EpisimUtils.setSeed(r, rnd.nextLong());
+		}
+
+		int[] pos = new int[threads];
+		for (int s = 0; s < threads; s++) {
+			progress.set(s, plan.events[s].length > 0 ? plan.events[s][0] : Integer.MAX_VALUE);
+		}
+
+		failed = false;
+
+		if (executor == null)
+			executor = Executors.newFixedThreadPool(threads, DaemonThreadFactory.INSTANCE);
+
+		for (int end : plan.windows) {
+
+			List<Callable<Void>> tasks = new ArrayList<>(threads);
+			for (int s = 0; s < threads; s++) {
+				int shard = s;
+				tasks.add(() -> {
+					runShard(handler, events, plan, shard, end, pos);
+					return null;
+				});
+			}
+
+			try {
+				for (Future<Void> f : executor.invokeAll(tasks)) {
+					f.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Parallel replay was interrupted", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Parallel replay failed", e.getCause());
+			}
+
+			reporting.publishDeferred(reports);
+		}
+	}
+
+	/**
+	 * Shuts down the threads of the shards. A later {@link #replay(InfectionEventHandler, CompiledEvents)} will start new ones.
+	 */
+	void close() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Process all events of one shard before the global index {@code end}.
+	 */
+	private void runShard(InfectionEventHandler handler, CompiledEvents events, Plan plan, int shard, int end, int[] pos) {
+
+		int[] own = plan.events[shard];
+		int p = pos[shard];
+
+		reporting.setDeferred(reports.get(shard));
+		try {
+			while (p < own.length && own[p] < end) {
+
+				int i = own[p];
+				int dep = plan.dependency[i];
+				if (dep >= 0)
+					await(plan.shard[dep], dep);
+
+				handler.replayEvent(events, i);
+
+				p++;
+				progress.set(shard, p < own.length ? own[p] : Integer.MAX_VALUE);
+			}
+		} catch (RuntimeException | Error e) {
+			failed = true;
+			throw e;
+		} finally {
+			reporting.setDeferred(null);
+			pos[shard] = p;
+		}
+	}
+
+	/**
+	 * Wait until a shard has processed the event with global index {@code event}.
+	 */
+	private void await(int shard, int event) {
+		int spins = 0;
+		while (progress.get(shard) <= event) {
+			if (failed)
+				throw new IllegalStateException("Replay aborted, because another shard failed");
+
+			if (++spins < 1000)
+				Thread.onSpinWait();
+			else
+				Thread.yield();
+		}
+	}
+
+	/**
+	 * Assign events to shards and find the dependencies between them.
+	 */
+	private Plan createPlan(CompiledEvents events) {
+
+		int n = events.size();
+		int[] shard = new int[n];
+		int[] dependency = new int[n];
+		int[] size = new int[threads];
+
+		int[] last = new int[Id.getNumberOfIds(Person.class)];
+		Arrays.fill(last, -1);
+
+		for (int i = 0; i < n; i++) {
+			byte type = events.getType(i);
+			boolean vehicle = type == CompiledEvents.ENTER_VEHICLE || type == CompiledEvents.LEAVE_VEHICLE;
+			shard[i] = getShard(vehicle, events.getContainer(i));
+			size[shard[i]]++;
+
+			// only the last event of the person matters, earlier ones are processed before it
+			int prev = last[events.getPerson(i)];
+			dependency[i] = prev >= 0 && shard[prev] != shard[i] ? prev : -1;
+			last[events.getPerson(i)] = i;
+		}
+
+		int[][] own = new int[threads][];
+		for (int s = 0; s < threads; s++) {
+			own[s] = new int[size[s]];
+			size[s] = 0;
+		}
+
+		for (int i = 0; i < n; i++) {
+			own[shard[i]][size[shard[i]]++] = i;
+		}
+
+		// windows are defined by index, so that dependencies are always within the same or a previous window
+		List<Integer> windows = new ArrayList<>();
+		double windowEnd = n > 0 ? events.getTime(0) + WINDOW : 0;
+		for (int i = 0; i < n; i++) {
+			if (events.getTime(i) >= windowEnd) {
+				windows.add(i);
+				while (windowEnd <= events.getTime(i))
+					windowEnd += WINDOW;
+			}
+		}
+		windows.add(n);
+
+		return new Plan(own, shard, dependency, windows.stream().mapToInt(Integer::intValue).toArray());
+	}
+
+	/**
+	 * Assignment of the events of one day.
+	 */
+	private static final class Plan {
+
+		/**
+		 * Global indices of the events of each shard.
+		 */
+		private final int[][] events;
+		/**
+		 * Shard of each event.
+		 */
+		private final int[] shard;
+		/**
+		 * Previous event of the same person, if it belongs to a different shard, otherwise -1.
+		 */
+		private final int[] dependency;
+		/**
+		 * Exclusive end index of each window.
+		 */
+		private final int[] windows;
+
+		private Plan(int[][] events, int[] shard, int[] dependency, int[] windows) {
+			this.events = events;
+			this.shard = shard;
+			this.dependency = dependency;
+			this.windows = windows;
+		}
+	}
+}
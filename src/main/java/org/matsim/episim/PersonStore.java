@@ -0,0 +1,187 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.episim.EpisimPerson.DiseaseStatus;
+import org.matsim.episim.EpisimPerson.QuarantineStatus;
+import org.matsim.facilities.ActivityFacility;
+
+import java.util.Arrays;
+
+/**
+ * Columnar storage of the state of all {@link EpisimPerson}s, indexed by the index of their id.
+ * Persons backed by this store keep none of these fields themselves, which avoids one
+ * {@link java.util.EnumMap} and several arrays per person and keeps full population scans in linear memory order.
+ * Contact and activity time maps of persons are only created when they are first needed.
+ *
+ * @see EpisimConfigGroup#isPersonStore()
+ */
+final class PersonStore {
+
+	private static final DiseaseStatus[] DISEASE_STATUS = DiseaseStatus.values();
+	private static final QuarantineStatus[] QUARANTINE_STATUS = QuarantineStatus.values();
+	private static final int N_STATUS = DISEASE_STATUS.length;
+
+	private int capacity = 0;
+
+	private byte[] status = new byte[0];
+	private byte[] quarantineStatus = new byte[0];
+	private int[] quarantineDate = new int[0];
+	private int[] position = new int[0];
+	private EpisimContainer<?>[] container = new EpisimContainer[0];
+
+	/**
+	 * Time of the first change to each status, NaN if the status was never set.
+	 */
+	private double[] statusChanges = new double[0];
+
+	/**
+	 * Start and end of each day in the trajectory, 7 entries per person.
+	 */
+	private int[] startOfDay = new int[0];
+	private int[] endOfDay = new int[0];
+
+	/**
+	 * First visited facility of each day, 7 entries per person.
+	 */
+	@SuppressWarnings("unchecked")
+	private Id<ActivityFacility>[] firstFacility = new Id[0];
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity expected number of persons
+	 */
+	PersonStore(int capacity) {
+		grow(Math.max(capacity, 16));
+	}
+
+	/**
+	 * Initialize the slot for a new person with the default state.
+	 */
+	void add(int idx) {
+		if (idx >= capacity)
+			grow(Math.max(idx + 1, capacity + (capacity >> 1)));
+
+		status[idx] = (byte) DiseaseStatus.susceptible.ordinal();
+		quarantineStatus[idx] = (byte) QuarantineStatus.no.ordinal();
+		quarantineDate[idx] = -1;
+		position[idx] = 0;
+		container[idx] = null;
+		Arrays.fill(statusChanges, idx * N_STATUS, (idx + 1) * N_STATUS, Double.NaN);
+		Arrays.fill(startOfDay, idx * 7, (idx + 1) * 7, 0);
+		Arrays.fill(endOfDay, idx * 7, (idx + 1) * 7, 0);
+		Arrays.fill(firstFacility, idx * 7, (idx + 1) * 7, null);
+	}
+
+	private void grow(int n) {
+		status = Arrays.copyOf(status, n);
+		quarantineStatus = Arrays.copyOf(quarantineStatus, n);
+		quarantineDate = Arrays.copyOf(quarantineDate, n);
+		position = Arrays.copyOf(position, n);
+		container = Arrays.copyOf(container, n);
+		statusChanges = Arrays.copyOf(statusChanges, n * N_STATUS);
+		startOfDay = Arrays.copyOf(startOfDay, n * 7);
+		endOfDay = Arrays.copyOf(endOfDay, n * 7);
+		firstFacility = Arrays.copyOf(firstFacility, n * 7);
+		capacity = n;
+	}
+
+	DiseaseStatus getDiseaseStatus(int idx) {
+		return DISEASE_STATUS[status[idx]];
+	}
+
+	void setDiseaseStatus(int idx, DiseaseStatus value) {
+		status[idx] = (byte) value.ordinal();
+	}
+
+	QuarantineStatus getQuarantineStatus(int idx) {
+		return QUARANTINE_STATUS[quarantineStatus[idx]];
+	}
+
+	void setQuarantineStatus(int idx, QuarantineStatus value) {
+		quarantineStatus[idx] = (byte) value.ordinal();
+	}
+
+	int getQuarantineDate(int idx) {
+		return quarantineDate[idx];
+	}
+
+	void setQuarantineDate(int idx, int value) {
+		quarantineDate[idx] = value;
+	}
+
+	/**
+	 * Time of first change to a status, or NaN if never set.
+	 */
+	double getStatusChange(int idx, DiseaseStatus value) {
+		return statusChanges[idx * N_STATUS + value.ordinal()];
+	}
+
+	void setStatusChange(int idx, DiseaseStatus value, double time) {
+		statusChanges[idx * N_STATUS + value.ordinal()] = time;
+	}
+
+	void clearStatusChanges(int idx) {
+		Arrays.fill(statusChanges, idx * N_STATUS, (idx + 1) * N_STATUS, Double.NaN);
+	}
+
+	int getPosition(int idx) {
+		return position[idx];
+	}
+
+	void setPosition(int idx, int value) {
+		position[idx] = value;
+	}
+
+	EpisimContainer<?> getContainer(int idx) {
+		return container[idx];
+	}
+
+	void setContainer(int idx, EpisimContainer<?> value) {
+		container[idx] = value;
+	}
+
+	int getStartOfDay(int idx, int day) {
+		return startOfDay[idx * 7 + day];
+	}
+
+	void setStartOfDay(int idx, int day, int value) {
+		startOfDay[idx * 7 + day] = value;
+	}
+
+	int getEndOfDay(int idx, int day) {
+		return endOfDay[idx * 7 + day];
+	}
+
+	void setEndOfDay(int idx, int day, int value) {
+		endOfDay[idx * 7 + day] = value;
+	}
+
+	Id<ActivityFacility> getFirstFacilityId(int idx, int day) {
+		return firstFacility[idx * 7 + day];
+	}
+
+	void setFirstFacilityId(int idx, int day, Id<ActivityFacility> value) {
+		firstFacility[idx * 7 + day] = value;
+	}
+}
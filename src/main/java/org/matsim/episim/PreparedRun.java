@@ -27,6 +27,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.core.config.Config;
 
+import java.lang.reflect.Field;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -146,6 +147,30 @@ public final class PreparedRun {
 		);
 	}
 
+	/**
+	 * Creates the name of the parameter set of a run without its seed, i.e. fields annotated with {@link BatchRun.GenerateSeeds} or
+	 * named <em>seed</em>. Runs that only differ in their seed have the same name.
+	 */
+	public String getGroupName(Run run) {
+
+		Set<String> seeds = new HashSet<>();
+		seeds.add("seed");
+		if (run.args != null) {
+			for (Field field : run.args.getClass().getDeclaredFields()) {
+				if (field.isAnnotationPresent(BatchRun.GenerateSeeds.class))
+					seeds.add(field.getName());
+			}
+		}
+
+		List<String> names = new ArrayList<>();
+		for (int i = 0; i < parameter.size() && i < run.params.size(); i++) {
+			if (!seeds.contains(parameter.get(i)))
+				names.add(parameter.get(i) + "_" + EpisimUtils.asString(run.params.get(i)));
+		}
+
+		return names.isEmpty() ? "all" : Joiner.on("-").join(names);
+	}
+
 	/**
 	 * One individual parameter set of a run.
 	 */
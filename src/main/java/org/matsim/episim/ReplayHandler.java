@@ -34,12 +34,17 @@ import org.matsim.core.events.EventsUtils;
 import org.matsim.core.events.handler.BasicEventHandler;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.DayOfWeek;
 import java.util.*;
 
 
 /**
  * Handler that replays events from {@link EpisimConfigGroup#getInputEventsFile()} with corrected time and attributes.
+ * <p>
+ * Local event files can be cached in binary format (see {@link EpisimConfigGroup#isEventCache()}), so that later runs
+ * only need to memory-map the cache instead of parsing xml.
  */
 public final class ReplayHandler {
 
@@ -55,14 +60,29 @@ public final class ReplayHandler {
 	public ReplayHandler(EpisimConfigGroup config, @Nullable Scenario scenario) {
 		this.scenario = scenario;
 
+		Path cacheDirectory = config.getEventCacheDirectory() != null ? Path.of(config.getEventCacheDirectory()) : EventCache.getDefaultDirectory();
+		long fingerprint = config.isEventCache() || config.isStreamEvents() ? EventCache.fingerprint(scenario != null ? scenario.getNetwork() : null) : 0;
+
 		for (EpisimConfigGroup.EventFileParams input : config.getInputEventsFiles()) {
 
-			List<Event> eventsForDay = new ArrayList<>();
+			// streamed events need to be mapped, to not be held on the heap
+			Path cache = config.isEventCache() || config.isStreamEvents() ? EventCache.getCachePath(input.getPath(), cacheDirectory) : null;
+			if (cache == null && config.isStreamEvents())
+				log.warn("Events of {} can not be cached and will be kept in memory", input.getPath());
+
+			List<Event> eventsForDay = cache != null ? readCache(input, cache, fingerprint) : null;
+
+			if (eventsForDay == null) {
+				eventsForDay = new ArrayList<>();
+
+				EventsManager manager = EventsUtils.createEventsManager();
+				manager.addHandler(new EventReader(eventsForDay));
+				EventsUtils.readEvents(manager, input.getPath());
+				manager.finishProcessing();
 
-			EventsManager manager = EventsUtils.createEventsManager();
-			manager.addHandler(new EventReader(eventsForDay));
-			EventsUtils.readEvents(manager, input.getPath());
-			manager.finishProcessing();
+				if (cache != null)
+					eventsForDay = writeCache(input, cache, fingerprint, eventsForDay);
+			}
 
 			log.info("Read in {} events for {}, with time range {} - {}", eventsForDay.size(), input.getDays(), eventsForDay.get(0).getTime(),
 					eventsForDay.get(eventsForDay.size() - 1).getTime());
@@ -81,6 +101,42 @@ public final class ReplayHandler {
 		}
 	}
 
+	/**
+	 * Map the event cache if it is valid for the input file.
+	 *
+	 * @return mapped events or null if the input has to be parsed
+	 */
+	@Nullable
+	private static List<Event> readCache(EpisimConfigGroup.EventFileParams input, Path cache, long fingerprint) {
+		try {
+			List<Event> events = EventCache.read(Path.of(input.getPath()), cache, fingerprint);
+			if (events != null)
+				log.info("Using event cache {}", cache);
+
+			return events;
+		} catch (IOException e) {
+			log.warn("Could not read event cache " + cache, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the event cache and returns the mapped events, so the parsed events can be freed.
+	 * Falls back to the parsed events if the cache could not be written.
+	 */
+	private static List<Event> writeCache(EpisimConfigGroup.EventFileParams input, Path cache, long fingerprint, List<Event> events) {
+		try {
+			log.info("Writing event cache {}", cache);
+			EventCache.write(Path.of(input.getPath()), cache, fingerprint, events);
+
+			List<Event> mapped = EventCache.read(Path.of(input.getPath()), cache, fingerprint);
+			return mapped != null ? mapped : events;
+		} catch (IOException e) {
+			log.warn("Could not write event cache " + cache, e);
+			return events;
+		}
+	}
+
 	/**
 	 * Constructor for using pre-defined events. A list of events for all weekdays needs to be present.
 	 * Events also have to ordered by time.
@@ -0,0 +1,235 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.facilities.ActivityFacility;
+
+import javax.annotation.Nullable;
+import java.time.DayOfWeek;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Static result of {@link InfectionEventHandler#init(Map)}, which is computed once by the first simulation and then shared read-only
+ * by all other simulations that use the same input, e.g. the tasks of {@link org.matsim.run.RunParallel}.
+ * <p>
+ * Shared are the trajectories, container topology and statistics, the initial position of all persons and the compiled events.
+ * Each simulation only creates its own persons and containers holding the mutable epidemic state. The activity parameters are still
+ * taken from the config of each simulation.
+ * Contact models that keep their own state, like the {@link org.matsim.episim.model.DirectContactModel}, are only notified of
+ * the initial positions, instead of all events during initialization.
+ */
+public final class SharedInit {
+
+	private static final Logger log = LogManager.getLogger(SharedInit.class);
+
+	@Nullable
+	private State state;
+
+	/**
+	 * Inputs the {@link #state} was computed with.
+	 */
+	@Nullable
+	private Inputs inputs;
+
+	/**
+	 * Not created by the injector, so that it is only used when an instance is bound explicitly.
+	 */
+	private SharedInit() {
+	}
+
+	/**
+	 * Creates a new instance, which needs to be bound for all simulations that should share their initialization.
+	 */
+	public static SharedInit create() {
+		return new SharedInit();
+	}
+
+	/**
+	 * Initializes the handler, either by computing the state from events or by using the shared one.
+	 */
+	void init(InfectionEventHandler handler, EpisimConfigGroup episimConfig, Scenario scenario, Map<DayOfWeek, List<Event>> events) {
+
+		if (episimConfig.isStreamEvents()) {
+			log.warn("Shared initialization is not used with streamed events.");
+			handler.initFromEvents(events);
+			return;
+		}
+
+		Inputs current = new Inputs(episimConfig, scenario, events);
+
+		State s;
+		synchronized (this) {
+			if (state == null) {
+				handler.initFromEvents(events);
+				state = handler.captureInit();
+				inputs = current;
+				return;
+			}
+			s = state;
+		}
+
+		String differs = inputs.differs(current);
+		if (differs != null) {
+			log.warn("Shared initialization can not be used, because the {} differs.", differs);
+			handler.initFromEvents(events);
+			return;
+		}
+
+		log.info("Using shared initialization for {} persons", s.persons.length);
+		handler.initFromShared(s);
+	}
+
+	/**
+	 * The shared data. Persons are referenced by their position in {@link #persons}.
+	 */
+	static final class State {
+
+		/**
+		 * Activity types in the order used by the compiled events.
+		 */
+		final String[] activities;
+		final Map<DayOfWeek, CompiledEvents> compiledEvents;
+
+		/**
+		 * Persons in the order they were created.
+		 */
+		final Id<Person>[] persons;
+		/**
+		 * Trajectory as index into {@link #activities}.
+		 */
+		final int[][] trajectories;
+		/**
+		 * Start and end of each day and first facility, 7 entries per person.
+		 */
+		final int[] startOfDay;
+		final int[] endOfDay;
+		final Id<ActivityFacility>[] firstFacility;
+		final int[] position;
+
+		final Container[] facilities;
+		final Container[] vehicles;
+
+		State(String[] activities, Map<DayOfWeek, CompiledEvents> compiledEvents, Id<Person>[] persons, int[][] trajectories, int[] startOfDay, int[] endOfDay,
+			  Id<ActivityFacility>[] firstFacility, int[] position, Container[] facilities, Container[] vehicles) {
+			this.activities = activities;
+			this.compiledEvents = compiledEvents;
+			this.persons = persons;
+			this.trajectories = trajectories;
+			this.startOfDay = startOfDay;
+			this.endOfDay = endOfDay;
+			this.firstFacility = firstFacility;
+			this.position = position;
+			this.facilities = facilities;
+			this.vehicles = vehicles;
+		}
+	}
+
+	/**
+	 * All inputs that change the trajectories or containers. The initialization is only shared if they are the same.
+	 */
+	private static final class Inputs {
+
+		/**
+		 * Input events are compared by identity, because they are only the same if the replay handler is shared.
+		 */
+		private final Map<DayOfWeek, List<Event>> events;
+		private final Scenario scenario;
+		private final EpisimConfigGroup.FacilitiesHandling facilitiesHandling;
+		private final double sampleSize;
+		private final long startOffset;
+		private final boolean containerSwapRemove;
+
+		private Inputs(EpisimConfigGroup episimConfig, Scenario scenario, Map<DayOfWeek, List<Event>> events) {
+			this.events = new EnumMap<>(events);
+			this.scenario = scenario;
+			this.facilitiesHandling = episimConfig.getFacilitiesHandling();
+			this.sampleSize = episimConfig.getSampleSize();
+			this.startOffset = episimConfig.getStartOffset();
+			this.containerSwapRemove = episimConfig.isContainerSwapRemove();
+		}
+
+		/**
+		 * Returns the name of the first input that is not the same, or null if all are.
+		 */
+		@Nullable
+		private String differs(Inputs other) {
+
+			if (!events.keySet().equals(other.events.keySet()))
+				return "input events";
+
+			for (Map.Entry<DayOfWeek, List<Event>> e : events.entrySet()) {
+				if (e.getValue() != other.events.get(e.getKey()))
+					return "input events";
+			}
+
+			if (scenario != other.scenario)
+				return "scenario";
+			if (facilitiesHandling != other.facilitiesHandling)
+				return "facilities handling";
+			if (sampleSize != other.sampleSize)
+				return "sample size";
+			if (startOffset != other.startOffset)
+				return "start offset";
+			if (containerSwapRemove != other.containerSwapRemove)
+				return "container swap remove";
+
+			return null;
+		}
+	}
+
+	/**
+	 * Static data and initial occupancy of one container.
+	 */
+	static final class Container {
+
+		final Id<?> id;
+		final int maxGroupSize;
+		final int totalUsers;
+		final int typicalCapacity;
+
+		/**
+		 * Most used activity, which defines the number of spaces. May be null.
+		 */
+		@Nullable
+		final String mainActivity;
+
+		final int[] persons;
+		final double[] enterTimes;
+
+		Container(Id<?> id, int maxGroupSize, int totalUsers, int typicalCapacity, @Nullable String mainActivity, int[] persons, double[] enterTimes) {
+			this.id = id;
+			this.maxGroupSize = maxGroupSize;
+			this.totalUsers = totalUsers;
+			this.typicalCapacity = typicalCapacity;
+			this.mainActivity = mainActivity;
+			this.persons = persons;
+			this.enterTimes = enterTimes;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.events.Event;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Compiled events of all days, which are stored in temporary files and loaded when needed, see {@link EpisimConfigGroup#isStreamEvents()}.
+ * Only the current day is held in memory, while the following day is loaded in the background.
+ * Days using the same event list share the same file. The files are deleted by {@link #close()}.
+ */
+final class StreamingEvents implements Closeable {
+
+	private static final Logger log = LogManager.getLogger(StreamingEvents.class);
+
+	private static final ExecutorService PREFETCH = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "prefetch-events");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * Temporary directory holding all files.
+	 */
+	private final Path dir;
+
+	/**
+	 * File for each day.
+	 */
+	private final Map<DayOfWeek, Path> files;
+
+	@Nullable
+	private Path currentFile;
+	@Nullable
+	private CompiledEvents current;
+
+	@Nullable
+	private Path nextFile;
+	@Nullable
+	private Future<CompiledEvents> next;
+
+	private StreamingEvents(Path dir, Map<DayOfWeek, Path> files) {
+		this.dir = dir;
+		this.files = files;
+	}
+
+	/**
+	 * Compiles the events of each distinct day one after another and stores them on disk.
+	 *
+	 * @param compiler function to compile one day
+	 */
+	static StreamingEvents create(Map<DayOfWeek, List<Event>> events, Function<List<Event>, CompiledEvents> compiler) throws IOException {
+
+		Path dir = Files.createTempDirectory("episim-events");
+
+		Map<DayOfWeek, Path> files = new EnumMap<>(DayOfWeek.class);
+		Map<List<Event>, Path> sameDay = new IdentityHashMap<>(7);
+
+		try {
+			for (Map.Entry<DayOfWeek, List<Event>> e : events.entrySet()) {
+
+				Path file = sameDay.get(e.getValue());
+				if (file == null) {
+					file = dir.resolve("day-" + sameDay.size() + ".bin");
+
+					CompiledEvents compiled = compiler.apply(e.getValue());
+					try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+						compiled.write(out);
+					}
+
+					sameDay.put(e.getValue(), file);
+				}
+
+				files.put(e.getKey(), file);
+			}
+		} catch (IOException | RuntimeException e) {
+			delete(dir, sameDay.values());
+			throw e;
+		}
+
+		log.info("Stored compiled events for {} distinct days in {}", sameDay.size(), dir);
+
+		return new StreamingEvents(dir, files);
+	}
+
+	private static void delete(Path dir, Collection<Path> files) throws IOException {
+		for (Path file : files)
+			Files.deleteIfExists(file);
+
+		Files.deleteIfExists(dir);
+	}
+
+	private static CompiledEvents load(Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+			return CompiledEvents.read(in);
+		}
+	}
+
+	/**
+	 * Directory of the stored events.
+	 */
+	Path getDirectory() {
+		return dir;
+	}
+
+	/**
+	 * Returns the events of a day and starts loading the following day.
+	 */
+	synchronized CompiledEvents get(DayOfWeek day) {
+
+		Path file = files.get(day);
+
+		try {
+			if (file != currentFile) {
+				// release the previous day before loading the next one
+				current = null;
+
+				if (file == nextFile && next != null)
+					current = next.get();
+				else
+					current = load(file);
+
+				currentFile = file;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Could not load events for " + day, e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+
+		Path following = files.get(day.plus(1));
+		if (following != currentFile && following != nextFile) {
+			nextFile = following;
+			next = PREFETCH.submit(() -> load(following));
+		} else if (following == currentFile) {
+			nextFile = null;
+			next = null;
+		}
+
+		return current;
+	}
+
+	/**
+	 * Deletes the stored events, which can not be used afterwards.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+
+		// the prefetch may still read one of the files
+		if (next != null) {
+			try {
+				next.get();
+			} catch (ExecutionException e) {
+				log.debug("Prefetch of {} failed", nextFile, e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		current = null;
+		currentFile = null;
+		next = null;
+		nextFile = null;
+
+		delete(dir, new HashSet<>(files.values()));
+	}
+}
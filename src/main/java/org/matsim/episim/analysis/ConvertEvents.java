@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim.analysis;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.episim.events.BinaryEventsReader;
+import org.matsim.episim.events.BinaryEventsWriter;
+import org.matsim.episim.reporting.EpisimWriter;
+import picocli.CommandLine;
+
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Executable class to convert binary event files back to xml.
+ */
+@CommandLine.Command(
+		name = "convertEvents",
+		description = "Convert binary event files to the xml format. Directories are searched recursively."
+)
+public class ConvertEvents implements Callable<Integer> {
+
+	private static final Logger log = LogManager.getLogger(ConvertEvents.class);
+
+	@CommandLine.Parameters(arity = "1..*", description = "Binary event files or directories containing them")
+	private List<Path> input;
+
+	@CommandLine.Option(names = "--delete", defaultValue = "false", description = "Delete binary files after conversion")
+	private boolean delete;
+
+	public static void main(String[] args) {
+		System.exit(new CommandLine(new ConvertEvents()).execute(args));
+	}
+
+	@Override
+	public Integer call() throws Exception {
+
+		for (Path path : input) {
+
+			List<Path> files;
+			try (Stream<Path> stream = Files.walk(path)) {
+				files = stream.filter(p -> Files.isRegularFile(p) && BinaryEventsReader.isBinary(p))
+						.collect(Collectors.toList());
+			}
+
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				Path target = file.resolveSibling(name.substring(0, name.length() - BinaryEventsWriter.SUFFIX.length()) + ".xml.gz");
+
+				convert(file, target);
+				log.info("Written {}", target);
+
+				if (delete)
+					Files.delete(file);
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Converts one binary event file into an xml file.
+	 */
+	public static void convert(Path binary, Path xml) {
+
+		EpisimWriter writer = new EpisimWriter();
+		BufferedWriter out = IOUtils.getBufferedWriter(xml.toString());
+		writer.append(out, "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<events version=\"1.0\">\n");
+
+		EventsManager manager = EventsUtils.createEventsManager();
+		manager.addHandler((BasicEventHandler) event -> writer.append(out, event));
+		manager.initProcessing();
+
+		new BinaryEventsReader(manager).readFile(binary.toString());
+
+		manager.finishProcessing();
+
+		writer.append(out, "</events>");
+		writer.close(out);
+	}
+}
@@ -14,8 +14,9 @@ import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.core.events.handler.BasicEventHandler;
 import org.matsim.core.utils.io.IOUtils;
+import org.matsim.episim.events.BinaryEventsWriter;
 import org.matsim.episim.events.EpisimContactEvent;
-import org.matsim.episim.events.EpisimEventsReader;
+import org.matsim.run.AnalysisCommand;
 import picocli.CommandLine;
 
 import java.io.BufferedWriter;
@@ -59,7 +60,7 @@ public class CreateContactGraph implements Callable<Integer>, BasicEventHandler
 
 		graph = new DefaultUndirectedWeightedGraph<>(DefaultEdge.class);
 
-		new EpisimEventsReader(manager).readFile(input.toString());
+		AnalysisCommand.readEvents(manager, input);
 
 		log.info("Reading done");
 
@@ -75,7 +76,7 @@ public class CreateContactGraph implements Callable<Integer>, BasicEventHandler
 		for (Map.Entry<String, GraphExporter<Id<Person>, DefaultEdge>> e : exporter.entrySet()) {
 
 			try {
-				String baseName = input.getFileName().toString().replace(".xml", "").replace(".gz", "");
+				String baseName = input.getFileName().toString().replace(".xml", "").replace(BinaryEventsWriter.SUFFIX, "").replace(".gz", "");
 
 				String filename = outputFolder.resolve("graph-" + baseName + "." + e.getKey() + ".gz").toString();
 				BufferedWriter writer = IOUtils.getBufferedWriter(filename);
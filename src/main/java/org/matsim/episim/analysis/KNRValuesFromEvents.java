@@ -26,6 +26,7 @@ import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.episim.EpisimPerson.DiseaseStatus;
 import org.matsim.episim.events.*;
+import org.matsim.run.AnalysisCommand;
 import tech.tablesaw.api.DateColumn;
 import tech.tablesaw.api.DoubleColumn;
 import tech.tablesaw.plotly.Plot;
@@ -111,9 +112,8 @@ public class KNRValuesFromEvents{
 			}
 			File[] eventFiles = eventsDir.listFiles();
 			for (File file : eventFiles) {
-				if (file.getName().contains("xml.gz")){
-					final String absolutePath = file.getAbsolutePath();
-					new EpisimEventsReader(manager).readFile( absolutePath );
+				if (AnalysisCommand.isEventFile(file.toPath())){
+					AnalysisCommand.readEvents(manager, file.toPath());
 				}
 			}
 
@@ -21,7 +21,6 @@
 package org.matsim.episim.analysis;
 
 import com.opencsv.CSVWriter;
-import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.events.ActivityEndEvent;
@@ -32,17 +31,20 @@ import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.core.utils.collections.Tuple;
 import org.matsim.core.utils.misc.Counter;
-import org.matsim.episim.events.EpisimEventsReader;
 import org.matsim.episim.events.EpisimInfectionEvent;
 import org.matsim.episim.events.EpisimInfectionEventHandler;
 import org.matsim.facilities.ActivityFacility;
+import org.matsim.run.AnalysisCommand;
 
 import javax.validation.constraints.NotNull;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 class TSInfectionClusterAnalysis {
 
@@ -94,8 +96,11 @@ class TSInfectionClusterAnalysis {
 
 			log.info( "start reading infection events" );
 			log.info( "will write infection group size analysis to " + OUTPUTDIR + "leisureInfectionGroups.csv" );
-			List<File> fileList = new ArrayList<>( FileUtils.listFiles( eventsDir, new String[]{"gz"}, false ) );
-			fileList.forEach( file -> new EpisimEventsReader( manager ).readFile( file.getAbsolutePath() ) );
+			List<Path> fileList;
+			try (Stream<Path> files = Files.list( eventsDir.toPath() )) {
+				fileList = files.filter( AnalysisCommand::isEventFile ).collect( Collectors.toList() );
+			}
+			fileList.forEach( file -> AnalysisCommand.readEvents( manager, file ) );
 
 			infectionWriter.close();
 		}
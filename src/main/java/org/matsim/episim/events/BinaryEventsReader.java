@@ -0,0 +1,180 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim.events;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.GenericEvent;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.matsim.episim.EpisimContainer;
+import org.matsim.episim.EpisimPerson;
+import org.matsim.facilities.ActivityFacility;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.matsim.episim.events.BinaryEventsWriter.*;
+
+/**
+ * Streams the events of files written by {@link BinaryEventsWriter} into an {@link EventsManager}, one block at a time.
+ * Events other than the episim events are passed on as {@link GenericEvent}.
+ */
+public final class BinaryEventsReader {
+
+	private static final EpisimPerson.DiseaseStatus[] DISEASE_STATUS_VALUES = EpisimPerson.DiseaseStatus.values();
+	private static final EpisimPerson.QuarantineStatus[] QUARANTINE_STATUS_VALUES = EpisimPerson.QuarantineStatus.values();
+
+	private final EventsManager events;
+
+	private final List<String> dict = new ArrayList<>();
+	private Id<Person>[] persons = newIds(0);
+
+	private final byte[] type = new byte[BLOCK_SIZE];
+	private final double[] time = new double[BLOCK_SIZE];
+	private final int[] person = new int[BLOCK_SIZE];
+	private final int[] other = new int[BLOCK_SIZE];
+	private final int[] container = new int[BLOCK_SIZE];
+	private final int[] label = new int[BLOCK_SIZE];
+	private final double[] duration = new double[BLOCK_SIZE];
+	private final int[] groupSize = new int[BLOCK_SIZE];
+
+	/**
+	 * Reader that will pass all events to {@code events}.
+	 */
+	public BinaryEventsReader(EventsManager events) {
+		this.events = events;
+	}
+
+	/**
+	 * Whether a file has been written by {@link BinaryEventsWriter}, decided by its name.
+	 */
+	public static boolean isBinary(Path path) {
+		return path.getFileName().toString().endsWith(SUFFIX);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Id<Person>[] newIds(int n) {
+		return new Id[n];
+	}
+
+	/**
+	 * Reads all events of a file.
+	 *
+	 * @throws UncheckedIOException if the file can not be read or is not a binary event file
+	 */
+	public void readFile(String filename) {
+
+		dict.clear();
+		persons = newIds(0);
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(Path.of(filename)), 1 << 16), 1 << 16))) {
+
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not a binary event file: " + filename);
+
+			int version = in.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported version " + version + " of " + filename);
+
+			int size;
+			while ((size = in.readInt()) >= 0) {
+				readBlock(in, size);
+			}
+
+		} catch (EOFException e) {
+			throw new UncheckedIOException("Event file is incomplete: " + filename, e);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void readBlock(DataInputStream in, int size) throws IOException {
+
+		int entries = in.readInt();
+		for (int i = 0; i < entries; i++) {
+			dict.add(in.readUTF());
+		}
+
+		if (persons.length < dict.size())
+			persons = Arrays.copyOf(persons, dict.size());
+
+		in.readFully(type, 0, size);
+		for (int i = 0; i < size; i++) time[i] = in.readDouble();
+		for (int i = 0; i < size; i++) person[i] = in.readInt();
+		for (int i = 0; i < size; i++) other[i] = in.readInt();
+		for (int i = 0; i < size; i++) container[i] = in.readInt();
+		for (int i = 0; i < size; i++) label[i] = in.readInt();
+		for (int i = 0; i < size; i++) duration[i] = in.readDouble();
+		for (int i = 0; i < size; i++) groupSize[i] = in.readInt();
+
+		for (int i = 0; i < size; i++) {
+			switch (type[i]) {
+				case INFECTION:
+					events.processEvent(new EpisimInfectionEvent(time[i], personId(person[i]), personId(other[i]),
+							Id.create(dict.get(container[i]), EpisimContainer.class), dict.get(label[i])));
+					break;
+				case DISEASE_STATUS:
+					events.processEvent(new EpisimPersonStatusEvent(time[i], personId(person[i]), DISEASE_STATUS_VALUES[label[i]]));
+					break;
+				case QUARANTINE_STATUS:
+					events.processEvent(new EpisimPersonStatusEvent(time[i], personId(person[i]), QUARANTINE_STATUS_VALUES[label[i]]));
+					break;
+				case CONTACT:
+					events.processEvent(new EpisimContactEvent(time[i], personId(person[i]), personId(other[i]),
+							Id.create(dict.get(container[i]), ActivityFacility.class), dict.get(label[i]), duration[i], groupSize[i]));
+					break;
+				case TRACING:
+					events.processEvent(new EpisimTracingEvent(time[i], personId(person[i]), personId(other[i])));
+					break;
+				case OTHER:
+					GenericEvent e = new GenericEvent(dict.get(label[i]), time[i]);
+					int n = in.readInt();
+					for (int j = 0; j < n; j++) {
+						e.getAttributes().put(dict.get(in.readInt()), in.readUTF());
+					}
+					events.processEvent(e);
+					break;
+				default:
+					throw new IOException("Unknown event type " + type[i]);
+			}
+		}
+	}
+
+	/**
+	 * Person ids are created only once per dictionary entry.
+	 */
+	private Id<Person> personId(int idx) {
+		Id<Person> id = persons[idx];
+		if (id == null)
+			id = persons[idx] = Id.createPersonId(dict.get(idx));
+
+		return id;
+	}
+}
@@ -0,0 +1,220 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim.events;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.matsim.api.core.v01.events.Event;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes episim events into a compressed, columnar binary file, which can be read with {@link BinaryEventsReader}.
+ * <p>
+ * Events are collected into blocks of {@link #BLOCK_SIZE} events. Each block starts with the dictionary entries that were added since the
+ * previous block, followed by one column per attribute. All ids and strings are stored as index into the dictionary.
+ * Events other than the episim events are stored with their attributes after the columns.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class BinaryEventsWriter implements Closeable {
+
+	/**
+	 * File name suffix of binary event files.
+	 */
+	public static final String SUFFIX = ".bin.gz";
+
+	/**
+	 * Magic number "EPEB" at the start of every file.
+	 */
+	static final int MAGIC = 0x45504542;
+
+	/**
+	 * Needs to be increased whenever the format changes.
+	 */
+	static final int VERSION = 1;
+
+	static final int BLOCK_SIZE = 8192;
+
+	static final byte INFECTION = 0;
+	static final byte DISEASE_STATUS = 1;
+	static final byte QUARANTINE_STATUS = 2;
+	static final byte CONTACT = 3;
+	static final byte TRACING = 4;
+	static final byte OTHER = 5;
+
+	private final DataOutputStream out;
+
+	private final Object2IntMap<String> dict = new Object2IntOpenHashMap<>();
+	private final List<String> newEntries = new ArrayList<>();
+
+	private final byte[] type = new byte[BLOCK_SIZE];
+	private final double[] time = new double[BLOCK_SIZE];
+	private final int[] person = new int[BLOCK_SIZE];
+	private final int[] other = new int[BLOCK_SIZE];
+	private final int[] container = new int[BLOCK_SIZE];
+	private final int[] label = new int[BLOCK_SIZE];
+	private final double[] duration = new double[BLOCK_SIZE];
+	private final int[] groupSize = new int[BLOCK_SIZE];
+	private final List<Map<String, String>> otherAttributes = new ArrayList<>();
+
+	private int size = 0;
+
+	/**
+	 * Creates a new file, which is overwritten if it exists.
+	 */
+	public BinaryEventsWriter(Path path) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(path), 1 << 16), 1 << 16));
+		this.dict.defaultReturnValue(-1);
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+	}
+
+	/**
+	 * Appends one event.
+	 *
+	 * @param correctedTime time to store instead of the event time, if not negative
+	 */
+	public void append(Event event, double correctedTime) throws IOException {
+
+		int i = size;
+		time[i] = correctedTime >= 0 ? correctedTime : event.getTime();
+		other[i] = -1;
+		container[i] = -1;
+		label[i] = -1;
+		duration[i] = 0;
+		groupSize[i] = 0;
+
+		if (event instanceof EpisimInfectionEvent) {
+			EpisimInfectionEvent e = (EpisimInfectionEvent) event;
+			type[i] = INFECTION;
+			person[i] = index(e.getPersonId().toString());
+			other[i] = index(e.getInfectorId().toString());
+			container[i] = index(e.getContainerId().toString());
+			label[i] = index(e.getInfectionType());
+
+		} else if (event instanceof EpisimPersonStatusEvent) {
+			EpisimPersonStatusEvent e = (EpisimPersonStatusEvent) event;
+			person[i] = index(e.getPersonId().toString());
+			if (e.getDiseaseStatus() != null) {
+				type[i] = DISEASE_STATUS;
+				label[i] = e.getDiseaseStatus().ordinal();
+			} else {
+				type[i] = QUARANTINE_STATUS;
+				label[i] = e.getQuarantineStatus().ordinal();
+			}
+
+		} else if (event instanceof EpisimContactEvent) {
+			EpisimContactEvent e = (EpisimContactEvent) event;
+			type[i] = CONTACT;
+			person[i] = index(e.getPersonId().toString());
+			other[i] = index(e.getContactPersonId().toString());
+			container[i] = index(e.getContainerId().toString());
+			label[i] = index(e.getActType());
+			duration[i] = e.getDuration();
+			groupSize[i] = e.getGroupSize();
+
+		} else if (event instanceof EpisimTracingEvent) {
+			EpisimTracingEvent e = (EpisimTracingEvent) event;
+			type[i] = TRACING;
+			person[i] = index(e.getPersonId().toString());
+			other[i] = index(e.getContactPersonId().toString());
+
+		} else {
+			type[i] = OTHER;
+			person[i] = -1;
+			label[i] = index(event.getEventType());
+
+			// copy, because generic events return their own attributes
+			Map<String, String> attr = new LinkedHashMap<>(event.getAttributes());
+			attr.remove(Event.ATTRIBUTE_TIME);
+			attr.remove(Event.ATTRIBUTE_TYPE);
+			for (String key : attr.keySet()) {
+				index(key);
+			}
+			otherAttributes.add(attr);
+		}
+
+		if (++size == BLOCK_SIZE)
+			writeBlock();
+	}
+
+	private int index(String value) {
+		int idx = dict.getInt(value);
+		if (idx == -1) {
+			idx = dict.size();
+			dict.put(value, idx);
+			newEntries.add(value);
+		}
+		return idx;
+	}
+
+	private void writeBlock() throws IOException {
+
+		out.writeInt(size);
+
+		out.writeInt(newEntries.size());
+		for (String entry : newEntries) {
+			out.writeUTF(entry);
+		}
+		newEntries.clear();
+
+		out.write(type, 0, size);
+		for (int i = 0; i < size; i++) out.writeDouble(time[i]);
+		for (int i = 0; i < size; i++) out.writeInt(person[i]);
+		for (int i = 0; i < size; i++) out.writeInt(other[i]);
+		for (int i = 0; i < size; i++) out.writeInt(container[i]);
+		for (int i = 0; i < size; i++) out.writeInt(label[i]);
+		for (int i = 0; i < size; i++) out.writeDouble(duration[i]);
+		for (int i = 0; i < size; i++) out.writeInt(groupSize[i]);
+
+		for (Map<String, String> attr : otherAttributes) {
+			out.writeInt(attr.size());
+			for (Map.Entry<String, String> e : attr.entrySet()) {
+				out.writeInt(dict.getInt(e.getKey()));
+				out.writeUTF(e.getValue() == null ? "" : e.getValue());
+			}
+		}
+		otherAttributes.clear();
+
+		size = 0;
+	}
+
+	/**
+	 * Writes remaining events and the end marker.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (size > 0)
+			writeBlock();
+
+		out.writeInt(-1);
+		out.close();
+	}
+}
@@ -66,6 +66,24 @@ public final class EpisimContactEvent extends Event implements HasPersonId {
 		return duration;
 	}
 
+	public Id<?> getContainerId() {
+		return containerId;
+	}
+
+	/**
+	 * Activity type of the contact, see {@link EpisimInfectionEvent#getInfectionType()}.
+	 */
+	public String getActType() {
+		return actType;
+	}
+
+	/**
+	 * Number of persons in the container.
+	 */
+	public int getGroupSize() {
+		return groupSize;
+	}
+
 	@Override
 	public Map<String, String> getAttributes() {
 		Map<String, String> attr = super.getAttributes();
@@ -74,6 +74,10 @@ public final class EpisimPersonStatusEvent extends Event implements HasPersonId
 		return diseaseStatus;
 	}
 
+	public EpisimPerson.QuarantineStatus getQuarantineStatus() {
+		return quarantineStatus;
+	}
+
 	@Override
 	public Map<String, String> getAttributes() {
 		Map<String, String> attr = super.getAttributes();
@@ -29,8 +29,10 @@ import org.matsim.episim.*;
 import org.matsim.episim.policy.Restriction;
 import org.matsim.vis.snapshotwriters.AgentSnapshotInfo;
 
+import java.util.List;
 import java.util.Map;
 import java.util.SplittableRandom;
+import java.util.function.UnaryOperator;
 
 import static org.matsim.episim.InfectionEventHandler.EpisimFacility;
 import static org.matsim.episim.InfectionEventHandler.EpisimVehicle;
@@ -47,6 +49,11 @@ public abstract class AbstractContactModel implements ContactModel {
 	protected final EpisimConfigGroup episimConfig;
 	protected final EpisimReporting reporting;
 
+	/**
+	 * Rules which activities can interact and be traced.
+	 */
+	protected final ActivityInteractions interactions = new ActivityInteractions();
+
 	/**
 	 * Infections parameter instances for re-use. These are params that are always needed independent of the scenario.
 	 */
@@ -65,9 +72,39 @@ public abstract class AbstractContactModel implements ContactModel {
 	 */
 	protected final InfectionModel infectionModel;
 
+	/**
+	 * Resets {@link #rnd} for each evaluation, if enabled.
+	 */
+	protected final CounterRandom counterRandom;
+
+	/**
+	 * Whether evaluations without possible infection or tracing are skipped, see {@link #canSkipEvaluation(EpisimPerson, EpisimContainer, boolean)}.
+	 */
+	private final boolean skipIrrelevant;
+
+	/**
+	 * Whether the analytical evaluation can be used, see {@link EpisimConfigGroup.ContactEvaluation#analytical}.
+	 */
+	protected final boolean analytical;
+
+	/**
+	 * Whether presence is decided once per visit, see {@link EpisimConfigGroup.PresenceCheck#perVisit}.
+	 */
+	private final boolean presencePerVisit;
+
 	protected int iteration;
 	private Map<String, Restriction> restrictions;
 
+	/**
+	 * Restrictions of the current iteration as used by the presence checks.
+	 */
+	private final CompiledRestrictions compiledRestrictions = new CompiledRestrictions();
+
+	/**
+	 * Buffer for the cumulative infection probabilities of the analytical evaluation.
+	 */
+	private double[] cumulative = new double[16];
+
 
 	AbstractContactModel(SplittableRandom rnd, Config config, InfectionModel infectionModel, EpisimReporting reporting) {
 		this.rnd = rnd;
@@ -77,6 +114,45 @@ public abstract class AbstractContactModel implements ContactModel {
 		this.trParams = new EpisimPerson.Activity("tr", episimConfig.selectInfectionParams("tr"));
 		this.qhParams = new EpisimPerson.Activity(QUARANTINE_HOME, episimConfig.selectInfectionParams(QUARANTINE_HOME));
 		this.trackingMinDuration = ConfigUtils.addOrGetModule(config, TracingConfigGroup.class).getMinDuration();
+		this.counterRandom = new CounterRandom(config.global().getRandomSeed(), episimConfig);
+		// contact events need to be written for all evaluations
+		boolean noContactEvents = episimConfig.getWriteEvents() != EpisimConfigGroup.WriteEvents.tracing &&
+				episimConfig.getWriteEvents() != EpisimConfigGroup.WriteEvents.all;
+		this.analytical = episimConfig.getContactEvaluation() == EpisimConfigGroup.ContactEvaluation.analytical && noContactEvents;
+		this.presencePerVisit = episimConfig.getPresenceCheck() == EpisimConfigGroup.PresenceCheck.perVisit;
+		this.skipIrrelevant = (episimConfig.getContactEvaluation() == EpisimConfigGroup.ContactEvaluation.skipIrrelevant || analytical) && noContactEvents;
+	}
+
+	/**
+	 * Resets the random generator for an evaluation of a person in a container, if counter based random numbers are enabled.
+	 * The infection and face mask model draw from the same generator, so their numbers are covered as well.
+	 */
+	protected final void resetRandom(CounterRandom.Purpose purpose, EpisimPerson person, EpisimContainer<?> container, double now) {
+		counterRandom.reset(rnd, purpose, iteration, container, person, now);
+	}
+
+	/**
+	 * Checks with the counters of the container, whether the person leaving it can neither infect, be infected nor trace anyone.
+	 * Always false, unless {@link EpisimConfigGroup.ContactEvaluation#skipIrrelevant} or {@link EpisimConfigGroup.ContactEvaluation#analytical} is set.
+	 *
+	 * @param trackingEnabled whether contacts are tracked in this iteration
+	 */
+	protected final boolean canSkipEvaluation(EpisimPerson person, EpisimContainer<?> container, boolean trackingEnabled) {
+		if (!skipIrrelevant)
+			return false;
+
+		if (trackingEnabled && person.isTraceable() && container.getNumTraceable() > 1)
+			return false;
+
+		switch (person.getDiseaseStatus()) {
+			case susceptible:
+				return container.getNumContagious() == 0;
+			case contagious:
+			case showingSymptoms:
+				return container.getNumSusceptible() == 0;
+			default:
+				return true;
+		}
 	}
 
 	private static boolean hasDiseaseStatusRelevantForInfectionDynamics(EpisimPerson personWrapper) {
@@ -111,18 +187,14 @@ public abstract class AbstractContactModel implements ContactModel {
 	}
 
 	/**
-	 * Attention: In order to re-use the underlying object, this function returns a buffer.
-	 * Be aware that the old result will be overwritten, when the function is called multiple times.
+	 * Infection type of a contact, labels for facilities are provided by {@link #interactions}.
 	 */
-	protected static StringBuilder getInfectionType(StringBuilder buffer, EpisimContainer<?> container, String leavingPersonsActivity,
-													String otherPersonsActivity) {
-		buffer.setLength(0);
+	protected String getInfectionType(EpisimContainer<?> container, EpisimPerson.Activity leavingPersonsActivity,
+									  EpisimPerson.Activity otherPersonsActivity) {
 		if (container instanceof EpisimFacility) {
-			buffer.append(leavingPersonsActivity).append("_").append(otherPersonsActivity);
-			return buffer;
+			return interactions.getInfectionType(leavingPersonsActivity, otherPersonsActivity);
 		} else if (container instanceof EpisimVehicle) {
-			buffer.append("pt");
-			return buffer;
+			return "pt";
 		} else {
 			throw new RuntimeException("Infection situation is unknown");
 		}
@@ -149,10 +221,10 @@ public abstract class AbstractContactModel implements ContactModel {
 	}
 
 	protected void trackContactPerson(EpisimPerson personLeavingContainer, EpisimPerson otherPerson, double now, double jointTimeInContainer,
-									  StringBuilder infectionType) {
+									  EpisimPerson.Activity leavingAct, EpisimPerson.Activity otherAct) {
 
 		// Don't track certain activities
-		if (infectionType.indexOf("pt") >= 0 || infectionType.indexOf("shop") >= 0) {
+		if (!interactions.isTraceable(leavingAct, otherAct)) {
 			return;
 		}
 
@@ -165,7 +237,7 @@ public abstract class AbstractContactModel implements ContactModel {
 		otherPerson.addTraceableContactPerson(personLeavingContainer, now);
 	}
 
-	private boolean activityRelevantForInfectionDynamics(EpisimPerson person, EpisimContainer<?> container, Map<String, Restriction> restrictions, SplittableRandom rnd) {
+	private boolean activityRelevantForInfectionDynamics(EpisimPerson person, EpisimContainer<?> container, SplittableRandom rnd) {
 		EpisimPerson.Activity act = person.getTrajectory().get(person.getCurrentPositionInTrajectory());
 
 		// Check if person is home quarantined
@@ -174,31 +246,29 @@ public abstract class AbstractContactModel implements ContactModel {
 
 
 		// enforce max group sizes
-		Restriction r = restrictions.get(act.params.getContainerName());
-		if (r.getMaxGroupSize() != null && r.getMaxGroupSize() > -1 && container.getMaxGroupSize() > 0 &&
-				container.getMaxGroupSize() > r.getMaxGroupSize())
+		if (compiledRestrictions.exceedsGroupSize(act, container))
 			return false;
 
-		if (r.isClosed(container.getContainerId()))
+		if (compiledRestrictions.isClosed(act, container))
 			return false;
 
-		return actIsRelevant(act, restrictions, rnd);
+		return actIsRelevant(act, rnd);
 	}
 
-	private boolean actIsRelevant(EpisimPerson.Activity act, Map<String, Restriction> restrictions, SplittableRandom rnd) {
+	private boolean actIsRelevant(EpisimPerson.Activity act, SplittableRandom rnd) {
 
-		Restriction r = restrictions.get(act.params.getContainerName());
+		double remainingFraction = compiledRestrictions.getRemainingFraction(act);
 		// avoid use of rnd if outcome is known beforehand
-		if (r.getRemainingFraction() == 1)
+		if (remainingFraction == 1)
 			return true;
-		if (r.getRemainingFraction() == 0)
+		if (remainingFraction == 0)
 			return false;
 
-		return rnd.nextDouble() < r.getRemainingFraction();
+		return rnd.nextDouble() < remainingFraction;
 
 	}
 
-	private boolean tripRelevantForInfectionDynamics(EpisimPerson person, Map<String, Restriction> restrictions, SplittableRandom rnd) {
+	private boolean tripRelevantForInfectionDynamics(EpisimPerson person, SplittableRandom rnd) {
 		EpisimPerson.Activity lastAct = null;
 		if (person.getCurrentPositionInTrajectory() != 0) {
 			lastAct = person.getTrajectory().get(person.getCurrentPositionInTrajectory() - 1);
@@ -210,8 +280,8 @@ public abstract class AbstractContactModel implements ContactModel {
 		EpisimPerson.Activity nextAct = person.getTrajectory().get(person.getCurrentPositionInTrajectory());
 
 		// last activity is only considered if present
-		return actIsRelevant(trParams, restrictions, rnd) && actIsRelevant(nextAct, restrictions, rnd)
-				&& (lastAct == null || actIsRelevant(lastAct, restrictions, rnd));
+		return actIsRelevant(trParams, rnd) && actIsRelevant(nextAct, rnd)
+				&& (lastAct == null || actIsRelevant(lastAct, rnd));
 
 	}
 
@@ -221,10 +291,9 @@ public abstract class AbstractContactModel implements ContactModel {
 	 *
 	 * @noinspection BooleanMethodIsAlwaysInverted
 	 */
-	protected final boolean personRelevantForTrackingOrInfectionDynamics(EpisimPerson person, EpisimContainer<?> container,
-																		 Map<String, Restriction> restrictions, SplittableRandom rnd) {
+	protected final boolean personRelevantForTrackingOrInfectionDynamics(EpisimPerson person, EpisimContainer<?> container, SplittableRandom rnd) {
 
-		return personHasRelevantStatus(person) && checkPersonInContainer(person, container, restrictions, rnd);
+		return personHasRelevantStatus(person) && checkPersonInContainer(person, container, rnd);
 	}
 
 	protected final boolean personHasRelevantStatus(EpisimPerson person) {
@@ -235,16 +304,28 @@ public abstract class AbstractContactModel implements ContactModel {
 
 	/**
 	 * Checks whether a person would be present in the container.
+	 * With {@link EpisimConfigGroup.PresenceCheck#perVisit} the decision is drawn once and then reused for the rest of the visit.
 	 */
-	protected final boolean checkPersonInContainer(EpisimPerson person, EpisimContainer<?> container, Map<String, Restriction> restrictions, SplittableRandom rnd) {
+	protected final boolean checkPersonInContainer(EpisimPerson person, EpisimContainer<?> container, SplittableRandom rnd) {
+		if (presencePerVisit && person.getCurrentContainer() == container) {
+			if (!person.hasPresence(iteration))
+				person.setPresence(iteration, isPersonInContainer(person, container, rnd));
+
+			return person.isPresent();
+		}
+
+		return isPersonInContainer(person, container, rnd);
+	}
+
+	private boolean isPersonInContainer(EpisimPerson person, EpisimContainer<?> container, SplittableRandom rnd) {
 		if (person.getQuarantineStatus() == EpisimPerson.QuarantineStatus.full) {
 			return false;
 		}
 
-		if (container instanceof EpisimFacility && activityRelevantForInfectionDynamics(person, container, restrictions, rnd)) {
+		if (container instanceof EpisimFacility && activityRelevantForInfectionDynamics(person, container, rnd)) {
 			return true;
 		}
-		return container instanceof EpisimVehicle && tripRelevantForInfectionDynamics(person, restrictions, rnd);
+		return container instanceof EpisimVehicle && tripRelevantForInfectionDynamics(person, rnd);
 	}
 
 	/**
@@ -254,13 +335,14 @@ public abstract class AbstractContactModel implements ContactModel {
 	public void setRestrictionsForIteration(int iteration, Map<String, Restriction> restrictions) {
 		this.iteration = iteration;
 		this.restrictions = restrictions;
+		this.compiledRestrictions.update(restrictions);
 		this.infectionModel.setIteration(iteration);
 	}
 
 	/**
 	 * Sets the infection status of a person and reports the event.
 	 */
-	protected void infectPerson(EpisimPerson personWrapper, EpisimPerson infector, double now, StringBuilder infectionType,
+	protected void infectPerson(EpisimPerson personWrapper, EpisimPerson infector, double now, String infectionType,
 								EpisimContainer<?> container) {
 
 		if (personWrapper.getDiseaseStatus() != EpisimPerson.DiseaseStatus.susceptible) {
@@ -286,12 +368,10 @@ public abstract class AbstractContactModel implements ContactModel {
 			now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), 24 * 60 * 60 - 1, iteration);
 		}
 
-		String infType = infectionType.toString();
-
-		reporting.reportInfection(personWrapper, infector, now, infType, container);
+		reporting.reportInfection(personWrapper, infector, now, infectionType, container);
 		personWrapper.setDiseaseStatus(now, EpisimPerson.DiseaseStatus.infectedButNotContagious);
 		personWrapper.setInfectionContainer(container);
-		personWrapper.setInfectionType(infType);
+		personWrapper.setInfectionType(infectionType);
 
 		// TODO: Currently not in use, is it still needed?
 		// Necessary for the otfvis visualization (although it is unfortunately not working).  kai, apr'20
@@ -307,6 +387,154 @@ public abstract class AbstractContactModel implements ContactModel {
 		return restrictions;
 	}
 
+	/**
+	 * Evaluates all infections caused by a person leaving a container at once, without tracing and contact events.
+	 * A leaving susceptible person is only paired with the contagious persons of the container. The probability of not being infected
+	 * by any of them is combined, so that one random number decides whether and by whom the person is infected.
+	 * A leaving contagious person is only paired with the susceptible persons. Both take time linear in the number of these persons,
+	 * which are indexed by the container.
+	 * <p>
+	 * The probability of an infection is the same as with the evaluation of all pairs, where the random presence checks and contact draws
+	 * are replaced by their probability.
+	 *
+	 * @param contactProbability probability that two persons present in the container have contact
+	 * @param leavingParams      adjusts the infection params of the leaving person
+	 * @param contactParams      adjusts the infection params of the other person
+	 */
+	protected final void infectAnalytical(EpisimPerson leaving, EpisimContainer<?> container, double now, double contactProbability,
+										  UnaryOperator<EpisimConfigGroup.InfectionParams> leavingParams,
+										  UnaryOperator<EpisimConfigGroup.InfectionParams> contactParams) {
+
+		EpisimPerson.Activity leavingAct = leaving.getTrajectory().get(leaving.getCurrentPositionInTrajectory());
+		EpisimConfigGroup.InfectionParams leavingInfectionParams = leavingParams.apply(getInfectionParams(container, leaving, leavingAct.actType));
+
+		EpisimPerson.DiseaseStatus status = leaving.getDiseaseStatus();
+		if (status == EpisimPerson.DiseaseStatus.susceptible) {
+
+			List<EpisimPerson> infectors = container.getContagiousPersons();
+			if (infectors.isEmpty())
+				return;
+
+			int n = infectors.size();
+			if (cumulative.length < n)
+				cumulative = new double[Math.max(n, cumulative.length * 2)];
+
+			// cumulative probability that one of the first i persons infects
+			double noInfection = 1;
+			for (int i = 0; i < n; i++) {
+				noInfection *= 1 - pairProbability(leaving, leavingAct, leavingInfectionParams, infectors.get(i), container, now,
+						contactProbability, contactParams, true);
+				cumulative[i] = 1 - noInfection;
+			}
+
+			double r = rnd.nextDouble();
+			if (r >= 1 - noInfection)
+				return;
+
+			int i = 0;
+			while (i < n - 1 && r >= cumulative[i])
+				i++;
+
+			EpisimPerson infector = infectors.get(i);
+			EpisimPerson.Activity otherAct = infector.getTrajectory().get(infector.getCurrentPositionInTrajectory());
+			infectPerson(leaving, infector, now, getInfectionType(container, leavingAct, otherAct), container);
+
+		} else if (status == EpisimPerson.DiseaseStatus.contagious || status == EpisimPerson.DiseaseStatus.showingSymptoms) {
+
+			// backwards, because an infected person is replaced by the last one, which has already been evaluated
+			List<EpisimPerson> targets = container.getSusceptiblePersons();
+			for (int i = targets.size() - 1; i >= 0; i--) {
+				EpisimPerson target = targets.get(i);
+
+				double prob = pairProbability(leaving, leavingAct, leavingInfectionParams, target, container, now,
+						contactProbability, contactParams, false);
+
+				if (prob > 0 && rnd.nextDouble() < prob) {
+					EpisimPerson.Activity otherAct = target.getTrajectory().get(target.getCurrentPositionInTrajectory());
+					infectPerson(target, leaving, now, getInfectionType(container, leavingAct, otherAct), container);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Probability that the leaving person and another one are both present, have contact and one infects the other.
+	 *
+	 * @param leavingIsTarget whether the leaving person is the one that could be infected
+	 */
+	private double pairProbability(EpisimPerson leaving, EpisimPerson.Activity leavingAct, EpisimConfigGroup.InfectionParams leavingParams,
+								   EpisimPerson other, EpisimContainer<?> container, double now, double contactProbability,
+								   UnaryOperator<EpisimConfigGroup.InfectionParams> contactParams, boolean leavingIsTarget) {
+
+		EpisimPerson infector = leavingIsTarget ? other : leaving;
+
+		// person can only infect others 4 days after being contagious
+		if (infector.hadDiseaseStatus(EpisimPerson.DiseaseStatus.contagious) &&
+				infector.daysSince(EpisimPerson.DiseaseStatus.contagious, iteration) > 4)
+			return 0;
+
+		EpisimPerson.Activity otherAct = other.getTrajectory().get(other.getCurrentPositionInTrajectory());
+		if (container instanceof EpisimFacility && !interactions.mayInteract(leavingAct, otherAct))
+			return 0;
+
+		double presence = presenceProbability(other, container);
+		if (presence == 0)
+			return 0;
+
+		double jointTime = now - Math.max(container.getContainerEnteringTime(leaving), container.getContainerEnteringTime(other));
+		if (jointTime <= 0)
+			return 0;
+
+		EpisimConfigGroup.InfectionParams otherParams = contactParams.apply(getInfectionParams(container, other, otherAct.actType));
+
+		double prob = leavingIsTarget ?
+				infectionModel.calcInfectionProbability(leaving, other, restrictions, leavingParams, otherParams, jointTime) :
+				infectionModel.calcInfectionProbability(other, leaving, restrictions, otherParams, leavingParams, jointTime);
+
+		return contactProbability * presence * prob;
+	}
+
+	/**
+	 * Probability of {@link #checkPersonInContainer(EpisimPerson, EpisimContainer, SplittableRandom)} being true.
+	 */
+	private double presenceProbability(EpisimPerson person, EpisimContainer<?> container) {
+
+		if (presencePerVisit && person.getCurrentContainer() == container && person.hasPresence(iteration))
+			return person.isPresent() ? 1 : 0;
+
+		if (person.getQuarantineStatus() == EpisimPerson.QuarantineStatus.full)
+			return 0;
+
+		if (container instanceof EpisimFacility) {
+			EpisimPerson.Activity act = person.getTrajectory().get(person.getCurrentPositionInTrajectory());
+
+			if (person.getQuarantineStatus() == EpisimPerson.QuarantineStatus.atHome && !act.actType.startsWith("home"))
+				return 0;
+
+			if (compiledRestrictions.exceedsGroupSize(act, container) || compiledRestrictions.isClosed(act, container))
+				return 0;
+
+			return compiledRestrictions.getRemainingFraction(act);
+		}
+
+		if (container instanceof EpisimVehicle) {
+			if (person.getQuarantineStatus() != EpisimPerson.QuarantineStatus.no)
+				return 0;
+
+			double fraction = remainingFraction(trParams) * remainingFraction(person.getTrajectory().get(person.getCurrentPositionInTrajectory()));
+			if (person.getCurrentPositionInTrajectory() != 0)
+				fraction *= remainingFraction(person.getTrajectory().get(person.getCurrentPositionInTrajectory() - 1));
+
+			return fraction;
+		}
+
+		return 0;
+	}
+
+	private double remainingFraction(EpisimPerson.Activity act) {
+		return compiledRestrictions.getRemainingFraction(act);
+	}
+
 	@Override
 	public void notifyEnterVehicle(EpisimPerson personEnteringVehicle, EpisimVehicle vehicle, double now) {
 	}
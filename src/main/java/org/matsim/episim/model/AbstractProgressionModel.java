@@ -6,6 +6,8 @@ import it.unimi.dsi.fastutil.objects.Object2LongMap;
 import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.groups.GlobalConfigGroup;
+import org.matsim.episim.CounterRandom;
 import org.matsim.episim.EpisimConfigGroup;
 import org.matsim.episim.EpisimPerson;
 import org.matsim.episim.EpisimReporting;
@@ -27,15 +29,21 @@ abstract class AbstractProgressionModel implements ProgressionModel, Externaliza
 	protected final SplittableRandom rnd;
 	protected final EpisimConfigGroup episimConfig;
 
+	/**
+	 * Resets {@link #rnd} for each person, if enabled. Keys are based on the global random seed.
+	 */
+	protected final CounterRandom counterRandom;
+
 	/**
 	 * Stores the next state and after which day. (int & int) = 64bit
 	 */
 	private final Object2LongMap<Id<Person>> nextStateAndDay = new Object2LongOpenHashMap<>();
 
 	@Inject
-	AbstractProgressionModel(SplittableRandom rnd, EpisimConfigGroup episimConfig) {
+	AbstractProgressionModel(SplittableRandom rnd, GlobalConfigGroup globalConfig, EpisimConfigGroup episimConfig) {
 		this.rnd = rnd;
 		this.episimConfig = episimConfig;
+		this.counterRandom = new CounterRandom(globalConfig.getRandomSeed(), episimConfig);
 	}
 
 	/**
@@ -0,0 +1,160 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim.model;
+
+import org.matsim.episim.EpisimConfigGroup;
+import org.matsim.episim.EpisimPerson;
+
+import java.util.Arrays;
+
+/**
+ * Table of rules for two persons performing activities in the same facility, indexed by {@link EpisimPerson.Activity#index}.
+ * Each pair of activities is evaluated only once, all further queries are array lookups.
+ * <p>
+ * Unless configured otherwise with {@link EpisimConfigGroup.InfectionParams#setInteractions(String)}, the following rules apply:
+ * <ul>
+ *     <li>home can only interact with home, leisure or work</li>
+ *     <li>edu can only interact with work or edu</li>
+ * </ul>
+ * Contacts during pt or shopping are not traceable, unless set by {@link EpisimConfigGroup.InfectionParams#setTraceable(Boolean)}.
+ */
+public final class ActivityInteractions {
+
+	private static final byte KNOWN = 1;
+	private static final byte INTERACT = 2;
+	private static final byte TRACEABLE = 4;
+
+	/**
+	 * Rules for each pair, 0 if not evaluated yet.
+	 */
+	private byte[][] table = new byte[0][];
+
+	/**
+	 * Infection type for each pair, created on first use.
+	 */
+	private String[][] labels = new String[0][];
+
+	/**
+	 * Whether persons performing these activities can interact.
+	 */
+	public boolean mayInteract(EpisimPerson.Activity leaving, EpisimPerson.Activity other) {
+		return (get(leaving, other) & INTERACT) != 0;
+	}
+
+	/**
+	 * Whether a contact between these activities can be traced.
+	 */
+	public boolean isTraceable(EpisimPerson.Activity leaving, EpisimPerson.Activity other) {
+		return (get(leaving, other) & TRACEABLE) != 0;
+	}
+
+	/**
+	 * Infection type of a contact between these activities in a facility.
+	 */
+	public String getInfectionType(EpisimPerson.Activity leaving, EpisimPerson.Activity other) {
+		ensureCapacity(Math.max(leaving.index, other.index));
+
+		String[] row = labels[leaving.index];
+		if (row == null)
+			row = labels[leaving.index] = new String[labels.length];
+
+		String label = row[other.index];
+		if (label == null)
+			label = row[other.index] = leaving.actType + "_" + other.actType;
+
+		return label;
+	}
+
+	private byte get(EpisimPerson.Activity leaving, EpisimPerson.Activity other) {
+		ensureCapacity(Math.max(leaving.index, other.index));
+
+		byte value = table[leaving.index][other.index];
+		if (value == 0) {
+			value = evaluate(leaving, other);
+			table[leaving.index][other.index] = value;
+		}
+
+		return value;
+	}
+
+	private void ensureCapacity(int index) {
+		if (index < table.length)
+			return;
+
+		int n = Math.max(index + 1, table.length * 2);
+
+		byte[][] newTable = new byte[n][];
+		for (int i = 0; i < n; i++)
+			newTable[i] = i < table.length ? Arrays.copyOf(table[i], n) : new byte[n];
+
+		String[][] newLabels = new String[n][];
+		for (int i = 0; i < labels.length; i++)
+			newLabels[i] = labels[i] != null ? Arrays.copyOf(labels[i], n) : null;
+
+		table = newTable;
+		labels = newLabels;
+	}
+
+	private static byte evaluate(EpisimPerson.Activity leaving, EpisimPerson.Activity other) {
+
+		byte value = KNOWN;
+
+		boolean interact;
+		if (leaving.params.hasInteractions() || other.params.hasInteractions())
+			interact = leaving.params.interactsWith(other.params) && other.params.interactsWith(leaving.params);
+		else
+			interact = defaultInteraction(leaving.actType, other.actType);
+
+		if (interact)
+			value |= INTERACT;
+
+		if (isTraceable(leaving) && isTraceable(other))
+			value |= TRACEABLE;
+
+		return value;
+	}
+
+	/**
+	 * Default rules, which were previously evaluated on the infection type "leaving_other".
+	 */
+	private static boolean defaultInteraction(String leaving, String other) {
+
+		boolean home = leaving.contains("home") || other.contains("home");
+		boolean leis = leaving.contains("leis") || other.contains("leis");
+		boolean work = leaving.contains("work") || other.contains("work");
+		boolean edu = leaving.contains("edu") || other.contains("edu");
+
+		//home can only interact with home, leisure or work
+		if (home && !leis && !work && !(leaving.startsWith("home") && other.startsWith("home")))
+			return false;
+
+		//edu can only interact with work or edu
+		return !edu || work || (leaving.startsWith("edu") && other.startsWith("edu"));
+	}
+
+	private static boolean isTraceable(EpisimPerson.Activity act) {
+		Boolean traceable = act.params.isTraceable();
+		if (traceable != null)
+			return traceable;
+
+		return !act.actType.contains("pt") && !act.actType.contains("shop");
+	}
+}
@@ -11,7 +11,7 @@ import java.util.Map;
 import java.util.SplittableRandom;
 
 /**
- * Extension of the {@link DefaultInfectionModel}, with additional parameter {@link #SUSCEPTIBILITY} and {@link #VIRAL_LOAD},
+ * Extension of the {@link DefaultInfectionModel}, with additional parameter {@link EpisimPerson#SUSCEPTIBILITY} and {@link EpisimPerson#VIRAL_LOAD},
  *  which are set according to age. 
  */
 public final class AgeDependentInfectionModelWithSeasonality implements InfectionModel {
@@ -32,6 +32,7 @@ public final class AgeDependentInfectionModelWithSeasonality implements Infectio
 	@Override
 	public void setIteration(int iteration) {
 		this.iteration = iteration;
+		this.maskModel.setIteration(iteration);
 	}
 
 	@Override
@@ -42,25 +43,11 @@ public final class AgeDependentInfectionModelWithSeasonality implements Infectio
 		double ciCorrection = Math.min(restrictions.get(act1.getContainerName()).getCiCorrection(), restrictions.get(act2.getContainerName()).getCiCorrection());
 		double contactIntensity = Math.min(act1.getContactIntensity(), act2.getContactIntensity());
 		
-		int ageTarget = -1;
-
-		for (String attr : target.getAttributes().getAsMap().keySet()) {
-			if (attr.contains("age")) {
-				ageTarget = (int) target.getAttributes().getAttribute(attr);
-				break;
-			}
-		}
+		int ageTarget = target.getAge();
 		
 		if (ageTarget < 0) throw new RuntimeException("Age attribute not found for person=" + target.getPersonId().toString());
 		
-		int ageInfector = -1;
-
-		for (String attr : infector.getAttributes().getAsMap().keySet()) {
-			if (attr.contains("age")) {
-				ageInfector = (int) infector.getAttributes().getAttribute(attr);
-				break;
-			}
-		}
+		int ageInfector = infector.getAge();
 		
 		if (ageInfector < 0) throw new RuntimeException("Age attribute not found for person=" + infector.getPersonId().toString());
 
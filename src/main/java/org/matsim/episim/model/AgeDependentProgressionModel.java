@@ -20,6 +20,7 @@
  */
 package org.matsim.episim.model;
 
+import org.matsim.core.config.groups.GlobalConfigGroup;
 import org.matsim.episim.EpisimConfigGroup;
 import org.matsim.episim.EpisimPerson;
 import org.matsim.episim.TracingConfigGroup;
@@ -37,8 +38,9 @@ public final class AgeDependentProgressionModel extends ConfigurableProgressionM
 	 * Constructor as in {@link DefaultProgressionModel}.
 	 */
 	@Inject
-	public AgeDependentProgressionModel(SplittableRandom rnd, EpisimConfigGroup episimConfig, TracingConfigGroup tracingConfig) {
-		super(rnd, episimConfig, tracingConfig);
+	public AgeDependentProgressionModel(SplittableRandom rnd, GlobalConfigGroup globalConfig, EpisimConfigGroup episimConfig,
+										TracingConfigGroup tracingConfig) {
+		super(rnd, globalConfig, episimConfig, tracingConfig);
 	}
 
 	@Override
@@ -46,14 +48,7 @@ public final class AgeDependentProgressionModel extends ConfigurableProgressionM
 
 		double proba = -1;
 
-		int age = -1;
-
-		for (String attr : person.getAttributes().getAsMap().keySet()) {
-			if (attr.contains("age")) {
-				age = (int) person.getAttributes().getAttribute(attr);
-				break;
-			}
-		}
+		int age = person.getAge();
 
 		if (age != -1) {
 
@@ -92,14 +87,7 @@ public final class AgeDependentProgressionModel extends ConfigurableProgressionM
 	protected double getProbaOfTransitioningToCritical(EpisimPerson person) {
 		double proba = -1;
 
-		int age = -1;
-
-		for (String attr : person.getAttributes().getAsMap().keySet()) {
-			if (attr.contains("age")) {
-				age = (int) person.getAttributes().getAttribute(attr);
-				break;
-			}
-		}
+		int age = person.getAge();
 
 		if (age != -1) {
 
@@ -0,0 +1,119 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim.model;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.episim.EpisimContainer;
+import org.matsim.episim.EpisimPerson;
+import org.matsim.episim.policy.Restriction;
+import org.matsim.facilities.ActivityFacility;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Restrictions of one iteration as flat arrays indexed by {@link EpisimPerson.Activity#index}, so that presence checks need no map lookups
+ * or unboxing. The entry of an activity is compiled when it is first used after {@link #update(Map)}.
+ */
+final class CompiledRestrictions {
+
+	private Map<String, Restriction> restrictions;
+
+	/**
+	 * Incremented with every update, entries with an older version need to be compiled again.
+	 */
+	private int version = 0;
+	private int[] compiled = new int[0];
+
+	private double[] remainingFraction = new double[0];
+	/**
+	 * Max group size, -1 if not restricted.
+	 */
+	private int[] maxGroupSize = new int[0];
+	/**
+	 * Closed facilities by {@link Id#index()}, null if there are none.
+	 */
+	private BitSet[] closed = new BitSet[0];
+
+	/**
+	 * Sets the restrictions of a new iteration.
+	 */
+	void update(Map<String, Restriction> restrictions) {
+		this.restrictions = restrictions;
+		version++;
+	}
+
+	/**
+	 * Remaining fraction of the activity.
+	 */
+	double getRemainingFraction(EpisimPerson.Activity act) {
+		return remainingFraction[compile(act)];
+	}
+
+	/**
+	 * Whether the container is larger than the max group size allowed for the activity.
+	 */
+	boolean exceedsGroupSize(EpisimPerson.Activity act, EpisimContainer<?> container) {
+		int max = maxGroupSize[compile(act)];
+		return max > -1 && container.getMaxGroupSize() > 0 && container.getMaxGroupSize() > max;
+	}
+
+	/**
+	 * Whether the container is closed for the activity.
+	 */
+	boolean isClosed(EpisimPerson.Activity act, EpisimContainer<?> container) {
+		BitSet c = closed[compile(act)];
+		return c != null && c.get(container.getContainerId().index());
+	}
+
+	private int compile(EpisimPerson.Activity act) {
+
+		int i = act.index;
+		if (i < compiled.length && compiled[i] == version)
+			return i;
+
+		if (i >= compiled.length) {
+			int n = Math.max(i + 1, compiled.length * 2);
+			compiled = Arrays.copyOf(compiled, n);
+			remainingFraction = Arrays.copyOf(remainingFraction, n);
+			maxGroupSize = Arrays.copyOf(maxGroupSize, n);
+			closed = Arrays.copyOf(closed, n);
+		}
+
+		Restriction r = restrictions.get(act.params.getContainerName());
+		remainingFraction[i] = r.getRemainingFraction();
+		maxGroupSize[i] = r.getMaxGroupSize() != null ? r.getMaxGroupSize() : -1;
+
+		Set<Id<ActivityFacility>> ids = r.getClosed();
+		if (ids != null && !ids.isEmpty()) {
+			BitSet set = new BitSet();
+			for (Id<ActivityFacility> id : ids)
+				set.set(id.index());
+			closed[i] = set;
+		} else
+			closed[i] = null;
+
+		compiled[i] = version;
+		return i;
+	}
+}
@@ -9,6 +9,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.groups.GlobalConfigGroup;
 import org.matsim.episim.*;
 import org.matsim.episim.EpisimPerson.DiseaseStatus;
 import org.matsim.facilities.ActivityFacility;
@@ -103,8 +104,9 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 	private long prevShowingSymptoms;
 
 	@Inject
-	public ConfigurableProgressionModel(SplittableRandom rnd, EpisimConfigGroup episimConfig, TracingConfigGroup tracingConfig) {
-		super(rnd, episimConfig);
+	public ConfigurableProgressionModel(SplittableRandom rnd, GlobalConfigGroup globalConfig, EpisimConfigGroup episimConfig,
+										TracingConfigGroup tracingConfig) {
+		super(rnd, globalConfig, episimConfig);
 		this.tracingConfig = tracingConfig;
 
 		Config config = episimConfig.getProgressionConfig();
@@ -137,6 +139,7 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 
 	@Override
 	public final void updateState(EpisimPerson person, int day) {
+		counterRandom.reset(rnd, CounterRandom.Purpose.progression, day, person);
 		super.updateState(person, day);
 
 		// account for the delay in showing symptoms and tracing
@@ -238,6 +241,7 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 						} else if (tracingConfig.getStrategy() == TracingConfigGroup.Strategy.LOCATION_WITH_TESTING) {
 							// assumes that all contact persons get tested
 							// then quarantines all of their contacts
+							counterRandom.reset(rnd, CounterRandom.Purpose.tracing, day, p);
 							performTracing(p, now, day);
 						}
 					}
@@ -261,6 +265,7 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 				// Assume that each contact got tested
 				// if the test is positive contacts will be quarantined as well and also tested at the next day
 				if (person.hadDiseaseStatus(DiseaseStatus.infectedButNotContagious)) {
+					counterRandom.reset(rnd, CounterRandom.Purpose.tracing, day, person);
 					performTracing(person, now, day);
 				}
 			}
@@ -278,6 +283,7 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 
 			// put persons randomly into quarantine
 			for (EpisimPerson person : persons.values()) {
+				counterRandom.reset(rnd, CounterRandom.Purpose.tracing, day, person);
 				if (rnd.nextDouble() < p)
 					quarantinePerson(person, day);
 
@@ -27,7 +27,6 @@ import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.episim.*;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.SplittableRandom;
 
@@ -47,14 +46,22 @@ public final class DefaultContactModel extends AbstractContactModel {
 	private final int trackingAfterDay;
 
 	/**
-	 * In order to avoid recreating a the list of other persons in the container every time it is stored as instance variable.
+	 * How contact persons are drawn.
 	 */
-	private final List<EpisimPerson> otherPersonsInContainer = new ArrayList<>();
+	private final EpisimConfigGroup.ContactSampling sampling;
+
 	/**
-	 * This buffer is used to store the infection type.
+	 * Indices of already drawn persons, sorted, for {@link EpisimConfigGroup.ContactSampling#stable}.
 	 */
-	private final StringBuilder buffer = new StringBuilder();
+	private int[] drawn = new int[16];
 
+	/**
+	 * Positions and values of the virtually shuffled index array, for {@link EpisimConfigGroup.ContactSampling#fisherYates}.
+	 * Only the few swapped positions are stored, so the index array never needs to be initialized.
+	 */
+	private int[] swapPos = new int[16];
+	private int[] swapVal = new int[16];
+	private int swaps = 0;
 	@Inject
 	/* package */
 	DefaultContactModel(SplittableRandom rnd, Config config,
@@ -62,6 +69,7 @@ public final class DefaultContactModel extends AbstractContactModel {
 		// (make injected constructor non-public so that arguments can be changed without repercussions.  kai, jun'20)
 		super(rnd, config, infectionModel, reporting);
 		this.trackingAfterDay = ConfigUtils.addOrGetModule(config, TracingConfigGroup.class).getPutTraceablePersonsInQuarantineAfterDay();
+		this.sampling = episimConfig.getContactSampling();
 	}
 
 	@Override
@@ -75,13 +83,19 @@ public final class DefaultContactModel extends AbstractContactModel {
 	}
 
 	private void infectionDynamicsGeneralized(EpisimPerson personLeavingContainer, EpisimContainer<?> container, double now) {
+		resetRandom(CounterRandom.Purpose.contact, personLeavingContainer, container, now);
 
 		// no infection possible if there is only one person
 		if (iteration == 0 || container.getPersons().size() == 1) {
 			return;
 		}
 
-		if (!personRelevantForTrackingOrInfectionDynamics(personLeavingContainer, container, getRestrictions(), rnd)) {
+		// nobody in the container can infect or trace the leaving person, or the other way round
+		if (canSkipEvaluation(personLeavingContainer, container, iteration >= trackingAfterDay)) {
+			return;
+		}
+
+		if (!personRelevantForTrackingOrInfectionDynamics(personLeavingContainer, container, rnd)) {
 			return;
 		}
 
@@ -90,26 +104,39 @@ public final class DefaultContactModel extends AbstractContactModel {
 
 		EpisimConfigGroup.InfectionParams leavingParams = null;
 
-		otherPersonsInContainer.addAll(container.getPersons());
-		otherPersonsInContainer.remove(personLeavingContainer);
+		// contacts are drawn directly from the container, skipping the leaving person
+		List<EpisimPerson> persons = container.getPersons();
+		int leavingIndex = container.indexOf(personLeavingContainer);
+		int otherPersons = leavingIndex >= 0 ? persons.size() - 1 : persons.size();
 
 		// For the time being, will just assume that the first 10 persons are the ones we interact with.  Note that because of
 		// shuffle, those are 10 different persons every day.
 
 		// persons are scaled to number of agents with sample size, but at least 3 for the small development scenarios
 //		int contactWith = Math.min(otherPersonsInContainer.size(), Math.max((int) (episimConfig.getSampleSize() * 10), 3));
-		int contactWith = Math.min(otherPersonsInContainer.size(), (int)episimConfig.getMaxContacts());
+		int contactWith = Math.min(otherPersons, (int)episimConfig.getMaxContacts());
+		if (drawn.length < contactWith + 1) {
+			drawn = new int[contactWith + 1];
+			swapPos = new int[contactWith + 1];
+			swapVal = new int[contactWith + 1];
+		}
+
+		swaps = 0;
 		for (int ii = 0; ii < contactWith; ii++) {
 
 			// we are essentially looking at the situation when the person leaves the container.  Interactions with other persons who have
 			// already left the container were treated then.  In consequence, we have some "circle of persons around us" (yyyy which should
 			//  depend on the density), and then a probability of infection in either direction.
 
-			// Draw the contact person and remove it -> we don't want to draw it multiple times
-			EpisimPerson contactPerson = otherPersonsInContainer.remove(rnd.nextInt(otherPersonsInContainer.size()));
+			// Draw the contact person, each person is drawn at most once
+			int index = sampling == EpisimConfigGroup.ContactSampling.stable ? drawStable(otherPersons, ii) : drawShuffled(otherPersons, ii);
+			if (leavingIndex >= 0 && index >= leavingIndex)
+				index++;
 
+			EpisimPerson contactPerson = persons.get(index);
 
-			if (!personRelevantForTrackingOrInfectionDynamics(contactPerson, container, getRestrictions(), rnd)) {
+
+			if (!personRelevantForTrackingOrInfectionDynamics(contactPerson, container, rnd)) {
 				continue;
 			}
 
@@ -126,27 +153,25 @@ public final class DefaultContactModel extends AbstractContactModel {
 				}
 			}
 
-			String leavingPersonsActivity = personLeavingContainer.getTrajectory().get(personLeavingContainer.getCurrentPositionInTrajectory()).actType;
-			String otherPersonsActivity = contactPerson.getTrajectory().get(contactPerson.getCurrentPositionInTrajectory()).actType;
+			EpisimPerson.Activity leavingAct = personLeavingContainer.getTrajectory().get(personLeavingContainer.getCurrentPositionInTrajectory());
+			EpisimPerson.Activity otherAct = contactPerson.getTrajectory().get(contactPerson.getCurrentPositionInTrajectory());
+			String leavingPersonsActivity = leavingAct.actType;
+			String otherPersonsActivity = otherAct.actType;
 
-			StringBuilder infectionType = getInfectionType(buffer, container, leavingPersonsActivity, otherPersonsActivity);
+			String infectionType = getInfectionType(container, leavingAct, otherAct);
 
-			double containerEnterTimeOfPersonLeaving = container.getContainerEnteringTime(personLeavingContainer.getPersonId());
-			double containerEnterTimeOfOtherPerson = container.getContainerEnteringTime(contactPerson.getPersonId());
+			double containerEnterTimeOfPersonLeaving = container.getContainerEnteringTime(personLeavingContainer);
+			double containerEnterTimeOfOtherPerson = container.getContainerEnteringTime(contactPerson);
 			double jointTimeInContainer = now - Math.max(containerEnterTimeOfPersonLeaving, containerEnterTimeOfOtherPerson);
 
 			//forbid certain cross-activity interactions, keep track of contacts
 			if (container instanceof InfectionEventHandler.EpisimFacility) {
-				//home can only interact with home, leisure or work
-				if (infectionType.indexOf("home") >= 0 && infectionType.indexOf("leis") == -1 && infectionType.indexOf("work") == -1
-						&& !(leavingPersonsActivity.startsWith("home") && otherPersonsActivity.startsWith("home"))) {
-					continue;
-				} else if (infectionType.indexOf("edu") >= 0 && infectionType.indexOf("work") == -1 && !(leavingPersonsActivity.startsWith("edu") && otherPersonsActivity.startsWith("edu"))) {
-					//edu can only interact with work or edu
+				// rules which activities can interact are defined in the interaction table
+				if (!interactions.mayInteract(leavingAct, otherAct)) {
 					continue;
 				}
 				if (trackingEnabled) {
-					trackContactPerson(personLeavingContainer, contactPerson, now, jointTimeInContainer, infectionType);
+					trackContactPerson(personLeavingContainer, contactPerson, now, jointTimeInContainer, leavingAct, otherAct);
 				}
 
 				// Only a subset of contacts are reported at the moment
@@ -205,9 +230,67 @@ public final class DefaultContactModel extends AbstractContactModel {
 					infectPerson(contactPerson, personLeavingContainer, now, infectionType, container);
 			}
 		}
+	}
+
+	/**
+	 * Draws the next person, which results in the same person as removing all drawn persons from a list and drawing from the rest.
+	 *
+	 * @param n number of persons to draw from
+	 * @param k number of persons already drawn
+	 * @return index of drawn person
+	 */
+	private int drawStable(int n, int k) {
+
+		int index = rnd.nextInt(n - k);
+
+		// map position in the remaining persons to the position in all persons
+		int i = 0;
+		for (; i < k && drawn[i] <= index; i++)
+			index++;
 
-		// Clear cached container
-		otherPersonsInContainer.clear();
+		// keep drawn indices sorted
+		System.arraycopy(drawn, i, drawn, i + 1, k - i);
+		drawn[i] = index;
+
+		return index;
+	}
+
+	/**
+	 * Draws the next person with a partial Fisher-Yates shuffle of the indices 0..n-1.
+	 *
+	 * @param n number of persons to draw from
+	 * @param k number of persons already drawn
+	 * @return index of drawn person
+	 */
+	private int drawShuffled(int n, int k) {
+
+		int j = k + rnd.nextInt(n - k);
+		int index = shuffled(j);
+
+		// position k is used up, its value is moved to j
+		setShuffled(j, shuffled(k));
+
+		return index;
+	}
+
+	private int shuffled(int pos) {
+		for (int i = 0; i < swaps; i++) {
+			if (swapPos[i] == pos)
+				return swapVal[i];
+		}
+		return pos;
+	}
+
+	private void setShuffled(int pos, int value) {
+		for (int i = 0; i < swaps; i++) {
+			if (swapPos[i] == pos) {
+				swapVal[i] = value;
+				return;
+			}
+		}
+		swapPos[swaps] = pos;
+		swapVal[swaps] = value;
+		swaps++;
 	}
 
 
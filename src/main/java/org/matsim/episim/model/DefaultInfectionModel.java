@@ -26,6 +26,10 @@ public final class DefaultInfectionModel implements InfectionModel {
 		this.episimConfig = ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class);
 	}
 
+	@Override
+	public void setIteration(int iteration) {
+		maskModel.setIteration(iteration);
+	}
 
 	@Override
 	public double calcInfectionProbability(EpisimPerson target, EpisimPerson infector, Map<String, Restriction> restrictions,
@@ -21,13 +21,16 @@
 package org.matsim.episim.model;
 
 import com.google.inject.Inject;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.core.config.Config;
 import org.matsim.episim.*;
 
-import java.util.*;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.SplittableRandom;
 
 import static org.matsim.episim.EpisimPerson.DiseaseStatus;
 import static org.matsim.episim.InfectionEventHandler.EpisimFacility;
@@ -50,14 +53,6 @@ public final class DirectContactModel extends AbstractContactModel {
 	 */
 	private final boolean traceSusceptible;
 
-	/**
-	 * This buffer is used to store the infection type.
-	 */
-	private final StringBuilder buffer = new StringBuilder();
-
-	private final Map<EpisimContainer<?>, EpisimPerson> singlePersons = new IdentityHashMap<>();
-	private final Map<EpisimContainer<?>, List<Group>> groups = new IdentityHashMap<>();
-
 	@Inject
 		/*package*/ DirectContactModel(SplittableRandom rnd, Config config, TracingConfigGroup tracingConfig,
 									   EpisimReporting reporting, InfectionModel infectionModel) {
@@ -88,48 +83,58 @@ public final class DirectContactModel extends AbstractContactModel {
 
 	private void notifyEnterContainerGeneralized(EpisimPerson personEnteringContainer, EpisimContainer<?> container, double now) {
 
+		Groups groups = getGroups(container);
+
 		// this can happen because persons are not removed during initialization
-		if (findGroup(container, personEnteringContainer) != null)
+		if (groups.find(personEnteringContainer) != -1)
 			return;
 
 		// for same reason a person currently at home will enter again
-		if (!singlePersons.containsKey(container) || singlePersons.get(container) == personEnteringContainer) {
-			singlePersons.put(container, personEnteringContainer);
+		if (groups.single == null || groups.single == personEnteringContainer) {
+			groups.single = personEnteringContainer;
 		} else {
-			groups.computeIfAbsent(container, k -> new ArrayList<>())
-					.add(Group.of(personEnteringContainer, singlePersons.get(container), now));
-			singlePersons.remove(container);
+			groups.add(personEnteringContainer, groups.single, now);
+			groups.single = null;
 		}
 	}
 
-	private Group findGroup(EpisimContainer<?> container, EpisimPerson person) {
-
-		if (!groups.containsKey(container))
-			return null;
-
-		for (Group group : groups.get(container)) {
-			if (group.contains(person)) {
-				return group;
-			}
+	/**
+	 * Groups of a container, which are stored in the container itself.
+	 */
+	private static Groups getGroups(EpisimContainer<?> container) {
+		Groups groups = container.getContactState();
+		if (groups == null) {
+			groups = new Groups();
+			container.setContactState(groups);
 		}
 
-		return null;
+		return groups;
 	}
 
 	private void infectionDynamicsGeneralized(EpisimPerson personLeavingContainer, EpisimContainer<?> container, double now) {
+		resetRandom(CounterRandom.Purpose.contact, personLeavingContainer, container, now);
+
+		Groups groups = getGroups(container);
+
 		// no infection possible if there is only one person
 		if (iteration == 0 || container.getPersons().size() == 1) {
-			removePersonFromGroups(container, personLeavingContainer, now);
+			removePersonFromGroups(groups, personLeavingContainer, now);
+			return;
+		}
+
+		if (groups.single == personLeavingContainer) {
+			groups.single = null;
 			return;
 		}
 
-		if (singlePersons.get(container) == personLeavingContainer) {
-			singlePersons.remove(container);
+		// nobody in the container can infect or trace the leaving person, or the other way round
+		if (canSkipEvaluation(personLeavingContainer, container, iteration >= trackingAfterDay)) {
+			removePersonFromGroups(groups, personLeavingContainer, now);
 			return;
 		}
 
-		if (!personRelevantForTrackingOrInfectionDynamics(personLeavingContainer, container, getRestrictions(), rnd)) {
-			removePersonFromGroups(container, personLeavingContainer, now);
+		if (!personRelevantForTrackingOrInfectionDynamics(personLeavingContainer, container, rnd)) {
+			removePersonFromGroups(groups, personLeavingContainer, now);
 			// yyyyyy hat in diesem Modell die Konsequenz, dass, wenn jemand zu Hause bleibt, die andere Person alleine rumsitzt.  Somewhat plausible in public
 			// transport; not plausible in restaurant.
 			return;
@@ -138,11 +143,11 @@ public final class DirectContactModel extends AbstractContactModel {
 		// start tracking late as possible because of computational costs
 		boolean trackingEnabled = iteration >= trackingAfterDay;
 
-		Pair<EpisimPerson, Double> group = removePersonFromGroups(container, personLeavingContainer, now);
+		Pair<EpisimPerson, Double> group = removePersonFromGroups(groups, personLeavingContainer, now);
 
 		EpisimPerson contactPerson = group.getKey();
 
-		if (!personRelevantForTrackingOrInfectionDynamics(contactPerson, container, getRestrictions(), rnd)) {
+		if (!personRelevantForTrackingOrInfectionDynamics(contactPerson, container, rnd)) {
 			return;
 		}
 
@@ -161,10 +166,12 @@ public final class DirectContactModel extends AbstractContactModel {
 				&& contactPerson.getDiseaseStatus() == DiseaseStatus.susceptible)
 			return;
 
-		String leavingPersonsActivity = personLeavingContainer.getTrajectory().get(personLeavingContainer.getCurrentPositionInTrajectory()).actType;
-		String otherPersonsActivity = contactPerson.getTrajectory().get(contactPerson.getCurrentPositionInTrajectory()).actType;
+		EpisimPerson.Activity leavingAct = personLeavingContainer.getTrajectory().get(personLeavingContainer.getCurrentPositionInTrajectory());
+		EpisimPerson.Activity otherAct = contactPerson.getTrajectory().get(contactPerson.getCurrentPositionInTrajectory());
+		String leavingPersonsActivity = leavingAct.actType;
+		String otherPersonsActivity = otherAct.actType;
 
-		StringBuilder infectionType = getInfectionType(buffer, container, leavingPersonsActivity, otherPersonsActivity);
+		String infectionType = getInfectionType(container, leavingAct, otherAct);
 
 		// use joint time in group as time
 		double jointTimeInContainer = now - group.getValue();
@@ -177,18 +184,12 @@ public final class DirectContactModel extends AbstractContactModel {
 
 		//forbid certain cross-activity interactions, keep track of contacts
 		if (container instanceof EpisimFacility) {
-			//home can only interact with home, leisure or work
-			if (infectionType.indexOf("home") >= 0 && infectionType.indexOf("leis") == -1 && infectionType.indexOf("work") == -1
-					&& !(leavingPersonsActivity.startsWith("home") && otherPersonsActivity.startsWith("home"))) {
-				// yyyyyy we need to move out of these string convention based rules in code.  kai, aug'20
-				return;
-			} else if (infectionType.indexOf("edu") >= 0 && infectionType.indexOf("work") == -1 && !(leavingPersonsActivity.startsWith("edu") && otherPersonsActivity.startsWith("edu"))) {
-				//edu can only interact with work or edu
-				// yyyyyy we need to move out of these string convention based rules in code.  kai, aug'20
+			// rules which activities can interact are defined in the interaction table
+			if (!interactions.mayInteract(leavingAct, otherAct)) {
 				return;
 			}
 			if (trackingEnabled) {
-				trackContactPerson(personLeavingContainer, contactPerson, now, jointTimeInContainer, infectionType);
+				trackContactPerson(personLeavingContainer, contactPerson, now, jointTimeInContainer, leavingAct, otherAct);
 			}
 
 			// Only a subset of contacts are reported at the moment
@@ -240,67 +241,122 @@ public final class DirectContactModel extends AbstractContactModel {
 	 *
 	 * @return contact person if person was in group.
 	 */
-	private Pair<EpisimPerson, Double> removePersonFromGroups(EpisimContainer<?> container, EpisimPerson personLeavingContainer, double time) {
-		if (singlePersons.get(container) == personLeavingContainer) {
-			singlePersons.remove(container);
+	private Pair<EpisimPerson, Double> removePersonFromGroups(Groups groups, EpisimPerson personLeavingContainer, double time) {
+		if (groups.single == personLeavingContainer) {
+			groups.single = null;
 			return null;
 		} else {
-			Group group = findGroup(container, personLeavingContainer);
+			int slot = groups.find(personLeavingContainer);
 
 			// might happen during init when person leaves first
-			if (group == null)
+			if (slot == -1)
 				return null;
 
 			// other person will be single person
-			EpisimPerson leftOverPerson = group.remove(personLeavingContainer);
-			if (!singlePersons.containsKey(container)) {
-				singlePersons.put(container, leftOverPerson);
+			EpisimPerson leftOverPerson = groups.partner(slot, personLeavingContainer);
+			double groupTime = groups.getTime(slot);
+			groups.remove(slot);
+
+			if (groups.single == null) {
+				groups.single = leftOverPerson;
 			} else {
 
 				// single person and left over person will form a new group
-				groups.get(container)
-						.add(Group.of(leftOverPerson, singlePersons.get(container), time));
-
-				singlePersons.remove(container);
+				groups.add(leftOverPerson, groups.single, time);
+				groups.single = null;
 			}
 
-			groups.get(container).remove(group);
-
-			return Pair.of(leftOverPerson, group.time);
+			return Pair.of(leftOverPerson, groupTime);
 		}
 	}
 
 	/**
-	 * A group of two persons and time when the group was formed.
+	 * Groups of two persons in one container and the time when each group was formed, plus at most one person without group.
+	 * Groups are stored in parallel arrays and indexed by their members, so that they can be found in constant time.
 	 */
-	private static final class Group {
+	static final class Groups {
+
+		@Nullable
+		private EpisimPerson single;
 
-		private final EpisimPerson a;
-		private final EpisimPerson b;
-		private final double time;
+		private EpisimPerson[] a = new EpisimPerson[2];
+		private EpisimPerson[] b = new EpisimPerson[2];
+		private double[] time = new double[2];
+		private int size;
 
-		private Group(EpisimPerson a, EpisimPerson b, double time) {
-			this.a = a;
-			this.b = b;
-			this.time = time;
+		/**
+		 * Slot of the group of each person.
+		 */
+		private final Reference2IntOpenHashMap<EpisimPerson> index = new Reference2IntOpenHashMap<>(4);
+
+		Groups() {
+			index.defaultReturnValue(-1);
 		}
 
-		private static Group of(EpisimPerson a, EpisimPerson b, double time) {
-			return new Group(a, b, time);
+		/**
+		 * Returns the slot of the group containing the person, or -1.
+		 */
+		int find(EpisimPerson person) {
+			return index.getInt(person);
 		}
 
-		public boolean contains(EpisimPerson person) {
-			return a == person || b == person;
+		/**
+		 * Number of groups.
+		 */
+		int size() {
+			return size;
+		}
+
+		/**
+		 * Time when the group in this slot was formed.
+		 */
+		double getTime(int slot) {
+			return time[slot];
+		}
+
+		void add(EpisimPerson p1, EpisimPerson p2, double now) {
+			if (size == a.length) {
+				a = Arrays.copyOf(a, size * 2);
+				b = Arrays.copyOf(b, size * 2);
+				time = Arrays.copyOf(time, size * 2);
+			}
+
+			a[size] = p1;
+			b[size] = p2;
+			time[size] = now;
+			index.put(p1, size);
+			index.put(p2, size);
+			size++;
 		}
 
 		/**
 		 * Return the left over person.
 		 */
-		public EpisimPerson remove(EpisimPerson p) {
-			if (p == a) return b;
-			else if (p == b) return a;
+		EpisimPerson partner(int slot, EpisimPerson p) {
+			if (p == a[slot]) return b[slot];
+			else if (p == b[slot]) return a[slot];
 			throw new IllegalStateException("Leaving person not in group.");
 		}
+
+		/**
+		 * Removes a group by moving the last group into its slot.
+		 */
+		void remove(int slot) {
+			index.removeInt(a[slot]);
+			index.removeInt(b[slot]);
+
+			int last = --size;
+			if (slot != last) {
+				a[slot] = a[last];
+				b[slot] = b[last];
+				time[slot] = time[last];
+				index.put(a[slot], slot);
+				index.put(b[slot], slot);
+			}
+
+			a[last] = null;
+			b[last] = null;
+		}
 	}
 
 }
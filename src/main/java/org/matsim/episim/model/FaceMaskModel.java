@@ -9,6 +9,13 @@ import org.matsim.episim.policy.Restriction;
  */
 public interface FaceMaskModel {
 
+	/**
+	 * Called at the start of an iteration, after the restrictions have been updated.
+	 *
+	 * @param iteration current iteration / day
+	 */
+	default void setIteration(int iteration) {}
+
 	/**
 	 * Return the mask a person is wearing for specific activity.
 	 */
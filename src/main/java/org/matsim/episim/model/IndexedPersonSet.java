@@ -0,0 +1,94 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim.model;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import org.matsim.episim.EpisimPerson;
+
+import java.util.Arrays;
+
+/**
+ * Set of persons with constant time insertion, removal and access by index, which is needed to draw random members.
+ * Removal moves the last person into the free position, so the order is not stable.
+ */
+final class IndexedPersonSet {
+
+	private EpisimPerson[] persons = new EpisimPerson[4];
+	private int size;
+
+	/**
+	 * Position of each person in {@link #persons}.
+	 */
+	private final Reference2IntOpenHashMap<EpisimPerson> index = new Reference2IntOpenHashMap<>(4);
+
+	IndexedPersonSet() {
+		index.defaultReturnValue(-1);
+	}
+
+	/**
+	 * Adds a person, if not already contained.
+	 */
+	void add(EpisimPerson person) {
+		if (index.containsKey(person))
+			return;
+
+		if (size == persons.length)
+			persons = Arrays.copyOf(persons, size * 2);
+
+		persons[size] = person;
+		index.put(person, size++);
+	}
+
+	/**
+	 * Removes a person.
+	 *
+	 * @return whether the person was contained
+	 */
+	boolean remove(EpisimPerson person) {
+		int i = index.removeInt(person);
+		if (i == -1)
+			return false;
+
+		EpisimPerson last = persons[--size];
+		persons[size] = null;
+		if (i != size) {
+			persons[i] = last;
+			index.put(last, i);
+		}
+
+		return true;
+	}
+
+	boolean contains(EpisimPerson person) {
+		return index.containsKey(person);
+	}
+
+	EpisimPerson get(int i) {
+		if (i >= size)
+			throw new IndexOutOfBoundsException("Index " + i + " out of bounds for size " + size);
+
+		return persons[i];
+	}
+
+	int size() {
+		return size;
+	}
+}
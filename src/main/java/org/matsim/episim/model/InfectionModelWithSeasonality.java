@@ -32,6 +32,7 @@ public final class InfectionModelWithSeasonality implements InfectionModel {
 	@Override
 	public void setIteration(int iteration) {
 		this.iteration = iteration;
+		this.maskModel.setIteration(iteration);
 	}
 
 	@Override
@@ -10,14 +10,11 @@ import org.matsim.episim.policy.Restriction;
 import java.util.Map;
 
 /**
- * Extension of the {@link DefaultInfectionModel}, with additional parameter {@link #SUSCEPTIBILITY} and {@link #VIRAL_LOAD},
+ * Extension of the {@link DefaultInfectionModel}, with additional parameter {@link EpisimPerson#SUSCEPTIBILITY} and {@link EpisimPerson#VIRAL_LOAD},
  *  which are read from each person individually.
  */
 public final class InfectionModelWithViralLoad implements InfectionModel {
 
-	public static final String SUSCEPTIBILITY = "susceptibility";
-	public static final String VIRAL_LOAD = "viralLoad";
-
 	private final FaceMaskModel maskModel;
 	private final EpisimConfigGroup episimConfig;
 
@@ -27,6 +24,10 @@ public final class InfectionModelWithViralLoad implements InfectionModel {
 		this.episimConfig = ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class);
 	}
 
+	@Override
+	public void setIteration(int iteration) {
+		maskModel.setIteration(iteration);
+	}
 
 	@Override
 	public double calcInfectionProbability(EpisimPerson target, EpisimPerson infector, Map<String, Restriction> restrictions,
@@ -39,8 +40,12 @@ public final class InfectionModelWithViralLoad implements InfectionModel {
 		// note that for 1pct runs, calibParam is of the order of one, which means that for typical times of 100sec or more, exp( - 1 * 1 * 100 ) \approx 0, and
 		// thus the infection proba becomes 1.  Which also means that changes in contactIntensity has no effect.  kai, mar'20
 
-		double susceptibility = (double) target.getAttributes().getAttribute(SUSCEPTIBILITY);
-		double infectability = (double) infector.getAttributes().getAttribute(VIRAL_LOAD);
+		double susceptibility = target.getSusceptibility();
+		double infectability = infector.getViralLoad();
+
+		if (Double.isNaN(susceptibility) || Double.isNaN(infectability))
+			throw new IllegalStateException("Attributes " + EpisimPerson.SUSCEPTIBILITY + " and " + EpisimPerson.VIRAL_LOAD + " are required for persons " +
+					target.getPersonId() + " and " + infector.getPersonId());
 
 		return 1 - Math.exp(-episimConfig.getCalibrationParameter() * susceptibility * infectability * contactIntensity * jointTimeInContainer * ciCorrection
 				* maskModel.getWornMask(infector, act2, restrictions.get(act2.getContainerName())).shedding
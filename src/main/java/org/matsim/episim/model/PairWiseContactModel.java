@@ -26,7 +26,7 @@ import org.apache.logging.log4j.Logger;
 import org.matsim.core.config.Config;
 import org.matsim.episim.*;
 
-import java.util.*;
+import java.util.SplittableRandom;
 
 import static org.matsim.episim.EpisimPerson.DiseaseStatus;
 import static org.matsim.episim.InfectionEventHandler.EpisimFacility;
@@ -49,18 +49,6 @@ public final class PairWiseContactModel extends AbstractContactModel {
 	 */
 	private final boolean traceSusceptible;
 
-	/**
-	 * This buffer is used to store the infection type.
-	 */
-	private final StringBuilder buffer = new StringBuilder();
-
-	/**
-	 * Reusable list for contact persons.
-	 */
-	private final List<EpisimPerson> contactPersons = new ArrayList<>();
-
-	private final Map<EpisimContainer<?>, Set<EpisimPerson>> contacts = new IdentityHashMap<>();
-
 	@Inject
 		/*package*/ PairWiseContactModel(SplittableRandom rnd, Config config, TracingConfigGroup tracingConfig,
 										 EpisimReporting reporting, InfectionModel infectionModel) {
@@ -90,42 +78,57 @@ public final class PairWiseContactModel extends AbstractContactModel {
 	}
 
 	private void notifyEnterContainerGeneralized(EpisimPerson personEnteringContainer, EpisimContainer<?> container, double now) {
+		resetRandom(CounterRandom.Purpose.enter, personEnteringContainer, container, now);
+
 		try {
-			if (checkPersonInContainer(personEnteringContainer, container, getRestrictions(), rnd)) {
-				contacts.computeIfAbsent(container, (k) -> new HashSet<>()).add(personEnteringContainer);
+			if (checkPersonInContainer(personEnteringContainer, container, rnd)) {
+				getContacts(container).add(personEnteringContainer);
 			}
 		} catch (IndexOutOfBoundsException | NullPointerException e) {
 			// these exceptions happen during init and are ignored
 		}
 	}
 
+	/**
+	 * Persons in the container that are still available as contact, which are stored in the container itself.
+	 */
+	private static IndexedPersonSet getContacts(EpisimContainer<?> container) {
+		IndexedPersonSet contacts = container.getContactState();
+		if (contacts == null) {
+			contacts = new IndexedPersonSet();
+			container.setContactState(contacts);
+		}
+
+		return contacts;
+	}
+
 	private void infectionDynamicsGeneralized(EpisimPerson personLeavingContainer, EpisimContainer<?> container, double now) {
+		resetRandom(CounterRandom.Purpose.contact, personLeavingContainer, container, now);
+
+		IndexedPersonSet contacts = container.getContactState();
+
 		// no infection possible if there is only one person
 		if (iteration == 0 || container.getPersons().size() == 1) {
 
-			if (contacts.containsKey(container))
-				contacts.get(container).remove(personLeavingContainer);
+			if (contacts != null)
+				contacts.remove(personLeavingContainer);
 
 			return;
 		}
 
 		// person leaving was already a contact, or never present
-		if (!contacts.containsKey(container) || !contacts.get(container).contains(personLeavingContainer)) {
+		if (contacts == null || !contacts.remove(personLeavingContainer)) {
 			return;
 		}
 
 		// start tracking late as possible because of computational costs
 		boolean trackingEnabled = iteration >= trackingAfterDay;
 
-		contacts.get(container).remove(personLeavingContainer);
-		contactPersons.addAll(contacts.get(container));
-
-		if (contactPersons.size() == 0)
+		if (contacts.size() == 0)
 			return;
 
-		EpisimPerson contactPerson = contactPersons.get(rnd.nextInt(contactPersons.size()));
-		contacts.get(container).remove(contactPerson);
-		contactPersons.clear();
+		EpisimPerson contactPerson = contacts.get(rnd.nextInt(contacts.size()));
+		contacts.remove(contactPerson);
 
 		if (!personHasRelevantStatus(personLeavingContainer) || !personHasRelevantStatus(contactPerson)) {
 			return;
@@ -146,29 +149,25 @@ public final class PairWiseContactModel extends AbstractContactModel {
 				&& contactPerson.getDiseaseStatus() == DiseaseStatus.susceptible)
 			return;
 
-		String leavingPersonsActivity = personLeavingContainer.getTrajectory().get(personLeavingContainer.getCurrentPositionInTrajectory()).actType;
-		String otherPersonsActivity = contactPerson.getTrajectory().get(contactPerson.getCurrentPositionInTrajectory()).actType;
+		EpisimPerson.Activity leavingAct = personLeavingContainer.getTrajectory().get(personLeavingContainer.getCurrentPositionInTrajectory());
+		EpisimPerson.Activity otherAct = contactPerson.getTrajectory().get(contactPerson.getCurrentPositionInTrajectory());
+		String leavingPersonsActivity = leavingAct.actType;
+		String otherPersonsActivity = otherAct.actType;
 
-		StringBuilder infectionType = getInfectionType(buffer, container, leavingPersonsActivity, otherPersonsActivity);
+		String infectionType = getInfectionType(container, leavingAct, otherAct);
 
-		double containerEnterTimeOfPersonLeaving = container.getContainerEnteringTime(personLeavingContainer.getPersonId());
-		double containerEnterTimeOfOtherPerson = container.getContainerEnteringTime(contactPerson.getPersonId());
+		double containerEnterTimeOfPersonLeaving = container.getContainerEnteringTime(personLeavingContainer);
+		double containerEnterTimeOfOtherPerson = container.getContainerEnteringTime(contactPerson);
 		double jointTimeInContainer = now - Math.max(containerEnterTimeOfPersonLeaving, containerEnterTimeOfOtherPerson);
 
 		//forbid certain cross-activity interactions, keep track of contacts
 		if (container instanceof EpisimFacility) {
-			//home can only interact with home, leisure or work
-			if (infectionType.indexOf("home") >= 0 && infectionType.indexOf("leis") == -1 && infectionType.indexOf("work") == -1
-					&& !(leavingPersonsActivity.startsWith("home") && otherPersonsActivity.startsWith("home"))) {
-				// yyyyyy we need to move out of these string convention based rules in code.  kai, aug'20
-				return;
-			} else if (infectionType.indexOf("edu") >= 0 && infectionType.indexOf("work") == -1 && !(leavingPersonsActivity.startsWith("edu") && otherPersonsActivity.startsWith("edu"))) {
-				//edu can only interact with work or edu
-				// yyyyyy we need to move out of these string convention based rules in code.  kai, aug'20
+			// rules which activities can interact are defined in the interaction table
+			if (!interactions.mayInteract(leavingAct, otherAct)) {
 				return;
 			}
 			if (trackingEnabled) {
-				trackContactPerson(personLeavingContainer, contactPerson, now, jointTimeInContainer, infectionType);
+				trackContactPerson(personLeavingContainer, contactPerson, now, jointTimeInContainer, leavingAct, otherAct);
 			}
 
 			// Only a subset of contacts are reported at the moment
@@ -0,0 +1,65 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim.model;
+
+import com.google.inject.Inject;
+import org.matsim.episim.EpisimConfigGroup;
+import org.matsim.episim.EpisimPerson;
+import org.matsim.episim.policy.Restriction;
+
+import java.util.SplittableRandom;
+
+/**
+ * Face mask model that decides the mask of a person once per visit of a container and day, so that the same mask is worn towards all contacts
+ * of this visit. The decision is stored in the person and drawn again after the restrictions have been updated for the next day.
+ * Compared to the {@link DefaultFaceMaskModel}, mask usage is only evaluated and random numbers are only drawn once per visit.
+ */
+public class PerVisitFaceMaskModel implements FaceMaskModel {
+
+	private final SplittableRandom rnd;
+	private int iteration;
+
+	@Inject
+	public PerVisitFaceMaskModel(SplittableRandom rnd) {
+		this.rnd = rnd;
+	}
+
+	@Override
+	public void setIteration(int iteration) {
+		this.iteration = iteration;
+	}
+
+	@Override
+	public FaceMask getWornMask(EpisimPerson person, EpisimConfigGroup.InfectionParams act, Restriction restriction) {
+
+		// persons not in a container have no visit to store the mask for
+		if (!person.isInContainer())
+			return restriction.determineMask(rnd);
+
+		FaceMask mask = person.getVisitMask(iteration);
+		if (mask == null) {
+			mask = restriction.determineMask(rnd);
+			person.setVisitMask(iteration, mask);
+		}
+
+		return mask;
+	}
+}
@@ -8,6 +8,7 @@ import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
+import org.matsim.episim.CounterRandom;
 import org.matsim.episim.EpisimConfigGroup;
 import org.matsim.episim.EpisimPerson;
 import org.matsim.episim.EpisimUtils;
@@ -27,6 +28,7 @@ public class RandomInitialInfections implements InitialInfectionHandler {
 
 	private final EpisimConfigGroup episimConfig;
 	private final SplittableRandom rnd;
+	private final CounterRandom counterRandom;
 
 	private int initialInfectionsLeft;
 
@@ -34,6 +36,7 @@ public class RandomInitialInfections implements InitialInfectionHandler {
 	public RandomInitialInfections(Config config, SplittableRandom rnd) {
 		this.episimConfig = ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class);
 		this.rnd = rnd;
+		this.counterRandom = new CounterRandom(config.global().getRandomSeed(), episimConfig);
 	}
 
 	@Override
@@ -53,9 +56,9 @@ public class RandomInitialInfections implements InitialInfectionHandler {
 		int numInfections = EpisimUtils.findValidEntry(episimConfig.getInfections_pers_per_day(), 1, date);
 
 		List<EpisimPerson> candidates = persons.values().stream()
-				.filter(p -> district == null || district.equals(p.getAttributes().getAttribute("district")))
-				.filter(p -> lowerAgeBoundaryForInitInfections == -1 || (int) p.getAttributes().getAttribute("microm:modeled:age") >= lowerAgeBoundaryForInitInfections)
-				.filter(p -> upperAgeBoundaryForInitInfections == -1 || (int) p.getAttributes().getAttribute("microm:modeled:age") <= upperAgeBoundaryForInitInfections)
+				.filter(p -> district == null || district.equals(p.getDistrict()))
+				.filter(p -> lowerAgeBoundaryForInitInfections == -1 || p.getAge() >= lowerAgeBoundaryForInitInfections)
+				.filter(p -> upperAgeBoundaryForInitInfections == -1 || (p.getAge() >= 0 && p.getAge() <= upperAgeBoundaryForInitInfections))
 				.filter(p -> p.getDiseaseStatus() == EpisimPerson.DiseaseStatus.susceptible)
 				.collect(Collectors.toList());
 
@@ -64,6 +67,7 @@ public class RandomInitialInfections implements InitialInfectionHandler {
 			candidates = Lists.newArrayList(persons.values());
 		}
 
+		counterRandom.reset(rnd, CounterRandom.Purpose.initialInfection, iteration);
 		while (numInfections > 0 && initialInfectionsLeft > 0) {
 			EpisimPerson randomPerson = candidates.get(rnd.nextInt(candidates.size()));
 			if (randomPerson.getDiseaseStatus() == EpisimPerson.DiseaseStatus.susceptible) {
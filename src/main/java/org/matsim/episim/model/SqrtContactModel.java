@@ -28,6 +28,7 @@ import org.matsim.core.gbl.Gbl;
 import org.matsim.episim.*;
 
 import java.util.SplittableRandom;
+import java.util.function.UnaryOperator;
 
 import static org.matsim.episim.EpisimPerson.DiseaseStatus;
 
@@ -44,11 +45,6 @@ public final class SqrtContactModel extends AbstractContactModel {
 	 */
 	private final int trackingAfterDay;
 
-	/**
-	 * This buffer is used to store the infection type.
-	 */
-	private final StringBuilder buffer = new StringBuilder();
-
 	@Inject
 	/* package */
 	SqrtContactModel( SplittableRandom rnd, Config config, TracingConfigGroup tracingConfig,
@@ -69,19 +65,31 @@ public final class SqrtContactModel extends AbstractContactModel {
 	}
 
 	private void infectionDynamicsGeneralized(EpisimPerson personLeavingContainer, EpisimContainer<?> container, double now) {
+		resetRandom(CounterRandom.Purpose.contact, personLeavingContainer, container, now);
 
 		// no infection possible if there is only one person
 		if (iteration == 0 || container.getPersons().size() == 1) {
 			return;
 		}
 
-		if (!personRelevantForTrackingOrInfectionDynamics(personLeavingContainer, container, getRestrictions(), rnd)) {
+		// nobody in the container can infect or trace the leaving person, or the other way round
+		if (canSkipEvaluation(personLeavingContainer, container, iteration >= trackingAfterDay)) {
+			return;
+		}
+
+		if (!personRelevantForTrackingOrInfectionDynamics(personLeavingContainer, container, rnd)) {
 			return;
 		}
 
 		// start tracking late as possible because of computational costs
 		boolean trackingEnabled = iteration >= trackingAfterDay;
 
+		if (analytical && !trackingEnabled) {
+			double contactProbability = Math.min(1, episimConfig.getMaxContacts() / Math.sqrt(container.getMaxGroupSize() - 1));
+			infectAnalytical(personLeavingContainer, container, now, contactProbability, UnaryOperator.identity(), UnaryOperator.identity());
+			return;
+		}
+
 		EpisimConfigGroup.InfectionParams leavingParams = null;
 
 		for( EpisimPerson contactPerson : container.getPersons() ){
@@ -96,7 +104,7 @@ public final class SqrtContactModel extends AbstractContactModel {
 			// since every pair of persons interacts only once, there is now a constant interaction probability per pair
 			// if we want superspreading events, then maxInteractions needs to be much larger than 3 or 10.
 
-			if (!personRelevantForTrackingOrInfectionDynamics(contactPerson, container, getRestrictions(), rnd)) {
+			if (!personRelevantForTrackingOrInfectionDynamics(contactPerson, container, rnd)) {
 				continue;
 			}
 
@@ -113,27 +121,25 @@ public final class SqrtContactModel extends AbstractContactModel {
 				}
 			}
 
-			String leavingPersonsActivity = personLeavingContainer.getTrajectory().get(personLeavingContainer.getCurrentPositionInTrajectory()).actType;
-			String otherPersonsActivity = contactPerson.getTrajectory().get(contactPerson.getCurrentPositionInTrajectory()).actType;
+			EpisimPerson.Activity leavingAct = personLeavingContainer.getTrajectory().get(personLeavingContainer.getCurrentPositionInTrajectory());
+			EpisimPerson.Activity otherAct = contactPerson.getTrajectory().get(contactPerson.getCurrentPositionInTrajectory());
+			String leavingPersonsActivity = leavingAct.actType;
+			String otherPersonsActivity = otherAct.actType;
 
-			StringBuilder infectionType = getInfectionType(buffer, container, leavingPersonsActivity, otherPersonsActivity);
+			String infectionType = getInfectionType(container, leavingAct, otherAct);
 
-			double containerEnterTimeOfPersonLeaving = container.getContainerEnteringTime(personLeavingContainer.getPersonId());
-			double containerEnterTimeOfOtherPerson = container.getContainerEnteringTime(contactPerson.getPersonId());
+			double containerEnterTimeOfPersonLeaving = container.getContainerEnteringTime(personLeavingContainer);
+			double containerEnterTimeOfOtherPerson = container.getContainerEnteringTime(contactPerson);
 			double jointTimeInContainer = now - Math.max(containerEnterTimeOfPersonLeaving, containerEnterTimeOfOtherPerson);
 
 			//forbid certain cross-activity interactions, keep track of contacts
 			if (container instanceof InfectionEventHandler.EpisimFacility) {
-				//home can only interact with home, leisure or work
-				if (infectionType.indexOf("home") >= 0 && infectionType.indexOf("leis") == -1 && infectionType.indexOf("work") == -1
-						&& !(leavingPersonsActivity.startsWith("home") && otherPersonsActivity.startsWith("home"))) {
-					continue;
-				} else if (infectionType.indexOf("edu") >= 0 && infectionType.indexOf("work") == -1 && !(leavingPersonsActivity.startsWith("edu") && otherPersonsActivity.startsWith("edu"))) {
-					//edu can only interact with work or edu
+				// rules which activities can interact are defined in the interaction table
+				if (!interactions.mayInteract(leavingAct, otherAct)) {
 					continue;
 				}
 				if (trackingEnabled) {
-					trackContactPerson(personLeavingContainer, contactPerson, now, jointTimeInContainer, infectionType);
+					trackContactPerson(personLeavingContainer, contactPerson, now, jointTimeInContainer, leavingAct, otherAct);
 				}
 
 				// Only a subset of contacts are reported at the moment
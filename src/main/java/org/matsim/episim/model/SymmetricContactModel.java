@@ -47,11 +47,6 @@ public final class SymmetricContactModel extends AbstractContactModel {
 	 */
 	private final boolean traceSusceptible;
 
-	/**
-	 * This buffer is used to store the infection type.
-	 */
-	private final StringBuilder buffer = new StringBuilder();
-
 	@Inject
 		/* package */
 	SymmetricContactModel(SplittableRandom rnd, Config config, TracingConfigGroup tracingConfig,
@@ -73,19 +68,38 @@ public final class SymmetricContactModel extends AbstractContactModel {
 	}
 
 	private void infectionDynamicsGeneralized(EpisimPerson personLeavingContainer, EpisimContainer<?> container, double now) {
+		resetRandom(CounterRandom.Purpose.contact, personLeavingContainer, container, now);
 
 		// no infection possible if there is only one person
 		if (iteration == 0 || container.getPersons().size() == 1) {
 			return;
 		}
 
-		if (!personRelevantForTrackingOrInfectionDynamics(personLeavingContainer, container, getRestrictions(), rnd)) {
+		// nobody in the container can infect or trace the leaving person, or the other way round
+		if (canSkipEvaluation(personLeavingContainer, container, iteration >= trackingAfterDay)) {
+			return;
+		}
+
+		if (!personRelevantForTrackingOrInfectionDynamics(personLeavingContainer, container, rnd)) {
 			return;
 		}
 
 		// start tracking late as possible because of computational costs
 		boolean trackingEnabled = iteration >= trackingAfterDay;
 
+		if (analytical && !trackingEnabled) {
+			int maxPersonsInContainer = (int) (container.getMaxGroupSize() * episimConfig.getSampleSize());
+			if (container instanceof InfectionEventHandler.EpisimVehicle && container.getTypicalCapacity() > -1)
+				maxPersonsInContainer = (int) (container.getTypicalCapacity() * episimConfig.getSampleSize());
+
+			int maxPersons = maxPersonsInContainer;
+			double nSpacesPerFacility = container.getNumSpaces();
+			infectAnalytical(personLeavingContainer, container, now, Math.min(1, 1. / nSpacesPerFacility),
+					p -> p.copy(p.getContactIntensity() / (maxPersons / p.getSpacesPerFacility())),
+					p -> p.copy(p.getContactIntensity() / (maxPersons / nSpacesPerFacility)));
+			return;
+		}
+
 		EpisimConfigGroup.InfectionParams leavingParams = null;
 
 		for (EpisimPerson contactPerson : container.getPersons()) {
@@ -128,7 +142,7 @@ public final class SymmetricContactModel extends AbstractContactModel {
 				continue;
 			}
 
-			if (!personRelevantForTrackingOrInfectionDynamics(contactPerson, container, getRestrictions(), rnd)) {
+			if (!personRelevantForTrackingOrInfectionDynamics(contactPerson, container, rnd)) {
 				continue;
 			}
 
@@ -147,29 +161,25 @@ public final class SymmetricContactModel extends AbstractContactModel {
 					&& contactPerson.getDiseaseStatus() == DiseaseStatus.susceptible)
 				continue;
 
-			String leavingPersonsActivity = personLeavingContainer.getTrajectory().get(personLeavingContainer.getCurrentPositionInTrajectory()).actType;
-			String otherPersonsActivity = contactPerson.getTrajectory().get(contactPerson.getCurrentPositionInTrajectory()).actType;
+			EpisimPerson.Activity leavingAct = personLeavingContainer.getTrajectory().get(personLeavingContainer.getCurrentPositionInTrajectory());
+			EpisimPerson.Activity otherAct = contactPerson.getTrajectory().get(contactPerson.getCurrentPositionInTrajectory());
+			String leavingPersonsActivity = leavingAct.actType;
+			String otherPersonsActivity = otherAct.actType;
 
-			StringBuilder infectionType = getInfectionType(buffer, container, leavingPersonsActivity, otherPersonsActivity);
+			String infectionType = getInfectionType(container, leavingAct, otherAct);
 
-			double containerEnterTimeOfPersonLeaving = container.getContainerEnteringTime(personLeavingContainer.getPersonId());
-			double containerEnterTimeOfOtherPerson = container.getContainerEnteringTime(contactPerson.getPersonId());
+			double containerEnterTimeOfPersonLeaving = container.getContainerEnteringTime(personLeavingContainer);
+			double containerEnterTimeOfOtherPerson = container.getContainerEnteringTime(contactPerson);
 			double jointTimeInContainer = now - Math.max(containerEnterTimeOfPersonLeaving, containerEnterTimeOfOtherPerson);
 
 			//forbid certain cross-activity interactions, keep track of contacts
 			if (container instanceof InfectionEventHandler.EpisimFacility) {
-				//home can only interact with home, leisure or work
-				if (infectionType.indexOf("home") >= 0 && infectionType.indexOf("leis") == -1 && infectionType.indexOf("work") == -1
-						&& !(leavingPersonsActivity.startsWith("home") && otherPersonsActivity.startsWith("home"))) {
-					// yyyyyy we need to move out of these string convention based rules in code.  kai, aug'20
-					continue;
-				} else if (infectionType.indexOf("edu") >= 0 && infectionType.indexOf("work") == -1 && !(leavingPersonsActivity.startsWith("edu") && otherPersonsActivity.startsWith("edu"))) {
-					//edu can only interact with work or edu
-					// yyyyyy we need to move out of these string convention based rules in code.  kai, aug'20
+				// rules which activities can interact are defined in the interaction table
+				if (!interactions.mayInteract(leavingAct, otherAct)) {
 					continue;
 				}
 				if (trackingEnabled) {
-					trackContactPerson(personLeavingContainer, contactPerson, now, jointTimeInContainer, infectionType);
+					trackContactPerson(personLeavingContainer, contactPerson, now, jointTimeInContainer, leavingAct, otherAct);
 				}
 
 				// Only a subset of contacts are reported at the moment
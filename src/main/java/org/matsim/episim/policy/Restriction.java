@@ -376,6 +376,14 @@ public final class Restriction {
 		return closed.contains(containerId);
 	}
 
+	/**
+	 * Ids of closed facilities, null if there are none.
+	 */
+	@Nullable
+	public Set<Id<ActivityFacility>> getClosed() {
+		return closed;
+	}
+
 	@Nullable
 	public List<ClosingHours> getClosingHours() {
 		return closingHours;
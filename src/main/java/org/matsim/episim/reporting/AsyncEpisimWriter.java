@@ -3,6 +3,7 @@ package org.matsim.episim.reporting;
 import com.lmax.disruptor.EventHandler;
 import com.lmax.disruptor.EventTranslatorThreeArg;
 import com.lmax.disruptor.EventTranslatorTwoArg;
+import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.SleepingWaitStrategy;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
@@ -11,13 +12,22 @@ import com.lmax.disruptor.util.Util;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.events.Event;
+import org.matsim.episim.events.BinaryEventsWriter;
+import org.matsim.episim.events.EpisimContactEvent;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * Overwrites the default episim writer to do all IO in an extra thread using the {@link Disruptor} library.
+ * <p>
+ * Infection rows and contact events are published as indices into the preallocated slots of the ring buffer.
+ * Ids, events and strings are only resolved on the writing thread, so that the simulation thread does not allocate any objects for them.
  */
 public final class AsyncEpisimWriter extends EpisimWriter implements EventHandler<AsyncEpisimWriter.LogEvent>,
 		EventTranslatorThreeArg<AsyncEpisimWriter.LogEvent, Writer, Event, Double> {
@@ -26,6 +36,12 @@ public final class AsyncEpisimWriter extends EpisimWriter implements EventHandle
 	private final Disruptor<LogEvent> disruptor;
 	private final StringEventTranslator translator = new StringEventTranslator();
 	private final StringArrayEventTranslator arrayTranslator = new StringArrayEventTranslator();
+	private final RingBuffer<LogEvent> ringBuffer;
+
+	/**
+	 * Writers with infection rows that are flushed at the end of a batch.
+	 */
+	private final Set<Writer> unflushed = Collections.newSetFromMap(new IdentityHashMap<>());
 
 	/**
 	 * Constructor.
@@ -42,6 +58,7 @@ public final class AsyncEpisimWriter extends EpisimWriter implements EventHandle
 
 		// Connect the handler
 		disruptor.handleEventsWith(this);
+		ringBuffer = disruptor.getRingBuffer();
 
 		log.info("Using async writer with producer={}, bufferSize={}", numProducer, bufferSize);
 
@@ -73,18 +90,161 @@ public final class AsyncEpisimWriter extends EpisimWriter implements EventHandle
 		disruptor.publishEvent(translator, writer, null, true);
 	}
 
+	@Override
+	public void flush(BufferedWriter writer) {
+		CountDownLatch done = new CountDownLatch(1);
+		long seq = ringBuffer.next();
+		try {
+			LogEvent e = ringBuffer.get(seq);
+			e.kind = LogEvent.FLUSH;
+			e.writer = writer;
+			e.done = done;
+		} finally {
+			ringBuffer.publish(seq);
+		}
+
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while flushing", e);
+		}
+	}
+
+	@Override
+	public void append(BinaryEventsWriter writer, Event event, double correctedTime) {
+		long seq = ringBuffer.next();
+		try {
+			LogEvent e = ringBuffer.get(seq);
+			e.kind = LogEvent.EVENT;
+			e.binary = writer;
+			e.event = event;
+			e.correctedTime = correctedTime;
+		} finally {
+			ringBuffer.publish(seq);
+		}
+	}
+
+	@Override
+	public void close(BinaryEventsWriter writer) {
+		long seq = ringBuffer.next();
+		try {
+			LogEvent e = ringBuffer.get(seq);
+			e.binary = writer;
+			e.close = true;
+		} finally {
+			ringBuffer.publish(seq);
+		}
+	}
+
+	@Override
+	public void appendInfection(BufferedWriter writer, double time, int infector, int infected, int infectionType,
+								String date, int groupSize, int container) {
+		long seq = ringBuffer.next();
+		try {
+			LogEvent e = ringBuffer.get(seq);
+			e.kind = LogEvent.INFECTION;
+			e.writer = writer;
+			e.time = time;
+			e.person = infected;
+			e.other = infector;
+			e.type = infectionType;
+			e.date = date;
+			e.groupSize = groupSize;
+			e.container = container;
+		} finally {
+			ringBuffer.publish(seq);
+		}
+	}
+
+	@Override
+	public void appendContact(BufferedWriter writer, double time, int person, int contactPerson, int container,
+							  int actType, double duration, int groupSize, double correctedTime) {
+		publishContact(writer, null, time, person, contactPerson, container, actType, duration, groupSize, correctedTime);
+	}
+
+	@Override
+	public void appendContact(BinaryEventsWriter writer, double time, int person, int contactPerson, int container,
+							  int actType, double duration, int groupSize, double correctedTime) {
+		publishContact(null, writer, time, person, contactPerson, container, actType, duration, groupSize, correctedTime);
+	}
+
+	private void publishContact(Writer writer, BinaryEventsWriter binary, double time, int person, int contactPerson,
+								int container, int actType, double duration, int groupSize, double correctedTime) {
+		long seq = ringBuffer.next();
+		try {
+			LogEvent e = ringBuffer.get(seq);
+			e.kind = LogEvent.CONTACT;
+			e.writer = writer;
+			e.binary = binary;
+			e.time = time;
+			e.person = person;
+			e.other = contactPerson;
+			e.container = container;
+			e.type = actType;
+			e.duration = duration;
+			e.groupSize = groupSize;
+			e.correctedTime = correctedTime;
+		} finally {
+			ringBuffer.publish(seq);
+		}
+	}
+
 	@Override
 	public void onEvent(LogEvent event, long sequence, boolean endOfBatch) throws Exception {
 
-		if (event.close) {
-			event.writer.close();
-		} else {
-			event.writer.append(event.content);
-			if (event.flush)
-				event.writer.flush();
+		switch (event.kind) {
+			case LogEvent.INFECTION:
+				writeInfection(event.content, event.time, event.other, event.person, event.type, event.date, event.groupSize, event.container);
+				event.writer.append(event.content);
+				unflushed.add(event.writer);
+				break;
+			case LogEvent.CONTACT:
+				EpisimContactEvent contact = createContact(event.time, event.person, event.other, event.container, event.type,
+						event.duration, event.groupSize);
+				if (event.binary != null)
+					event.binary.append(contact, event.correctedTime);
+				else {
+					EpisimWriter.writeEvent(event.content, contact, event.correctedTime);
+					event.writer.append(event.content);
+				}
+				break;
+			case LogEvent.EVENT:
+				// events are immutable and encoded only on this thread
+				event.binary.append(event.event, event.correctedTime);
+				break;
+			case LogEvent.FLUSH:
+				// all previous slots have been processed at this point
+				try {
+					unflushed.remove(event.writer);
+					event.writer.flush();
+				} finally {
+					event.done.countDown();
+				}
+				break;
+			default:
+				if (event.close) {
+					if (event.binary != null)
+						event.binary.close();
+					else {
+						unflushed.remove(event.writer);
+						event.writer.close();
+					}
+				} else {
+					event.writer.append(event.content);
+					if (event.flush)
+						event.writer.flush();
+				}
 		}
 
 		event.reset();
+
+		if (endOfBatch && !unflushed.isEmpty()) {
+			for (Writer writer : unflushed)
+				writer.flush();
+
+			unflushed.clear();
+		}
 	}
 
 	@Override
@@ -108,9 +268,38 @@ public final class AsyncEpisimWriter extends EpisimWriter implements EventHandle
 		private boolean close = false;
 		private boolean flush = true;
 
+		private static final byte TEXT = 0;
+		private static final byte EVENT = 1;
+		private static final byte INFECTION = 2;
+		private static final byte CONTACT = 3;
+		private static final byte FLUSH = 4;
+
+		/**
+		 * What this slot contains, plain text by default.
+		 */
+		private byte kind = TEXT;
+
+		private BinaryEventsWriter binary;
+		private Event event;
+		private double time;
+		private double correctedTime;
+		private int person;
+		private int other;
+		private int container;
+		private int type;
+		private String date;
+		private double duration;
+		private int groupSize;
+		private CountDownLatch done;
+
 		private void reset() {
+			kind = TEXT;
 			close = false;
 			flush = true;
+			binary = null;
+			event = null;
+			date = null;
+			done = null;
 			if (content.capacity() > BUFFER_SIZE) {
 				content.setLength(BUFFER_SIZE);
 				content.trimToSize();
@@ -3,12 +3,20 @@ package org.matsim.episim.reporting;
 import com.google.common.base.Joiner;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.utils.io.IOUtils;
+import org.matsim.episim.events.BinaryEventsWriter;
+import org.matsim.episim.events.EpisimContactEvent;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.vehicles.Vehicle;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Map;
 
 /**
@@ -29,6 +37,7 @@ public class EpisimWriter {
 	 * Creates a csv writer and write the header using enum definition.
 	 */
 	public static BufferedWriter prepare(String filename, Class<? extends Enum<?>> enumClass) {
+		replace(filename);
 		BufferedWriter writer = IOUtils.getBufferedWriter(filename);
 		try {
 			writer.write(JOINER.join(enumClass.getEnumConstants()));
@@ -44,6 +53,7 @@ public class EpisimWriter {
 	 * Creates a csv writer and writes the header according to {@link Joiner#join(Object, Object, Object...)}.
 	 */
 	public static BufferedWriter prepare(String filename, Object first, Object second, Object... rest) {
+		replace(filename);
 		BufferedWriter writer = IOUtils.getBufferedWriter(filename);
 		try {
 			writer.write(JOINER.join(first, second, rest));
@@ -55,6 +65,18 @@ public class EpisimWriter {
 		return writer;
 	}
 
+	/**
+	 * Deletes an existing file, so that writing creates a new file instead of truncating the old one.
+	 * Hard links to the old file, which snapshots may hold, keep their content.
+	 */
+	public static void replace(String filename) {
+		try {
+			Files.deleteIfExists(Path.of(filename));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	/**
 	 * Create a writer for appending to existing file and does not write anything initially.
 	 */
@@ -181,6 +203,118 @@ public class EpisimWriter {
 		}
 	}
 
+	/**
+	 * Index of a container as passed to the append methods, with the lowest bit set for vehicles.
+	 */
+	public static int containerIndex(Id<?> container, boolean vehicle) {
+		return container.index() * 2 + (vehicle ? 1 : 0);
+	}
+
+	/**
+	 * Resolves the id of a container from {@link #containerIndex(Id, boolean)}.
+	 */
+	protected static Id<?> containerId(int index) {
+		return (index & 1) == 1 ? Id.get(index >> 1, Vehicle.class) : Id.get(index >> 1, ActivityFacility.class);
+	}
+
+	/**
+	 * Appends one row of the infection events file, with columns as in {@code EpisimReporting.InfectionEventsWriterFields}.
+	 * Persons and the container are given by their id index and the infection type by {@link InfectionTypes#index(String)},
+	 * the row is only formatted when it is written, so that callers don't need to create any objects.
+	 *
+	 * @param container index as returned by {@link #containerIndex(Id, boolean)}
+	 */
+	public void appendInfection(BufferedWriter writer, double time, int infector, int infected, int infectionType,
+								String date, int groupSize, int container) {
+		try {
+			writeInfection(writer, time, infector, infected, infectionType, date, groupSize, container);
+			writer.flush();
+		} catch (IOException e) {
+			log.error("Could not write content", e);
+		}
+	}
+
+	/**
+	 * Appends a contact event, which is only created when it is written.
+	 * Arguments are indices as in {@link #appendInfection(BufferedWriter, double, int, int, int, String, int, int)}.
+	 *
+	 * @param correctedTime time to write instead of the event time, if not negative
+	 * @see EpisimContactEvent
+	 */
+	public void appendContact(BufferedWriter writer, double time, int person, int contactPerson, int container,
+							  int actType, double duration, int groupSize, double correctedTime) {
+		append(writer, createContact(time, person, contactPerson, container, actType, duration, groupSize), correctedTime);
+	}
+
+	/**
+	 * Same as {@link #appendContact(BufferedWriter, double, int, int, int, int, double, int, double)}, but for binary event files.
+	 */
+	public void appendContact(BinaryEventsWriter writer, double time, int person, int contactPerson, int container,
+							  int actType, double duration, int groupSize, double correctedTime) {
+		append(writer, createContact(time, person, contactPerson, container, actType, duration, groupSize), correctedTime);
+	}
+
+	/**
+	 * Creates the contact event from the indices.
+	 */
+	protected static EpisimContactEvent createContact(double time, int person, int contactPerson, int container, int actType,
+													  double duration, int groupSize) {
+		return new EpisimContactEvent(time, Id.get(person, Person.class), Id.get(contactPerson, Person.class), containerId(container),
+				InfectionTypes.get(actType), duration, groupSize);
+	}
+
+	/**
+	 * Writes one row of the infection events file to {@code out}.
+	 */
+	protected static void writeInfection(final Appendable out, double time, int infector, int infected, int infectionType,
+										 String date, int groupSize, int container) throws IOException {
+		out.append(Double.toString(time)).append(SEPARATOR)
+				.append(Id.get(infector, Person.class).toString()).append(SEPARATOR)
+				.append(Id.get(infected, Person.class).toString()).append(SEPARATOR)
+				.append(InfectionTypes.get(infectionType)).append(SEPARATOR)
+				.append(date).append(SEPARATOR)
+				.append(Integer.toString(groupSize)).append(SEPARATOR)
+				.append(containerId(container).toString()).append("\n");
+	}
+
+	/**
+	 * Appends an event to a binary event file.
+	 *
+	 * @param correctedTime time to write instead of the event time, if not negative
+	 */
+	public void append(BinaryEventsWriter writer, Event event, double correctedTime) {
+		try {
+			writer.append(event, correctedTime);
+		} catch (IOException e) {
+			log.error("Could not write event");
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Close a binary event file.
+	 */
+	public void close(BinaryEventsWriter writer) {
+		try {
+			writer.close();
+		} catch (IOException e) {
+			log.error("Could not close writer", e);
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes all rows that were appended to {@code writer} so far and waits until they are written.
+	 */
+	public void flush(BufferedWriter writer) {
+		try {
+			writer.flush();
+		} catch (IOException e) {
+			log.error("Could not flush writer", e);
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	/**
 	 * Close a writer for writing.
 	 */
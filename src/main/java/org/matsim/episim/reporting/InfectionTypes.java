@@ -0,0 +1,55 @@
+package org.matsim.episim.reporting;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Global index of infection types, i.e. the activity pairs of contacts and infections.
+ * Writers receive only the index and resolve the label when a row is written, similar to {@link org.matsim.api.core.v01.Id#index()}.
+ */
+public final class InfectionTypes {
+
+	private static final Map<String, Integer> INDEX = new ConcurrentHashMap<>();
+
+	/**
+	 * Labels by index, the array is replaced when it grows.
+	 */
+	private static volatile String[] types = new String[64];
+
+	private InfectionTypes() {
+	}
+
+	/**
+	 * Index of an infection type, which is registered on first use.
+	 */
+	public static int index(String type) {
+		Integer idx = INDEX.get(type);
+		return idx != null ? idx : register(type);
+	}
+
+	/**
+	 * Label of an infection type returned by {@link #index(String)}.
+	 */
+	public static String get(int index) {
+		return types[index];
+	}
+
+	private static synchronized int register(String type) {
+		Integer idx = INDEX.get(type);
+		if (idx != null)
+			return idx;
+
+		int i = INDEX.size();
+		String[] t = types;
+		if (i >= t.length)
+			t = Arrays.copyOf(t, t.length * 2);
+
+		t[i] = type;
+		// the label is visible to all threads before the index can be obtained
+		types = t;
+		INDEX.put(type, i);
+
+		return i;
+	}
+}
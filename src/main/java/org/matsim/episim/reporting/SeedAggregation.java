@@ -0,0 +1,261 @@
+package org.matsim.episim.reporting;
+
+import it.unimi.dsi.fastutil.ints.Int2IntAVLTreeMap;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntSortedMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.episim.EpisimReporting;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.ToLongFunction;
+
+/**
+ * Aggregates the daily infection reports of many runs online, grouped by parameter set without the seed.
+ * For each group, day, district and reported value the mean, standard deviation and quantiles are maintained,
+ * so that only one summary per parameter set needs to be written, independent of the number of seeds.
+ */
+public final class SeedAggregation {
+
+	private static final Logger log = LogManager.getLogger(SeedAggregation.class);
+
+	/**
+	 * Quantiles written to the summary.
+	 */
+	private static final double[] QUANTILES = {0.05, 0.25, 0.5, 0.75, 0.95};
+
+	private static final String[] NAMES = {"nSusceptible", "nInfectedButNotContagious", "nContagious", "nContagiousCumulative",
+			"nShowingSymptoms", "nShowingSymptomsCumulative", "nSeriouslySick", "nSeriouslySickCumulative", "nCritical",
+			"nCriticalCumulative", "nTotalInfected", "nInfectedCumulative", "nRecovered", "nInQuarantine"};
+
+	@SuppressWarnings("unchecked")
+	private static final ToLongFunction<EpisimReporting.InfectionReport>[] VALUES = new ToLongFunction[]{
+			(ToLongFunction<EpisimReporting.InfectionReport>) r -> r.nSusceptible,
+			(ToLongFunction<EpisimReporting.InfectionReport>) r -> r.nInfectedButNotContagious,
+			(ToLongFunction<EpisimReporting.InfectionReport>) r -> r.nContagious,
+			(ToLongFunction<EpisimReporting.InfectionReport>) r -> r.nContagiousCumulative,
+			(ToLongFunction<EpisimReporting.InfectionReport>) r -> r.nShowingSymptoms,
+			(ToLongFunction<EpisimReporting.InfectionReport>) r -> r.nShowingSymptomsCumulative,
+			(ToLongFunction<EpisimReporting.InfectionReport>) r -> r.nSeriouslySick,
+			(ToLongFunction<EpisimReporting.InfectionReport>) r -> r.nSeriouslySickCumulative,
+			(ToLongFunction<EpisimReporting.InfectionReport>) r -> r.nCritical,
+			(ToLongFunction<EpisimReporting.InfectionReport>) r -> r.nCriticalCumulative,
+			(ToLongFunction<EpisimReporting.InfectionReport>) r -> r.nTotalInfected,
+			(ToLongFunction<EpisimReporting.InfectionReport>) r -> r.nTotalInfected + r.nRecovered,
+			(ToLongFunction<EpisimReporting.InfectionReport>) r -> r.nRecovered,
+			(ToLongFunction<EpisimReporting.InfectionReport>) r -> r.nInQuarantine
+	};
+
+	private final Map<String, Group> groups = new LinkedHashMap<>();
+
+	/**
+	 * Returns the accumulator for one parameter set, which will be created if necessary.
+	 */
+	public synchronized Group getGroup(String name) {
+		return groups.computeIfAbsent(name, Group::new);
+	}
+
+	/**
+	 * Creates an accumulator that is not part of this aggregation and will not be written,
+	 * e.g. for the days that forked runs have in common.
+	 */
+	public static Group detached(String name) {
+		return new Group(name);
+	}
+
+	/**
+	 * Writes one summary file per parameter set into {@code dir}.
+	 */
+	public synchronized void write(Path dir) throws IOException {
+
+		Files.createDirectories(dir);
+
+		for (Group group : groups.values()) {
+			Path file = dir.resolve(group.name + ".summary.tsv.gz");
+			group.write(file);
+			log.info("Written summary to {}", file);
+		}
+	}
+
+	/**
+	 * Accumulator of all runs with the same parameter set.
+	 */
+	public static final class Group {
+
+		private final String name;
+
+		/**
+		 * Statistics by day and district.
+		 */
+		private final SortedMap<Long, Map<String, Day>> days = new TreeMap<>();
+
+		private Group(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Adds the reports of one run and day.
+		 */
+		public synchronized void add(Collection<EpisimReporting.InfectionReport> reports) {
+			for (EpisimReporting.InfectionReport r : reports) {
+
+				Day day = days.computeIfAbsent(r.day, k -> new LinkedHashMap<>())
+						.computeIfAbsent(r.name, k -> new Day(r.date));
+
+				for (int i = 0; i < VALUES.length; i++) {
+					day.stats[i].add(VALUES[i].applyAsLong(r));
+				}
+			}
+		}
+
+		/**
+		 * Adds all runs and days of another accumulator.
+		 */
+		public synchronized void add(Group other) {
+			synchronized (other) {
+				for (Map.Entry<Long, Map<String, Day>> e : other.days.entrySet()) {
+					Map<String, Day> districts = days.computeIfAbsent(e.getKey(), k -> new LinkedHashMap<>());
+					for (Map.Entry<String, Day> d : e.getValue().entrySet()) {
+						Day day = districts.computeIfAbsent(d.getKey(), k -> new Day(d.getValue().date));
+						for (int i = 0; i < VALUES.length; i++) {
+							day.stats[i].add(d.getValue().stats[i]);
+						}
+					}
+				}
+			}
+		}
+
+		private synchronized void write(Path file) throws IOException {
+
+			List<Object> header = new ArrayList<>(List.of("day", "date", "district", "runs"));
+			for (String n : NAMES) {
+				header.add(n + "Mean");
+				header.add(n + "Sd");
+				for (double q : QUANTILES)
+					header.add(n + "Q" + Math.round(q * 100));
+			}
+
+			try (BufferedWriter out = IOUtils.getBufferedWriter(file.toString())) {
+				out.write(EpisimWriter.JOINER.join(header));
+				out.write("\n");
+
+				List<Object> row = new ArrayList<>();
+				for (Map.Entry<Long, Map<String, Day>> e : days.entrySet()) {
+					for (Map.Entry<String, Day> d : e.getValue().entrySet()) {
+
+						row.clear();
+						row.add(e.getKey());
+						row.add(d.getValue().date);
+						row.add(d.getKey());
+						row.add(d.getValue().stats[0].n);
+
+						for (Stats s : d.getValue().stats) {
+							row.add(s.mean());
+							row.add(s.sd());
+							for (double q : QUANTILES)
+								row.add(s.quantile(q));
+						}
+
+						out.write(EpisimWriter.JOINER.join(row));
+						out.write("\n");
+					}
+				}
+			}
+		}
+	}
+
+	private static final class Day {
+
+		private final String date;
+		private final Stats[] stats = new Stats[VALUES.length];
+
+		private Day(String date) {
+			this.date = date;
+			for (int i = 0; i < stats.length; i++)
+				stats[i] = new Stats();
+		}
+	}
+
+	/**
+	 * Running mean and variance (Welford's algorithm) and a quantile sketch with logarithmic buckets,
+	 * which has a relative error of at most {@link #ACCURACY}.
+	 */
+	static final class Stats {
+
+		static final double ACCURACY = 0.01;
+		private static final double GAMMA = (1 + ACCURACY) / (1 - ACCURACY);
+		private static final double LOG_GAMMA = Math.log(GAMMA);
+
+		private long n;
+		private double mean;
+		private double m2;
+
+		/**
+		 * Number of values by bucket, 0 is used for values smaller than 1.
+		 */
+		private final Int2IntSortedMap buckets = new Int2IntAVLTreeMap();
+
+		void add(double value) {
+			n++;
+			double delta = value - mean;
+			mean += delta / n;
+			m2 += delta * (value - mean);
+
+			int bucket = value < 1 ? 0 : 1 + (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+			buckets.put(bucket, buckets.get(bucket) + 1);
+		}
+
+		/**
+		 * Adds all values of another instance (parallel variant of Welford's algorithm).
+		 */
+		void add(Stats other) {
+			if (other.n == 0)
+				return;
+
+			long total = n + other.n;
+			double delta = other.mean - mean;
+			mean += delta * other.n / total;
+			m2 += other.m2 + delta * delta * n * other.n / total;
+			n = total;
+
+			for (Int2IntMap.Entry e : other.buckets.int2IntEntrySet())
+				buckets.put(e.getIntKey(), buckets.get(e.getIntKey()) + e.getIntValue());
+		}
+
+		double mean() {
+			return mean;
+		}
+
+		/**
+		 * Sample standard deviation.
+		 */
+		double sd() {
+			return n > 1 ? Math.sqrt(m2 / (n - 1)) : 0;
+		}
+
+		/**
+		 * Estimated quantile, {@code q} between 0 and 1.
+		 */
+		double quantile(double q) {
+			if (n == 0)
+				return Double.NaN;
+
+			long rank = (long) Math.floor(q * (n - 1));
+			long seen = 0;
+			for (Int2IntMap.Entry e : buckets.int2IntEntrySet()) {
+				seen += e.getIntValue();
+				if (seen > rank) {
+					int b = e.getIntKey();
+					return b == 0 ? 0 : 2 * Math.pow(GAMMA, b - 1) / (GAMMA + 1);
+				}
+			}
+
+			return Double.NaN;
+		}
+	}
+}
@@ -26,9 +26,11 @@ import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.core.events.handler.EventHandler;
 import org.matsim.core.utils.io.UncheckedIOException;
+import org.matsim.episim.analysis.ConvertEvents;
 import org.matsim.episim.analysis.CreateContactGraph;
 import org.matsim.episim.analysis.ExtractInfectionsByAge;
 import org.matsim.episim.analysis.RValuesFromEvents;
+import org.matsim.episim.events.BinaryEventsReader;
 import org.matsim.episim.events.EpisimEventsReader;
 import picocli.AutoComplete;
 import picocli.CommandLine;
@@ -52,7 +54,7 @@ import java.util.stream.Collectors;
 		mixinStandardHelpOptions = true,
 		usageHelpWidth = 120,
 		subcommands = {CommandLine.HelpCommand.class, AutoComplete.GenerateCompletion.class,
-				RValuesFromEvents.class, ExtractInfectionsByAge.class, CreateContactGraph.class},
+				RValuesFromEvents.class, ExtractInfectionsByAge.class, CreateContactGraph.class, ConvertEvents.class},
 		subcommandsRepeatable = true
 )
 public class AnalysisCommand implements Runnable {
@@ -117,7 +119,7 @@ public class AnalysisCommand implements Runnable {
 		List<Path> eventFiles;
 		try {
 			eventFiles = Files.list(eventFolder)
-					.filter(p -> p.getFileName().toString().contains("xml.gz"))
+					.filter(AnalysisCommand::isEventFile)
 					.collect(Collectors.toList());
 		} catch (IOException e) {
 			throw new java.io.UncheckedIOException(e);
@@ -126,7 +128,7 @@ public class AnalysisCommand implements Runnable {
 		for (Path p : eventFiles) {
 			try {
 				callback.accept(p);
-				new EpisimEventsReader(manager).readFile(p.toString());
+				readEvents(manager, p);
 			} catch (UncheckedIOException e) {
 				log.warn("Caught UncheckedIOException. Could not read file {}", p);
 			}
@@ -135,6 +137,23 @@ public class AnalysisCommand implements Runnable {
 		manager.finishProcessing();
 	}
 
+	/**
+	 * Whether a file contains episim events, either as xml or in binary format.
+	 */
+	public static boolean isEventFile(Path path) {
+		return path.getFileName().toString().contains("xml.gz") || BinaryEventsReader.isBinary(path);
+	}
+
+	/**
+	 * Reads one event file with the reader matching its format.
+	 */
+	public static void readEvents(EventsManager manager, Path path) {
+		if (BinaryEventsReader.isBinary(path))
+			new BinaryEventsReader(manager).readFile(path.toString());
+		else
+			new EpisimEventsReader(manager).readFile(path.toString());
+	}
+
 	/**
 	 * Tries to determine the run id from given folder and files present within it.
 	 * @return empty string or prefix for scenario file that ends with "."
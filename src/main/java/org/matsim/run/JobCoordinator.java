@@ -0,0 +1,399 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.run;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Serves batch runs to worker processes over a plain TCP socket, so that any number of {@link RunParallel} workers
+ * on one or more hosts can pull runs when they are idle.
+ * <p>
+ * The protocol uses one line of text per request and response, with a new connection for each request.
+ * Every request starts with the token shared by coordinator and workers, requests without it are answered with an error:
+ * <ul>
+ *     <li>{@code CLAIM <worker>}: answered with {@code RUN <id>}, {@code WAIT} if runs are still in progress elsewhere,
+ *     or {@code END} if all runs are finished</li>
+ *     <li>{@code HEARTBEAT <worker> <id>}: signals that the run is still in progress</li>
+ *     <li>{@code DONE <worker> <id> <millis> <iterations>}, {@code INCOMPLETE <worker> <id> <millis> <iterations>}
+ *     and {@code FAILED <worker> <id>}: finishes a run</li>
+ * </ul>
+ * Runs without heartbeat within the timeout, e.g. because the worker was killed, and failed runs are put back into the queue,
+ * until the maximum number of attempts is reached.
+ * <p>
+ * The socket only listens on the given address, which should be the loopback address unless workers run on other hosts.
+ * The token is sent in plain text and only protects against accidental or unauthorized requests within a trusted network.
+ */
+final class JobCoordinator implements Closeable {
+
+	private static final Logger log = LogManager.getLogger(JobCoordinator.class);
+
+	private final ServerSocket server;
+	private final byte[] token;
+	private final long timeout;
+	private final int maxAttempts;
+
+	private final Deque<Integer> pending = new ArrayDeque<>();
+	private final Map<Integer, Claim> running = new HashMap<>();
+	private final Map<Integer, Integer> attempts = new HashMap<>();
+	private final Set<Integer> done = new HashSet<>();
+	private final Set<Integer> incomplete = new HashSet<>();
+	private final Set<Integer> failed = new HashSet<>();
+
+	private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "coordinator");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * Creates the coordinator and opens the server socket.
+	 *
+	 * @param ids         runs to distribute, in order
+	 * @param address     address to listen on
+	 * @param port        port to listen on, 0 for any free port
+	 * @param token       token that all requests need to start with
+	 * @param timeout     milliseconds without heartbeat after which a run is requeued
+	 * @param maxAttempts number of times a run is started before it is considered failed
+	 */
+	JobCoordinator(Collection<Integer> ids, InetAddress address, int port, String token, long timeout, int maxAttempts) throws IOException {
+		if (token.isBlank() || token.contains(" "))
+			throw new IllegalArgumentException("Token must not be empty or contain spaces");
+
+		this.pending.addAll(ids);
+		this.token = token.getBytes(StandardCharsets.UTF_8);
+		this.timeout = timeout;
+		this.maxAttempts = maxAttempts;
+		this.server = new ServerSocket(port, 50, address);
+	}
+
+	/**
+	 * Port the coordinator is listening on.
+	 */
+	int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Starts serving requests in the background.
+	 */
+	void start() {
+		log.info("Coordinator listening on {}:{} for {} runs", server.getInetAddress().getHostAddress(), getPort(), pending.size());
+		executor.submit(this::serve);
+	}
+
+	/**
+	 * Number of runs that were stopped early by their time budget.
+	 */
+	synchronized int getIncomplete() {
+		return incomplete.size();
+	}
+
+	/**
+	 * Blocks until all runs are finished.
+	 *
+	 * @return number of failed runs
+	 */
+	int await() throws InterruptedException {
+		synchronized (this) {
+			while (!pending.isEmpty() || !running.isEmpty()) {
+				wait(Math.max(timeout / 4, 100));
+				requeueStale();
+			}
+
+			return failed.size();
+		}
+	}
+
+	private void serve() {
+		while (!server.isClosed()) {
+			try {
+				Socket socket = server.accept();
+				executor.submit(() -> respond(socket));
+			} catch (SocketException e) {
+				// closed
+			} catch (IOException e) {
+				log.warn("Could not accept connection", e);
+			}
+		}
+	}
+
+	private void respond(Socket socket) {
+		try (socket;
+			 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			 Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+
+			String line = in.readLine();
+			if (line == null)
+				return;
+
+			String request = authorize(line);
+			if (request == null) {
+				log.warn("Unauthorized request from {}", socket.getInetAddress());
+				out.write("ERROR unauthorized");
+			} else
+				out.write(handle(request));
+			out.write('\n');
+			out.flush();
+
+		} catch (IOException e) {
+			log.warn("Error while handling request", e);
+		}
+	}
+
+	/**
+	 * Checks the token at the start of a request line.
+	 *
+	 * @return the request without token, or null if the token is not valid
+	 */
+	@Nullable
+	String authorize(String line) {
+		int idx = line.indexOf(' ');
+		if (idx < 0)
+			return null;
+
+		// comparison in constant time
+		if (!MessageDigest.isEqual(token, line.substring(0, idx).getBytes(StandardCharsets.UTF_8)))
+			return null;
+
+		return line.substring(idx + 1);
+	}
+
+	/**
+	 * Processes one request, without token, and returns the response.
+	 */
+	synchronized String handle(String request) {
+
+		String[] cmd = request.trim().split(" ");
+		try {
+			switch (cmd[0]) {
+				case "CLAIM":
+					requeueStale();
+					if (!pending.isEmpty()) {
+						int id = pending.poll();
+						running.put(id, new Claim(cmd[1]));
+						attempts.merge(id, 1, Integer::sum);
+						log.info("Run {} claimed by {} ({} pending, {} running)", id, cmd[1], pending.size(), running.size());
+						return "RUN " + id;
+					}
+					return running.isEmpty() ? "END" : "WAIT";
+				case "HEARTBEAT": {
+					Claim claim = getClaim(cmd[1], Integer.parseInt(cmd[2]));
+					if (claim == null)
+						return "ERROR not claimed";
+					claim.heartbeat = System.currentTimeMillis();
+					return "OK";
+				}
+				case "DONE":
+				case "INCOMPLETE":
+				case "FAILED": {
+					int id = Integer.parseInt(cmd[2]);
+					if (getClaim(cmd[1], id) == null)
+						return "ERROR not claimed";
+
+					running.remove(id);
+					if (cmd[0].equals("DONE")) {
+						log.info("Run {} finished by {} after {}ms and {} iterations", id, cmd[1], cmd[3], cmd[4]);
+						done.add(id);
+					} else if (cmd[0].equals("INCOMPLETE")) {
+						// would be stopped again by the same budget, therefore not retried
+						log.warn("Run {} stopped by {} after {}ms and {} iterations", id, cmd[1], cmd[3], cmd[4]);
+						incomplete.add(id);
+					} else
+						retry(id);
+
+					notifyAll();
+					return "OK";
+				}
+				default:
+					return "ERROR unknown command";
+			}
+		} catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+			return "ERROR invalid request";
+		}
+	}
+
+	@Nullable
+	private Claim getClaim(String worker, int id) {
+		Claim claim = running.get(id);
+		return claim != null && claim.worker.equals(worker) ? claim : null;
+	}
+
+	/**
+	 * Requeue runs that did not send a heartbeat in time.
+	 */
+	private void requeueStale() {
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<Integer, Claim>> it = running.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Integer, Claim> e = it.next();
+			if (now - e.getValue().heartbeat > timeout) {
+				log.warn("Run {} of {} timed out", e.getKey(), e.getValue().worker);
+				it.remove();
+				retry(e.getKey());
+			}
+		}
+	}
+
+	private void retry(int id) {
+		if (attempts.getOrDefault(id, 0) < maxAttempts) {
+			log.warn("Requeue run {}", id);
+			pending.addFirst(id);
+		} else {
+			log.error("Run {} failed after {} attempts", id, maxAttempts);
+			failed.add(id);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.close();
+		executor.shutdownNow();
+	}
+
+	private static final class Claim {
+
+		private final String worker;
+		private long heartbeat = System.currentTimeMillis();
+
+		private Claim(String worker) {
+			this.worker = worker;
+		}
+	}
+
+	/**
+	 * Worker side of the protocol, which sends heartbeats for all claimed runs in the background.
+	 */
+	static final class Client implements JobSource, Closeable {
+
+		private final InetSocketAddress address;
+		private final String token;
+		private final String worker;
+		private final long retryInterval;
+
+		private final Set<Integer> claimed = ConcurrentHashMap.newKeySet();
+		private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "heartbeat");
+			t.setDaemon(true);
+			return t;
+		});
+
+		/**
+		 * Creates a client.
+		 *
+		 * @param token    token shared with the coordinator
+		 * @param worker   unique name of this worker
+		 * @param interval milliseconds between heartbeats and between claims while waiting
+		 */
+		Client(InetSocketAddress address, String token, String worker, long interval) {
+			this.address = address;
+			this.token = token;
+			this.worker = worker;
+			this.retryInterval = interval;
+
+			heartbeat.scheduleAtFixedRate(this::sendHeartbeats, interval, interval, TimeUnit.MILLISECONDS);
+		}
+
+		@Nullable
+		@Override
+		public Integer claim() throws IOException {
+			while (true) {
+				String response = send("CLAIM " + worker);
+				if (response.startsWith("RUN ")) {
+					int id = Integer.parseInt(response.substring(4));
+					claimed.add(id);
+					return id;
+				} else if (response.equals("END"))
+					return null;
+				else if (!response.equals("WAIT"))
+					throw new IOException("Unexpected response: " + response);
+
+				try {
+					Thread.sleep(retryInterval);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+		}
+
+		@Override
+		public void finish(int id, Status status, long millis, int iterations) throws IOException {
+			claimed.remove(id);
+
+			String request;
+			if (status == Status.failed)
+				request = "FAILED " + worker + " " + id;
+			else
+				request = String.format("%s %s %d %d %d", status == Status.done ? "DONE" : "INCOMPLETE", worker, id, millis, iterations);
+
+			String response = send(request);
+			if (!response.equals("OK"))
+				log.warn("Could not finish run {}: {}", id, response);
+		}
+
+		private void sendHeartbeats() {
+			for (int id : claimed) {
+				try {
+					send("HEARTBEAT " + worker + " " + id);
+				} catch (IOException e) {
+					log.warn("Could not send heartbeat for run {}", id, e);
+				}
+			}
+		}
+
+		private String send(String request) throws IOException {
+			try (Socket socket = new Socket(address.getHostString(), address.getPort());
+				 Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+				 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+
+				out.write(token);
+				out.write(' ');
+				out.write(request);
+				out.write('\n');
+				out.flush();
+
+				String response = in.readLine();
+				if (response == null)
+					throw new EOFException("No response from coordinator");
+
+				return response;
+			}
+		}
+
+		@Override
+		public void close() {
+			heartbeat.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,223 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.run;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Queue of batch runs, which is shared by any number of workers through a directory. Workers claim the next run
+ * when they are idle, so that long runs do not delay the runs assigned to other workers.
+ * <p>
+ * Every run is represented by a file {@code run-<id>.<state>}. Claiming a run renames it atomically from
+ * {@code pending} to {@code <worker>.running}, so it is executed only once. Finished runs are kept as {@code done},
+ * {@code incomplete} or {@code failed}, which lets a restarted worker resume without repeating them.
+ * The worker name therefore needs to be unique among all workers, but the same after a restart.
+ * <p>
+ * The duration of finished runs is recorded in {@link #COSTS} and used as cost estimate for later batches.
+ * Pending runs are claimed in order of decreasing cost, runs without estimate are treated as the most expensive.
+ */
+final class JobQueue implements JobSource {
+
+	private static final Logger log = LogManager.getLogger(JobQueue.class);
+
+	/**
+	 * File with the duration and number of iterations of finished runs.
+	 */
+	static final String COSTS = "costs.tsv";
+
+	private static final String PENDING = "pending";
+	private static final String RUNNING = "running";
+	private static final String DONE = "done";
+	private static final String INCOMPLETE = "incomplete";
+	private static final String FAILED = "failed";
+
+	private final Path dir;
+	private final String worker;
+
+	/**
+	 * Estimated cost in milliseconds, by run id.
+	 */
+	private final Map<Integer, Long> costs = new HashMap<>();
+
+	/**
+	 * Creates a queue in {@code dir}.
+	 *
+	 * @param worker name of this worker, needs to be the same after a restart
+	 */
+	JobQueue(Path dir, String worker) throws IOException {
+		this.dir = dir;
+		this.worker = worker;
+
+		Files.createDirectories(dir);
+		readCosts();
+	}
+
+	/**
+	 * Adds runs to the queue, unless they are already known in any state.
+	 * Runs that were claimed by this worker but not finished are put back to the queue.
+	 *
+	 * @return number of runs that are not finished yet
+	 */
+	synchronized int submit(Collection<Integer> ids) throws IOException {
+
+		int open = 0;
+		for (int id : ids) {
+
+			if (Files.exists(path(id, DONE)) || Files.exists(path(id, INCOMPLETE)) || Files.exists(path(id, FAILED)))
+				continue;
+
+			open++;
+
+			Path own = path(id, worker + "." + RUNNING);
+			if (Files.exists(own)) {
+				log.info("Resuming unfinished run {}", id);
+				move(own, path(id, PENDING));
+				continue;
+			}
+
+			if (Files.exists(path(id, PENDING)) || isRunning(id))
+				continue;
+
+			try {
+				Files.createFile(path(id, PENDING));
+			} catch (FileAlreadyExistsException e) {
+				// submitted by another worker
+			}
+		}
+
+		return open;
+	}
+
+	/**
+	 * Claims the pending run with the highest estimated cost.
+	 *
+	 * @return id of the run, or null if there are no pending runs left
+	 */
+	@Nullable
+	@Override
+	public synchronized Integer claim() throws IOException {
+
+		readCosts();
+
+		List<Integer> pending = new ArrayList<>();
+		try (Stream<Path> files = Files.list(dir)) {
+			files.map(p -> p.getFileName().toString())
+					.filter(n -> n.startsWith("run-") && n.endsWith("." + PENDING))
+					.forEach(n -> pending.add(Integer.parseInt(n.substring(4, n.length() - PENDING.length() - 1))));
+		}
+
+		pending.sort(Comparator.comparingLong((Integer id) -> costs.getOrDefault(id, Long.MAX_VALUE)).reversed()
+				.thenComparingInt(id -> id));
+
+		for (int id : pending) {
+			try {
+				Files.move(path(id, PENDING), path(id, worker + "." + RUNNING), StandardCopyOption.ATOMIC_MOVE);
+				return id;
+			} catch (NoSuchFileException e) {
+				// claimed by another worker in the meantime
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Marks a claimed run as finished and records its cost. Failed and incomplete runs are not retried.
+	 * The cost of incomplete runs is only a lower bound, but still recorded, so that they are started first in later batches.
+	 */
+	@Override
+	public synchronized void finish(int id, Status status, long millis, int iterations) throws IOException {
+
+		String state = status == Status.done ? DONE : status == Status.incomplete ? INCOMPLETE : FAILED;
+		move(path(id, worker + "." + RUNNING), path(id, state));
+
+		if (status == Status.failed)
+			return;
+
+		costs.put(id, millis);
+
+		try (FileChannel channel = FileChannel.open(dir.resolve(COSTS), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND); FileLock ignored = channel.lock()) {
+			channel.write(StandardCharsets.UTF_8.encode(id + "\t" + millis + "\t" + iterations + "\n"));
+		}
+	}
+
+	/**
+	 * Estimated cost of a run in milliseconds, if known.
+	 */
+	@Nullable
+	synchronized Long getCost(int id) {
+		return costs.get(id);
+	}
+
+	/**
+	 * Reads the recorded costs, later entries overwrite earlier ones.
+	 */
+	private void readCosts() throws IOException {
+
+		Path file = dir.resolve(COSTS);
+		if (!Files.exists(file))
+			return;
+
+		for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+			String[] split = line.split("\t");
+			if (split.length < 2)
+				continue;
+
+			try {
+				costs.put(Integer.parseInt(split[0]), Long.parseLong(split[1]));
+			} catch (NumberFormatException e) {
+				log.warn("Invalid line in {}: {}", file, line);
+			}
+		}
+	}
+
+	private boolean isRunning(int id) throws IOException {
+		String prefix = "run-" + id + ".";
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.map(p -> p.getFileName().toString())
+					.anyMatch(n -> n.startsWith(prefix) && n.endsWith("." + RUNNING));
+		}
+	}
+
+	private void move(Path from, Path to) throws IOException {
+		try {
+			Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+		} catch (NoSuchFileException e) {
+			throw new UncheckedIOException("Run is not claimed by worker " + worker + ": " + from.getFileName(), e);
+		}
+	}
+
+	private Path path(int id, String state) {
+		return dir.resolve("run-" + id + "." + state);
+	}
+}
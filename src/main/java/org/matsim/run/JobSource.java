@@ -0,0 +1,71 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.run;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+
+/**
+ * Source of batch runs that are claimed dynamically by the threads of {@link RunParallel}.
+ *
+ * @see JobQueue
+ * @see JobCoordinator.Client
+ */
+interface JobSource {
+
+	/**
+	 * Claims the next run, blocking if necessary.
+	 *
+	 * @return id of the run, or null if there is no more work
+	 */
+	@Nullable
+	Integer claim() throws IOException;
+
+	/**
+	 * Marks a claimed run as finished.
+	 *
+	 * @param status     how the run finished
+	 * @param millis     wall-clock duration
+	 * @param iterations number of simulated iterations
+	 */
+	void finish(int id, Status status, long millis, int iterations) throws IOException;
+
+	/**
+	 * How a run has finished.
+	 */
+	enum Status {
+		/**
+		 * All iterations were simulated.
+		 */
+		done,
+
+		/**
+		 * The run was stopped early by its time budget, its output only contains the first iterations.
+		 */
+		incomplete,
+
+		/**
+		 * The run failed with an error.
+		 */
+		failed,
+	}
+
+}
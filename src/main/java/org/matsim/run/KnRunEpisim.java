@@ -33,6 +33,7 @@ import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.GlobalConfigGroup;
 import org.matsim.core.controler.ControlerUtils;
 import org.matsim.core.controler.OutputDirectoryLogging;
 import org.matsim.core.events.EventsUtils;
@@ -174,6 +175,9 @@ public class KnRunEpisim {
 			@Provides @Singleton public TracingConfigGroup tracingConfig( Config config ) {
 				return ConfigUtils.addOrGetModule(config, TracingConfigGroup.class);
 			}
+			@Provides @Singleton public GlobalConfigGroup globalConfig( Config config ) {
+				return config.global();
+			}
 			@Provides @Singleton public EpisimWriter episimWriter( EpisimConfigGroup episimConfig ) {
 
 				// Async writer is used for huge event number
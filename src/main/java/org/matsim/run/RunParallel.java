@@ -33,24 +33,33 @@ import org.matsim.api.core.v01.Scenario;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.episim.*;
+import org.matsim.episim.reporting.SeedAggregation;
 import picocli.CommandLine;
 
 import javax.annotation.Nullable;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Execute one {@link BatchRun} run in parallel. The work can also be distributed across multiple runners,
- * by using the <em>--worker-index</em> and <em>--total-worker</em> options.
+ * by using the <em>--worker-index</em> and <em>--total-worker</em> options, or dynamically through a shared <em>--queue</em>
+ * or a coordinator process started with <em>--serve</em>.
  *
  * @param <T> type to match batch run and params
  * @see CreateBatteryForCluster
@@ -85,8 +94,12 @@ public class RunParallel<T> implements Callable<Integer> {
 			"The tasks will be split evenly between all processes using the index.")
 	private int totalWorker;
 
-	@CommandLine.Option(names = "--worker-index", defaultValue = "0", description = "Index of this worker process")
-	private int workerIndex;
+	@CommandLine.Option(names = "--worker-index", description = "Index of this worker process (default: 0)")
+	private Integer workerIndex;
+
+	@CommandLine.Option(names = "--worker-name", description = "Name of this worker in the --queue, which must be unique among all workers, " +
+			"but the same after a restart. (default: worker-<index>, requires --worker-index)")
+	private String workerName;
 
 	@CommandLine.Option(names = "--min-job", defaultValue = "${env:EPISIM_MIN_JOB:-0}", description = "Job to start at (skip first n jobs).")
 	private int minJob;
@@ -104,6 +117,50 @@ public class RunParallel<T> implements Callable<Integer> {
 	@CommandLine.Option(names = "--silent", defaultValue = "false", description = "Disable info and warn logging")
 	private boolean silent;
 
+	@CommandLine.Option(names = "--fork-at", defaultValue = "0", description = "Simulate the days before this iteration only once with the first run " +
+			"and continue all runs from its state. Only valid if all runs are identical before this day. (0=disabled)")
+	private int forkAt;
+
+	@CommandLine.Option(names = "--share-init", defaultValue = "false", description = "Initialize trajectories, containers and compiled events " +
+			"only once and share them between all runs. Requires reuse of the scenario.")
+	private boolean shareInit;
+
+	@CommandLine.Option(names = "--queue", description = "Directory of a job queue shared by all workers. Idle workers claim the most expensive " +
+			"remaining run, instead of splitting by worker index. Finished runs are recorded and skipped after a restart.")
+	private Path queue;
+
+	@CommandLine.Option(names = "--run-budget", defaultValue = "0", description = "Maximum wall-clock minutes per run, " +
+			"after which the run is stopped early. (0=unlimited)")
+	private long runBudget;
+
+	@CommandLine.Option(names = "--serve", defaultValue = "0", description = "Only act as coordinator on this port, which serves " +
+			"the runs to workers started with --coordinator. (0=disabled)")
+	private int servePort;
+
+	@CommandLine.Option(names = "--serve-address", defaultValue = "127.0.0.1", description = "Address the coordinator listens on. " +
+			"Use the address of a network interface or 0.0.0.0 if workers run on other hosts.")
+	private String serveAddress;
+
+	@CommandLine.Option(names = "--coordinator", description = "Address (host:port) of the coordinator to claim runs from, " +
+			"instead of splitting by worker index.")
+	private String coordinator;
+
+	@CommandLine.Option(names = "--token", defaultValue = "${env:EPISIM_COORDINATOR_TOKEN}", description = "Token shared by " +
+			"the coordinator and its workers, which is required with --serve and --coordinator.")
+	private String token;
+
+	@CommandLine.Option(names = "--heartbeat-timeout", defaultValue = "600", description = "Seconds without heartbeat after which " +
+			"the coordinator requeues a run.")
+	private int heartbeatTimeout;
+
+	@CommandLine.Option(names = "--attempts", defaultValue = "2", description = "Maximum number of attempts per run, when using a coordinator.")
+	private int attempts;
+
+	@CommandLine.Option(names = "--aggregate", defaultValue = "false", description = "Aggregate the daily infection reports of all runs " +
+			"that only differ in their seed and write one summary per parameter set to the output directory. " +
+			"Requires that all runs are performed by this process, i.e. can not be used with --queue, --coordinator or --total-worker.")
+	private boolean aggregate;
+
 	@SuppressWarnings("rawtypes")
 	public static void main(String[] args) {
 		System.exit(new CommandLine(new RunParallel()).execute(args));
@@ -121,6 +178,18 @@ public class RunParallel<T> implements Callable<Integer> {
 			Configurator.setLevel(log.getName(), Level.INFO);
 		}
 
+		if (queue != null && workerName == null) {
+			// claims of a worker are resumed by name, so the default would take over the runs of others
+			if (workerIndex == null) {
+				log.error("Option --queue requires a unique --worker-name or --worker-index for each worker");
+				return 1;
+			}
+
+			workerName = "worker-" + workerIndex;
+		}
+
+		int index = workerIndex != null ? workerIndex : 0;
+
 		if (!Files.exists(output)) Files.createDirectories(output);
 
 		// Same context as if would be run from config
@@ -131,6 +200,28 @@ public class RunParallel<T> implements Callable<Integer> {
 		PreparedRun prepare = BatchRun.prepare(setup, params);
 		List<CompletableFuture<Void>> futures = new ArrayList<>();
 
+		if ((servePort > 0 || coordinator != null) && (token == null || token.isBlank() || token.contains(" "))) {
+			log.error("Options --serve and --coordinator require a --token without spaces");
+			executor.shutdown();
+			return 1;
+		}
+
+		if (servePort > 0) {
+			executor.shutdown();
+			return serve(prepare);
+		}
+
+		boolean dynamic = queue != null || coordinator != null;
+
+		if (aggregate && (dynamic || totalWorker > 1)) {
+			// every process would write its own summary of only a part of the runs to the same file
+			log.error("Option --aggregate can only be used when all runs are performed by one worker");
+			executor.shutdown();
+			return 1;
+		}
+
+		SeedAggregation aggregation = aggregate ? new SeedAggregation() : null;
+
 		// All config need to have the same base config (population, events, etc..)
 		Config baseConfig = prepare.runs.get(0).config;
 		baseConfig.setContext(context);
@@ -138,6 +229,7 @@ public class RunParallel<T> implements Callable<Integer> {
 
 		Scenario scenario = null;
 		ReplayHandler replay = null;
+		SharedInit sharedInit = null;
 
 		if (noReuse) {
 			log.info("Reusing scenario and events is disabled.");
@@ -150,11 +242,47 @@ public class RunParallel<T> implements Callable<Integer> {
 
 			scenario = injector.getInstance(Scenario.class);
 			replay = injector.getInstance(ReplayHandler.class);
+
+			if (shareInit)
+				sharedInit = SharedInit.create();
+		}
+
+		EpisimFork fork = null;
+		SeedAggregation.Group forkAggregation = null;
+		if (forkAt > 1) {
+			PreparedRun.Run first = prepare.runs.get(0);
+			Path forkOutput = output.resolve("fork-" + forkAt);
+			Files.createDirectories(forkOutput);
+
+			// output and run id of the first run are set again below
+			first.config.controler().setOutputDirectory(forkOutput.toString());
+			first.config.controler().setRunId(prepare.setup.getMetadata().name + "fork");
+			first.config.setContext(context);
+
+			log.info("Simulating common days before iteration {}", forkAt);
+
+			ParallelModule module = new ParallelModule(first.config, scenario, replay, sharedInit);
+
+			// the days before the fork are reported only once, but belong to every run
+			if (aggregation != null) {
+				forkAggregation = SeedAggregation.detached("fork");
+				module.aggregation = forkAggregation;
+			}
+
+			fork = new Task(((BatchRun) prepare.setup).getBindings(first.id, first.args), module, null, forkAt)
+					.fork();
+
+			if (fork == null) {
+				log.error("Could not create fork at iteration {}", forkAt);
+				return 1;
+			}
 		}
 
+		Map<Integer, Task> tasks = new LinkedHashMap<>();
+
 		int i = 0;
 		for (PreparedRun.Run run : prepare.runs) {
-			if (i++ % totalWorker != workerIndex)
+			if (i++ % totalWorker != index && !dynamic)
 				continue;
 
 			if (i < minJob)
@@ -176,15 +304,50 @@ public class RunParallel<T> implements Callable<Integer> {
 			run.config.controler().setRunId(prepare.setup.getMetadata().name + run.id);
 			run.config.setContext(context);
 
-			futures.add(CompletableFuture.runAsync(
-					new Task(((BatchRun) prepare.setup).getBindings(run.id, run.args), new ParallelModule(run.config, scenario, replay), maxIterations), executor)
-					.exceptionally(t -> {
-						log.error("Task {} failed", outputPath, t);
-						return null;
-					}));
+			ParallelModule module = new ParallelModule(run.config, scenario, replay, sharedInit);
+			if (aggregation != null)
+				module.aggregation = aggregation.getGroup(prepare.getGroupName(run));
+
+			Task task = new Task(((BatchRun) prepare.setup).getBindings(run.id, run.args), module, fork, maxIterations);
+			task.forkAggregation = forkAggregation;
+			task.timeLimit = TimeUnit.MINUTES.toMillis(runBudget);
+			tasks.put(run.id, task);
 		}
 
-		log.info("Created {} (out of {}) tasks for worker {} ({} threads available)", futures.size(), prepare.runs.size(), workerIndex, threads);
+		JobCoordinator.Client client = null;
+		if (coordinator != null) {
+			String[] address = coordinator.split(":");
+			String worker = InetAddress.getLocalHost().getHostName() + "-" + ProcessHandle.current().pid();
+			client = new JobCoordinator.Client(new InetSocketAddress(address[0], Integer.parseInt(address[1])), token, worker,
+					TimeUnit.SECONDS.toMillis(heartbeatTimeout) / 10);
+
+			log.info("Worker {} is claiming tasks from {} ({} threads available)", worker, coordinator, threads);
+
+			for (int t = 0; t < threads; t++) {
+				JobCoordinator.Client jobs = client;
+				futures.add(CompletableFuture.runAsync(() -> work(jobs, tasks), executor));
+			}
+
+		} else if (queue != null) {
+			JobQueue jobs = new JobQueue(queue, workerName);
+			int open = jobs.submit(tasks.keySet());
+
+			log.info("Worker {} is using job queue {} with {} (out of {}) unfinished tasks ({} threads available)", workerName, queue, open, tasks.size(), threads);
+
+			for (int t = 0; t < threads; t++)
+				futures.add(CompletableFuture.runAsync(() -> work(jobs, tasks), executor));
+
+		} else {
+			for (Task task : tasks.values()) {
+				futures.add(CompletableFuture.runAsync(task, executor)
+						.exceptionally(t -> {
+							log.error("Task {} failed", task.module.config.controler().getOutputDirectory(), t);
+							return null;
+						}));
+			}
+
+			log.info("Created {} (out of {}) tasks for worker {} ({} threads available)", futures.size(), prepare.runs.size(), index, threads);
+		}
 
 		// Wait for all futures to complete
 		CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
@@ -192,19 +355,89 @@ public class RunParallel<T> implements Callable<Integer> {
 		log.info("Finished all tasks");
 		executor.shutdown();
 
+		if (aggregation != null)
+			aggregation.write(output.resolve("summary"));
+
+		if (client != null)
+			client.close();
+
 		return 0;
 	}
 
+	/**
+	 * Serves the runs of this worker to other processes until all are finished.
+	 */
+	private int serve(PreparedRun prepare) throws IOException, InterruptedException {
+
+		List<Integer> ids = new ArrayList<>();
+
+		int i = 0;
+		for (PreparedRun.Run run : prepare.runs) {
+			if (++i < minJob)
+				continue;
+
+			if (maxJobs > 0 && i >= maxJobs) break;
+
+			ids.add(run.id);
+		}
+
+		try (JobCoordinator server = new JobCoordinator(ids, InetAddress.getByName(serveAddress), servePort, token,
+				TimeUnit.SECONDS.toMillis(heartbeatTimeout), attempts)) {
+			server.start();
+			int failed = server.await();
+			int incomplete = server.getIncomplete();
+
+			log.info("All runs finished, {} failed, {} stopped by the run budget", failed, incomplete);
+			return failed > 0 || incomplete > 0 ? 1 : 0;
+		}
+	}
+
+	/**
+	 * Claims and executes tasks until no pending ones are left.
+	 */
+	private static void work(JobSource jobs, Map<Integer, Task> tasks) {
+		try {
+			Integer id;
+			while ((id = jobs.claim()) != null) {
+
+				Task task = tasks.get(id);
+				if (task == null) {
+					log.error("Claimed unknown task {}", id);
+					jobs.finish(id, JobSource.Status.failed, 0, 0);
+					continue;
+				}
+
+				long start = System.currentTimeMillis();
+				JobSource.Status status;
+				try {
+					task.run();
+					status = task.timeLimitExceeded ? JobSource.Status.incomplete : JobSource.Status.done;
+				} catch (RuntimeException e) {
+					log.error("Task {} failed", task.module.config.controler().getOutputDirectory(), e);
+					status = JobSource.Status.failed;
+				}
+
+				jobs.finish(id, status, System.currentTimeMillis() - start, task.iterations);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	private static final class ParallelModule extends AbstractModule {
 
 		private final Config config;
 		private final Scenario scenario;
 		private final ReplayHandler replay;
+		private final SharedInit sharedInit;
+		@Nullable
+		private SeedAggregation.Group aggregation;
 
-		private ParallelModule(Config config, @Nullable Scenario scenario, ReplayHandler replay) {
+		private ParallelModule(Config config, @Nullable Scenario scenario, ReplayHandler replay, @Nullable SharedInit sharedInit) {
 			this.scenario = scenario;
 			this.config = config;
 			this.replay = replay;
+			this.sharedInit = sharedInit;
 		}
 
 		@Override
@@ -215,6 +448,12 @@ public class RunParallel<T> implements Callable<Integer> {
 				bind(Scenario.class).toInstance(scenario);
 				bind(ReplayHandler.class).toInstance(replay);
 			}
+
+			if (sharedInit != null)
+				bind(SharedInit.class).toInstance(sharedInit);
+
+			if (aggregation != null)
+				bind(SeedAggregation.Group.class).toInstance(aggregation);
 		}
 	}
 
@@ -225,16 +464,39 @@ public class RunParallel<T> implements Callable<Integer> {
 		@Nullable
 		private final Module bindings;
 		private final ParallelModule module;
+		@Nullable
+		private final EpisimFork fork;
 		private final int maxIterations;
 
-		private Task(@Nullable Module bindings, ParallelModule module, int maxIterations) {
+		/**
+		 * Wall-clock time limit in milliseconds. (0=unlimited)
+		 */
+		private long timeLimit;
+
+		/**
+		 * Number of simulated iterations, after the task has been run.
+		 */
+		private int iterations;
+
+		/**
+		 * Whether the task was stopped by {@link #timeLimit}, after it has been run.
+		 */
+		private boolean timeLimitExceeded;
+
+		/**
+		 * Reports of the days simulated by the {@link #fork}, which are added to the aggregation of this task.
+		 */
+		@Nullable
+		private SeedAggregation.Group forkAggregation;
+
+		private Task(@Nullable Module bindings, ParallelModule module, @Nullable EpisimFork fork, int maxIterations) {
 			this.bindings = bindings;
 			this.module = module;
+			this.fork = fork;
 			this.maxIterations = maxIterations;
 		}
 
-		@Override
-		public void run() {
+		private EpisimRunner createRunner() {
 
 			Module base;
 			if (bindings == null)
@@ -250,11 +512,39 @@ public class RunParallel<T> implements Callable<Integer> {
 				RunEpisim.printBindings(injector);
 			}
 
+			return injector.getInstance(EpisimRunner.class);
+		}
+
+		/**
+		 * Simulates the iterations before {@link #maxIterations} and returns the state.
+		 */
+		@Nullable
+		private EpisimFork fork() {
+			return createRunner().fork(maxIterations);
+		}
+
+		@Override
+		public void run() {
+
+			EpisimRunner runner = createRunner();
+
 			log.info("Starting task: {}", this.module.config.controler().getOutputDirectory());
 
-			EpisimRunner runner = injector.getInstance(EpisimRunner.class);
+			runner.setTimeLimit(timeLimit);
+
+			if (fork != null)
+				runner.run(fork, maxIterations);
+			else
+				runner.run(maxIterations);
+
+			if (forkAggregation != null && module.aggregation != null)
+				module.aggregation.add(forkAggregation);
+
+			iterations = runner.getLastIteration();
+			timeLimitExceeded = runner.isTimeLimitExceeded();
 
-			runner.run(maxIterations);
+			if (timeLimitExceeded)
+				log.warn("Task stopped by the run budget after {} iterations: {}", iterations, this.module.config.controler().getOutputDirectory());
 
 			log.info("Task finished: {}", this.module.config.controler().getOutputDirectory());
 		}
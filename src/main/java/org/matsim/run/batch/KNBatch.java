@@ -8,6 +8,7 @@ import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.GlobalConfigGroup;
 import org.matsim.episim.*;
 import org.matsim.episim.model.*;
 import org.matsim.episim.policy.FixedPolicy;
@@ -115,8 +116,8 @@ public class KNBatch implements BatchRun<KNBatch.Params> {
 
 	static final class MyProgressionModel implements ProgressionModel {
 		AgeDependentProgressionModel delegate ;
-		@Inject MyProgressionModel( SplittableRandom rnd, EpisimConfigGroup episimConfig, TracingConfigGroup tracingConfig ) {
-			delegate = new AgeDependentProgressionModel( rnd, episimConfig, tracingConfig );
+		@Inject MyProgressionModel( SplittableRandom rnd, GlobalConfigGroup globalConfig, EpisimConfigGroup episimConfig, TracingConfigGroup tracingConfig ) {
+			delegate = new AgeDependentProgressionModel( rnd, globalConfig, episimConfig, tracingConfig );
 		}
 		@Override public void setIteration( int day ){
 			delegate.setIteration( day );
@@ -37,8 +37,8 @@ import java.util.Map;
 import java.util.SplittableRandom;
 
 import static org.matsim.episim.EpisimUtils.nextLogNormalFromMeanAndSigma;
-import static org.matsim.episim.model.InfectionModelWithViralLoad.SUSCEPTIBILITY;
-import static org.matsim.episim.model.InfectionModelWithViralLoad.VIRAL_LOAD;
+import static org.matsim.episim.EpisimPerson.SUSCEPTIBILITY;
+import static org.matsim.episim.EpisimPerson.VIRAL_LOAD;
 
 /**
  * Snz scenario for Berlin with enabled viral load infection model.
@@ -0,0 +1,148 @@
+package org.matsim.episim;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.util.Modules;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.core.config.Config;
+import org.matsim.episim.model.SymmetricContactModel;
+import org.matsim.run.batch.SyntheticBatch;
+import org.matsim.run.modules.SyntheticScenario;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChunkedSnapshotTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private Injector run(Path output, int iterations, int snapshotInterval, EpisimConfigGroup.SnapshotOutput mode,
+						 @Nullable Path snapshot, long seed) {
+
+		SyntheticBatch.Params params = new SyntheticBatch.Params(2000, 2, 20, 2, 2, SymmetricContactModel.class, 3);
+		Injector injector = Guice.createInjector(Modules.override(new EpisimModule()).with(new SyntheticScenario(params)));
+
+		Config config = injector.getInstance(Config.class);
+		config.controler().setOutputDirectory(output.toString());
+		config.global().setRandomSeed(seed);
+
+		EpisimConfigGroup episimConfig = injector.getInstance(EpisimConfigGroup.class);
+		episimConfig.setSnapshotInterval(snapshotInterval);
+		episimConfig.setSnapshotFormat(EpisimConfigGroup.SnapshotFormat.chunked);
+		episimConfig.setSnapshotOutput(mode);
+
+		if (snapshot != null)
+			episimConfig.setStartFromSnapshot(snapshot.toString());
+
+		injector.getInstance(EpisimRunner.class).run(iterations);
+
+		return injector;
+	}
+
+	private static Path findSnapshot(Path output, int iteration) throws IOException {
+		String prefix = String.format("episim-snapshot-%03d", iteration);
+		try (Stream<Path> files = Files.list(output)) {
+			Path snapshot = files.filter(p -> p.getFileName().toString().startsWith(prefix)).findFirst().orElseThrow();
+			assertThat(ChunkedSnapshot.isChunked(snapshot)).isTrue();
+			return snapshot;
+		}
+	}
+
+	/**
+	 * Reads all output files that are the same for runs with the same parameters.
+	 */
+	private static Map<String, String> readOutput(Path output) throws IOException {
+		Map<String, String> content = new HashMap<>();
+		try (Stream<Path> files = Files.list(output)) {
+			for (Path file : files.collect(Collectors.toList())) {
+				String name = file.getFileName().toString();
+				if (Files.isDirectory(file) || name.endsWith(".zip") || name.endsWith(".xml") || name.endsWith(".gz"))
+					continue;
+
+				content.put(name, Files.readString(file));
+			}
+		}
+		return content;
+	}
+
+	private static byte[] serialize(InfectionEventHandler handler) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			handler.writeExternal(out);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Asserts that the persons, containers and reporting counters of both runs are the same.
+	 */
+	private static void assertSameState(Injector expected, Injector actual, int iteration) throws IOException {
+
+		InfectionEventHandler e = expected.getInstance(InfectionEventHandler.class);
+		InfectionEventHandler a = actual.getInstance(InfectionEventHandler.class);
+
+		assertThat(serialize(a)).isEqualTo(serialize(e));
+
+		Map<String, EpisimReporting.InfectionReport> er = expected.getInstance(EpisimReporting.class).createReports(e.getPersons(), iteration);
+		Map<String, EpisimReporting.InfectionReport> ar = actual.getInstance(EpisimReporting.class).createReports(a.getPersons(), iteration);
+
+		assertThat(ar.keySet()).containsExactlyElementsOf(er.keySet());
+		for (String district : er.keySet()) {
+			assertThat(ar.get(district))
+					.as("Report of %s", district)
+					.isEqualToComparingFieldByField(er.get(district));
+		}
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+
+		Path uninterrupted = tmp.newFolder("uninterrupted").toPath();
+		Injector expected = run(uninterrupted, 30, 15, EpisimConfigGroup.SnapshotOutput.copy, null, 4711);
+
+		Path restored = tmp.newFolder("restored").toPath();
+		Injector actual = run(restored, 30, 0, EpisimConfigGroup.SnapshotOutput.copy, findSnapshot(uninterrupted, 15), 4711);
+
+		assertSameState(expected, actual, 31);
+
+		Map<String, String> output = readOutput(uninterrupted);
+		assertThat(output).containsKey("infections.txt");
+		assertThat(readOutput(restored)).isEqualTo(output);
+	}
+
+	@Test
+	public void linkedOutput() throws IOException {
+
+		Path uninterrupted = tmp.newFolder("uninterrupted").toPath();
+		run(uninterrupted, 30, 15, EpisimConfigGroup.SnapshotOutput.link, null, 4711);
+
+		Path snapshot = findSnapshot(uninterrupted, 15);
+		Map<String, String> output = readOutput(uninterrupted);
+
+		// output files are appended to after the snapshot, but the linked files are not copied
+		assertThat(Files.isSameFile(snapshot.resolve("output").resolve("infections.txt"), uninterrupted.resolve("infections.txt")))
+				.isTrue();
+
+		// a different run into the same directory must not change the files of the snapshot
+		run(uninterrupted, 5, 0, EpisimConfigGroup.SnapshotOutput.copy, null, 1);
+		assertThat(readOutput(uninterrupted)).isNotEqualTo(output);
+
+		Path restored = tmp.newFolder("restored").toPath();
+		run(restored, 30, 0, EpisimConfigGroup.SnapshotOutput.copy, snapshot, 4711);
+
+		assertThat(readOutput(restored)).isEqualTo(output);
+	}
+}
@@ -0,0 +1,50 @@
+package org.matsim.episim;
+
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CounterRandomTest {
+
+	@Test
+	public void orderIndependent() {
+
+		EpisimConfigGroup config = new EpisimConfigGroup();
+		config.setRandomNumbers(EpisimConfigGroup.RandomNumbers.counter);
+
+		CounterRandom counter = new CounterRandom(1, config);
+		SplittableRandom rnd = new SplittableRandom(1);
+
+		InfectionEventHandler.EpisimFacility container = EpisimTestUtils.createFacility();
+		EpisimPerson p1 = EpisimTestUtils.createPerson("work", null);
+		EpisimPerson p2 = EpisimTestUtils.createPerson("work", null);
+
+		counter.reset(rnd, CounterRandom.Purpose.contact, 1, container, p1, 100);
+		double a = rnd.nextDouble();
+
+		counter.reset(rnd, CounterRandom.Purpose.contact, 1, container, p2, 100);
+		double b = rnd.nextDouble();
+
+		// draws some numbers in between
+		rnd.nextLong();
+
+		counter.reset(rnd, CounterRandom.Purpose.contact, 1, container, p1, 100);
+		assertThat(rnd.nextDouble()).isEqualTo(a);
+		assertThat(a).isNotEqualTo(b);
+
+		counter.reset(rnd, CounterRandom.Purpose.contact, 2, container, p1, 100);
+		assertThat(rnd.nextDouble()).isNotEqualTo(a);
+	}
+
+	@Test
+	public void disabled() {
+
+		CounterRandom counter = new CounterRandom(1, new EpisimConfigGroup());
+		SplittableRandom rnd = new SplittableRandom(1);
+
+		counter.reset(rnd, CounterRandom.Purpose.initialInfection, 1);
+		assertThat(rnd.nextLong()).isEqualTo(new SplittableRandom(1).nextLong());
+	}
+}
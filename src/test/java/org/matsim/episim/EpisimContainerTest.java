@@ -0,0 +1,139 @@
+package org.matsim.episim;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EpisimContainerTest {
+
+	@Test
+	public void removeStable() {
+
+		InfectionEventHandler.EpisimFacility container = EpisimTestUtils.createFacility();
+		container.setStableOrder(true);
+
+		EpisimPerson p1 = EpisimTestUtils.createPerson("work", container);
+		EpisimPerson p2 = EpisimTestUtils.createPerson("work", null);
+		container.addPerson(p2, 10);
+		EpisimPerson p3 = EpisimTestUtils.createPerson("work", null);
+		container.addPerson(p3, 20);
+
+		container.removePerson(p1);
+
+		assertThat(container.getPersons()).containsExactly(p2, p3);
+		assertThat(container.getContainerEnteringTime(p2)).isEqualTo(10);
+		assertThat(container.getContainerEnteringTime(p3)).isEqualTo(20);
+		assertThat(container.getContainerEnteringTime(p1)).isEqualTo(Double.NEGATIVE_INFINITY);
+		assertThat(container.getContainerEnteringTime(p3.getPersonId())).isEqualTo(20);
+
+		// index by id is kept up to date after it was created
+		container.removePerson(p2);
+		container.addPerson(p1, 30);
+		assertThat(container.getContainerEnteringTime(p3.getPersonId())).isEqualTo(20);
+		assertThat(container.getContainerEnteringTime(p1.getPersonId())).isEqualTo(30);
+		assertThat(container.getContainerEnteringTime(p2.getPersonId())).isEqualTo(Double.NEGATIVE_INFINITY);
+	}
+
+	@Test
+	public void removeSwap() {
+
+		InfectionEventHandler.EpisimFacility container = EpisimTestUtils.createFacility();
+		container.setStableOrder(false);
+
+		List<EpisimPerson> persons = EpisimTestUtils.addPersons(container, 4, "work", p -> {
+		}).getPersons();
+
+		EpisimPerson p1 = persons.get(0);
+		EpisimPerson p2 = persons.get(1);
+		EpisimPerson p3 = persons.get(2);
+		EpisimPerson p4 = persons.get(3);
+
+		assertThat(container.getContainerEnteringTime(p4.getPersonId())).isEqualTo(0);
+
+		container.removePerson(p1);
+		container.removePerson(p2);
+		container.addPerson(p1, 50);
+
+		assertThat(container.getContainerEnteringTime(p1.getPersonId())).isEqualTo(50);
+		assertThat(container.getContainerEnteringTime(p2.getPersonId())).isEqualTo(Double.NEGATIVE_INFINITY);
+		assertThat(container.getContainerEnteringTime(p4.getPersonId())).isEqualTo(0);
+
+		assertThat(container.getPersons()).containsExactlyInAnyOrder(p1, p3, p4);
+		assertThat(container.getContainerEnteringTime(p1)).isEqualTo(50);
+		assertThat(container.getContainerEnteringTime(p3)).isEqualTo(0);
+		assertThat(p2.isInContainer()).isFalse();
+
+		container.removePerson(p4);
+		container.removePerson(p3);
+		container.removePerson(p1);
+
+		assertThat(container.getPersons()).isEmpty();
+	}
+
+	@Test
+	public void counters() {
+
+		InfectionEventHandler.EpisimFacility container = EpisimTestUtils.createFacility();
+
+		EpisimPerson p1 = EpisimTestUtils.createPerson("work", container);
+		EpisimPerson p2 = EpisimTestUtils.createPerson("work", container);
+
+		assertThat(container.getNumSusceptible()).isEqualTo(2);
+		assertThat(container.getNumContagious()).isEqualTo(0);
+		assertThat(container.getNumTraceable()).isEqualTo(2);
+
+		p1.setDiseaseStatus(0, EpisimPerson.DiseaseStatus.contagious);
+		p2.setTraceable(false);
+
+		assertThat(container.getNumSusceptible()).isEqualTo(1);
+		assertThat(container.getNumContagious()).isEqualTo(1);
+		assertThat(container.getNumTraceable()).isEqualTo(1);
+		assertThat(container.getContagiousPersons()).containsExactly(p1);
+		assertThat(container.getSusceptiblePersons()).containsExactly(p2);
+
+		container.removePerson(p1);
+		p1.setDiseaseStatus(0, EpisimPerson.DiseaseStatus.showingSymptoms);
+
+		assertThat(container.getNumContagious()).isEqualTo(0);
+		assertThat(container.getNumTraceable()).isEqualTo(0);
+		assertThat(container.getContagiousPersons()).isEmpty();
+
+		container.addPerson(p1, 10);
+		assertThat(container.getNumContagious()).isEqualTo(1);
+		assertThat(container.getContagiousPersons()).containsExactly(p1);
+
+		p1.setDiseaseStatus(10, EpisimPerson.DiseaseStatus.recovered);
+		assertThat(container.getContagiousPersons()).isEmpty();
+	}
+
+	@Test
+	public void statusLists() {
+
+		InfectionEventHandler.EpisimFacility container = EpisimTestUtils.createFacility(6, "work", p -> {
+		});
+		List<EpisimPerson> persons = List.copyOf(container.getPersons());
+
+		// persons are removed from the middle of the lists in arbitrary order
+		persons.get(1).setDiseaseStatus(0, EpisimPerson.DiseaseStatus.contagious);
+		persons.get(4).setDiseaseStatus(0, EpisimPerson.DiseaseStatus.contagious);
+		persons.get(2).setDiseaseStatus(0, EpisimPerson.DiseaseStatus.contagious);
+		container.removePerson(persons.get(0));
+
+		assertThat(container.getSusceptiblePersons()).containsExactlyInAnyOrder(persons.get(3), persons.get(5));
+		assertThat(container.getContagiousPersons()).containsExactlyInAnyOrder(persons.get(1), persons.get(2), persons.get(4));
+
+		persons.get(1).setDiseaseStatus(0, EpisimPerson.DiseaseStatus.recovered);
+		container.removePerson(persons.get(2));
+		persons.get(5).setDiseaseStatus(0, EpisimPerson.DiseaseStatus.infectedButNotContagious);
+
+		assertThat(container.getSusceptiblePersons()).containsExactly(persons.get(3));
+		assertThat(container.getContagiousPersons()).containsExactly(persons.get(4));
+		assertThat(container.getNumSusceptible()).isEqualTo(1);
+		assertThat(container.getNumContagious()).isEqualTo(1);
+
+		container.addPerson(persons.get(2), 0);
+		assertThat(container.getContagiousPersons()).containsExactlyInAnyOrder(persons.get(4), persons.get(2));
+	}
+}
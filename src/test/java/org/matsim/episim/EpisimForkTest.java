@@ -0,0 +1,80 @@
+package org.matsim.episim;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.util.Modules;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.core.config.Config;
+import org.matsim.episim.model.SymmetricContactModel;
+import org.matsim.run.batch.SyntheticBatch;
+import org.matsim.run.modules.SyntheticScenario;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EpisimForkTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private EpisimRunner createRunner(Path output) {
+
+		SyntheticBatch.Params params = new SyntheticBatch.Params(2000, 2, 20, 2, 2, SymmetricContactModel.class, 3);
+		Injector injector = Guice.createInjector(Modules.override(new EpisimModule()).with(new SyntheticScenario(params)));
+
+		Config config = injector.getInstance(Config.class);
+		config.controler().setOutputDirectory(output.toString());
+
+		return injector.getInstance(EpisimRunner.class);
+	}
+
+	/**
+	 * Reads all output files that are the same for runs with the same parameters.
+	 */
+	private static Map<String, String> readOutput(Path output) throws IOException {
+		Map<String, String> content = new HashMap<>();
+		try (Stream<Path> files = Files.list(output)) {
+			for (Path file : files.collect(Collectors.toList())) {
+				String name = file.getFileName().toString();
+				if (Files.isDirectory(file) || name.endsWith(".zip") || name.endsWith(".xml") || name.endsWith(".gz"))
+					continue;
+
+				content.put(name, Files.readString(file));
+			}
+		}
+		return content;
+	}
+
+	@Test
+	public void sameAsFromScratch() throws IOException {
+
+		Path scratch = tmp.newFolder("scratch").toPath();
+		createRunner(scratch).run(30);
+
+		EpisimFork fork = createRunner(tmp.newFolder("fork").toPath()).fork(15);
+		assertThat(fork).isNotNull();
+		assertThat(fork.getIteration()).isEqualTo(15);
+
+		Map<String, String> expected = readOutput(scratch);
+		assertThat(expected).containsKey("infections.txt");
+
+		// the same fork can be used by several branches
+		for (int i = 0; i < 2; i++) {
+			Path branch = tmp.newFolder("branch-" + i).toPath();
+			createRunner(branch).run(fork, 30);
+
+			assertThat(readOutput(branch))
+					.as("Output of branch %d", i)
+					.isEqualTo(expected);
+		}
+	}
+}
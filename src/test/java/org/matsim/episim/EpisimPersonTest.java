@@ -3,8 +3,11 @@ package org.matsim.episim;
 import org.junit.Test;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+import org.mockito.Mockito;
 
 import java.io.*;
+import java.time.DayOfWeek;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -92,4 +95,98 @@ public class EpisimPersonTest {
 				.isEqualTo(EpisimPerson.DiseaseStatus.showingSymptoms);
 
 	}
+
+	@Test
+	public void store() throws IOException {
+
+		PersonStore store = new PersonStore(0);
+		EpisimReporting reporting = Mockito.mock(EpisimReporting.class, Mockito.withSettings().stubOnly());
+
+		EpisimPerson p1 = new EpisimPerson(Id.createPersonId("store1"), new Attributes(), true, reporting, store);
+		EpisimPerson p2 = new EpisimPerson(Id.createPersonId("store2"), new Attributes(), true, reporting, store);
+
+		assertThat(p1.getDiseaseStatus()).isEqualTo(EpisimPerson.DiseaseStatus.susceptible);
+		assertThat(p1.getQuarantineStatus()).isEqualTo(EpisimPerson.QuarantineStatus.no);
+		assertThat(p1.hadDiseaseStatus(EpisimPerson.DiseaseStatus.susceptible)).isFalse();
+
+		p1.setDiseaseStatus(EpisimUtils.getCorrectedTime(0, 3600, 3), EpisimPerson.DiseaseStatus.contagious);
+		p1.setQuarantineStatus(EpisimPerson.QuarantineStatus.atHome, 4);
+
+		assertThat(p1.daysSince(EpisimPerson.DiseaseStatus.contagious, 5)).isEqualTo(2);
+		assertThat(p1.daysSinceQuarantine(5)).isEqualTo(1);
+		assertThat(p2.getDiseaseStatus()).isEqualTo(EpisimPerson.DiseaseStatus.susceptible);
+
+		InfectionEventHandler.EpisimFacility facility = EpisimTestUtils.createFacility();
+		facility.addPerson(p1, 0);
+		assertThat(p1.getCurrentContainer()).isSameAs(facility);
+		assertThat(p2.isInContainer()).isFalse();
+
+		// state is transferable between both representations
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ObjectOutputStream bout = new ObjectOutputStream(out);
+		p1.write(bout);
+		bout.flush();
+
+		EpisimPerson p3 = EpisimTestUtils.createPerson("home", null);
+		p3.read(new ObjectInputStream(new ByteArrayInputStream(out.toByteArray())), new HashMap<>(),
+				Map.of(facility.getContainerId(), facility), null);
+
+		assertThat(p3.getDiseaseStatus()).isEqualTo(EpisimPerson.DiseaseStatus.contagious);
+		assertThat(p3.getQuarantineStatus()).isEqualTo(EpisimPerson.QuarantineStatus.atHome);
+		assertThat(p3.daysSince(EpisimPerson.DiseaseStatus.contagious, 5)).isEqualTo(2);
+		assertThat(p3.getCurrentContainer()).isSameAs(facility);
+
+		// first facility and day boundaries are held by the store
+		p1.setFirstFacilityId(facility.getContainerId(), DayOfWeek.MONDAY);
+		p1.setStartOfDay(DayOfWeek.MONDAY, 2);
+		p1.duplicateDay(DayOfWeek.TUESDAY, DayOfWeek.MONDAY);
+		assertThat(p1.getFirstFacilityId(DayOfWeek.TUESDAY)).isSameAs(facility.getContainerId());
+		assertThat(p1.getStartOfDay(DayOfWeek.TUESDAY)).isEqualTo(2);
+		assertThat(p2.getFirstFacilityId(DayOfWeek.TUESDAY)).isNull();
+
+		// maps are only created when needed
+		assertThat(p2.getSpentTime()).isEmpty();
+		assertThat(p2.getTraceableContactPersons(0)).isEmpty();
+		p2.getSpentTime().clear();
+
+		p2.addSpentTime("home", 100);
+		p2.addSpentTime("home", 50);
+		assertThat(p2.getSpentTime().getDouble("home")).isEqualTo(150);
+
+		p2.addTraceableContactPerson(p1, 10);
+		assertThat(p2.getTraceableContactPersons(0)).containsExactly(p1);
+		p2.clearTraceableContractPersons(20);
+		assertThat(p2.getTraceableContactPersons(0)).isEmpty();
+	}
+
+	@Test
+	public void attributes() {
+
+		Attributes attrs = new Attributes();
+		attrs.putAttribute("microm:modeled:age", 42);
+		attrs.putAttribute("district", "Berlin");
+		attrs.putAttribute(EpisimPerson.SUSCEPTIBILITY, 0.5);
+
+		EpisimReporting reporting = Mockito.mock(EpisimReporting.class, Mockito.withSettings().stubOnly());
+		EpisimPerson p = new EpisimPerson(Id.createPersonId("attrs"), attrs, reporting);
+
+		assertThat(p.getAge()).isEqualTo(42);
+		assertThat(p.getDistrict()).isEqualTo("Berlin");
+		assertThat(p.getSusceptibility()).isEqualTo(0.5);
+		assertThat(p.getViralLoad()).isNaN();
+
+		EpisimPerson empty = EpisimTestUtils.createPerson("work", null);
+		assertThat(empty.getAge()).isEqualTo(-1);
+		assertThat(empty.getDistrict()).isNull();
+
+		// plain age attribute is used as well, but not other attributes containing "age"
+		attrs = new Attributes();
+		attrs.putAttribute("age", 7);
+		assertThat(new EpisimPerson(Id.createPersonId("age"), attrs, reporting).getAge()).isEqualTo(7);
+
+		attrs = new Attributes();
+		attrs.putAttribute("householdAverage", 3);
+		attrs.putAttribute("stage", 2);
+		assertThat(new EpisimPerson(Id.createPersonId("noAge"), attrs, reporting).getAge()).isEqualTo(-1);
+	}
 }
@@ -0,0 +1,149 @@
+package org.matsim.episim;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Id;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.Config;
+import org.matsim.episim.reporting.EpisimWriter;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EpisimReportingTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private Config config;
+	private EventsManager manager;
+
+	@Before
+	public void setUp() throws IOException {
+		config = EpisimTestUtils.createTestConfig();
+		config.controler().setOutputDirectory(tmp.newFolder("output").toString());
+		manager = Mockito.mock(EventsManager.class);
+	}
+
+	private List<EpisimPerson> createPersons(EpisimReporting reporting, int n) {
+		List<EpisimPerson> persons = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			Attributes attrs = new Attributes();
+			if (i % 5 != 0)
+				attrs.putAttribute("district", "d" + (i % 3));
+
+			persons.add(new EpisimPerson(Id.createPersonId(i), attrs, reporting));
+		}
+		return persons;
+	}
+
+	/**
+	 * Changes the disease and quarantine status of random persons.
+	 */
+	private static void change(List<EpisimPerson> persons, SplittableRandom rnd, double now, int iteration) {
+
+		EpisimPerson.DiseaseStatus[] status = EpisimPerson.DiseaseStatus.values();
+		EpisimPerson.QuarantineStatus[] quarantine = EpisimPerson.QuarantineStatus.values();
+
+		for (int i = 0; i < persons.size() / 2; i++) {
+			EpisimPerson p = persons.get(rnd.nextInt(persons.size()));
+			if (rnd.nextBoolean())
+				p.setDiseaseStatus(now, status[rnd.nextInt(status.length)]);
+			else
+				p.setQuarantineStatus(quarantine[rnd.nextInt(quarantine.length)], iteration);
+		}
+	}
+
+	/**
+	 * Asserts that the incremental counts are the same as counting all persons again.
+	 */
+	private void assertCounts(EpisimReporting reporting, List<EpisimPerson> persons, int iteration) {
+
+		Map<String, EpisimReporting.InfectionReport> actual = reporting.createReports(persons, iteration);
+		Map<String, EpisimReporting.InfectionReport> expected = new EpisimReporting(config, new EpisimWriter(), manager)
+				.createReports(persons, iteration);
+
+		assertThat(actual.keySet()).containsExactlyInAnyOrderElementsOf(expected.keySet());
+
+		for (Map.Entry<String, EpisimReporting.InfectionReport> e : expected.entrySet()) {
+			EpisimReporting.InfectionReport a = actual.get(e.getKey());
+			EpisimReporting.InfectionReport r = e.getValue();
+
+			assertThat(a.nSusceptible).as("nSusceptible of %s", e.getKey()).isEqualTo(r.nSusceptible);
+			assertThat(a.nInfectedButNotContagious).as("nInfectedButNotContagious of %s", e.getKey()).isEqualTo(r.nInfectedButNotContagious);
+			assertThat(a.nContagious).as("nContagious of %s", e.getKey()).isEqualTo(r.nContagious);
+			assertThat(a.nShowingSymptoms).as("nShowingSymptoms of %s", e.getKey()).isEqualTo(r.nShowingSymptoms);
+			assertThat(a.nSeriouslySick).as("nSeriouslySick of %s", e.getKey()).isEqualTo(r.nSeriouslySick);
+			assertThat(a.nCritical).as("nCritical of %s", e.getKey()).isEqualTo(r.nCritical);
+			assertThat(a.nRecovered).as("nRecovered of %s", e.getKey()).isEqualTo(r.nRecovered);
+			assertThat(a.nTotalInfected).as("nTotalInfected of %s", e.getKey()).isEqualTo(r.nTotalInfected);
+			assertThat(a.nInQuarantine).as("nInQuarantine of %s", e.getKey()).isEqualTo(r.nInQuarantine);
+		}
+	}
+
+	@Test
+	public void incrementalCounts() {
+
+		EpisimReporting reporting = new EpisimReporting(config, new EpisimWriter(), manager);
+		List<EpisimPerson> persons = createPersons(reporting, 500);
+		SplittableRandom rnd = new SplittableRandom(1);
+
+		// first report counts all persons
+		reporting.createReports(persons, 1);
+
+		for (int it = 2; it < 10; it++) {
+			change(persons, rnd, it * 86400d, it);
+			assertCounts(reporting, persons, it);
+		}
+	}
+
+	@Test
+	public void deferredCounts() throws InterruptedException {
+
+		EpisimReporting reporting = new EpisimReporting(config, new EpisimWriter(), manager);
+		List<EpisimPerson> persons = createPersons(reporting, 500);
+		SplittableRandom rnd = new SplittableRandom(2);
+
+		reporting.createReports(persons, 1);
+
+		for (int it = 2; it < 10; it++) {
+
+			List<List<EpisimReporting.Deferred>> reports = new ArrayList<>();
+			List<Thread> threads = new ArrayList<>();
+
+			// changes are made by worker threads and only counted when their reports are published
+			for (int t = 0; t < 2; t++) {
+				List<EpisimReporting.Deferred> deferred = new ArrayList<>();
+				reports.add(deferred);
+
+				List<EpisimPerson> part = persons.subList(t * persons.size() / 2, (t + 1) * persons.size() / 2);
+				SplittableRandom split = rnd.split();
+				int iteration = it;
+
+				threads.add(new Thread(() -> {
+					reporting.setDeferred(deferred);
+					change(part, split, iteration * 86400d, iteration);
+					reporting.setDeferred(null);
+				}));
+			}
+
+			for (Thread thread : threads)
+				thread.start();
+
+			for (Thread thread : threads)
+				thread.join();
+
+			reporting.publishDeferred(reports);
+			assertCounts(reporting, persons, it);
+		}
+	}
+}
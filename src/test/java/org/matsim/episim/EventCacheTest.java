@@ -0,0 +1,89 @@
+package org.matsim.episim;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.facilities.ActivityFacility;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventCacheTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void roundTrip() throws IOException {
+
+		Path source = tmp.newFile("events.xml.gz").toPath();
+		Files.writeString(source, "content");
+
+		List<Event> events = List.of(
+				new ActivityEndEvent(100, Id.createPersonId("p1"), Id.createLinkId("l1"), Id.create("f1", ActivityFacility.class), "home"),
+				new PersonEntersVehicleEvent(200, Id.createPersonId("p1"), Id.createVehicleId("v1")),
+				new GenericEvent("custom", 250),
+				new PersonLeavesVehicleEvent(300, Id.createPersonId("p1"), Id.createVehicleId("v1")),
+				new ActivityStartEvent(400, Id.createPersonId("p1"), Id.createLinkId("l2"), null, "work", new Coord(1, 2))
+		);
+
+		Path cache = EventCache.getCachePath(source.toString(), tmp.getRoot().toPath().resolve("cache"));
+		EventCache.write(source, cache, 1, events);
+
+		EventCache.MappedEvents read = EventCache.read(source, cache, 1);
+
+		assertThat(read).hasSize(events.size());
+		for (int i = 0; i < events.size(); i++) {
+			assertThat(read.get(i).getAttributes())
+					.isEqualTo(events.get(i).getAttributes());
+		}
+
+		assertThat(((ActivityStartEvent) read.get(4)).getActType())
+				.isSameAs("work");
+
+		assertThat(read.getType(0)).isEqualTo(EventCache.ACTIVITY_END);
+		assertThat(read.getTime(0)).isEqualTo(100);
+		assertThat(read.getPersonId(0)).isSameAs(Id.createPersonId("p1"));
+		assertThat(read.getFacilityId(0)).isSameAs(Id.create("f1", ActivityFacility.class));
+		assertThat(read.getVehicleId(1)).isSameAs(Id.createVehicleId("v1"));
+		assertThat(read.getType(2)).isEqualTo(EventCache.OTHER);
+		assertThat(read.getFacilityId(4)).isNull();
+		assertThat(read.getLinkId(4)).isSameAs(Id.createLinkId("l2"));
+
+		// cache becomes invalid when the network changes
+		assertThat(EventCache.read(source, cache, 2))
+				.isNull();
+
+		// or when the source changes
+		Files.setLastModifiedTime(source, FileTime.fromMillis(Files.getLastModifiedTime(source).toMillis() - 10_000));
+		assertThat(EventCache.read(source, cache, 1))
+				.isNull();
+	}
+
+	@Test
+	public void cachePath() throws IOException {
+
+		Path a = tmp.newFolder("a").toPath().resolve("events.xml.gz");
+		Path b = tmp.newFolder("b").toPath().resolve("events.xml.gz");
+		Files.writeString(a, "a");
+		Files.writeString(b, "b");
+
+		Path dir = tmp.getRoot().toPath().resolve("cache");
+
+		assertThat(EventCache.getCachePath(a.toString(), dir))
+				.hasParent(dir)
+				.isNotEqualTo(EventCache.getCachePath(b.toString(), dir));
+
+		assertThat(EventCache.getCachePath("https://example.org/events.xml.gz", dir))
+				.isNull();
+	}
+
+}
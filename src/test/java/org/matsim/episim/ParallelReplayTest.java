@@ -0,0 +1,102 @@
+package org.matsim.episim;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.util.Modules;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.core.config.Config;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.episim.model.SymmetricContactModel;
+import org.matsim.run.batch.SyntheticBatch;
+import org.matsim.run.modules.SyntheticScenario;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ParallelReplayTest {
+
+	private static final Pattern TIME = Pattern.compile(" time=\"([0-9.]+)\"");
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private Path run(int threads) throws IOException {
+
+		SyntheticBatch.Params params = new SyntheticBatch.Params(2000, 2, 20, 2, 2, SymmetricContactModel.class, 3);
+		Injector injector = Guice.createInjector(Modules.override(new EpisimModule()).with(new SyntheticScenario(params)));
+
+		Path output = tmp.newFolder("threads-" + threads).toPath();
+		injector.getInstance(Config.class).controler().setOutputDirectory(output.toString());
+
+		EpisimConfigGroup episimConfig = injector.getInstance(EpisimConfigGroup.class);
+		episimConfig.setThreads(threads);
+		episimConfig.setRandomNumbers(EpisimConfigGroup.RandomNumbers.counter);
+
+		injector.getInstance(EpisimRunner.class).run(30);
+
+		return output;
+	}
+
+	@Test
+	public void sameResults() throws IOException {
+
+		Path sequential = run(1);
+		Path parallel = run(4);
+
+		assertThat(parallel.resolve("infections.txt").toFile())
+				.hasSameTextualContentAs(sequential.resolve("infections.txt").toFile());
+
+		// events with the same time may be published in a different order
+		List<String> expected = Files.readAllLines(sequential.resolve("infectionEvents.txt"));
+		assertThat(Files.readAllLines(parallel.resolve("infectionEvents.txt")))
+				.containsExactlyInAnyOrderElementsOf(expected)
+				.hasSizeGreaterThan(1);
+	}
+
+	@Test
+	public void publishedInOrder() throws IOException {
+
+		Path output = run(4);
+
+		List<String> lines = Files.readAllLines(output.resolve("infectionEvents.txt"));
+		List<Double> infections = new ArrayList<>();
+		for (String line : lines.subList(1, lines.size())) {
+			infections.add(Double.parseDouble(line.split("\t")[0]));
+		}
+
+		assertThat(infections)
+				.isNotEmpty()
+				.isSorted();
+
+		File[] days = Objects.requireNonNull(output.resolve("events").toFile().listFiles((dir, name) -> name.endsWith(".xml.gz")));
+		assertThat(days).isNotEmpty();
+
+		for (File day : days) {
+			List<Double> times = new ArrayList<>();
+			try (BufferedReader reader = IOUtils.getBufferedReader(day.toString())) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					Matcher m = TIME.matcher(line);
+					if (m.find())
+						times.add(Double.parseDouble(m.group(1)));
+				}
+			}
+
+			assertThat(times)
+					.as("Events of %s", day)
+					.isSorted();
+		}
+	}
+}
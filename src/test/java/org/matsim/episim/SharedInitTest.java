@@ -0,0 +1,175 @@
+package org.matsim.episim;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.util.Modules;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.Config;
+import org.matsim.episim.model.SymmetricContactModel;
+import org.matsim.run.batch.SyntheticBatch;
+import org.matsim.run.modules.SyntheticScenario;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SharedInitTest {
+
+	private static final SyntheticBatch.Params PARAMS = new SyntheticBatch.Params(2000, 2, 20, 2, 2, SymmetricContactModel.class, 3);
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private Scenario scenario;
+	private ReplayHandler replay;
+
+	@Before
+	public void setUp() {
+		// scenario and events are shared, like in RunParallel
+		Injector base = Guice.createInjector(Modules.override(new EpisimModule()).with(new SyntheticScenario(PARAMS)));
+		scenario = base.getInstance(Scenario.class);
+		replay = base.getInstance(ReplayHandler.class);
+	}
+
+	private Injector create(@Nullable SharedInit sharedInit, Consumer<EpisimConfigGroup> configure) throws IOException {
+
+		Injector injector = Guice.createInjector(Modules.override(Modules.override(new EpisimModule()).with(new SyntheticScenario(PARAMS)))
+				.with(new AbstractModule() {
+					@Override
+					protected void configure() {
+						bind(Scenario.class).toInstance(scenario);
+						bind(ReplayHandler.class).toInstance(replay);
+						if (sharedInit != null)
+							bind(SharedInit.class).toInstance(sharedInit);
+					}
+				}));
+
+		injector.getInstance(Config.class).controler().setOutputDirectory(tmp.newFolder().toString());
+		configure.accept(injector.getInstance(EpisimConfigGroup.class));
+
+		return injector;
+	}
+
+	private InfectionEventHandler init(@Nullable SharedInit sharedInit, Consumer<EpisimConfigGroup> configure) throws IOException {
+		InfectionEventHandler handler = create(sharedInit, configure).getInstance(InfectionEventHandler.class);
+		handler.init(replay.getEvents());
+		return handler;
+	}
+
+	private static List<String> ids(EpisimContainer<?> container) {
+		return container.getPersons().stream().map(p -> p.getPersonId().toString()).collect(Collectors.toList());
+	}
+
+	private static void assertSameContainer(EpisimContainer<?> actual, EpisimContainer<?> expected) {
+		assertThat(actual).as("Container %s", expected.getContainerId()).isNotNull();
+		assertThat(ids(actual)).as("Persons in %s", expected.getContainerId()).isEqualTo(ids(expected));
+		assertThat(actual.getMaxGroupSize()).isEqualTo(expected.getMaxGroupSize());
+		assertThat(actual.getTotalUsers()).isEqualTo(expected.getTotalUsers());
+		assertThat(actual.getTypicalCapacity()).isEqualTo(expected.getTypicalCapacity());
+		assertThat(actual.getNumSpaces()).isEqualTo(expected.getNumSpaces());
+
+		for (EpisimPerson p : expected.getPersons())
+			assertThat(actual.getContainerEnteringTime(p.getPersonId())).isEqualTo(expected.getContainerEnteringTime(p.getPersonId()));
+	}
+
+	/**
+	 * Asserts that persons and containers are initialized the same.
+	 */
+	private static void assertSameInit(InfectionEventHandler actual, InfectionEventHandler expected) {
+
+		Map<Id<Person>, EpisimPerson> persons = actual.getPersonMap();
+		assertThat(persons.keySet()).containsExactlyElementsOf(expected.getPersonMap().keySet());
+
+		for (EpisimPerson e : expected.getPersonMap().values()) {
+			EpisimPerson a = persons.get(e.getPersonId());
+
+			assertThat(a.getTrajectory().stream().map(act -> act.actType).collect(Collectors.toList()))
+					.as("Trajectory of %s", e.getPersonId())
+					.isEqualTo(e.getTrajectory().stream().map(act -> act.actType).collect(Collectors.toList()));
+
+			for (DayOfWeek day : DayOfWeek.values()) {
+				assertThat(a.getStartOfDay(day)).isEqualTo(e.getStartOfDay(day));
+				assertThat(a.getEndOfDay(day)).isEqualTo(e.getEndOfDay(day));
+				assertThat(a.getFirstFacilityId(day)).isEqualTo(e.getFirstFacilityId(day));
+			}
+
+			assertThat(a.getCurrentPositionInTrajectory()).isEqualTo(e.getCurrentPositionInTrajectory());
+			assertThat(a.isTraceable()).isEqualTo(e.isTraceable());
+
+			if (e.getCurrentContainer() == null)
+				assertThat(a.getCurrentContainer()).isNull();
+			else
+				assertThat(a.getCurrentContainer().getContainerId()).isEqualTo(e.getCurrentContainer().getContainerId());
+		}
+
+		assertThat(actual.getFacilityMap().keySet()).containsExactlyInAnyOrderElementsOf(expected.getFacilityMap().keySet());
+		expected.getFacilityMap().forEach((k, v) -> assertSameContainer(actual.getFacilityMap().get(k), v));
+
+		assertThat(actual.getVehicleMap().keySet()).containsExactlyInAnyOrderElementsOf(expected.getVehicleMap().keySet());
+		expected.getVehicleMap().forEach((k, v) -> assertSameContainer(actual.getVehicleMap().get(k), v));
+	}
+
+	@Test
+	public void sameAsNormalInit() throws IOException {
+
+		InfectionEventHandler normal = init(null, c -> {});
+
+		SharedInit shared = SharedInit.create();
+		InfectionEventHandler first = init(shared, c -> {});
+		InfectionEventHandler second = init(shared, c -> {});
+
+		assertSameInit(first, normal);
+		assertSameInit(second, normal);
+	}
+
+	@Test
+	public void differentInputs() throws IOException {
+
+		SharedInit shared = SharedInit.create();
+		init(shared, c -> {});
+
+		// inputs that change containers must not use the shared state
+		InfectionEventHandler normal = init(null, c -> c.setContainerSwapRemove(true));
+		assertSameInit(init(shared, c -> c.setContainerSwapRemove(true)), normal);
+
+		normal = init(null, c -> c.setStartDate("2020-03-01"));
+		assertSameInit(init(shared, c -> c.setStartDate("2020-03-01")), normal);
+	}
+
+	@Test
+	public void sameOutput() throws IOException {
+
+		Path normal = run(null);
+
+		SharedInit shared = SharedInit.create();
+		Path first = run(shared);
+		Path second = run(shared);
+
+		for (String name : List.of("infections.txt", "infectionEvents.txt")) {
+			String expected = Files.readString(normal.resolve(name));
+			assertThat(Files.readString(first.resolve(name))).as("%s of first run", name).isEqualTo(expected);
+			assertThat(Files.readString(second.resolve(name))).as("%s of second run", name).isEqualTo(expected);
+		}
+	}
+
+	private Path run(@Nullable SharedInit sharedInit) throws IOException {
+		Injector injector = create(sharedInit, c -> {});
+		injector.getInstance(EpisimRunner.class).run(20);
+		return Path.of(injector.getInstance(Config.class).controler().getOutputDirectory());
+	}
+}
@@ -0,0 +1,73 @@
+package org.matsim.episim;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.GenericEvent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.DayOfWeek;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StreamingEventsTest {
+
+	private static CompiledEvents compile(List<Event> events) {
+		CompiledEvents compiled = new CompiledEvents(events.size());
+		for (int i = 0; i < events.size(); i++)
+			compiled.add(CompiledEvents.ACTIVITY_START, events.get(i).getTime(), i, i * 2, -1);
+
+		return compiled;
+	}
+
+	private static Map<DayOfWeek, List<Event>> createEvents() {
+
+		List<Event> weekday = List.of(new GenericEvent("a", 10), new GenericEvent("b", 20));
+		List<Event> weekend = List.of(new GenericEvent("c", 30));
+
+		Map<DayOfWeek, List<Event>> events = new EnumMap<>(DayOfWeek.class);
+		for (DayOfWeek day : DayOfWeek.values())
+			events.put(day, day.getValue() >= 6 ? weekend : weekday);
+
+		return events;
+	}
+
+	@Test
+	public void days() throws IOException {
+
+		Map<DayOfWeek, List<Event>> events = createEvents();
+		StreamingEvents streaming = StreamingEvents.create(events, StreamingEventsTest::compile);
+
+		for (int i = 0; i < 14; i++) {
+			DayOfWeek day = DayOfWeek.MONDAY.plus(i);
+			CompiledEvents compiled = streaming.get(day);
+
+			List<Event> expected = events.get(day);
+			assertThat(compiled.size()).isEqualTo(expected.size());
+			for (int j = 0; j < expected.size(); j++) {
+				assertThat(compiled.getTime(j)).isEqualTo(expected.get(j).getTime());
+				assertThat(compiled.getContainer(j)).isEqualTo(j * 2);
+				assertThat(compiled.getActivity(j)).isEqualTo(-1);
+			}
+		}
+
+		// same day is not loaded again
+		assertThat(streaming.get(DayOfWeek.TUESDAY)).isSameAs(streaming.get(DayOfWeek.TUESDAY));
+	}
+
+	@Test
+	public void close() throws IOException {
+
+		StreamingEvents streaming = StreamingEvents.create(createEvents(), StreamingEventsTest::compile);
+
+		// a prefetch of the following day is still running
+		streaming.get(DayOfWeek.FRIDAY);
+		assertThat(streaming.getDirectory()).isDirectory();
+
+		streaming.close();
+		assertThat(Files.exists(streaming.getDirectory())).isFalse();
+	}
+}
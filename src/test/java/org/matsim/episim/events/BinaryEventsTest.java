@@ -0,0 +1,67 @@
+package org.matsim.episim.events;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.GenericEvent;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.episim.EpisimPerson;
+import org.matsim.facilities.ActivityFacility;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BinaryEventsTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void roundTrip() throws IOException {
+
+		List<Event> events = new ArrayList<>();
+		events.add(new EpisimInfectionEvent(100, Id.createPersonId("p1"), Id.createPersonId("p2"), Id.create("f1", ActivityFacility.class), "home_home"));
+		events.add(new EpisimPersonStatusEvent(200, Id.createPersonId("p1"), EpisimPerson.QuarantineStatus.atHome));
+		events.add(new EpisimContactEvent(300, Id.createPersonId("p1"), Id.createPersonId("p3"), Id.create("f1", ActivityFacility.class), "work", 60, 4));
+		events.add(new EpisimTracingEvent(400, Id.createPersonId("p3"), Id.createPersonId("p1")));
+
+		GenericEvent generic = new GenericEvent("custom", 500);
+		generic.getAttributes().put("key", "value");
+		events.add(generic);
+
+		// more than one block
+		for (int i = 0; i < BinaryEventsWriter.BLOCK_SIZE + 10; i++) {
+			events.add(new EpisimPersonStatusEvent(600 + i, Id.createPersonId("p" + (i % 100)), EpisimPerson.DiseaseStatus.contagious));
+		}
+
+		Path file = tmp.getRoot().toPath().resolve("day_001" + BinaryEventsWriter.SUFFIX);
+		try (BinaryEventsWriter writer = new BinaryEventsWriter(file)) {
+			for (Event event : events) {
+				writer.append(event, -1);
+			}
+		}
+
+		assertThat(BinaryEventsReader.isBinary(file)).isTrue();
+
+		List<Event> read = new ArrayList<>();
+		EventsManager manager = EventsUtils.createEventsManager();
+		manager.addHandler((BasicEventHandler) read::add);
+		manager.initProcessing();
+		new BinaryEventsReader(manager).readFile(file.toString());
+		manager.finishProcessing();
+
+		assertThat(read).hasSize(events.size());
+		for (int i = 0; i < events.size(); i++) {
+			assertThat(read.get(i).getAttributes())
+					.isEqualTo(events.get(i).getAttributes());
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package org.matsim.episim.model;
+
+import org.junit.Test;
+import org.matsim.episim.EpisimConfigGroup;
+import org.matsim.episim.EpisimPerson;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ActivityInteractionsTest {
+
+	private static EpisimPerson.Activity act(String type, EpisimConfigGroup.InfectionParams params) {
+		return new EpisimPerson.Activity(type, params);
+	}
+
+	@Test
+	public void defaultRules() {
+
+		EpisimConfigGroup.InfectionParams params = new EpisimConfigGroup.InfectionParams("any");
+		ActivityInteractions interactions = new ActivityInteractions();
+
+		assertThat(interactions.mayInteract(act("home", params), act("work", params))).isTrue();
+		assertThat(interactions.mayInteract(act("home_2", params), act("home_1", params))).isTrue();
+		assertThat(interactions.mayInteract(act("home", params), act("shop", params))).isFalse();
+		assertThat(interactions.mayInteract(act("edu", params), act("leisure", params))).isFalse();
+		assertThat(interactions.mayInteract(act("edu", params), act("edu", params))).isTrue();
+
+		assertThat(interactions.isTraceable(act("work", params), act("leisure", params))).isTrue();
+		assertThat(interactions.isTraceable(act("work", params), act("shop", params))).isFalse();
+
+		assertThat(interactions.getInfectionType(act("work", params), act("leisure", params)))
+				.isEqualTo("work_leisure")
+				.isSameAs(interactions.getInfectionType(act("work", params), act("leisure", params)));
+	}
+
+	@Test
+	public void configured() {
+
+		EpisimConfigGroup.InfectionParams home = new EpisimConfigGroup.InfectionParams("home").setInteractions("home,shop");
+		EpisimConfigGroup.InfectionParams shop = new EpisimConfigGroup.InfectionParams("shop").setTraceable(true);
+		EpisimConfigGroup.InfectionParams work = new EpisimConfigGroup.InfectionParams("work");
+
+		ActivityInteractions interactions = new ActivityInteractions();
+
+		assertThat(interactions.mayInteract(act("home", home), act("shop", shop))).isTrue();
+		assertThat(interactions.mayInteract(act("home", home), act("work", work))).isFalse();
+		assertThat(interactions.mayInteract(act("shop", shop), act("work", work))).isTrue();
+
+		assertThat(interactions.isTraceable(act("shop", shop), act("work", work))).isTrue();
+	}
+}
@@ -0,0 +1,43 @@
+package org.matsim.episim.model;
+
+import org.junit.Test;
+import org.matsim.episim.EpisimPerson;
+import org.matsim.episim.EpisimTestUtils;
+import org.matsim.episim.InfectionEventHandler;
+import org.matsim.episim.policy.Restriction;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompiledRestrictionsTest {
+
+	@Test
+	public void update() {
+
+		EpisimPerson.Activity work = new EpisimPerson.Activity("work", EpisimTestUtils.TEST_CONFIG.selectInfectionParams("work"));
+		EpisimPerson.Activity leis = new EpisimPerson.Activity("leis", EpisimTestUtils.TEST_CONFIG.selectInfectionParams("leis"));
+
+		InfectionEventHandler.EpisimFacility facility = EpisimTestUtils.createFacility(10, "work", p -> {
+		});
+
+		Map<String, Restriction> restrictions = new HashMap<>();
+		restrictions.put("work", Restriction.of(0.5));
+		restrictions.put("leis", Restriction.none());
+
+		CompiledRestrictions compiled = new CompiledRestrictions();
+		compiled.update(restrictions);
+
+		assertThat(compiled.getRemainingFraction(work)).isEqualTo(0.5);
+		assertThat(compiled.getRemainingFraction(leis)).isEqualTo(1);
+		assertThat(compiled.exceedsGroupSize(work, facility)).isFalse();
+		assertThat(compiled.isClosed(leis, facility)).isFalse();
+
+		// entries are compiled again for the next iteration
+		restrictions.put("work", Restriction.of(0.2));
+		compiled.update(restrictions);
+
+		assertThat(compiled.getRemainingFraction(work)).isEqualTo(0.2);
+	}
+}
@@ -6,6 +6,7 @@ import org.apache.commons.math3.stat.descriptive.moment.Mean;
 import org.assertj.core.data.Percentage;
 import org.junit.Before;
 import org.junit.Test;
+import org.matsim.core.config.groups.GlobalConfigGroup;
 import org.matsim.episim.*;
 import org.matsim.episim.EpisimPerson.DiseaseStatus;
 
@@ -55,7 +56,7 @@ public class ConfigurableProgressionModelTest {
 		episimConfig = new EpisimConfigGroup();
 		episimConfig.setProgressionConfig(TEST_CONFIG);
 
-		model = new ConfigurableProgressionModel(new SplittableRandom(1), episimConfig, tracingConfig);
+		model = new ConfigurableProgressionModel(new SplittableRandom(1), new GlobalConfigGroup(), episimConfig, tracingConfig);
 		model.setIteration(1);
 	}
 
@@ -291,7 +292,7 @@ public class ConfigurableProgressionModelTest {
 						to(DiseaseStatus.recovered, Transition.fixed(0)))
 				.build());
 
-		model = new ConfigurableProgressionModel(new SplittableRandom(1), config, tracingConfig);
+		model = new ConfigurableProgressionModel(new SplittableRandom(1), new GlobalConfigGroup(), config, tracingConfig);
 
 		List<Double> recoveredDays = new ArrayList<>();
 
@@ -0,0 +1,106 @@
+package org.matsim.episim.model;
+
+import org.assertj.core.data.Offset;
+import org.junit.Test;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.episim.*;
+import org.matsim.episim.policy.Restriction;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the infection frequencies of {@link EpisimConfigGroup.ContactEvaluation#analytical} with the pairwise evaluation.
+ */
+public class ContactEvaluationTest {
+
+	private static final int SEEDS = 10_000;
+	private static final Offset<Double> OFFSET = Offset.offset(0.015);
+
+	/**
+	 * Constructor of a contact model.
+	 */
+	private interface Factory {
+		AbstractContactModel create(SplittableRandom rnd, Config config, TracingConfigGroup tracingConfig,
+									EpisimReporting reporting, InfectionModel infectionModel);
+	}
+
+	/**
+	 * Samples the share of infected susceptible persons, when all persons leave a container with 3 contagious and 12 susceptible persons.
+	 * Every sample uses a different seed.
+	 */
+	private static double sampleInfectionRate(Factory factory, EpisimConfigGroup.ContactEvaluation evaluation, String actType,
+											  Duration jointTime, double remainingFraction) {
+
+		Config config = EpisimTestUtils.createTestConfig();
+		EpisimConfigGroup episimConfig = ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class);
+		episimConfig.setMaxContacts(2);
+		episimConfig.setContactEvaluation(evaluation);
+
+		TracingConfigGroup tracingConfig = ConfigUtils.addOrGetModule(config, TracingConfigGroup.class);
+		EpisimReporting reporting = Mockito.mock(EpisimReporting.class, Mockito.withSettings().stubOnly());
+
+		Map<String, Restriction> restrictions = episimConfig.createInitialRestrictions();
+		if (remainingFraction < 1)
+			restrictions.put(actType, Restriction.of(remainingFraction, 1.0));
+
+		double rate = 0;
+		for (int seed = 0; seed < SEEDS; seed++) {
+
+			SplittableRandom rnd = new SplittableRandom(seed);
+			AbstractContactModel model = factory.create(rnd, config, tracingConfig, reporting,
+					new DefaultInfectionModel(new DefaultFaceMaskModel(rnd), config));
+			model.setRestrictionsForIteration(1, restrictions);
+
+			InfectionEventHandler.EpisimFacility container = EpisimTestUtils.addPersons(
+					EpisimTestUtils.createFacility(3, actType, 15, EpisimTestUtils.CONTAGIOUS), 12, actType, p -> {
+					});
+
+			List<EpisimPerson> susceptible = new ArrayList<>(container.getSusceptiblePersons());
+
+			// persons leave in the same order for both evaluations
+			Random order = new Random(seed);
+			while (!container.getPersons().isEmpty()) {
+				EpisimPerson person = container.getPersons().get(order.nextInt(container.getPersons().size()));
+				model.infectionDynamicsFacility(person, container, jointTime.getSeconds(), actType);
+				EpisimTestUtils.removePerson(container, person);
+			}
+
+			rate += (double) susceptible.stream().filter(p -> p.getDiseaseStatus() == EpisimPerson.DiseaseStatus.infectedButNotContagious).count()
+					/ susceptible.size();
+		}
+
+		return rate / SEEDS;
+	}
+
+	private static void assertSameRate(Factory factory, String actType, Duration jointTime, double remainingFraction) {
+
+		double compatible = sampleInfectionRate(factory, EpisimConfigGroup.ContactEvaluation.compatible, actType, jointTime, remainingFraction);
+		double analytical = sampleInfectionRate(factory, EpisimConfigGroup.ContactEvaluation.analytical, actType, jointTime, remainingFraction);
+
+		assertThat(compatible).as("Infection rate with remaining fraction %s", remainingFraction)
+				.isGreaterThan(0.05).isLessThan(0.95);
+		assertThat(analytical).as("Analytical infection rate with remaining fraction %s", remainingFraction)
+				.isCloseTo(compatible, OFFSET);
+	}
+
+	@Test
+	public void symmetric() {
+		assertSameRate(SymmetricContactModel::new, "c10", Duration.ofMinutes(10), 1);
+		assertSameRate(SymmetricContactModel::new, "c10", Duration.ofMinutes(10), 0.5);
+	}
+
+	@Test
+	public void sqrt() {
+		assertSameRate(SqrtContactModel::new, "c1.0", Duration.ofMinutes(10), 1);
+		assertSameRate(SqrtContactModel::new, "c1.0", Duration.ofMinutes(10), 0.5);
+	}
+}
@@ -120,6 +120,28 @@ public class DefaultContactModelTest {
 		assertThat(rate).isCloseTo(0, OFFSET);
 	}
 
+	@Test
+	public void contactSampling() {
+
+		// only some persons in the container are contagious
+		Supplier<InfectionEventHandler.EpisimFacility> f = () -> {
+			InfectionEventHandler.EpisimFacility container = EpisimTestUtils.createFacility(5, "c10", EpisimTestUtils.CONTAGIOUS);
+			return EpisimTestUtils.addPersons(container, 15, "c10", p -> {
+			});
+		};
+
+		double stable = sampleInfectionRate(Duration.ofMinutes(15), "c10", f, (c) -> EpisimTestUtils.createPerson("c10", c));
+
+		ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class).setContactSampling(EpisimConfigGroup.ContactSampling.fisherYates);
+		model = new DefaultContactModel(new SplittableRandom(1), config, Mockito.mock(EpisimReporting.class, Mockito.withSettings().stubOnly()), infectionModel);
+		model.setRestrictionsForIteration(1, restrictions);
+
+		double shuffled = sampleInfectionRate(Duration.ofMinutes(15), "c10", f, (c) -> EpisimTestUtils.createPerson("c10", c));
+
+		assertThat(stable).isGreaterThan(0).isLessThan(1);
+		assertThat(shuffled).isCloseTo(stable, Offset.offset(0.02));
+	}
+
 	@Test
 	public void alone() {
 		double rate = sampleInfectionRate(Duration.ofMinutes(10), "c10",
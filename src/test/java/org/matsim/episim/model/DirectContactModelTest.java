@@ -0,0 +1,92 @@
+package org.matsim.episim.model;
+
+import org.junit.Test;
+import org.matsim.episim.EpisimPerson;
+import org.matsim.episim.EpisimTestUtils;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DirectContactModelTest {
+
+	/**
+	 * Asserts that every person is found in the slot of its group.
+	 */
+	private static void assertGroups(DirectContactModel.Groups groups, Map<EpisimPerson, EpisimPerson> partners,
+									 Map<EpisimPerson, Double> times, List<EpisimPerson> removed) {
+
+		assertThat(groups.size()).isEqualTo(partners.size() / 2);
+
+		for (Map.Entry<EpisimPerson, EpisimPerson> e : partners.entrySet()) {
+			int slot = groups.find(e.getKey());
+
+			assertThat(slot).isBetween(0, groups.size() - 1);
+			assertThat(groups.find(e.getValue())).isEqualTo(slot);
+			assertThat(groups.partner(slot, e.getKey())).isSameAs(e.getValue());
+			assertThat(groups.getTime(slot)).isEqualTo(times.get(e.getKey()));
+		}
+
+		for (EpisimPerson p : removed)
+			assertThat(groups.find(p)).isEqualTo(-1);
+	}
+
+	@Test
+	public void groupsNonLifo() {
+
+		DirectContactModel.Groups groups = new DirectContactModel.Groups();
+		Map<EpisimPerson, EpisimPerson> partners = new IdentityHashMap<>();
+		Map<EpisimPerson, Double> times = new IdentityHashMap<>();
+		List<EpisimPerson> removed = new ArrayList<>();
+
+		SplittableRandom rnd = new SplittableRandom(1);
+
+		for (int i = 0; i < 500; i++) {
+
+			// form groups more often than removing them, but remove from arbitrary positions
+			if (partners.isEmpty() || rnd.nextInt(3) > 0) {
+				EpisimPerson p1 = EpisimTestUtils.createPerson("work", null);
+				EpisimPerson p2 = EpisimTestUtils.createPerson("work", null);
+				groups.add(p1, p2, i);
+
+				partners.put(p1, p2);
+				partners.put(p2, p1);
+				times.put(p1, (double) i);
+				times.put(p2, (double) i);
+
+			} else {
+				List<EpisimPerson> persons = new ArrayList<>(partners.keySet());
+				EpisimPerson leaving = persons.get(rnd.nextInt(persons.size()));
+				EpisimPerson partner = partners.get(leaving);
+
+				groups.remove(groups.find(leaving));
+
+				partners.remove(leaving);
+				partners.remove(partner);
+				removed.add(leaving);
+				removed.add(partner);
+			}
+
+			assertGroups(groups, partners, times, removed);
+		}
+
+		// remove the first, middle and last group explicitly
+		for (int slot : new int[]{0, groups.size() / 2, groups.size() - 1}) {
+			EpisimPerson leaving = partners.keySet().stream().filter(p -> groups.find(p) == slot).findFirst().orElseThrow();
+			EpisimPerson partner = partners.get(leaving);
+
+			groups.remove(slot);
+
+			partners.remove(leaving);
+			partners.remove(partner);
+			removed.add(leaving);
+			removed.add(partner);
+
+			assertGroups(groups, partners, times, removed);
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package org.matsim.episim.model;
+
+import org.junit.Test;
+import org.matsim.episim.EpisimPerson;
+import org.matsim.episim.EpisimTestUtils;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexedPersonSetTest {
+
+	@Test
+	public void addAndRemove() {
+
+		IndexedPersonSet set = new IndexedPersonSet();
+
+		EpisimPerson p1 = EpisimTestUtils.createPerson("home", null);
+		EpisimPerson p2 = EpisimTestUtils.createPerson("home", null);
+		EpisimPerson p3 = EpisimTestUtils.createPerson("home", null);
+
+		set.add(p1);
+		set.add(p2);
+		set.add(p3);
+		set.add(p2);
+
+		assertThat(set.size()).isEqualTo(3);
+
+		assertThat(set.remove(p1)).isTrue();
+		assertThat(set.remove(p1)).isFalse();
+		assertThat(set.contains(p1)).isFalse();
+
+		Set<EpisimPerson> remaining = new HashSet<>();
+		for (int i = 0; i < set.size(); i++)
+			remaining.add(set.get(i));
+
+		assertThat(remaining).containsExactlyInAnyOrder(p2, p3);
+
+		set.remove(p3);
+		set.remove(p2);
+		assertThat(set.size()).isEqualTo(0);
+	}
+}
@@ -0,0 +1,43 @@
+package org.matsim.episim.model;
+
+import org.junit.Test;
+import org.matsim.episim.EpisimConfigGroup;
+import org.matsim.episim.EpisimPerson;
+import org.matsim.episim.EpisimTestUtils;
+import org.matsim.episim.InfectionEventHandler;
+import org.matsim.episim.policy.Restriction;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PerVisitFaceMaskModelTest {
+
+	@Test
+	public void sameMaskDuringVisit() {
+
+		FaceMaskModel model = new PerVisitFaceMaskModel(new SplittableRandom(1));
+		EpisimConfigGroup.InfectionParams act = EpisimTestUtils.TEST_CONFIG.selectInfectionParams("work");
+		Restriction r = Restriction.ofMask(FaceMask.CLOTH, 0.5);
+
+		InfectionEventHandler.EpisimFacility facility = EpisimTestUtils.createFacility(1, "work", p -> {
+		});
+		EpisimPerson person = facility.getPersons().get(0);
+
+		Set<FaceMask> worn = EnumSet.noneOf(FaceMask.class);
+		for (int day = 1; day <= 50; day++) {
+			model.setIteration(day);
+
+			FaceMask mask = model.getWornMask(person, act, r);
+			for (int i = 0; i < 10; i++)
+				assertThat(model.getWornMask(person, act, r)).isEqualTo(mask);
+
+			worn.add(mask);
+		}
+
+		// mask is drawn anew each day
+		assertThat(worn).containsExactlyInAnyOrder(FaceMask.NONE, FaceMask.CLOTH);
+	}
+}
@@ -0,0 +1,108 @@
+package org.matsim.episim.reporting;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.episim.events.EpisimContactEvent;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.vehicles.Vehicle;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EpisimWriterTest {
+
+	private static final Id<Person> INFECTOR = Id.createPersonId("p1");
+	private static final Id<Person> INFECTED = Id.createPersonId("p2");
+	private static final Id<ActivityFacility> FACILITY = Id.create("f1", ActivityFacility.class);
+	private static final Id<Vehicle> VEHICLE = Id.create("v1", Vehicle.class);
+
+	/**
+	 * Writes rows with the fast paths and with the generic methods the reporting used before.
+	 */
+	private static void write(EpisimWriter writer, BufferedWriter fast, BufferedWriter baseline) {
+
+		int facility = EpisimWriter.containerIndex(FACILITY, false);
+		int vehicle = EpisimWriter.containerIndex(VEHICLE, true);
+
+		for (int i = 0; i < 50; i++) {
+			double time = 3600.25 * i;
+
+			writer.appendInfection(fast, time, INFECTOR.index(), INFECTED.index(), InfectionTypes.index("home_" + i), "2020-03-0" + (i % 9 + 1),
+					i, facility);
+
+			// columns in order of EpisimReporting.InfectionEventsWriterFields
+			writer.append(baseline, new String[]{
+					Double.toString(time), INFECTOR.toString(), INFECTED.toString(), "home_" + i, "2020-03-0" + (i % 9 + 1),
+					Long.toString(i), FACILITY.toString()
+			});
+
+			double corrected = i % 2 == 0 ? -1 : time + 86400;
+			writer.appendContact(fast, time, INFECTOR.index(), INFECTED.index(), facility, InfectionTypes.index("work"), 120.5 * i, i, corrected);
+			writer.append(baseline, new EpisimContactEvent(time, INFECTOR, INFECTED, FACILITY, "work", 120.5 * i, i), corrected);
+
+			writer.appendContact(fast, time, INFECTED.index(), INFECTOR.index(), vehicle, InfectionTypes.index("pt"), 60, i, corrected);
+			writer.append(baseline, new EpisimContactEvent(time, INFECTED, INFECTOR, VEHICLE, "pt", 60, i), corrected);
+		}
+	}
+
+	@Test
+	public void sameRows() {
+
+		StringWriter fast = new StringWriter();
+		StringWriter baseline = new StringWriter();
+
+		write(new EpisimWriter(), new BufferedWriter(fast), new BufferedWriter(baseline));
+
+		assertThat(fast.toString())
+				.isNotEmpty()
+				.isEqualTo(baseline.toString());
+	}
+
+	@Test
+	public void sameRowsAsync() throws InterruptedException {
+
+		StringWriter fast = new StringWriter();
+		StringWriter baseline = new StringWriter();
+
+		CountDownLatch closed = new CountDownLatch(2);
+		BufferedWriter fastWriter = new ClosingWriter(fast, closed);
+		BufferedWriter baselineWriter = new ClosingWriter(baseline, closed);
+
+		AsyncEpisimWriter writer = new AsyncEpisimWriter(1);
+		write(writer, fastWriter, baselineWriter);
+
+		writer.close(fastWriter);
+		writer.close(baselineWriter);
+
+		assertThat(closed.await(10, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(fast.toString())
+				.isNotEmpty()
+				.isEqualTo(baseline.toString());
+	}
+
+	/**
+	 * Signals when the async writer has closed it.
+	 */
+	private static final class ClosingWriter extends BufferedWriter {
+
+		private final CountDownLatch closed;
+
+		private ClosingWriter(StringWriter out, CountDownLatch closed) {
+			super(out);
+			this.closed = closed;
+		}
+
+		@Override
+		public void close() throws IOException {
+			super.close();
+			closed.countDown();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package org.matsim.episim.reporting;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class SeedAggregationTest {
+
+	@Test
+	public void stats() {
+
+		SeedAggregation.Stats stats = new SeedAggregation.Stats();
+		for (int i = 100; i >= 1; i--)
+			stats.add(i);
+
+		assertThat(stats.mean()).isCloseTo(50.5, within(1e-9));
+		assertThat(stats.sd()).isCloseTo(29.0115, within(1e-4));
+
+		assertThat(stats.quantile(0)).isCloseTo(1, within(SeedAggregation.Stats.ACCURACY));
+		assertThat(stats.quantile(0.5)).isCloseTo(50, within(50 * SeedAggregation.Stats.ACCURACY));
+		assertThat(stats.quantile(0.95)).isCloseTo(95, within(95 * SeedAggregation.Stats.ACCURACY));
+		assertThat(stats.quantile(1)).isCloseTo(100, within(100 * SeedAggregation.Stats.ACCURACY));
+	}
+
+	@Test
+	public void zeros() {
+
+		SeedAggregation.Stats stats = new SeedAggregation.Stats();
+		stats.add(0);
+		stats.add(0);
+		stats.add(10);
+
+		assertThat(stats.quantile(0.5)).isEqualTo(0);
+		assertThat(stats.quantile(1)).isCloseTo(10, within(10 * SeedAggregation.Stats.ACCURACY));
+	}
+
+	@Test
+	public void merge() {
+
+		SeedAggregation.Stats all = new SeedAggregation.Stats();
+		SeedAggregation.Stats first = new SeedAggregation.Stats();
+		SeedAggregation.Stats second = new SeedAggregation.Stats();
+
+		for (int i = 0; i < 100; i++) {
+			all.add(i * 3);
+			(i < 30 ? first : second).add(i * 3);
+		}
+
+		first.add(second);
+
+		assertThat(first.mean()).isCloseTo(all.mean(), within(1e-9));
+		assertThat(first.sd()).isCloseTo(all.sd(), within(1e-9));
+		for (double q : new double[]{0, 0.05, 0.5, 0.95, 1})
+			assertThat(first.quantile(q)).isEqualTo(all.quantile(q));
+
+		// merging empty stats has no effect
+		first.add(new SeedAggregation.Stats());
+		assertThat(first.mean()).isCloseTo(all.mean(), within(1e-9));
+	}
+}
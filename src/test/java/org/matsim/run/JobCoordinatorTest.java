@@ -0,0 +1,133 @@
+package org.matsim.run;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JobCoordinatorTest {
+
+	private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+	private static final String TOKEN = "secret";
+
+	@Test
+	public void protocol() throws IOException {
+
+		try (JobCoordinator coordinator = new JobCoordinator(List.of(1, 2), LOOPBACK, 0, TOKEN, 60_000, 2)) {
+
+			assertThat(coordinator.handle("CLAIM a")).isEqualTo("RUN 1");
+			assertThat(coordinator.handle("CLAIM b")).isEqualTo("RUN 2");
+			assertThat(coordinator.handle("CLAIM a")).isEqualTo("WAIT");
+
+			assertThat(coordinator.handle("HEARTBEAT a 1")).isEqualTo("OK");
+			assertThat(coordinator.handle("HEARTBEAT a 2")).startsWith("ERROR");
+
+			// failed run is retried once
+			assertThat(coordinator.handle("FAILED b 2")).isEqualTo("OK");
+			assertThat(coordinator.handle("CLAIM a")).isEqualTo("RUN 2");
+			assertThat(coordinator.handle("FAILED a 2")).isEqualTo("OK");
+
+			assertThat(coordinator.handle("DONE a 1 100 10")).isEqualTo("OK");
+			assertThat(coordinator.handle("CLAIM a")).isEqualTo("END");
+		}
+	}
+
+	@Test
+	public void requeueAfterTimeout() throws Exception {
+
+		try (JobCoordinator coordinator = new JobCoordinator(List.of(1), LOOPBACK, 0, TOKEN, 50, 2)) {
+
+			assertThat(coordinator.handle("CLAIM a")).isEqualTo("RUN 1");
+			Thread.sleep(100);
+
+			assertThat(coordinator.handle("CLAIM b")).isEqualTo("RUN 1");
+			assertThat(coordinator.handle("DONE a 1 100 10")).startsWith("ERROR");
+			assertThat(coordinator.handle("DONE b 1 100 10")).isEqualTo("OK");
+
+			assertThat(coordinator.await()).isEqualTo(0);
+		}
+	}
+
+	@Test
+	public void clients() throws Exception {
+
+		try (JobCoordinator coordinator = new JobCoordinator(List.of(1, 2, 3), LOOPBACK, 0, TOKEN, 60_000, 1)) {
+			coordinator.start();
+
+			InetSocketAddress address = new InetSocketAddress(LOOPBACK, coordinator.getPort());
+			try (JobCoordinator.Client a = new JobCoordinator.Client(address, TOKEN, "a", 50);
+				 JobCoordinator.Client b = new JobCoordinator.Client(address, TOKEN, "b", 50)) {
+
+				assertThat(a.claim()).isEqualTo(1);
+				assertThat(b.claim()).isEqualTo(2);
+				a.finish(1, JobSource.Status.done, 10, 1);
+				assertThat(a.claim()).isEqualTo(3);
+				a.finish(3, JobSource.Status.done, 10, 1);
+				b.finish(2, JobSource.Status.failed, 0, 0);
+
+				assertThat(a.claim()).isNull();
+			}
+
+			assertThat(coordinator.await()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	public void incomplete() throws Exception {
+
+		try (JobCoordinator coordinator = new JobCoordinator(List.of(1, 2), LOOPBACK, 0, TOKEN, 60_000, 2)) {
+
+			assertThat(coordinator.handle("CLAIM a")).isEqualTo("RUN 1");
+			assertThat(coordinator.handle("INCOMPLETE a 1 100 5")).isEqualTo("OK");
+
+			// incomplete runs are not retried
+			assertThat(coordinator.handle("CLAIM a")).isEqualTo("RUN 2");
+			assertThat(coordinator.handle("DONE a 2 100 10")).isEqualTo("OK");
+			assertThat(coordinator.handle("CLAIM a")).isEqualTo("END");
+
+			assertThat(coordinator.await()).isEqualTo(0);
+			assertThat(coordinator.getIncomplete()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	public void token() throws Exception {
+
+		try (JobCoordinator coordinator = new JobCoordinator(List.of(1), LOOPBACK, 0, TOKEN, 60_000, 1)) {
+
+			assertThat(coordinator.authorize(TOKEN + " CLAIM a")).isEqualTo("CLAIM a");
+			assertThat(coordinator.authorize("other CLAIM a")).isNull();
+			assertThat(coordinator.authorize("CLAIM a")).isNull();
+			assertThat(coordinator.authorize(TOKEN)).isNull();
+
+			coordinator.start();
+
+			// requests without the token are rejected and don't claim runs
+			assertThat(send(coordinator, "CLAIM a")).isEqualTo("ERROR unauthorized");
+			assertThat(send(coordinator, "wrong CLAIM a")).isEqualTo("ERROR unauthorized");
+			assertThat(send(coordinator, TOKEN + " CLAIM a")).isEqualTo("RUN 1");
+
+			try (JobCoordinator.Client client = new JobCoordinator.Client(new InetSocketAddress(LOOPBACK, coordinator.getPort()), "wrong", "b", 50)) {
+				assertThatThrownBy(client::claim).isInstanceOf(IOException.class);
+			}
+		}
+	}
+
+	private static String send(JobCoordinator coordinator, String line) throws IOException {
+		try (Socket socket = new Socket(LOOPBACK, coordinator.getPort());
+			 Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+			 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+			out.write(line);
+			out.write('\n');
+			out.flush();
+			return in.readLine();
+		}
+	}
+}
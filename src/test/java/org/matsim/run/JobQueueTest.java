@@ -0,0 +1,93 @@
+package org.matsim.run;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JobQueueTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void claimOnce() throws IOException {
+
+		Path dir = tmp.newFolder("queue").toPath();
+
+		JobQueue a = new JobQueue(dir, "a");
+		JobQueue b = new JobQueue(dir, "b");
+
+		assertThat(a.submit(List.of(1, 2, 3))).isEqualTo(3);
+		assertThat(b.submit(List.of(1, 2, 3))).isEqualTo(3);
+
+		assertThat(a.claim()).isEqualTo(1);
+		assertThat(b.claim()).isEqualTo(2);
+		assertThat(b.claim()).isEqualTo(3);
+		assertThat(a.claim()).isNull();
+
+		a.finish(1, JobSource.Status.done, 500, 10);
+		b.finish(2, JobSource.Status.done, 1000, 20);
+		b.finish(3, JobSource.Status.failed, 0, 0);
+
+		assertThat(new JobQueue(dir, "c").submit(List.of(1, 2, 3))).isEqualTo(0);
+	}
+
+	@Test
+	public void resumeAndCosts() throws IOException {
+
+		Path dir = tmp.newFolder("queue").toPath();
+
+		JobQueue queue = new JobQueue(dir, "a");
+		queue.submit(List.of(1, 2, 3));
+
+		queue.claim();
+		queue.finish(1, JobSource.Status.done, 100, 5);
+		queue.claim();
+		queue.finish(2, JobSource.Status.done, 200, 10);
+
+		assertThat(queue.claim()).isEqualTo(3);
+
+		// worker is restarted
+		JobQueue restarted = new JobQueue(dir, "a");
+		assertThat(restarted.getCost(2)).isEqualTo(200L);
+		assertThat(restarted.submit(List.of(1, 2, 3))).isEqualTo(1);
+		assertThat(restarted.claim()).isEqualTo(3);
+
+		// next batch starts with the most expensive run
+		Path next = tmp.newFolder("next").toPath();
+		Files.copy(dir.resolve(JobQueue.COSTS), next.resolve(JobQueue.COSTS));
+
+		JobQueue batch = new JobQueue(next, "a");
+		batch.submit(List.of(1, 2, 3));
+
+		assertThat(batch.claim()).isEqualTo(3);
+		assertThat(batch.claim()).isEqualTo(2);
+		assertThat(batch.claim()).isEqualTo(1);
+	}
+
+	@Test
+	public void incomplete() throws IOException {
+
+		Path dir = tmp.newFolder("queue").toPath();
+
+		JobQueue queue = new JobQueue(dir, "a");
+		queue.submit(List.of(1, 2));
+
+		assertThat(queue.claim()).isEqualTo(1);
+		queue.finish(1, JobSource.Status.incomplete, 300, 3);
+
+		assertThat(dir.resolve("run-1.incomplete")).exists();
+		assertThat(dir.resolve("run-1.done")).doesNotExist();
+		assertThat(queue.getCost(1)).isEqualTo(300L);
+
+		// stopped runs are not repeated after a restart
+		assertThat(new JobQueue(dir, "a").submit(List.of(1, 2))).isEqualTo(1);
+	}
+}